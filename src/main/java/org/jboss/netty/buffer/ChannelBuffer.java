@@ -16,6 +16,7 @@
 package org.jboss.netty.buffer;
 
 import org.jboss.netty.buffer.impl.ChannelBuffers;
+import org.jboss.netty.util.ReferenceCounted;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -179,7 +180,8 @@ import java.nio.charset.UnsupportedCharsetException;
  * Various {@link #indexOf(int, int, byte)} methods help you locate an index of
  * a value which meets a certain criteria.  Complicated dynamic sequential
  * search can be done with {@link ChannelBufferIndexFinder} as well as simple
- * static single byte search.
+ * static single byte search.  A multi-byte delimiter is located by
+ * {@link #indexOf(int, int, byte[])}.
  * <p>
  * If you are decoding variable length data such as NUL-terminated string, you
  * will find {@link #bytesBefore(byte)} also useful.
@@ -204,6 +206,21 @@ import java.nio.charset.UnsupportedCharsetException;
  * In case a completely fresh copy of an existing buffer is required, please
  * call {@link #copy()} method instead.
  *
+ * <h3>Reference counting</h3>
+ *
+ * A buffer whose memory has to be given back explicitly, such as the one
+ * allocated by {@link org.jboss.netty.buffer.impl.PooledChannelBufferFactory},
+ * is reference-counted.  Its {@link #release()} must be called once it is not
+ * needed anymore, and {@link #retain()} must be called by a party which keeps
+ * using it beyond that.  A derived buffer shares the reference count of its
+ * parent, so releasing a derived buffer is the same as releasing its parent.
+ * The other buffers are not reference-counted; their {@link #refCnt()} is
+ * always {@code 1} and {@link #retain()} and {@link #release()} do nothing.
+ * <p>
+ * The I/O threads release a {@link ChannelBuffer} once it has been written or
+ * failed to be written.  A received {@link ChannelBuffer} is owned by the
+ * handler which consumes it.
+ *
  * <h3>Conversion to existing JDK types</h3>
  *
  * <h4>Byte array</h4>
@@ -232,7 +249,7 @@ import java.nio.charset.UnsupportedCharsetException;
  *
  * @apiviz.landmark
  */
-public interface ChannelBuffer extends Comparable<ChannelBuffer> {
+public interface ChannelBuffer extends ReferenceCounted, Comparable<ChannelBuffer> {
 
     /**
      * Returns the factory which creates a {@link ChannelBuffer} whose
@@ -680,6 +697,82 @@ public interface ChannelBuffer extends Comparable<ChannelBuffer> {
      */
     void  getBytes(int index, ByteBuffer dst);
 
+    /**
+     * Transfers {@code length} 32-bit integers starting at the specified absolute
+     * {@code index} of this buffer to the specified destination, decoding
+     * them in the {@linkplain #order() byte order} of this buffer.  This is
+     * equivalent to calling {@link #getInt(int)} {@code length} times, but
+     * copies the whole range in one pass.
+     * This method does not modify {@code readerIndex} or {@code writerIndex}
+     * of this buffer.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0},
+     *         if the specified {@code dstIndex} is less than {@code 0},
+     *         if {@code index + length * 4} is greater than
+     *            {@code this.capacity}, or
+     *         if {@code dstIndex + length} is greater than
+     *            {@code dst.length}
+     */
+    void getInts(int index, int[] dst, int dstIndex, int length);
+
+    /**
+     * Transfers {@code length} 64-bit integers starting at the specified absolute
+     * {@code index} of this buffer to the specified destination, decoding
+     * them in the {@linkplain #order() byte order} of this buffer.  This is
+     * equivalent to calling {@link #getLong(int)} {@code length} times, but
+     * copies the whole range in one pass.
+     * This method does not modify {@code readerIndex} or {@code writerIndex}
+     * of this buffer.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0},
+     *         if the specified {@code dstIndex} is less than {@code 0},
+     *         if {@code index + length * 8} is greater than
+     *            {@code this.capacity}, or
+     *         if {@code dstIndex + length} is greater than
+     *            {@code dst.length}
+     */
+    void getLongs(int index, long[] dst, int dstIndex, int length);
+
+    /**
+     * Transfers {@code length} 32-bit floating point numbers starting at the specified absolute
+     * {@code index} of this buffer to the specified destination, decoding
+     * them in the {@linkplain #order() byte order} of this buffer.  This is
+     * equivalent to calling {@link #getFloat(int)} {@code length} times, but
+     * copies the whole range in one pass.
+     * This method does not modify {@code readerIndex} or {@code writerIndex}
+     * of this buffer.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0},
+     *         if the specified {@code dstIndex} is less than {@code 0},
+     *         if {@code index + length * 4} is greater than
+     *            {@code this.capacity}, or
+     *         if {@code dstIndex + length} is greater than
+     *            {@code dst.length}
+     */
+    void getFloats(int index, float[] dst, int dstIndex, int length);
+
+    /**
+     * Transfers {@code length} 64-bit floating point numbers starting at the specified absolute
+     * {@code index} of this buffer to the specified destination, decoding
+     * them in the {@linkplain #order() byte order} of this buffer.  This is
+     * equivalent to calling {@link #getDouble(int)} {@code length} times, but
+     * copies the whole range in one pass.
+     * This method does not modify {@code readerIndex} or {@code writerIndex}
+     * of this buffer.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0},
+     *         if the specified {@code dstIndex} is less than {@code 0},
+     *         if {@code index + length * 8} is greater than
+     *            {@code this.capacity}, or
+     *         if {@code dstIndex + length} is greater than
+     *            {@code dst.length}
+     */
+    void getDoubles(int index, double[] dst, int dstIndex, int length);
+
     /**
      * Transfers this buffer's data to the specified stream starting at the
      * specified absolute {@code index}.
@@ -914,6 +1007,78 @@ public interface ChannelBuffer extends Comparable<ChannelBuffer> {
      */
     void setBytes(int index, ByteBuffer src);
 
+    /**
+     * Transfers {@code length} 32-bit integers of the specified source array to
+     * this buffer starting at the specified absolute {@code index}, encoding
+     * them in the {@linkplain #order() byte order} of this buffer.  This is
+     * equivalent to calling {@link #setInt(int, int)} {@code length} times,
+     * but copies the whole range in one pass.
+     * This method does not modify {@code readerIndex} or {@code writerIndex}
+     * of this buffer.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0},
+     *         if the specified {@code srcIndex} is less than {@code 0},
+     *         if {@code index + length * 4} is greater than
+     *            {@code this.capacity}, or
+     *         if {@code srcIndex + length} is greater than {@code src.length}
+     */
+    void setInts(int index, int[] src, int srcIndex, int length);
+
+    /**
+     * Transfers {@code length} 64-bit integers of the specified source array to
+     * this buffer starting at the specified absolute {@code index}, encoding
+     * them in the {@linkplain #order() byte order} of this buffer.  This is
+     * equivalent to calling {@link #setLong(int, long)} {@code length} times,
+     * but copies the whole range in one pass.
+     * This method does not modify {@code readerIndex} or {@code writerIndex}
+     * of this buffer.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0},
+     *         if the specified {@code srcIndex} is less than {@code 0},
+     *         if {@code index + length * 8} is greater than
+     *            {@code this.capacity}, or
+     *         if {@code srcIndex + length} is greater than {@code src.length}
+     */
+    void setLongs(int index, long[] src, int srcIndex, int length);
+
+    /**
+     * Transfers {@code length} 32-bit floating point numbers of the specified source array to
+     * this buffer starting at the specified absolute {@code index}, encoding
+     * them in the {@linkplain #order() byte order} of this buffer.  This is
+     * equivalent to calling {@link #setFloat(int, float)} {@code length} times,
+     * but copies the whole range in one pass.
+     * This method does not modify {@code readerIndex} or {@code writerIndex}
+     * of this buffer.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0},
+     *         if the specified {@code srcIndex} is less than {@code 0},
+     *         if {@code index + length * 4} is greater than
+     *            {@code this.capacity}, or
+     *         if {@code srcIndex + length} is greater than {@code src.length}
+     */
+    void setFloats(int index, float[] src, int srcIndex, int length);
+
+    /**
+     * Transfers {@code length} 64-bit floating point numbers of the specified source array to
+     * this buffer starting at the specified absolute {@code index}, encoding
+     * them in the {@linkplain #order() byte order} of this buffer.  This is
+     * equivalent to calling {@link #setDouble(int, double)} {@code length} times,
+     * but copies the whole range in one pass.
+     * This method does not modify {@code readerIndex} or {@code writerIndex}
+     * of this buffer.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0},
+     *         if the specified {@code srcIndex} is less than {@code 0},
+     *         if {@code index + length * 8} is greater than
+     *            {@code this.capacity}, or
+     *         if {@code srcIndex + length} is greater than {@code src.length}
+     */
+    void setDoubles(int index, double[] src, int srcIndex, int length);
+
     /**
      * Transfers the content of the specified source stream to this buffer
      * starting at the specified absolute {@code index}.
@@ -1074,6 +1239,69 @@ public interface ChannelBuffer extends Comparable<ChannelBuffer> {
      */
     double readDouble();
 
+    /**
+     * Gets a variable-length 32-bit integer at the current {@code readerIndex}
+     * and increases the {@code readerIndex} by its length, which is {@code 1}
+     * to {@code 5} bytes.  Each byte holds 7 bits of the integer, the least
+     * significant group first, and has its highest bit set unless it is the
+     * last byte, as in Protocol Buffers.  A negative integer takes
+     * {@code 5} bytes; use {@link #readZigZagVarInt32()} for signed integers
+     * which are often negative.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the readable bytes end before the last byte of the integer,
+     *         in which case the {@code readerIndex} is not modified
+     * @throws IllegalStateException
+     *         if the integer is longer than {@code 5} bytes
+     */
+    int readVarInt32();
+
+    /**
+     * Gets a variable-length 64-bit integer, which is {@code 1} to
+     * {@code 10} bytes long, at the current {@code readerIndex} and increases
+     * the {@code readerIndex} by its length.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the readable bytes end before the last byte of the integer,
+     *         in which case the {@code readerIndex} is not modified
+     * @throws IllegalStateException
+     *         if the integer is longer than {@code 10} bytes
+     *
+     * @see #readVarInt32()
+     */
+    long readVarInt64();
+
+    /**
+     * Gets a variable-length signed 32-bit integer in the ZigZag encoding,
+     * which maps a small negative integer to a small unsigned one, at the
+     * current {@code readerIndex} and increases the {@code readerIndex} by its
+     * length.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the readable bytes end before the last byte of the integer,
+     *         in which case the {@code readerIndex} is not modified
+     * @throws IllegalStateException
+     *         if the integer is longer than {@code 5} bytes
+     *
+     * @see #readVarInt32()
+     */
+    int readZigZagVarInt32();
+
+    /**
+     * Gets a variable-length signed 64-bit integer in the ZigZag encoding at
+     * the current {@code readerIndex} and increases the {@code readerIndex} by
+     * its length.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the readable bytes end before the last byte of the integer,
+     *         in which case the {@code readerIndex} is not modified
+     * @throws IllegalStateException
+     *         if the integer is longer than {@code 10} bytes
+     *
+     * @see #readZigZagVarInt32()
+     */
+    long readZigZagVarInt64();
+
     /**
      * Transfers this buffer's data to a newly created buffer starting at
      * the current {@code readerIndex} and increases the {@code readerIndex}
@@ -1322,6 +1550,51 @@ public interface ChannelBuffer extends Comparable<ChannelBuffer> {
      */
     void writeDouble(double value);
 
+    /**
+     * Sets the specified 32-bit integer in the variable-length encoding
+     * described in {@link #readVarInt32()} at the current {@code writerIndex}
+     * and increases the {@code writerIndex} by its length, which is
+     * {@code 1} to {@code 5} bytes.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if {@code this.writableBytes} is less than the encoded length
+     *         and this buffer is not a dynamic buffer
+     */
+    void writeVarInt32(int value);
+
+    /**
+     * Sets the specified 64-bit integer in the variable-length encoding at
+     * the current {@code writerIndex} and increases the {@code writerIndex} by
+     * its length, which is {@code 1} to {@code 10} bytes.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if {@code this.writableBytes} is less than the encoded length
+     *         and this buffer is not a dynamic buffer
+     */
+    void writeVarInt64(long value);
+
+    /**
+     * Sets the specified signed 32-bit integer in the ZigZag variable-length
+     * encoding described in {@link #readZigZagVarInt32()} at the current
+     * {@code writerIndex} and increases the {@code writerIndex} by its length.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if {@code this.writableBytes} is less than the encoded length
+     *         and this buffer is not a dynamic buffer
+     */
+    void writeZigZagVarInt32(int value);
+
+    /**
+     * Sets the specified signed 64-bit integer in the ZigZag variable-length
+     * encoding at the current {@code writerIndex} and increases the
+     * {@code writerIndex} by its length.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if {@code this.writableBytes} is less than the encoded length
+     *         and this buffer is not a dynamic buffer
+     */
+    void writeZigZagVarInt64(long value);
+
     /**
      * Transfers the specified source buffer's data to this buffer starting at
      * the current {@code writerIndex} until the source buffer becomes
@@ -1583,6 +1856,74 @@ public interface ChannelBuffer extends Comparable<ChannelBuffer> {
      */
     int bytesBefore(int index, int length, ChannelBufferIndexFinder indexFinder);
 
+    /**
+     * Locates the first occurrence of the specified multi-byte
+     * {@code delimiter} in this buffer.  The search takes place from the
+     * specified {@code fromIndex} (inclusive) to the specified {@code toIndex}
+     * (exclusive), and only an occurrence which lies entirely in the range is
+     * located.
+     * <p>
+     * If {@code fromIndex} is greater than {@code toIndex}, the search is
+     * performed in a reversed order.
+     * <p>
+     * This method does not modify {@code readerIndex} or {@code writerIndex} of
+     * this buffer.
+     *
+     * @return the absolute index of the first byte of the first occurrence if
+     *         found.  {@code -1} otherwise.
+     *
+     * @throws IllegalArgumentException
+     *         if {@code delimiter} is empty
+     */
+    int indexOf(int fromIndex, int toIndex, byte[] delimiter);
+
+    /**
+     * Locates the first occurrence of the specified multi-byte
+     * {@code delimiter} in this buffer.  The search takes place from the
+     * current {@code readerIndex} (inclusive) to the current
+     * {@code writerIndex} (exclusive).
+     * <p>
+     * This method does not modify {@code readerIndex} or {@code writerIndex} of
+     * this buffer.
+     *
+     * @return the number of bytes between the current {@code readerIndex}
+     *         and the first occurrence if found. {@code -1} otherwise.
+     */
+    int bytesBefore(byte[] delimiter);
+
+    /**
+     * Locates the first occurrence of the specified multi-byte
+     * {@code delimiter} in this buffer.  The search starts from the current
+     * {@code readerIndex} (inclusive) and lasts for the specified
+     * {@code length}.
+     * <p>
+     * This method does not modify {@code readerIndex} or {@code writerIndex} of
+     * this buffer.
+     *
+     * @return the number of bytes between the current {@code readerIndex}
+     *         and the first occurrence if found. {@code -1} otherwise.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if {@code length} is greater than {@code this.readableBytes}
+     */
+    int bytesBefore(int length, byte[] delimiter);
+
+    /**
+     * Locates the first occurrence of the specified multi-byte
+     * {@code delimiter} in this buffer.  The search starts from the specified
+     * {@code index} (inclusive) and lasts for the specified {@code length}.
+     * <p>
+     * This method does not modify {@code readerIndex} or {@code writerIndex} of
+     * this buffer.
+     *
+     * @return the number of bytes between the specified {@code index}
+     *         and the first occurrence if found. {@code -1} otherwise.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if {@code index + length} is greater than {@code this.capacity}
+     */
+    int bytesBefore(int index, int length, byte[] delimiter);
+
     /**
      * Returns a copy of this buffer's readable bytes.  Modifying the content
      * of the returned buffer or this buffer does not affect each other at all.
@@ -1740,6 +2081,21 @@ public interface ChannelBuffer extends Comparable<ChannelBuffer> {
             int index, int length, String charsetName,
             ChannelBufferIndexFinder terminatorFinder);
 
+    /**
+     * Increases the reference count of this buffer by {@code 1}.
+     *
+     * @return this buffer
+     */
+    ChannelBuffer retain();
+
+    /**
+     * Increases the reference count of this buffer by the specified
+     * {@code increment}.
+     *
+     * @return this buffer
+     */
+    ChannelBuffer retain(int increment);
+
     /**
      * Returns a hash code which was calculated from the content of this
      * buffer.  If there's a byte array which is
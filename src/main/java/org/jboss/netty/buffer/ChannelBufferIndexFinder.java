@@ -15,6 +15,7 @@
  */
 package org.jboss.netty.buffer;
 
+import org.jboss.netty.buffer.impl.ByteSetIndexFinder;
 
 /**
  * Locates an index of data in a {@link ChannelBuffer}.
@@ -24,6 +25,11 @@ package org.jboss.netty.buffer;
  * refer to {@link ChannelBuffer#indexOf(int, int, ChannelBufferIndexFinder)} and
  * {@link ChannelBuffer#bytesBefore(int, int, ChannelBufferIndexFinder)}
  * for more explanation.
+ * <p>
+ * The predefined finders locate a byte which belongs (or does not belong) to
+ * a small set of values.  Use {@link ByteSetIndexFinder} for such a search
+ * rather than implementing this interface, so that the buffer can be scanned
+ * a word at a time.
  *
  * @apiviz.uses org.jboss.netty.buffer.ChannelBuffer
  */
@@ -42,97 +48,53 @@ public interface ChannelBufferIndexFinder {
     /**
      * Index finder which locates a {@code NUL (0x00)} byte.
      */
-    ChannelBufferIndexFinder NUL = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            return buffer.getByte(guessedIndex) == 0;
-        }
-    };
+    ChannelBufferIndexFinder NUL = new ByteSetIndexFinder((byte) 0);
 
     /**
      * Index finder which locates a non-{@code NUL (0x00)} byte.
      */
-    ChannelBufferIndexFinder NOT_NUL = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            return buffer.getByte(guessedIndex) != 0;
-        }
-    };
+    ChannelBufferIndexFinder NOT_NUL = new ByteSetIndexFinder(true, (byte) 0);
 
     /**
      * Index finder which locates a {@code CR ('\r')} byte.
      */
-    ChannelBufferIndexFinder CR = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            return buffer.getByte(guessedIndex) == '\r';
-        }
-    };
+    ChannelBufferIndexFinder CR = new ByteSetIndexFinder((byte) '\r');
 
     /**
      * Index finder which locates a non-{@code CR ('\r')} byte.
      */
-    ChannelBufferIndexFinder NOT_CR = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            return buffer.getByte(guessedIndex) != '\r';
-        }
-    };
+    ChannelBufferIndexFinder NOT_CR = new ByteSetIndexFinder(true, (byte) '\r');
 
     /**
      * Index finder which locates a {@code LF ('\n')} byte.
      */
-    ChannelBufferIndexFinder LF = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            return buffer.getByte(guessedIndex) == '\n';
-        }
-    };
+    ChannelBufferIndexFinder LF = new ByteSetIndexFinder((byte) '\n');
 
     /**
      * Index finder which locates a non-{@code LF ('\n')} byte.
      */
-    ChannelBufferIndexFinder NOT_LF = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            return buffer.getByte(guessedIndex) != '\n';
-        }
-    };
+    ChannelBufferIndexFinder NOT_LF = new ByteSetIndexFinder(true, (byte) '\n');
 
     /**
      * Index finder which locates a {@code CR ('\r')} or {@code LF ('\n')}.
      */
-    ChannelBufferIndexFinder CRLF = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            byte b = buffer.getByte(guessedIndex);
-            return b == '\r' || b == '\n';
-        }
-    };
+    ChannelBufferIndexFinder CRLF = new ByteSetIndexFinder((byte) '\r', (byte) '\n');
 
     /**
      * Index finder which locates a byte which is neither a {@code CR ('\r')}
      * nor a {@code LF ('\n')}.
      */
-    ChannelBufferIndexFinder NOT_CRLF = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            byte b = buffer.getByte(guessedIndex);
-            return b != '\r' && b != '\n';
-        }
-    };
+    ChannelBufferIndexFinder NOT_CRLF = new ByteSetIndexFinder(true, (byte) '\r', (byte) '\n');
 
     /**
      * Index finder which locates a linear whitespace
      * ({@code ' '} and {@code '\t'}).
      */
-    ChannelBufferIndexFinder LINEAR_WHITESPACE = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            byte b = buffer.getByte(guessedIndex);
-            return b == ' ' || b == '\t';
-        }
-    };
+    ChannelBufferIndexFinder LINEAR_WHITESPACE = new ByteSetIndexFinder((byte) ' ', (byte) '\t');
 
     /**
      * Index finder which locates a byte which is not a linear whitespace
      * (neither {@code ' '} nor {@code '\t'}).
      */
-    ChannelBufferIndexFinder NOT_LINEAR_WHITESPACE = new ChannelBufferIndexFinder() {
-        public boolean find(ChannelBuffer buffer, int guessedIndex) {
-            byte b = buffer.getByte(guessedIndex);
-            return b != ' ' && b != '\t';
-        }
-    };
+    ChannelBufferIndexFinder NOT_LINEAR_WHITESPACE = new ByteSetIndexFinder(true, (byte) ' ', (byte) '\t');
 }
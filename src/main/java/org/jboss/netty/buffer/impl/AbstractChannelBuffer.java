@@ -112,11 +112,19 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
         }
         setBytes(0, this, readerIndex, writerIndex - readerIndex);
         writerIndex -= readerIndex;
-        markedReaderIndex = Math.max(markedReaderIndex - readerIndex, 0);
-        markedWriterIndex = Math.max(markedWriterIndex - readerIndex, 0);
+        adjustMarkers(readerIndex);
         readerIndex = 0;
     }
 
+    /**
+     * Moves the marked reader and writer indexes backwards by the specified
+     * amount, e.g. after the bytes in front of them have been discarded.
+     */
+    protected final void adjustMarkers(int decrement) {
+        markedReaderIndex = Math.max(markedReaderIndex - decrement, 0);
+        markedWriterIndex = Math.max(markedWriterIndex - decrement, 0);
+    }
+
     public void ensureWritableBytes(int writableBytes) {
         if (writableBytes > writableBytes()) {
             throw new IndexOutOfBoundsException("Writable bytes exceeded: Got "
@@ -173,6 +181,38 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
         dst.writerIndex(dst.writerIndex() + length);
     }
 
+    public void getInts(int index, int[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        for (int i = 0; i < length; i ++) {
+            dst[dstIndex + i] = getInt(index);
+            index += 4;
+        }
+    }
+
+    public void getLongs(int index, long[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        for (int i = 0; i < length; i ++) {
+            dst[dstIndex + i] = getLong(index);
+            index += 8;
+        }
+    }
+
+    public void getFloats(int index, float[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        for (int i = 0; i < length; i ++) {
+            dst[dstIndex + i] = Float.intBitsToFloat(getInt(index));
+            index += 4;
+        }
+    }
+
+    public void getDoubles(int index, double[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        for (int i = 0; i < length; i ++) {
+            dst[dstIndex + i] = Double.longBitsToDouble(getLong(index));
+            index += 8;
+        }
+    }
+
     public void setChar(int index, int value) {
         setShort(index, value);
     }
@@ -202,6 +242,38 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
         src.readerIndex(src.readerIndex() + length);
     }
 
+    public void setInts(int index, int[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 4, srcIndex, src.length);
+        for (int i = 0; i < length; i ++) {
+            setInt(index, src[srcIndex + i]);
+            index += 4;
+        }
+    }
+
+    public void setLongs(int index, long[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 8, srcIndex, src.length);
+        for (int i = 0; i < length; i ++) {
+            setLong(index, src[srcIndex + i]);
+            index += 8;
+        }
+    }
+
+    public void setFloats(int index, float[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 4, srcIndex, src.length);
+        for (int i = 0; i < length; i ++) {
+            setInt(index, Float.floatToRawIntBits(src[srcIndex + i]));
+            index += 4;
+        }
+    }
+
+    public void setDoubles(int index, double[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 8, srcIndex, src.length);
+        for (int i = 0; i < length; i ++) {
+            setLong(index, Double.doubleToRawLongBits(src[srcIndex + i]));
+            index += 8;
+        }
+    }
+
     public void setZero(int index, int length) {
         if (length == 0) {
             return;
@@ -302,6 +374,59 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
         return Double.longBitsToDouble(readLong());
     }
 
+    public int readVarInt32() {
+        int index = readerIndex;
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (index >= writerIndex) {
+                throw incompleteVarInt(index);
+            }
+            byte b = getByte(index ++);
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                readerIndex = index;
+                return result;
+            }
+        }
+        throw new IllegalStateException("varint32 longer than 5 bytes at index " + readerIndex);
+    }
+
+    public long readVarInt64() {
+        int index = readerIndex;
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            if (index >= writerIndex) {
+                throw incompleteVarInt(index);
+            }
+            byte b = getByte(index ++);
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                readerIndex = index;
+                return result;
+            }
+        }
+        throw new IllegalStateException("varint64 longer than 10 bytes at index " + readerIndex);
+    }
+
+    public int readZigZagVarInt32() {
+        int v = readVarInt32();
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    public long readZigZagVarInt64() {
+        long v = readVarInt64();
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    /**
+     * Returns the exception to throw when the readable bytes end at the
+     * specified {@code index} in the middle of a variable-length integer.
+     */
+    protected IndexOutOfBoundsException incompleteVarInt(int index) {
+        return new IndexOutOfBoundsException("Not enough readable bytes - Need "
+                + (index - readerIndex + 1) + ", maximum is " + readableBytes());
+    }
+
     public ChannelBuffer readBytes(int length) {
         checkReadableBytes(length);
         if (length == 0) {
@@ -444,6 +569,36 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
         writeLong(Double.doubleToRawLongBits(value));
     }
 
+    public void writeVarInt32(int value) {
+        ensureWritableBytes(ChannelBuffers.varInt32Length(value));
+        int index = writerIndex;
+        while ((value & ~0x7F) != 0) {
+            setByte(index ++, value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        setByte(index ++, value);
+        writerIndex = index;
+    }
+
+    public void writeVarInt64(long value) {
+        ensureWritableBytes(ChannelBuffers.varInt64Length(value));
+        int index = writerIndex;
+        while ((value & ~0x7FL) != 0) {
+            setByte(index ++, (int) value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        setByte(index ++, (int) value);
+        writerIndex = index;
+    }
+
+    public void writeZigZagVarInt32(int value) {
+        writeVarInt32(value << 1 ^ value >> 31);
+    }
+
+    public void writeZigZagVarInt64(long value) {
+        writeVarInt64(value << 1 ^ value >> 63);
+    }
+
     public void writeBytes(byte[] src, int srcIndex, int length) {
         setBytes(writerIndex, src, srcIndex, length);
         writerIndex += length;
@@ -551,8 +706,7 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
             return "";
         }
 
-        return ChannelBuffers.decodeString(
-                toByteBuffer(index, length), charset);
+        return ChannelBuffers.decodeString(this, index, length, charset);
     }
 
     @Deprecated
@@ -635,6 +789,30 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
         return endIndex - index;
     }
 
+    public int indexOf(int fromIndex, int toIndex, byte[] delimiter) {
+        return ChannelBuffers.indexOf(this, fromIndex, toIndex, delimiter);
+    }
+
+    public int bytesBefore(byte[] delimiter) {
+        return bytesBefore(readerIndex(), readableBytes(), delimiter);
+    }
+
+    public int bytesBefore(int length, byte[] delimiter) {
+        checkReadableBytes(length);
+        return bytesBefore(readerIndex(), length, delimiter);
+    }
+
+    public int bytesBefore(int index, int length, byte[] delimiter) {
+        if (index < 0 || length < 0 || index + length > capacity()) {
+            throw new IndexOutOfBoundsException();
+        }
+        int endIndex = indexOf(index, index + length, delimiter);
+        if (endIndex < 0) {
+            return -1;
+        }
+        return endIndex - index;
+    }
+
     @Override
     public int hashCode() {
         return ChannelBuffers.hashCode(this);
@@ -652,6 +830,34 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
         return ChannelBuffers.compare(this, that);
     }
 
+    /**
+     * Returns {@code 1} because this buffer is not reference-counted unless
+     * overridden.
+     */
+    public int refCnt() {
+        return 1;
+    }
+
+    public ChannelBuffer retain() {
+        return this;
+    }
+
+    public ChannelBuffer retain(int increment) {
+        return this;
+    }
+
+    /**
+     * Returns {@code false} because this buffer is not reference-counted
+     * unless overridden.
+     */
+    public boolean release() {
+        return false;
+    }
+
+    public boolean release(int decrement) {
+        return false;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + '(' +
@@ -672,4 +878,25 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
                     + minimumReadableBytes + ", maximum is " + readableBytes());
         }
     }
+
+    /**
+     * Throws an {@link IndexOutOfBoundsException} unless {@code length}
+     * elements of {@code elementSize} bytes starting at the specified
+     * {@code index} are within the capacity of this buffer, and
+     * {@code length} elements starting at {@code arrayIndex} are within an
+     * array of {@code arrayLength} elements.
+     */
+    protected final void checkBulkIndex(int index, int length, int elementSize, int arrayIndex, int arrayLength) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length is negative: " + length);
+        }
+        if (arrayIndex < 0 || arrayIndex > arrayLength - length) {
+            throw new IndexOutOfBoundsException("Invalid array index: " + arrayIndex
+                    + ", length: " + length + ", array length: " + arrayLength);
+        }
+        if (index < 0 || index > capacity() - (long) length * elementSize) {
+            throw new IndexOutOfBoundsException("Too many bytes - Need "
+                    + (index + (long) length * elementSize) + ", maximum is " + capacity());
+        }
+    }
 }
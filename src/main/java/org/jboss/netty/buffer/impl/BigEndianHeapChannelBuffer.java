@@ -17,6 +17,7 @@ package org.jboss.netty.buffer.impl;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.util.internal.UnsafeByteArrayAccess;
 
 import java.nio.ByteOrder;
 
@@ -25,6 +26,9 @@ import java.nio.ByteOrder;
  * A big-endian Java heap buffer.  It is recommended to use {@link ChannelBuffers#buffer(int)}
  * and {@link ChannelBuffers#wrappedBuffer(byte[])} instead of calling the
  * constructor explicitly.
+ * <p>
+ * The multi-byte accessors use {@link UnsafeByteArrayAccess} if available,
+ * and assemble the value byte by byte otherwise.
  */
 public class BigEndianHeapChannelBuffer extends HeapChannelBuffer {
 
@@ -59,6 +63,9 @@ public class BigEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public short getShort(int index) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            return UnsafeByteArrayAccess.getShort(array, index);
+        }
         return (short) (array[index] << 8 | array[index + 1] & 0xFF);
     }
 
@@ -69,6 +76,9 @@ public class BigEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public int getInt(int index) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            return UnsafeByteArrayAccess.getInt(array, index);
+        }
         return  (array[index]     & 0xff) << 24 |
                 (array[index + 1] & 0xff) << 16 |
                 (array[index + 2] & 0xff) <<  8 |
@@ -76,6 +86,9 @@ public class BigEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public long getLong(int index) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            return UnsafeByteArrayAccess.getLong(array, index);
+        }
         return  ((long) array[index]     & 0xff) << 56 |
                 ((long) array[index + 1] & 0xff) << 48 |
                 ((long) array[index + 2] & 0xff) << 40 |
@@ -87,6 +100,10 @@ public class BigEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public void setShort(int index, int value) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            UnsafeByteArrayAccess.setShort(array, index, value);
+            return;
+        }
         array[index]     = (byte) (value >>> 8);
         array[index + 1] = (byte) value;
     }
@@ -98,6 +115,10 @@ public class BigEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public void setInt(int index, int   value) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            UnsafeByteArrayAccess.setInt(array, index, value);
+            return;
+        }
         array[index]     = (byte) (value >>> 24);
         array[index + 1] = (byte) (value >>> 16);
         array[index + 2] = (byte) (value >>> 8);
@@ -105,6 +126,10 @@ public class BigEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public void setLong(int index, long  value) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            UnsafeByteArrayAccess.setLong(array, index, value);
+            return;
+        }
         array[index]     = (byte) (value >>> 56);
         array[index + 1] = (byte) (value >>> 48);
         array[index + 2] = (byte) (value >>> 40);
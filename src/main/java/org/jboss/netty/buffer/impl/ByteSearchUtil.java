@@ -0,0 +1,406 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.internal.UnsafeByteArrayAccess;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Forward byte searches which examine eight bytes at a time
+ * (SWAR - SIMD within a register) instead of calling
+ * {@link ChannelBuffer#getByte(int)} for every byte, and the multi-byte
+ * delimiter search.
+ * <p>
+ * A 64-bit word is loaded in little-endian order, so that the byte at the
+ * lowest address is the least significant one, and is XOR-ed with the searched
+ * value repeated eight times.  A zero byte of the result is a match, and the
+ * number of the trailing zero bits of the word which flags the zero bytes
+ * gives the offset of the first match.  A flag can be set wrongly only above a
+ * real match because of the borrow of the subtraction, so the lowest flag is
+ * always exact.
+ * <p>
+ * Heap buffers are scanned through their backing array.  Other buffers are
+ * scanned through the NIO views returned by {@link ChannelBuffer#toByteBuffers(int, int)},
+ * which do not copy the content of a direct or a composite buffer.
+ */
+final class ByteSearchUtil {
+
+    /**
+     * The ranges shorter than this are scanned byte by byte because the word
+     * loop and the NIO views do not pay off.
+     */
+    private static final int MIN_SWAR_LENGTH = 32;
+
+    /**
+     * The number of bytes at the start of the range of a buffer without a
+     * backing array which are scanned byte by byte before its NIO views are
+     * created.
+     */
+    private static final int NIO_PREFIX_LENGTH = 256;
+
+    private static final long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long ONES = 0x0101010101010101L;
+
+    /**
+     * Returns the first index in the range {@code [fromIndex, toIndex)} of the
+     * specified buffer whose byte is {@code value}, or {@code -1} if not found.
+     * The range must be within the capacity of the buffer.
+     */
+    static int firstIndexOf(ChannelBuffer buffer, int fromIndex, int toIndex, byte value) {
+        return firstIndexOf(buffer, fromIndex, toIndex, new long[] { pattern(value) }, false);
+    }
+
+    /**
+     * Returns the first index in the range {@code [fromIndex, toIndex)} of the
+     * specified buffer whose byte is one of the values of the specified
+     * {@code patterns} (or none of them if {@code negated}), or {@code -1} if
+     * not found.  The range must be within the capacity of the buffer.
+     *
+     * @see #patterns(byte[])
+     */
+    static int firstIndexOf(ChannelBuffer buffer, int fromIndex, int toIndex, long[] patterns, boolean negated) {
+        if (toIndex - fromIndex < MIN_SWAR_LENGTH) {
+            return linearIndexOf(buffer, fromIndex, toIndex, patterns, negated);
+        }
+
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            int index = indexOf(buffer.array(), offset + fromIndex, offset + toIndex, patterns, negated);
+            return index < 0? -1 : index - offset;
+        }
+
+        // Creating the NIO views costs as much as scanning a few dozen bytes,
+        // so a nearby match is looked for byte by byte first.
+        final int prefixEnd = Math.min(toIndex, fromIndex + NIO_PREFIX_LENGTH);
+        int index = linearIndexOf(buffer, fromIndex, prefixEnd, patterns, negated);
+        if (index >= 0 || prefixEnd == toIndex) {
+            return index;
+        }
+
+        index = prefixEnd;
+        for (ByteBuffer nioBuffer: buffer.toByteBuffers(prefixEnd, toIndex - prefixEnd)) {
+            int found;
+            if (nioBuffer.hasArray()) {
+                int start = nioBuffer.arrayOffset() + nioBuffer.position();
+                found = indexOf(nioBuffer.array(), start, start + nioBuffer.remaining(), patterns, negated);
+                if (found >= 0) {
+                    found -= start;
+                }
+            } else {
+                found = indexOf(nioBuffer, patterns, negated);
+            }
+            if (found >= 0) {
+                return index + found;
+            }
+            index += nioBuffer.remaining();
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] array, int fromIndex, int toIndex, long[] patterns, boolean negated) {
+        if (!negated && patterns.length == 1) {
+            return indexOf(array, fromIndex, toIndex, patterns[0]);
+        }
+
+        int i = fromIndex;
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            final int wordEnd = toIndex - 7;
+            for (; i < wordEnd; i += 8) {
+                long mask = matches(UnsafeByteArrayAccess.getLongLE(array, i), patterns, negated);
+                if (mask != 0) {
+                    return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+                }
+            }
+        }
+        for (; i < toIndex; i ++) {
+            if (matches(array[i], patterns, negated)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first index in the range {@code [fromIndex, toIndex)} of the
+     * specified array whose byte is the value of the specified
+     * {@code pattern}, or {@code -1} if not found.
+     */
+    private static int indexOf(byte[] array, int fromIndex, int toIndex, long pattern) {
+        int i = fromIndex;
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            final int wordEnd = toIndex - 7;
+            for (; i < wordEnd; i += 8) {
+                long mask = zeroBytes(UnsafeByteArrayAccess.getLongLE(array, i) ^ pattern);
+                if (mask != 0) {
+                    return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+                }
+            }
+        }
+        final byte value = (byte) pattern;
+        for (; i < toIndex; i ++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset from the position of the specified buffer to the
+     * first matching byte before its limit, or {@code -1} if not found.
+     */
+    private static int indexOf(ByteBuffer nioBuffer, long[] patterns, boolean negated) {
+        final ByteBuffer buf = nioBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int start = buf.position();
+        final int end = buf.limit();
+        final int wordEnd = end - 7;
+        int i = start;
+        if (!negated && patterns.length == 1) {
+            final long pattern = patterns[0];
+            for (; i < wordEnd; i += 8) {
+                long mask = zeroBytes(buf.getLong(i) ^ pattern);
+                if (mask != 0) {
+                    return i - start + (Long.numberOfTrailingZeros(mask) >>> 3);
+                }
+            }
+        } else {
+            for (; i < wordEnd; i += 8) {
+                long mask = matches(buf.getLong(i), patterns, negated);
+                if (mask != 0) {
+                    return i - start + (Long.numberOfTrailingZeros(mask) >>> 3);
+                }
+            }
+        }
+        for (; i < end; i ++) {
+            if (matches(buf.get(i), patterns, negated)) {
+                return i - start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified
+     * {@code delimiter} which lies entirely in the range
+     * {@code [fromIndex, toIndex)} of the specified buffer, or {@code -1} if
+     * not found.  The range must be within the capacity of the buffer and the
+     * delimiter must be at least two bytes long.
+     * <p>
+     * Short delimiters in a heap buffer are located by searching the first
+     * byte of the delimiter word-wise and verifying the rest.  Otherwise the
+     * Boyer-Moore-Horspool algorithm is used, which skips up to the length of
+     * the delimiter per comparison.
+     */
+    static int firstIndexOf(ChannelBuffer buffer, int fromIndex, int toIndex, byte[] delimiter) {
+        final int n = delimiter.length;
+        final int lastStart = toIndex - n;
+        if (lastStart < fromIndex) {
+            return -1;
+        }
+
+        if (buffer.hasArray()) {
+            final byte[] array = buffer.array();
+            final int offset = buffer.arrayOffset();
+            final int index;
+            if (n < 8) {
+                index = shortIndexOf(array, offset + fromIndex, offset + lastStart, delimiter);
+            } else {
+                index = horspoolIndexOf(array, offset + fromIndex, offset + lastStart, delimiter);
+            }
+            return index < 0? -1 : index - offset;
+        }
+
+        final int[] shifts = shifts(delimiter);
+        final int last = n - 1;
+        final byte lastByte = delimiter[last];
+        int i = fromIndex;
+        while (i <= lastStart) {
+            byte b = buffer.getByte(i + last);
+            if (b == lastByte) {
+                int j = last - 1;
+                while (j >= 0 && buffer.getByte(i + j) == delimiter[j]) {
+                    j --;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shifts[b & 0xFF];
+        }
+        return -1;
+    }
+
+    private static int shortIndexOf(byte[] array, int fromIndex, int lastStart, byte[] delimiter) {
+        final long first = pattern(delimiter[0]);
+        final int n = delimiter.length;
+        final int searchEnd = lastStart + 1;
+        int i = fromIndex;
+        while (i <= lastStart) {
+            i = indexOf(array, i, searchEnd, first);
+            if (i < 0) {
+                return -1;
+            }
+            int j = 1;
+            while (j < n && array[i + j] == delimiter[j]) {
+                j ++;
+            }
+            if (j == n) {
+                return i;
+            }
+            i ++;
+        }
+        return -1;
+    }
+
+    private static int horspoolIndexOf(byte[] array, int fromIndex, int lastStart, byte[] delimiter) {
+        final int[] shifts = shifts(delimiter);
+        final int last = delimiter.length - 1;
+        final byte lastByte = delimiter[last];
+        int i = fromIndex;
+        while (i <= lastStart) {
+            byte b = array[i + last];
+            if (b == lastByte) {
+                int j = last - 1;
+                while (j >= 0 && array[i + j] == delimiter[j]) {
+                    j --;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shifts[b & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the Horspool bad character table: the distance from the last
+     * occurrence of each byte value (excluding the last byte) to the end of
+     * the specified delimiter.
+     */
+    private static int[] shifts(byte[] delimiter) {
+        final int n = delimiter.length;
+        final int[] shifts = new int[256];
+        for (int i = 0; i < 256; i ++) {
+            shifts[i] = n;
+        }
+        for (int i = 0; i < n - 1; i ++) {
+            shifts[delimiter[i] & 0xFF] = n - 1 - i;
+        }
+        return shifts;
+    }
+
+    /**
+     * Returns the specified values, each repeated eight times in a word.
+     */
+    static long[] patterns(byte[] values) {
+        long[] patterns = new long[values.length];
+        for (int i = 0; i < values.length; i ++) {
+            patterns[i] = pattern(values[i]);
+        }
+        return patterns;
+    }
+
+    private static long pattern(byte value) {
+        return (value & 0xFFL) * ONES;
+    }
+
+    /**
+     * Returns the word whose high bit of each byte is set if the byte matches.
+     * Only the lowest flag is exact unless {@code negated}.
+     */
+    private static long matches(long word, long[] patterns, boolean negated) {
+        if (negated) {
+            long mask = 0;
+            for (long p: patterns) {
+                mask |= exactZeroBytes(word ^ p);
+            }
+            return ~mask & HIGH_BITS;
+        }
+
+        long mask = 0;
+        for (long p: patterns) {
+            mask |= zeroBytes(word ^ p);
+        }
+        return mask;
+    }
+
+    private static int linearIndexOf(
+            ChannelBuffer buffer, int fromIndex, int toIndex, long[] patterns, boolean negated) {
+        if (!negated && patterns.length == 1) {
+            final byte value = (byte) patterns[0];
+            for (int i = fromIndex; i < toIndex; i ++) {
+                if (buffer.getByte(i) == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        if (patterns.length == 2) {
+            final byte value0 = (byte) patterns[0];
+            final byte value1 = (byte) patterns[1];
+            for (int i = fromIndex; i < toIndex; i ++) {
+                byte b = buffer.getByte(i);
+                if ((b == value0 || b == value1) != negated) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        for (int i = fromIndex; i < toIndex; i ++) {
+            if (matches(buffer.getByte(i), patterns, negated)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte b, long[] patterns, boolean negated) {
+        for (long p: patterns) {
+            if (b == (byte) p) {
+                return !negated;
+            }
+        }
+        return negated;
+    }
+
+    /**
+     * Returns the word whose high bit of each byte is set if the byte of the
+     * specified word is zero.  A byte above a zero byte may be flagged
+     * wrongly, but the lowest flag is always exact.
+     */
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    /**
+     * Returns the word whose high bit of each byte is set if and only if the
+     * byte of the specified word is zero.
+     */
+    private static long exactZeroBytes(long word) {
+        long t = (word & LOW_7_BITS) + LOW_7_BITS;
+        return ~(t | word | LOW_7_BITS);
+    }
+
+    private ByteSearchUtil() {
+        // Unused
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferIndexFinder;
+
+/**
+ * A {@link ChannelBufferIndexFinder} which locates a byte that is one of a
+ * small set of values (or, if negated, none of them).  Unlike an arbitrary
+ * {@link ChannelBufferIndexFinder}, which is called once per byte,
+ * {@link ChannelBuffers#indexOf(ChannelBuffer, int, int, ChannelBufferIndexFinder)}
+ * recognizes this finder and scans eight bytes at a time.  The predefined
+ * finders such as {@link ChannelBufferIndexFinder#CRLF} are instances of
+ * this class.
+ */
+public final class ByteSetIndexFinder implements ChannelBufferIndexFinder {
+
+    private final byte[] values;
+    private final long[] patterns;
+    private final boolean negated;
+
+    /**
+     * Creates a new finder which locates a byte that is one of the specified
+     * {@code values}.
+     */
+    public ByteSetIndexFinder(byte... values) {
+        this(false, values);
+    }
+
+    /**
+     * Creates a new finder.
+     *
+     * @param negated {@code true} to locate a byte that is none of the
+     *                specified {@code values}
+     */
+    public ByteSetIndexFinder(boolean negated, byte... values) {
+        if (values == null) {
+            throw new NullPointerException("values");
+        }
+        if (values.length == 0) {
+            throw new IllegalArgumentException("values is empty");
+        }
+        this.values = values.clone();
+        this.negated = negated;
+        patterns = ByteSearchUtil.patterns(this.values);
+    }
+
+    public boolean find(ChannelBuffer buffer, int guessedIndex) {
+        byte b = buffer.getByte(guessedIndex);
+        for (byte v: values) {
+            if (b == v) {
+                return !negated;
+            }
+        }
+        return negated;
+    }
+
+    long[] patterns() {
+        return patterns;
+    }
+
+    boolean isNegated() {
+        return negated;
+    }
+}
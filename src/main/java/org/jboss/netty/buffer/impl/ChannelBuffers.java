@@ -16,18 +16,25 @@
 package org.jboss.netty.buffer.impl;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
 import org.jboss.netty.buffer.ChannelBufferIndexFinder;
 import org.jboss.netty.util.CharsetUtil;
+import org.jboss.netty.util.internal.UnsafeByteArrayAccess;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -60,6 +67,9 @@ import java.util.List;
  *     operation.</li>
  * </ul>
  *
+ * A read-only direct buffer which maps a file into memory is created by
+ * {@link #mappedBuffer(File)}.
+ *
  * <h3>Creating a wrapped buffer</h3>
  *
  * Wrapped buffer is a buffer which is a view of one or more existing
@@ -68,7 +78,8 @@ import java.util.List;
  * methods are provided and their name is all {@code wrappedBuffer()}.
  * You might want to take a look at the methods that accept varargs closely if
  * you want to create a buffer which is composed of more than one array to
- * reduce the number of memory copy.
+ * reduce the number of memory copy.  {@link #compositeBuffer()} creates an
+ * empty composite buffer which grows as buffers are appended to it.
  *
  * <h3>Creating a copied buffer</h3>
  *
@@ -106,6 +117,8 @@ public final class ChannelBuffers {
 
     private static final char[] HEXDUMP_TABLE = new char[256 * 4];
 
+    private static final int DEFAULT_MAX_NUM_COMPONENTS = 16;
+
     static {
         final char[] DIGITS = "0123456789abcdef".toCharArray();
         for (int i = 0; i < 256; i ++) {
@@ -144,6 +157,167 @@ public final class ChannelBuffers {
         }
     }
 
+    /**
+     * Creates a new big-endian direct buffer with the specified
+     * {@code capacity}.  The new buffer's {@code readerIndex} and
+     * {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer directBuffer(int capacity) {
+        return directBuffer(BIG_ENDIAN, capacity);
+    }
+
+    /**
+     * Creates a new direct buffer with the specified {@code endianness} and
+     * {@code capacity}.  The new buffer's {@code readerIndex} and
+     * {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer directBuffer(ByteOrder endianness, int capacity) {
+        if (endianness == null) {
+            throw new NullPointerException("endianness");
+        }
+        if (capacity == 0) {
+            return EMPTY_BUFFER;
+        }
+
+        ChannelBuffer buffer = new ByteBufferBackedChannelBuffer(
+                ByteBuffer.allocateDirect(capacity).order(endianness));
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Creates a new big-endian read-only buffer which maps the whole content
+     * of the specified {@code file} into memory.  The new buffer's
+     * {@code readerIndex} is {@code 0} and its {@code writerIndex} is the
+     * length of the file.  The file is unmapped when the returned buffer is
+     * released.
+     *
+     * @see MappedChannelBuffer
+     */
+    public static ChannelBuffer mappedBuffer(File file) throws IOException {
+        return mappedBuffer(BIG_ENDIAN, file);
+    }
+
+    /**
+     * Creates a new read-only buffer with the specified {@code endianness}
+     * which maps the whole content of the specified {@code file} into memory.
+     * The new buffer's {@code readerIndex} is {@code 0} and its
+     * {@code writerIndex} is the length of the file.  The file is unmapped
+     * when the returned buffer is released.
+     *
+     * @see MappedChannelBuffer
+     */
+    public static ChannelBuffer mappedBuffer(ByteOrder endianness, File file) throws IOException {
+        if (file.length() == 0) {
+            if (!file.isFile()) {
+                throw new FileNotFoundException(file.getPath());
+            }
+            return EMPTY_BUFFER;
+        }
+        return new MappedChannelBuffer(endianness, file);
+    }
+
+    /**
+     * Creates a new big-endian read-only buffer which maps the specified
+     * region of the specified {@code file} into memory.  The new buffer's
+     * {@code readerIndex} is {@code 0} and its {@code writerIndex} is
+     * {@code length}.  The region is unmapped when the returned buffer is
+     * released.
+     *
+     * @see MappedChannelBuffer
+     */
+    public static ChannelBuffer mappedBuffer(FileChannel file, long position, int length) throws IOException {
+        return mappedBuffer(BIG_ENDIAN, file, position, length);
+    }
+
+    /**
+     * Creates a new read-only buffer with the specified {@code endianness}
+     * which maps the specified region of the specified {@code file} into
+     * memory.  The new buffer's {@code readerIndex} is {@code 0} and its
+     * {@code writerIndex} is {@code length}.  The region is unmapped when the
+     * returned buffer is released.
+     *
+     * @see MappedChannelBuffer
+     */
+    public static ChannelBuffer mappedBuffer(
+            ByteOrder endianness, FileChannel file, long position, int length) throws IOException {
+        if (length == 0) {
+            return EMPTY_BUFFER;
+        }
+        return new MappedChannelBuffer(endianness, file, position, length);
+    }
+
+    /**
+     * Creates a new big-endian dynamic buffer whose estimated data length is
+     * {@code 256} bytes.  The new buffer's {@code readerIndex} and
+     * {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer dynamicBuffer() {
+        return dynamicBuffer(BIG_ENDIAN, 256);
+    }
+
+    /**
+     * Creates a new dynamic buffer whose estimated data length is
+     * {@code 256} bytes and whose memory is allocated by the specified
+     * {@code factory} in its default byte order.  The new buffer's {@code readerIndex} and
+     * {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer dynamicBuffer(ChannelBufferFactory factory) {
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+
+        return new DynamicChannelBuffer(factory.getDefaultOrder(), 256, factory);
+    }
+
+    /**
+     * Creates a new big-endian dynamic buffer with the specified estimated
+     * data length.  More accurate estimation yields less unexpected
+     * reallocation overhead.  The new buffer's {@code readerIndex} and
+     * {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer dynamicBuffer(int estimatedLength) {
+        return dynamicBuffer(BIG_ENDIAN, estimatedLength);
+    }
+
+    /**
+     * Creates a new dynamic buffer with the specified endianness and
+     * the specified estimated data length.  More accurate estimation yields
+     * less unexpected reallocation overhead.  The new buffer's
+     * {@code readerIndex} and {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer dynamicBuffer(ByteOrder endianness, int estimatedLength) {
+        return new DynamicChannelBuffer(endianness, estimatedLength);
+    }
+
+    /**
+     * Creates a new dynamic buffer with the specified estimated data length
+     * whose memory is allocated by the specified {@code factory} in its default
+     * byte order, e.g. the {@link ChannelBufferFactory} of a channel.  More accurate
+     * estimation yields less unexpected reallocation overhead.  The new
+     * buffer's {@code readerIndex} and {@code writerIndex} are {@code 0}.
+     */
+    public static ChannelBuffer dynamicBuffer(int estimatedLength, ChannelBufferFactory factory) {
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+
+        return new DynamicChannelBuffer(factory.getDefaultOrder(), estimatedLength, factory);
+    }
+
+    /**
+     * Creates a new dynamic buffer with the specified endianness and the
+     * specified estimated data length whose memory is allocated by the
+     * specified {@code factory}, e.g. the {@link ChannelBufferFactory} of a
+     * channel.  More accurate estimation yields less unexpected reallocation
+     * overhead.  The new buffer's {@code readerIndex} and {@code writerIndex}
+     * are {@code 0}.
+     */
+    public static ChannelBuffer dynamicBuffer(
+            ByteOrder endianness, int estimatedLength, ChannelBufferFactory factory) {
+        return new DynamicChannelBuffer(endianness, estimatedLength, factory);
+    }
+
     /**
      * Creates a new big-endian buffer which wraps the specified {@code array}.
      * A modification on the specified array's content will be visible to the
@@ -211,6 +385,24 @@ public final class ChannelBuffers {
         }
     }
 
+    /**
+     * Creates a new buffer which wraps the specified NIO buffer's current
+     * slice.  A modification on the specified buffer's content will be
+     * visible to the returned buffer.
+     */
+    public static ChannelBuffer wrappedBuffer(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return EMPTY_BUFFER;
+        }
+        if (buffer.hasArray()) {
+            return wrappedBuffer(
+                    buffer.order(), buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            return new ByteBufferBackedChannelBuffer(buffer);
+        }
+    }
+
     /**
      * Creates a new buffer which wraps the specified buffer's readable bytes.
      * A modification on the specified buffer's content will be visible to the
@@ -266,6 +458,45 @@ public final class ChannelBuffers {
         return EMPTY_BUFFER;
     }
 
+    /**
+     * Creates a new big-endian composite buffer without any component, which
+     * grows as components are added via
+     * {@link CompositeChannelBuffer#addComponent(ChannelBuffer)}.  The
+     * components are consolidated once there are more than {@code 16}.
+     */
+    public static CompositeChannelBuffer compositeBuffer() {
+        return compositeBuffer(DEFAULT_MAX_NUM_COMPONENTS);
+    }
+
+    /**
+     * Creates a new big-endian composite buffer without any component, which
+     * grows as components are added via
+     * {@link CompositeChannelBuffer#addComponent(ChannelBuffer)}.
+     *
+     * @param maxNumComponents the number of components above which the
+     *                         components are consolidated into one
+     */
+    public static CompositeChannelBuffer compositeBuffer(int maxNumComponents) {
+        return compositeBuffer(BIG_ENDIAN, false, maxNumComponents);
+    }
+
+    /**
+     * Creates a new composite buffer without any component, which grows as
+     * components are added via
+     * {@link CompositeChannelBuffer#addComponent(ChannelBuffer)}.
+     *
+     * @param endianness the endianness of the new buffer
+     * @param gathering {@code true} if the components should be written with
+     *                  a gathering write
+     * @param maxNumComponents the number of components above which the
+     *                         components are consolidated into one
+     */
+    public static CompositeChannelBuffer compositeBuffer(
+            ByteOrder endianness, boolean gathering, int maxNumComponents) {
+        return new CompositeChannelBuffer(
+                endianness, Collections.<ChannelBuffer>emptyList(), gathering, maxNumComponents);
+    }
+
     private static ChannelBuffer compositeBuffer(
             ByteOrder endianness, List<ChannelBuffer> components, boolean gathering) {
         switch (components.size()) {
@@ -629,6 +860,10 @@ public final class ChannelBuffers {
             throw new NullPointerException("string");
         }
 
+        if (StringCodecUtil.maxBytesPerChar(charset) != 0) {
+            return encodedBuffer(endianness, string, 0, string.length(), charset);
+        }
+
         if (string instanceof CharBuffer) {
             return copiedBuffer(endianness, (CharBuffer) string, charset);
         }
@@ -652,6 +887,14 @@ public final class ChannelBuffers {
             return EMPTY_BUFFER;
         }
 
+        if (StringCodecUtil.maxBytesPerChar(charset) != 0) {
+            if (offset < 0 || length < 0 || offset > string.length() - length) {
+                throw new IndexOutOfBoundsException(
+                        "offset: " + offset + ", length: " + length + " (expected: range(0, " + string.length() + "))");
+            }
+            return encodedBuffer(endianness, string, offset, offset + length, charset);
+        }
+
         if (string instanceof CharBuffer) {
             CharBuffer buf = (CharBuffer) string;
             if (buf.hasArray()) {
@@ -725,6 +968,10 @@ public final class ChannelBuffers {
     }
 
     private static ChannelBuffer copiedBuffer(ByteOrder endianness, CharBuffer buffer, Charset charset) {
+        if (StringCodecUtil.maxBytesPerChar(charset) != 0) {
+            return encodedBuffer(endianness, buffer, 0, buffer.length(), charset);
+        }
+
         CharBuffer src = buffer;
         ByteBuffer dst = encodeString(src, charset);
         ChannelBuffer result = wrappedBuffer(endianness, dst.array());
@@ -732,6 +979,20 @@ public final class ChannelBuffers {
         return result;
     }
 
+    /**
+     * Encodes the specified region of {@code string} into a new heap buffer
+     * without a {@link CharsetEncoder}.  The buffer is sized for the worst
+     * case, so that the characters are visited only once.
+     */
+    private static ChannelBuffer encodedBuffer(
+            ByteOrder endianness, CharSequence string, int start, int end, Charset charset) {
+        byte[] array = new byte[(end - start) * StringCodecUtil.maxBytesPerChar(charset)];
+        int length = StringCodecUtil.encode(string, start, end, charset, array, 0);
+        ChannelBuffer result = wrappedBuffer(endianness, array);
+        result.writerIndex(length);
+        return result;
+    }
+
     /**
      * @deprecated Use {@link #copiedBuffer(CharSequence, Charset)} instead.
      */
@@ -748,6 +1009,105 @@ public final class ChannelBuffers {
         return copiedBuffer(endianness, string, Charset.forName(charsetName));
     }
 
+    /**
+     * Returns the number of bytes {@link ChannelBuffer#writeVarInt32(int)}
+     * writes for the specified value.
+     */
+    public static int varInt32Length(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Returns the number of bytes {@link ChannelBuffer#writeVarInt64(long)}
+     * writes for the specified value.
+     */
+    public static int varInt64Length(long value) {
+        return (63 - Long.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Returns the number of bytes of the specified {@code seq} encoded in
+     * UTF-8 by {@link #writeUtf8(ChannelBuffer, CharSequence)}.
+     */
+    public static int utf8Length(CharSequence seq) {
+        return StringCodecUtil.utf8Length(seq, 0, seq.length());
+    }
+
+    /**
+     * Encodes the specified {@code seq} in UTF-8 and writes it at the current
+     * {@code writerIndex} of the specified buffer, increasing the
+     * {@code writerIndex} by the number of the written bytes.  Unlike
+     * {@link #copiedBuffer(CharSequence, Charset)}, this method neither
+     * allocates a new buffer nor any temporary object.  An unpaired surrogate
+     * is written as {@code '?'}.
+     *
+     * @return the number of the written bytes
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the buffer is not a dynamic buffer and its writable bytes
+     *         are fewer than the encoded length
+     */
+    public static int writeUtf8(ChannelBuffer buffer, CharSequence seq) {
+        final int end = seq.length();
+        final int length = StringCodecUtil.utf8Length(seq, 0, end);
+        buffer.ensureWritableBytes(length);
+        final int writerIndex = buffer.writerIndex();
+        if (buffer.hasArray()) {
+            StringCodecUtil.encodeUtf8(seq, 0, end, buffer.array(), buffer.arrayOffset() + writerIndex);
+        } else {
+            StringCodecUtil.encodeUtf8(seq, 0, end, buffer, writerIndex);
+        }
+        buffer.writerIndex(writerIndex + length);
+        return length;
+    }
+
+    /**
+     * Encodes the specified {@code seq} in US-ASCII and writes it at the
+     * current {@code writerIndex} of the specified buffer, increasing the
+     * {@code writerIndex} by the number of the written bytes.  A character
+     * (or a surrogate pair) which is not US-ASCII is written as {@code '?'}.
+     *
+     * @return the number of the written bytes
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the buffer is not a dynamic buffer and its writable bytes
+     *         are fewer than the encoded length
+     */
+    public static int writeAscii(ChannelBuffer buffer, CharSequence seq) {
+        final int end = seq.length();
+        final int length = StringCodecUtil.singleByteLength(seq, 0, end);
+        buffer.ensureWritableBytes(length);
+        final int writerIndex = buffer.writerIndex();
+        if (buffer.hasArray()) {
+            StringCodecUtil.encodeSingleByte(seq, 0, end, 0x7F, buffer.array(), buffer.arrayOffset() + writerIndex);
+        } else {
+            StringCodecUtil.encodeSingleByte(seq, 0, end, 0x7F, buffer, writerIndex);
+        }
+        buffer.writerIndex(writerIndex + length);
+        return length;
+    }
+
+    /**
+     * Decodes the next {@code length} bytes of the specified buffer from
+     * UTF-8, increasing its {@code readerIndex} by {@code length}.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if {@code length} is greater than {@code buffer.readableBytes}
+     */
+    public static String readUtf8(ChannelBuffer buffer, int length) {
+        if (length < 0 || length > buffer.readableBytes()) {
+            throw new IndexOutOfBoundsException("Not enough readable bytes - Need "
+                    + length + ", maximum is " + buffer.readableBytes());
+        }
+        if (length == 0) {
+            return "";
+        }
+        final int readerIndex = buffer.readerIndex();
+        String string = StringCodecUtil.decode(buffer, readerIndex, length, CharsetUtil.UTF_8);
+        buffer.readerIndex(readerIndex + length);
+        return string;
+    }
+
     /**
      * Create a {@link ChannelBuffer} from the given <a href="http://en.wikipedia.org/wiki/Hex_dump">hex dump</a>
      */
@@ -801,25 +1161,13 @@ public final class ChannelBuffers {
      */
     public static int hashCode(ChannelBuffer buffer) {
         final int aLen = buffer.readableBytes();
-        final int intCount = aLen >>> 2;
-        final int byteCount = aLen & 3;
+        final int aIndex = buffer.readerIndex();
 
-        int hashCode = 1;
-        int arrayIndex = buffer.readerIndex();
-        if (buffer.order() == BIG_ENDIAN) {
-            for (int i = intCount; i > 0; i --) {
-                hashCode = 31 * hashCode + buffer.getInt(arrayIndex);
-                arrayIndex += 4;
-            }
+        int hashCode;
+        if (buffer.hasArray() && UnsafeByteArrayAccess.isAvailable()) {
+            hashCode = hashCode(buffer.array(), buffer.arrayOffset() + aIndex, aLen);
         } else {
-            for (int i = intCount; i > 0; i --) {
-                hashCode = 31 * hashCode + swapInt(buffer.getInt(arrayIndex));
-                arrayIndex += 4;
-            }
-        }
-
-        for (int i = byteCount; i > 0; i --) {
-            hashCode = 31 * hashCode + buffer.getByte(arrayIndex ++);
+            hashCode = hashCode(buffer, aIndex, aLen);
         }
 
         if (hashCode == 0) {
@@ -829,6 +1177,53 @@ public final class ChannelBuffers {
         return hashCode;
     }
 
+    /**
+     * Folds the content into the hash code as big-endian 32-bit integers
+     * followed by the remaining bytes.  Two integers are folded per long,
+     * because {@code 31 * (31 * h + hi) + lo == 961 * h + 31 * hi + lo}.
+     */
+    private static int hashCode(ChannelBuffer buffer, int index, int length) {
+        final boolean bigEndian = buffer.order() == BIG_ENDIAN;
+        int hashCode = 1;
+        for (int i = length >>> 3; i > 0; i --) {
+            long v = buffer.getLong(index);
+            if (!bigEndian) {
+                v = swapLong(v);
+            }
+            hashCode = 961 * hashCode + 31 * (int) (v >>> 32) + (int) v;
+            index += 8;
+        }
+        if ((length & 4) != 0) {
+            int v = buffer.getInt(index);
+            if (!bigEndian) {
+                v = swapInt(v);
+            }
+            hashCode = 31 * hashCode + v;
+            index += 4;
+        }
+        for (int i = length & 3; i > 0; i --) {
+            hashCode = 31 * hashCode + buffer.getByte(index ++);
+        }
+        return hashCode;
+    }
+
+    private static int hashCode(byte[] array, int index, int length) {
+        int hashCode = 1;
+        for (int i = length >>> 3; i > 0; i --) {
+            long v = UnsafeByteArrayAccess.getLong(array, index);
+            hashCode = 961 * hashCode + 31 * (int) (v >>> 32) + (int) v;
+            index += 8;
+        }
+        if ((length & 4) != 0) {
+            hashCode = 31 * hashCode + UnsafeByteArrayAccess.getInt(array, index);
+            index += 4;
+        }
+        for (int i = length & 3; i > 0; i --) {
+            hashCode = 31 * hashCode + array[index ++];
+        }
+        return hashCode;
+    }
+
     /**
      * Returns {@code true} if and only if the two specified buffers are
      * identical to each other as described in {@code ChannelBuffer#equals(Object)}.
@@ -840,12 +1235,17 @@ public final class ChannelBuffers {
             return false;
         }
 
-        final int longCount = aLen >>> 3;
-        final int byteCount = aLen & 7;
-
         int aIndex = bufferA.readerIndex();
         int bIndex = bufferB.readerIndex();
 
+        if (bufferA.hasArray() && bufferB.hasArray() && UnsafeByteArrayAccess.isAvailable()) {
+            return mismatch(bufferA.array(), bufferA.arrayOffset() + aIndex,
+                            bufferB.array(), bufferB.arrayOffset() + bIndex, aLen) < 0;
+        }
+
+        final int longCount = aLen >>> 3;
+        final int byteCount = aLen & 7;
+
         if (bufferA.order() == bufferB.order()) {
             for (int i = longCount; i > 0; i --) {
                 if (bufferA.getLong(aIndex) != bufferB.getLong(bIndex)) {
@@ -883,41 +1283,42 @@ public final class ChannelBuffers {
         final int aLen = bufferA.readableBytes();
         final int bLen = bufferB.readableBytes();
         final int minLength = Math.min(aLen, bLen);
-        final int uintCount = minLength >>> 2;
-        final int byteCount = minLength & 3;
 
         int aIndex = bufferA.readerIndex();
         int bIndex = bufferB.readerIndex();
 
-        if (bufferA.order() == bufferB.order()) {
-            for (int i = uintCount; i > 0; i --) {
-                long va = bufferA.getUnsignedInt(aIndex);
-                long vb = bufferB.getUnsignedInt(bIndex);
-                if (va > vb) {
-                    return 1;
-                }
-                if (va < vb) {
-                    return -1;
-                }
-                aIndex += 4;
-                bIndex += 4;
+        if (bufferA.hasArray() && bufferB.hasArray() && UnsafeByteArrayAccess.isAvailable()) {
+            byte[] aArray = bufferA.array();
+            byte[] bArray = bufferB.array();
+            aIndex += bufferA.arrayOffset();
+            bIndex += bufferB.arrayOffset();
+            int i = mismatch(aArray, aIndex, bArray, bIndex, minLength);
+            if (i >= 0) {
+                return (aArray[aIndex + i] & 0xFF) > (bArray[bIndex + i] & 0xFF)? 1 : -1;
             }
-        } else {
-            for (int i = uintCount; i > 0; i --) {
-                long va = bufferA.getUnsignedInt(aIndex);
-                long vb = swapInt(bufferB.getInt(bIndex)) & 0xFFFFFFFFL;
-                if (va > vb) {
-                    return 1;
-                }
-                if (va < vb) {
-                    return -1;
-                }
-                aIndex += 4;
-                bIndex += 4;
+            return aLen - bLen;
+        }
+
+        // Compare eight bytes at a time as unsigned big-endian longs.
+        final boolean aBigEndian = bufferA.order() == BIG_ENDIAN;
+        final boolean bBigEndian = bufferB.order() == BIG_ENDIAN;
+        for (int i = minLength >>> 3; i > 0; i --) {
+            long va = bufferA.getLong(aIndex);
+            long vb = bufferB.getLong(bIndex);
+            if (!aBigEndian) {
+                va = swapLong(va);
+            }
+            if (!bBigEndian) {
+                vb = swapLong(vb);
             }
+            if (va != vb) {
+                return (va ^ Long.MIN_VALUE) > (vb ^ Long.MIN_VALUE)? 1 : -1;
+            }
+            aIndex += 8;
+            bIndex += 8;
         }
 
-        for (int i = byteCount; i > 0; i --) {
+        for (int i = minLength & 7; i > 0; i --) {
             short va = bufferA.getUnsignedByte(aIndex);
             short vb = bufferB.getUnsignedByte(bIndex);
             if (va > vb) {
@@ -933,6 +1334,33 @@ public final class ChannelBuffers {
         return aLen - bLen;
     }
 
+    /**
+     * Returns the offset of the first byte which differs between the two
+     * specified ranges of {@code length} bytes, or {@code -1} if the ranges
+     * are identical.  The words are loaded in little-endian order so that the
+     * lowest differing bit belongs to the first differing byte.
+     */
+    private static int mismatch(byte[] a, int aIndex, byte[] b, int bIndex, int length) {
+        if (a == b && aIndex == bIndex) {
+            return -1;
+        }
+
+        int i = 0;
+        for (final int wordEnd = length - 7; i < wordEnd; i += 8) {
+            long diff = UnsafeByteArrayAccess.getLongLE(a, aIndex + i) ^
+                        UnsafeByteArrayAccess.getLongLE(b, bIndex + i);
+            if (diff != 0) {
+                return i + (Long.numberOfTrailingZeros(diff) >>> 3);
+            }
+        }
+        for (; i < length; i ++) {
+            if (a[aIndex + i] != b[bIndex + i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * The default implementation of {@link ChannelBuffer#indexOf(int, int, byte)}.
      * This method is useful when implementing a new buffer type.
@@ -958,6 +1386,28 @@ public final class ChannelBuffers {
         }
     }
 
+    /**
+     * The default implementation of {@link ChannelBuffer#indexOf(int, int, byte[])}.
+     * This method is useful when implementing a new buffer type.
+     */
+    public static int indexOf(ChannelBuffer buffer, int fromIndex, int toIndex, byte[] delimiter) {
+        if (delimiter == null) {
+            throw new NullPointerException("delimiter");
+        }
+        switch (delimiter.length) {
+        case 0:
+            throw new IllegalArgumentException("empty delimiter");
+        case 1:
+            return indexOf(buffer, fromIndex, toIndex, delimiter[0]);
+        }
+
+        if (fromIndex <= toIndex) {
+            return firstIndexOf(buffer, fromIndex, toIndex, delimiter);
+        } else {
+            return lastIndexOf(buffer, fromIndex, toIndex, delimiter);
+        }
+    }
+
     /**
      * Toggles the endianness of the specified 16-bit short integer.
      */
@@ -994,6 +1444,10 @@ public final class ChannelBuffers {
             return -1;
         }
 
+        if (toIndex <= buffer.capacity()) {
+            return ByteSearchUtil.firstIndexOf(buffer, fromIndex, toIndex, value);
+        }
+
         for (int i = fromIndex; i < toIndex; i ++) {
             if (buffer.getByte(i) == value) {
                 return i;
@@ -1025,6 +1479,12 @@ public final class ChannelBuffers {
             return -1;
         }
 
+        if (indexFinder instanceof ByteSetIndexFinder && toIndex <= buffer.capacity()) {
+            ByteSetIndexFinder byteSetFinder = (ByteSetIndexFinder) indexFinder;
+            return ByteSearchUtil.firstIndexOf(
+                    buffer, fromIndex, toIndex, byteSetFinder.patterns(), byteSetFinder.isNegated());
+        }
+
         for (int i = fromIndex; i < toIndex; i ++) {
             if (indexFinder.find(buffer, i)) {
                 return i;
@@ -1050,6 +1510,33 @@ public final class ChannelBuffers {
         return -1;
     }
 
+    private static int firstIndexOf(ChannelBuffer buffer, int fromIndex, int toIndex, byte[] delimiter) {
+        fromIndex = Math.max(fromIndex, 0);
+        toIndex = Math.min(toIndex, buffer.capacity());
+        if (fromIndex >= toIndex) {
+            return -1;
+        }
+
+        return ByteSearchUtil.firstIndexOf(buffer, fromIndex, toIndex, delimiter);
+    }
+
+    private static int lastIndexOf(ChannelBuffer buffer, int fromIndex, int toIndex, byte[] delimiter) {
+        fromIndex = Math.min(fromIndex, buffer.capacity());
+        toIndex = Math.max(toIndex, 0);
+
+        outer:
+        for (int i = fromIndex - delimiter.length; i >= toIndex; i --) {
+            for (int j = 0; j < delimiter.length; j ++) {
+                if (buffer.getByte(i + j) != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+
+        return -1;
+    }
+
     static ByteBuffer encodeString(CharBuffer src, Charset charset) {
         final CharsetEncoder encoder = CharsetUtil.getEncoder(charset);
         final ByteBuffer dst = ByteBuffer.allocate(
@@ -1070,6 +1557,21 @@ public final class ChannelBuffers {
         return dst;
     }
 
+    /**
+     * Decodes the specified region of the specified buffer, decoding
+     * US-ASCII, ISO-8859-1 and UTF-8 without a {@link CharsetDecoder}.
+     */
+    static String decodeString(ChannelBuffer src, int index, int length, Charset charset) {
+        if (StringCodecUtil.maxBytesPerChar(charset) != 0) {
+            if (index < 0 || length < 0 || index > src.capacity() - length) {
+                throw new IndexOutOfBoundsException("Too many bytes to read - Need "
+                        + (index + length) + ", maximum is " + src.capacity());
+            }
+            return StringCodecUtil.decode(src, index, length, charset);
+        }
+        return decodeString(src.toByteBuffer(index, length), charset);
+    }
+
     static String decodeString(ByteBuffer src, Charset charset) {
         final CharsetDecoder decoder = CharsetUtil.getDecoder(charset);
         final CharBuffer dst = CharBuffer.allocate(
@@ -17,6 +17,8 @@ package org.jboss.netty.buffer.impl;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.WrappedChannelBuffer;
+import org.jboss.netty.util.IllegalReferenceCountException;
 import org.jboss.netty.util.internal.DetectionUtil;
 
 import java.io.IOException;
@@ -34,18 +36,70 @@ import java.util.List;
  * A virtual buffer which shows multiple buffers as a single merged buffer.  It
  * is recommended to use {@link ChannelBuffers#wrappedBuffer(ChannelBuffer...)}
  * instead of calling the constructor explicitly.
+ * <p>
+ * A composite buffer owns one reference to each of its components, so
+ * {@link #release()} releases all components and {@link #discardReadBytes()}
+ * releases the components which are discarded as a whole.
+ *
+ * <h3>Appending components</h3>
+ *
+ * A composite buffer can grow without copying by appending a buffer with
+ * {@link #addComponent(ChannelBuffer)}, and shrink by dropping the components
+ * which have been read completely with {@link #discardReadComponents()}.
+ * This allows a decoder to cumulate the received buffers.  Once the number of
+ * components exceeds the {@code maxNumComponents} given at construction time,
+ * the components are {@linkplain #consolidate() consolidated} into a single
+ * one so that the lookup cost does not grow unbounded with many tiny
+ * components.  Looking up the component of an index takes {@code O(log n)}.
+ * <p>
+ * The buffers derived from a composite buffer ({@link #duplicate()},
+ * {@link #slice()}) share its components and do not see the components which
+ * are added after their creation.  {@link #discardReadComponents()} and
+ * {@link #consolidate()} release the components the derived buffers may still
+ * read, so they invalidate all buffers derived from this buffer before.
+ * Accessing an invalidated buffer raises an
+ * {@link IllegalReferenceCountException}.  {@link #retain()} a component or
+ * {@link #copy()} the bytes if they have to outlive these operations.
  */
 public class CompositeChannelBuffer extends AbstractChannelBuffer {
 
     private final ByteOrder order;
     private ChannelBuffer[] components;
     private int[] indices;
+    private int componentCount;
     private int lastAccessedComponentId;
     private final boolean gathering;
+    private final int maxNumComponents;
+
+    /**
+     * Handed to the buffers derived from this buffer, and replaced once the
+     * components they share with this buffer have been released.
+     */
+    private Generation generation = new Generation(null);
 
     public CompositeChannelBuffer(ByteOrder endianness, List<ChannelBuffer> buffers, boolean gathering) {
+        this(endianness, buffers, gathering, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new composite buffer.
+     *
+     * @param maxNumComponents the number of components above which
+     *                         {@link #addComponent(ChannelBuffer)} consolidates
+     *                         the components into one
+     */
+    public CompositeChannelBuffer(
+            ByteOrder endianness, List<ChannelBuffer> buffers, boolean gathering, int maxNumComponents) {
+        if (endianness == null) {
+            throw new NullPointerException("endianness");
+        }
+        if (maxNumComponents <= 0) {
+            throw new IllegalArgumentException(
+                    "maxNumComponents: " + maxNumComponents + " (expected: > 0)");
+        }
         order = endianness;
         this.gathering = gathering;
+        this.maxNumComponents = maxNumComponents;
         setComponents(buffers);
     }
 
@@ -59,6 +113,10 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
 
     /**
      * Same with {@link #slice(int, int)} except that this method returns a list.
+     * The returned buffers are derived from the components directly and
+     * share their reference counts, so the components must be
+     * {@linkplain #retain() retained} if the returned buffers are accessed
+     * after {@link #discardReadComponents()} or {@link #consolidate()}.
      */
     public List<ChannelBuffer> decompose(int index, int length) {
         if (length == 0) {
@@ -71,7 +129,7 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         }
 
         int componentId = componentId(index);
-        List<ChannelBuffer> slice = new ArrayList<ChannelBuffer>(components.length);
+        List<ChannelBuffer> slice = new ArrayList<ChannelBuffer>(componentCount);
 
         // The first component
         ChannelBuffer first = components[componentId].duplicate();
@@ -109,14 +167,13 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
      * Setup this ChannelBuffer from the list
      */
     private void setComponents(List<ChannelBuffer> newComponents) {
-        assert !newComponents.isEmpty();
-
         // Clear the cache.
         lastAccessedComponentId = 0;
 
         // Build the component array.
-        components = new ChannelBuffer[newComponents.size()];
-        for (int i = 0; i < components.length; i ++) {
+        componentCount = newComponents.size();
+        components = new ChannelBuffer[componentCount];
+        for (int i = 0; i < componentCount; i ++) {
             ChannelBuffer c = newComponents.get(i);
             if (c.order() != order()) {
                 throw new IllegalArgumentException(
@@ -130,9 +187,9 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         }
 
         // Build the component lookup table.
-        indices = new int[components.length + 1];
+        indices = new int[componentCount + 1];
         indices[0] = 0;
-        for (int i = 1; i <= components.length; i ++) {
+        for (int i = 1; i <= componentCount; i ++) {
             indices[i] = indices[i - 1] + components[i - 1].capacity();
         }
 
@@ -143,11 +200,36 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
     private CompositeChannelBuffer(CompositeChannelBuffer buffer) {
         order = buffer.order;
         gathering = buffer.gathering;
-        components = buffer.components.clone();
-        indices = buffer.indices.clone();
+        maxNumComponents = buffer.maxNumComponents;
+        componentCount = buffer.componentCount;
+        components = new ChannelBuffer[componentCount];
+        System.arraycopy(buffer.components, 0, components, 0, componentCount);
+        indices = new int[componentCount + 1];
+        System.arraycopy(buffer.indices, 0, indices, 0, componentCount + 1);
+        generation = new Generation(buffer.generation);
         setIndex(buffer.readerIndex(), buffer.writerIndex());
     }
 
+    /**
+     * Raises an {@link IllegalReferenceCountException} if the buffer this
+     * buffer was derived from has released the shared components since.
+     */
+    private void ensureAccessible() {
+        final Generation parent = generation.parent;
+        if (parent != null && !parent.isValid()) {
+            throw new IllegalReferenceCountException(
+                    "derived buffer invalidated by discardReadComponents() or consolidate()");
+        }
+    }
+
+    /**
+     * Invalidates the buffers derived from this buffer so far.
+     */
+    private void invalidateDerivedBuffers() {
+        generation.invalidated = true;
+        generation = new Generation(generation.parent);
+    }
+
     public ChannelBufferFactory factory() {
         return HeapChannelBufferFactory.getInstance(order());
     }
@@ -160,6 +242,73 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         return false;
     }
 
+    /**
+     * Returns the smallest reference count of the components.  A composite
+     * buffer has no reference count of its own; it owns one reference to
+     * each of its components instead.
+     */
+    @Override
+    public int refCnt() {
+        final Generation parent = generation.parent;
+        if (parent != null && !parent.isValid()) {
+            return 0;
+        }
+        if (componentCount == 0) {
+            return 1;
+        }
+        int refCnt = Integer.MAX_VALUE;
+        for (int i = 0; i < componentCount; i ++) {
+            refCnt = Math.min(refCnt, components[i].refCnt());
+        }
+        return refCnt;
+    }
+
+    /**
+     * Retains all components.
+     */
+    @Override
+    public ChannelBuffer retain() {
+        ensureAccessible();
+        for (int i = 0; i < componentCount; i ++) {
+            components[i].retain();
+        }
+        return this;
+    }
+
+    @Override
+    public ChannelBuffer retain(int increment) {
+        ensureAccessible();
+        for (int i = 0; i < componentCount; i ++) {
+            components[i].retain(increment);
+        }
+        return this;
+    }
+
+    /**
+     * Releases all components.
+     *
+     * @return {@code true} if and only if all components have been deallocated
+     */
+    @Override
+    public boolean release() {
+        ensureAccessible();
+        boolean deallocated = componentCount != 0;
+        for (int i = 0; i < componentCount; i ++) {
+            deallocated &= components[i].release();
+        }
+        return deallocated;
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        ensureAccessible();
+        boolean deallocated = componentCount != 0;
+        for (int i = 0; i < componentCount; i ++) {
+            deallocated &= components[i].release(decrement);
+        }
+        return deallocated;
+    }
+
     public boolean hasArray() {
         return false;
     }
@@ -173,11 +322,140 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
     }
 
     public int capacity() {
-        return indices[components.length];
+        return indices[componentCount];
     }
 
     public int numComponents() {
-        return components.length;
+        return componentCount;
+    }
+
+    /**
+     * Appends the readable bytes of the specified buffer as a new component
+     * without copying them, and increases the {@code writerIndex} of this
+     * buffer by the number of the appended bytes.  This buffer takes over the
+     * reference of the specified buffer, which is released when it is
+     * discarded from or consolidated into this buffer, or when this buffer is
+     * released.  If the number of components exceeds {@code maxNumComponents},
+     * all components are {@linkplain #consolidate() consolidated}.
+     *
+     * @throws IllegalArgumentException
+     *         if the byte order of the specified buffer differs from this buffer
+     */
+    public void addComponent(ChannelBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer");
+        }
+        ensureAccessible();
+        if (buffer.order() != order()) {
+            throw new IllegalArgumentException(
+                    "All buffers must have the same endianness.");
+        }
+
+        final int length = buffer.readableBytes();
+        if (length == 0) {
+            buffer.release();
+            return;
+        }
+        if (buffer.readerIndex() != 0 || buffer.writerIndex() != buffer.capacity()) {
+            buffer = buffer.slice();
+        }
+
+        final int count = componentCount;
+        if (count == components.length) {
+            int newLength = Math.max(4, count << 1);
+            ChannelBuffer[] newComponents = new ChannelBuffer[newLength];
+            System.arraycopy(components, 0, newComponents, 0, count);
+            int[] newIndices = new int[newLength + 1];
+            System.arraycopy(indices, 0, newIndices, 0, count + 1);
+            components = newComponents;
+            indices = newIndices;
+        }
+        components[count] = buffer;
+        indices[count + 1] = indices[count] + length;
+        componentCount = count + 1;
+        writerIndex(writerIndex() + length);
+
+        if (componentCount > maxNumComponents) {
+            consolidate();
+        }
+    }
+
+    /**
+     * Removes and releases the components whose bytes are all before the
+     * {@code readerIndex}.  Unlike {@link #discardReadBytes()}, no byte is
+     * copied and the capacity of this buffer decreases by the number of the
+     * removed bytes.  The {@code readerIndex}, the {@code writerIndex} and
+     * their markers are decreased by the same amount.  If any component is
+     * removed, the buffers derived from this buffer so far are invalidated.
+     */
+    public void discardReadComponents() {
+        ensureAccessible();
+        final int readerIndex = readerIndex();
+        if (readerIndex == 0) {
+            return;
+        }
+
+        final int count = componentCount;
+        int numDiscarded = 0;
+        while (numDiscarded < count && indices[numDiscarded + 1] <= readerIndex) {
+            numDiscarded ++;
+        }
+        if (numDiscarded == 0) {
+            return;
+        }
+
+        final ChannelBuffer[] components = this.components;
+        final int[] indices = this.indices;
+        final int discardedBytes = indices[numDiscarded];
+        invalidateDerivedBuffers();
+        for (int i = 0; i < numDiscarded; i ++) {
+            components[i].release();
+        }
+
+        final int newCount = count - numDiscarded;
+        System.arraycopy(components, numDiscarded, components, 0, newCount);
+        for (int i = newCount; i < count; i ++) {
+            components[i] = null;
+        }
+        for (int i = 0; i <= newCount; i ++) {
+            indices[i] = indices[i + numDiscarded] - discardedBytes;
+        }
+        componentCount = newCount;
+        lastAccessedComponentId = 0;
+
+        setIndex(readerIndex - discardedBytes, writerIndex() - discardedBytes);
+        adjustMarkers(discardedBytes);
+    }
+
+    /**
+     * Copies the content of all components into a single new buffer, which
+     * becomes the only component of this buffer, and releases the old
+     * components.  The new buffer is allocated by the factory of the first
+     * component, or by its pool if it is a pooled buffer, so that it stays
+     * direct or pooled.  The indexes of this buffer do not change, but the
+     * buffers derived from this buffer so far are invalidated.
+     */
+    public void consolidate() {
+        ensureAccessible();
+        final int count = componentCount;
+        if (count <= 1) {
+            return;
+        }
+
+        final int capacity = capacity();
+        final ChannelBuffer consolidated = allocator(components[0]).getBuffer(order(), capacity);
+        copyTo(0, capacity, 0, consolidated);
+        invalidateDerivedBuffers();
+
+        final ChannelBuffer[] components = this.components;
+        for (int i = 0; i < count; i ++) {
+            components[i].release();
+            components[i] = null;
+        }
+        components[0] = consolidated;
+        indices[1] = capacity;
+        componentCount = 1;
+        lastAccessedComponentId = 0;
     }
 
     public byte getByte(int index) {
@@ -285,6 +563,110 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         }
     }
 
+    @Override
+    public void getInts(int index, int[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        if (length == 0) {
+            return;
+        }
+        int i = componentId(index);
+        while (length > 0) {
+            int localLength = Math.min(length, indices[i + 1] - index >>> 2);
+            if (localLength > 0) {
+                components[i].getInts(index - indices[i], dst, dstIndex, localLength);
+                index += localLength << 2;
+                dstIndex += localLength;
+                length -= localLength;
+            } else {
+                // The element straddles two components.
+                dst[dstIndex ++] = getInt(index);
+                index += 4;
+                length --;
+            }
+            while (length > 0 && index >= indices[i + 1]) {
+                i ++;
+            }
+        }
+    }
+
+    @Override
+    public void getLongs(int index, long[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        if (length == 0) {
+            return;
+        }
+        int i = componentId(index);
+        while (length > 0) {
+            int localLength = Math.min(length, indices[i + 1] - index >>> 3);
+            if (localLength > 0) {
+                components[i].getLongs(index - indices[i], dst, dstIndex, localLength);
+                index += localLength << 3;
+                dstIndex += localLength;
+                length -= localLength;
+            } else {
+                // The element straddles two components.
+                dst[dstIndex ++] = getLong(index);
+                index += 8;
+                length --;
+            }
+            while (length > 0 && index >= indices[i + 1]) {
+                i ++;
+            }
+        }
+    }
+
+    @Override
+    public void getFloats(int index, float[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        if (length == 0) {
+            return;
+        }
+        int i = componentId(index);
+        while (length > 0) {
+            int localLength = Math.min(length, indices[i + 1] - index >>> 2);
+            if (localLength > 0) {
+                components[i].getFloats(index - indices[i], dst, dstIndex, localLength);
+                index += localLength << 2;
+                dstIndex += localLength;
+                length -= localLength;
+            } else {
+                // The element straddles two components.
+                dst[dstIndex ++] = Float.intBitsToFloat(getInt(index));
+                index += 4;
+                length --;
+            }
+            while (length > 0 && index >= indices[i + 1]) {
+                i ++;
+            }
+        }
+    }
+
+    @Override
+    public void getDoubles(int index, double[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        if (length == 0) {
+            return;
+        }
+        int i = componentId(index);
+        while (length > 0) {
+            int localLength = Math.min(length, indices[i + 1] - index >>> 3);
+            if (localLength > 0) {
+                components[i].getDoubles(index - indices[i], dst, dstIndex, localLength);
+                index += localLength << 3;
+                dstIndex += localLength;
+                length -= localLength;
+            } else {
+                // The element straddles two components.
+                dst[dstIndex ++] = Double.longBitsToDouble(getLong(index));
+                index += 8;
+                length --;
+            }
+            while (length > 0 && index >= indices[i + 1]) {
+                i ++;
+            }
+        }
+    }
+
     public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
         if (index > capacity() - length || dstIndex > dst.capacity() - length) {
             throw new IndexOutOfBoundsException("Too many bytes to be read - Needs "
@@ -451,6 +833,110 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         }
     }
 
+    @Override
+    public void setInts(int index, int[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 4, srcIndex, src.length);
+        if (length == 0) {
+            return;
+        }
+        int i = componentId(index);
+        while (length > 0) {
+            int localLength = Math.min(length, indices[i + 1] - index >>> 2);
+            if (localLength > 0) {
+                components[i].setInts(index - indices[i], src, srcIndex, localLength);
+                index += localLength << 2;
+                srcIndex += localLength;
+                length -= localLength;
+            } else {
+                // The element straddles two components.
+                setInt(index, src[srcIndex ++]);
+                index += 4;
+                length --;
+            }
+            while (length > 0 && index >= indices[i + 1]) {
+                i ++;
+            }
+        }
+    }
+
+    @Override
+    public void setLongs(int index, long[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 8, srcIndex, src.length);
+        if (length == 0) {
+            return;
+        }
+        int i = componentId(index);
+        while (length > 0) {
+            int localLength = Math.min(length, indices[i + 1] - index >>> 3);
+            if (localLength > 0) {
+                components[i].setLongs(index - indices[i], src, srcIndex, localLength);
+                index += localLength << 3;
+                srcIndex += localLength;
+                length -= localLength;
+            } else {
+                // The element straddles two components.
+                setLong(index, src[srcIndex ++]);
+                index += 8;
+                length --;
+            }
+            while (length > 0 && index >= indices[i + 1]) {
+                i ++;
+            }
+        }
+    }
+
+    @Override
+    public void setFloats(int index, float[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 4, srcIndex, src.length);
+        if (length == 0) {
+            return;
+        }
+        int i = componentId(index);
+        while (length > 0) {
+            int localLength = Math.min(length, indices[i + 1] - index >>> 2);
+            if (localLength > 0) {
+                components[i].setFloats(index - indices[i], src, srcIndex, localLength);
+                index += localLength << 2;
+                srcIndex += localLength;
+                length -= localLength;
+            } else {
+                // The element straddles two components.
+                setInt(index, Float.floatToRawIntBits(src[srcIndex ++]));
+                index += 4;
+                length --;
+            }
+            while (length > 0 && index >= indices[i + 1]) {
+                i ++;
+            }
+        }
+    }
+
+    @Override
+    public void setDoubles(int index, double[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 8, srcIndex, src.length);
+        if (length == 0) {
+            return;
+        }
+        int i = componentId(index);
+        while (length > 0) {
+            int localLength = Math.min(length, indices[i + 1] - index >>> 3);
+            if (localLength > 0) {
+                components[i].setDoubles(index - indices[i], src, srcIndex, localLength);
+                index += localLength << 3;
+                srcIndex += localLength;
+                length -= localLength;
+            } else {
+                // The element straddles two components.
+                setLong(index, Double.doubleToRawLongBits(src[srcIndex ++]));
+                index += 8;
+                length --;
+            }
+            while (length > 0 && index >= indices[i + 1]) {
+                i ++;
+            }
+        }
+    }
+
     public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
         int componentId = componentId(index);
         if (index > capacity() - length || srcIndex > src.capacity() - length) {
@@ -554,7 +1040,21 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         return readBytes;
     }
 
+    /**
+     * Returns the factory which allocated the memory of the specified buffer.
+     */
+    private static ChannelBufferFactory allocator(ChannelBuffer buffer) {
+        while (buffer instanceof WrappedChannelBuffer) {
+            buffer = ((WrappedChannelBuffer) buffer).unwrap();
+        }
+        if (buffer instanceof PooledChannelBuffer) {
+            return ((PooledChannelBuffer) buffer).allocator();
+        }
+        return buffer.factory();
+    }
+
     public ChannelBuffer duplicate() {
+        ensureAccessible();
         ChannelBuffer duplicate = new CompositeChannelBuffer(this);
         duplicate.setIndex(readerIndex(), writerIndex());
         return duplicate;
@@ -632,18 +1132,20 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         }
 
         List<ChannelBuffer> components = decompose(index, length);
-        switch (components.size()) {
-        case 0:
+        if (components.isEmpty()) {
             return ChannelBuffers.EMPTY_BUFFER;
-        case 1:
-            return components.get(0);
-        default:
-            return new CompositeChannelBuffer(order(), components, gathering);
         }
+        // Even a slice of a single component is a composite buffer, so that
+        // it is invalidated together with the other derived buffers.
+        CompositeChannelBuffer slice =
+                new CompositeChannelBuffer(order(), components, gathering, maxNumComponents);
+        slice.generation = new Generation(generation);
+        return slice;
     }
 
     public ByteBuffer toByteBuffer(int index, int length) {
-        if (components.length == 1) {
+        ensureAccessible();
+        if (componentCount == 1) {
             return components[0].toByteBuffer(index, length);
         }
 
@@ -669,7 +1171,7 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
             return new ByteBuffer[0];
         }
 
-        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(components.length);
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(componentCount);
 
         int i = componentId(index);
         while (length > 0) {
@@ -686,30 +1188,34 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
     }
 
     private int componentId(int index) {
+        ensureAccessible();
+        final int[] indices = this.indices;
+        if (index < 0 || index >= indices[componentCount]) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index + ", maximum: " + indices[componentCount]);
+        }
+
+        // Sequential access mostly hits the last accessed component.
         int lastComponentId = lastAccessedComponentId;
-        if (index >= indices[lastComponentId]) {
-            if (index < indices[lastComponentId + 1]) {
-                return lastComponentId;
-            }
+        if (index >= indices[lastComponentId] && index < indices[lastComponentId + 1]) {
+            return lastComponentId;
+        }
 
-            // Search right
-            for (int i = lastComponentId + 1; i < components.length; i ++) {
-                if (index < indices[i + 1]) {
-                    lastAccessedComponentId = i;
-                    return i;
-                }
-            }
-        } else {
-            // Search left
-            for (int i = lastComponentId - 1; i >= 0; i --) {
-                if (index >= indices[i]) {
-                    lastAccessedComponentId = i;
-                    return i;
-                }
+        // Binary search for the component whose range contains the index.
+        int low = 0;
+        int high = componentCount - 1;
+        while (low <= high) {
+            int mid = low + high >>> 1;
+            if (index < indices[mid]) {
+                high = mid - 1;
+            } else if (index >= indices[mid + 1]) {
+                low = mid + 1;
+            } else {
+                lastAccessedComponentId = mid;
+                return mid;
             }
         }
 
-        throw new IndexOutOfBoundsException("Invalid index: " + index + ", maximum: " + indices.length);
+        throw new IllegalStateException("Should not reach here");
     }
 
     @Override
@@ -727,6 +1233,14 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         final int bytesToMove = capacity() - localReaderIndex;
         List<ChannelBuffer> list = decompose(localReaderIndex, bytesToMove);
 
+        // The components which are discarded as a whole are released once
+        // the remaining ones have been sliced.
+        final ChannelBuffer[] oldComponents = components;
+        int numDiscarded = 0;
+        while (numDiscarded < componentCount && indices[numDiscarded + 1] <= localReaderIndex) {
+            numDiscarded ++;
+        }
+
         // If the list is empty we need to assign a new one because
         // we get a List that is immutable.
         //
@@ -759,6 +1273,13 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
 
         setComponents(list);
 
+        if (numDiscarded > 0) {
+            invalidateDerivedBuffers();
+            for (int i = 0; i < numDiscarded; i ++) {
+                oldComponents[i].release();
+            }
+        }
+
         // reset marked Indexes
         localMarkedReaderIndex = Math.max(localMarkedReaderIndex - localReaderIndex, 0);
         localMarkedWriterIndex = Math.max(localMarkedWriterIndex - localReaderIndex, 0);
@@ -770,10 +1291,32 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         setIndex(0, localWriterIndex);
     }
 
+    /**
+     * Tells whether the components shared by the buffers derived from a
+     * composite buffer are still owned by it.
+     */
+    private static final class Generation {
+        final Generation parent;
+        boolean invalidated;
+
+        Generation(Generation parent) {
+            this.parent = parent;
+        }
+
+        boolean isValid() {
+            for (Generation g = this; g != null; g = g.parent) {
+                if (g.invalidated) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     @Override
     public String toString() {
         String result = super.toString();
         result = result.substring(0, result.length() - 1);
-        return result + ", components=" + components.length + ')';
+        return result + ", components=" + componentCount + ')';
     }
 }
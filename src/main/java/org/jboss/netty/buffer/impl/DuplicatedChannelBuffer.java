@@ -66,6 +66,33 @@ public class DuplicatedChannelBuffer extends AbstractChannelBuffer implements Wr
         return buffer.isDirect();
     }
 
+    @Override
+    public int refCnt() {
+        return buffer.refCnt();
+    }
+
+    @Override
+    public ChannelBuffer retain() {
+        buffer.retain();
+        return this;
+    }
+
+    @Override
+    public ChannelBuffer retain(int increment) {
+        buffer.retain(increment);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return buffer.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return buffer.release(decrement);
+    }
+
     public int capacity() {
         return buffer.capacity();
     }
@@ -126,6 +153,26 @@ public class DuplicatedChannelBuffer extends AbstractChannelBuffer implements Wr
         buffer.getBytes(index, dst);
     }
 
+    @Override
+    public void getInts(int index, int[] dst, int dstIndex, int length) {
+        buffer.getInts(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getLongs(int index, long[] dst, int dstIndex, int length) {
+        buffer.getLongs(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getFloats(int index, float[] dst, int dstIndex, int length) {
+        buffer.getFloats(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getDoubles(int index, double[] dst, int dstIndex, int length) {
+        buffer.getDoubles(index, dst, dstIndex, length);
+    }
+
     public void setByte(int index, int value) {
         buffer.setByte(index, value);
     }
@@ -158,6 +205,26 @@ public class DuplicatedChannelBuffer extends AbstractChannelBuffer implements Wr
         buffer.setBytes(index, src);
     }
 
+    @Override
+    public void setInts(int index, int[] src, int srcIndex, int length) {
+        buffer.setInts(index, src, srcIndex, length);
+    }
+
+    @Override
+    public void setLongs(int index, long[] src, int srcIndex, int length) {
+        buffer.setLongs(index, src, srcIndex, length);
+    }
+
+    @Override
+    public void setFloats(int index, float[] src, int srcIndex, int length) {
+        buffer.setFloats(index, src, srcIndex, length);
+    }
+
+    @Override
+    public void setDoubles(int index, double[] src, int srcIndex, int length) {
+        buffer.setDoubles(index, src, srcIndex, length);
+    }
+
     public void getBytes(int index, OutputStream out, int length)
             throws IOException {
         buffer.getBytes(index, out, length);
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.util.IllegalReferenceCountException;
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+
+/**
+ * A dynamic capacity buffer which increases its capacity as needed.  It is
+ * recommended to use {@link ChannelBuffers#dynamicBuffer(int)} instead of
+ * calling the constructor explicitly.
+ * <p>
+ * The content is kept in a fixed-capacity buffer allocated by the
+ * {@link ChannelBufferFactory} of this buffer.  When a write operation needs
+ * more room, a larger buffer is allocated from the same factory, the written
+ * bytes are copied into it and the old buffer is released, so a pooled
+ * factory such as {@link PooledChannelBufferFactory} recycles the memory
+ * instead of allocating a new array for every expansion.  The capacity
+ * doubles (starting from {@code 64}) until it reaches the growth threshold
+ * and increases by the threshold after that.  The threshold is 4 MiB by
+ * default and can be changed with the System property
+ * <strong>org.jboss.netty.buffer.dynamicGrowthThreshold</strong>, whose
+ * value is clamped between {@code 64} and {@code 1 GiB}.
+ * <p>
+ * The reference count of a dynamic buffer is the reference count of its
+ * current underlying buffer, which is carried over on expansion.
+ */
+public class DynamicChannelBuffer extends AbstractChannelBuffer {
+
+    private static final int MAX_GROWTH_THRESHOLD = 1 << 30;
+    private static final int GROWTH_THRESHOLD = Math.min(MAX_GROWTH_THRESHOLD, Math.max(64,
+            SystemPropertyUtil.getInt("org.jboss.netty.buffer.dynamicGrowthThreshold", 4 * 1048576)));
+
+    private final ChannelBufferFactory factory;
+    private final ByteOrder endianness;
+    private ChannelBuffer buffer;
+
+    public DynamicChannelBuffer(int estimatedLength) {
+        this(ByteOrder.BIG_ENDIAN, estimatedLength);
+    }
+
+    public DynamicChannelBuffer(ByteOrder endianness, int estimatedLength) {
+        this(endianness, estimatedLength, HeapChannelBufferFactory.getInstance(endianness));
+    }
+
+    public DynamicChannelBuffer(ByteOrder endianness, int estimatedLength, ChannelBufferFactory factory) {
+        if (estimatedLength < 0) {
+            throw new IllegalArgumentException("estimatedLength: " + estimatedLength);
+        }
+        if (endianness == null) {
+            throw new NullPointerException("endianness");
+        }
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+        this.factory = factory;
+        this.endianness = endianness;
+        buffer = factory.getBuffer(order(), estimatedLength);
+    }
+
+    @Override
+    public void ensureWritableBytes(int minWritableBytes) {
+        if (minWritableBytes <= writableBytes()) {
+            return;
+        }
+        if (minWritableBytes > Integer.MAX_VALUE - writerIndex()) {
+            throw new IndexOutOfBoundsException("Writable bytes exceeded: Got "
+                    + minWritableBytes + ", maximum is " + (Integer.MAX_VALUE - writerIndex()));
+        }
+
+        ChannelBuffer oldBuffer = buffer;
+        int refCnt = oldBuffer.refCnt();
+        if (refCnt == 0) {
+            throw new IllegalReferenceCountException(0);
+        }
+
+        int newCapacity = calculateNewCapacity(writerIndex() + minWritableBytes);
+        ChannelBuffer newBuffer = factory().getBuffer(order(), newCapacity);
+        if (refCnt > 1) {
+            newBuffer.retain(refCnt - 1);
+        }
+        newBuffer.writeBytes(oldBuffer, 0, writerIndex());
+        buffer = newBuffer;
+        oldBuffer.release(refCnt);
+    }
+
+    private int calculateNewCapacity(int minNewCapacity) {
+        final int threshold = GROWTH_THRESHOLD;
+        if (minNewCapacity > threshold) {
+            // Grow linearly by the threshold.
+            if (minNewCapacity > Integer.MAX_VALUE - threshold) {
+                return Integer.MAX_VALUE;
+            }
+            return minNewCapacity / threshold * threshold + threshold;
+        }
+
+        // Double up to the threshold.
+        int newCapacity = Math.max(64, capacity());
+        while (newCapacity < minNewCapacity) {
+            if (newCapacity > Integer.MAX_VALUE >> 1) {
+                // Doubling would overflow.
+                newCapacity = Integer.MAX_VALUE;
+                break;
+            }
+            newCapacity <<= 1;
+        }
+        return Math.min(newCapacity, threshold);
+    }
+
+    public ChannelBufferFactory factory() {
+        return factory;
+    }
+
+    public ByteOrder order() {
+        return endianness;
+    }
+
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public boolean hasArray() {
+        return buffer.hasArray();
+    }
+
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    public int arrayOffset() {
+        return buffer.arrayOffset();
+    }
+
+    @Override
+    public int refCnt() {
+        return buffer.refCnt();
+    }
+
+    @Override
+    public ChannelBuffer retain() {
+        buffer.retain();
+        return this;
+    }
+
+    @Override
+    public ChannelBuffer retain(int increment) {
+        buffer.retain(increment);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return buffer.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return buffer.release(decrement);
+    }
+
+    public byte getByte(int index) {
+        return buffer.getByte(index);
+    }
+
+    public short getShort(int index) {
+        return buffer.getShort(index);
+    }
+
+    public int getUnsignedMedium(int index) {
+        return buffer.getUnsignedMedium(index);
+    }
+
+    public int getInt(int index) {
+        return buffer.getInt(index);
+    }
+
+    public long getLong(int index) {
+        return buffer.getLong(index);
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        buffer.getBytes(index, dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        buffer.getBytes(index, dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        buffer.getBytes(index, dst);
+    }
+
+    @Override
+    public void getInts(int index, int[] dst, int dstIndex, int length) {
+        buffer.getInts(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getLongs(int index, long[] dst, int dstIndex, int length) {
+        buffer.getLongs(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getFloats(int index, float[] dst, int dstIndex, int length) {
+        buffer.getFloats(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getDoubles(int index, double[] dst, int dstIndex, int length) {
+        buffer.getDoubles(index, dst, dstIndex, length);
+    }
+
+    public int getBytes(int index, GatheringByteChannel out, int length)
+            throws IOException {
+        return buffer.getBytes(index, out, length);
+    }
+
+    public void getBytes(int index, OutputStream out, int length)
+            throws IOException {
+        buffer.getBytes(index, out, length);
+    }
+
+    public void setByte(int index, int value) {
+        buffer.setByte(index, value);
+    }
+
+    public void setShort(int index, int value) {
+        buffer.setShort(index, value);
+    }
+
+    public void setMedium(int index, int value) {
+        buffer.setMedium(index, value);
+    }
+
+    public void setInt(int index, int value) {
+        buffer.setInt(index, value);
+    }
+
+    public void setLong(int index, long value) {
+        buffer.setLong(index, value);
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        buffer.setBytes(index, src, srcIndex, length);
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        buffer.setBytes(index, src, srcIndex, length);
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        buffer.setBytes(index, src);
+    }
+
+    @Override
+    public void setInts(int index, int[] src, int srcIndex, int length) {
+        buffer.setInts(index, src, srcIndex, length);
+    }
+
+    @Override
+    public void setLongs(int index, long[] src, int srcIndex, int length) {
+        buffer.setLongs(index, src, srcIndex, length);
+    }
+
+    @Override
+    public void setFloats(int index, float[] src, int srcIndex, int length) {
+        buffer.setFloats(index, src, srcIndex, length);
+    }
+
+    @Override
+    public void setDoubles(int index, double[] src, int srcIndex, int length) {
+        buffer.setDoubles(index, src, srcIndex, length);
+    }
+
+    public int setBytes(int index, InputStream in, int length)
+            throws IOException {
+        return buffer.setBytes(index, in, length);
+    }
+
+    public int setBytes(int index, ScatteringByteChannel in, int length)
+            throws IOException {
+        return buffer.setBytes(index, in, length);
+    }
+
+    @Override
+    public void writeByte(int value) {
+        ensureWritableBytes(1);
+        super.writeByte(value);
+    }
+
+    @Override
+    public void writeShort(int value) {
+        ensureWritableBytes(2);
+        super.writeShort(value);
+    }
+
+    @Override
+    public void writeMedium(int value) {
+        ensureWritableBytes(3);
+        super.writeMedium(value);
+    }
+
+    @Override
+    public void writeInt(int value) {
+        ensureWritableBytes(4);
+        super.writeInt(value);
+    }
+
+    @Override
+    public void writeLong(long value) {
+        ensureWritableBytes(8);
+        super.writeLong(value);
+    }
+
+    @Override
+    public void writeBytes(byte[] src, int srcIndex, int length) {
+        ensureWritableBytes(length);
+        super.writeBytes(src, srcIndex, length);
+    }
+
+    @Override
+    public void writeBytes(ChannelBuffer src, int srcIndex, int length) {
+        ensureWritableBytes(length);
+        super.writeBytes(src, srcIndex, length);
+    }
+
+    @Override
+    public void writeBytes(ByteBuffer src) {
+        ensureWritableBytes(src.remaining());
+        super.writeBytes(src);
+    }
+
+    @Override
+    public int writeBytes(InputStream in, int length) throws IOException {
+        ensureWritableBytes(length);
+        return super.writeBytes(in, length);
+    }
+
+    @Override
+    public int writeBytes(ScatteringByteChannel in, int length)
+            throws IOException {
+        ensureWritableBytes(length);
+        return super.writeBytes(in, length);
+    }
+
+    @Override
+    public void writeZero(int length) {
+        ensureWritableBytes(length);
+        super.writeZero(length);
+    }
+
+    public ChannelBuffer duplicate() {
+        return new DuplicatedChannelBuffer(this);
+    }
+
+    public ChannelBuffer copy(int index, int length) {
+        DynamicChannelBuffer copiedBuffer = new DynamicChannelBuffer(order(), Math.max(length, 64), factory());
+        copiedBuffer.writeBytes(buffer, index, length);
+        return copiedBuffer;
+    }
+
+    public ChannelBuffer slice(int index, int length) {
+        if (index == 0) {
+            if (length == 0) {
+                return ChannelBuffers.EMPTY_BUFFER;
+            }
+            return new TruncatedChannelBuffer(this, length);
+        } else {
+            if (length == 0) {
+                return ChannelBuffers.EMPTY_BUFFER;
+            }
+            return new SlicedChannelBuffer(this, index, length);
+        }
+    }
+
+    public ByteBuffer toByteBuffer(int index, int length) {
+        return buffer.toByteBuffer(index, length);
+    }
+}
@@ -16,17 +16,24 @@
 package org.jboss.netty.buffer.impl;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.internal.UnsafeByteArrayAccess;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ScatteringByteChannel;
 
 /**
  * A skeletal implementation for Java heap buffers.
+ * <p>
+ * The bulk primitive array accessors copy the whole region in one pass with
+ * {@link UnsafeByteArrayAccess} if available, and the variable-length integer
+ * accessors work on the underlying array directly when enough bytes are
+ * readable.
  */
 public abstract class HeapChannelBuffer extends AbstractChannelBuffer {
 
@@ -108,6 +115,46 @@ public abstract class HeapChannelBuffer extends AbstractChannelBuffer {
         dst.put(array, index, Math.min(capacity() - index, dst.remaining()));
     }
 
+    @Override
+    public void getInts(int index, int[] dst, int dstIndex, int length) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            checkBulkIndex(index, length, 4, dstIndex, dst.length);
+            UnsafeByteArrayAccess.getInts(array, index, dst, dstIndex, length, isBigEndian());
+        } else {
+            super.getInts(index, dst, dstIndex, length);
+        }
+    }
+
+    @Override
+    public void getLongs(int index, long[] dst, int dstIndex, int length) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            checkBulkIndex(index, length, 8, dstIndex, dst.length);
+            UnsafeByteArrayAccess.getLongs(array, index, dst, dstIndex, length, isBigEndian());
+        } else {
+            super.getLongs(index, dst, dstIndex, length);
+        }
+    }
+
+    @Override
+    public void getFloats(int index, float[] dst, int dstIndex, int length) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            checkBulkIndex(index, length, 4, dstIndex, dst.length);
+            UnsafeByteArrayAccess.getFloats(array, index, dst, dstIndex, length, isBigEndian());
+        } else {
+            super.getFloats(index, dst, dstIndex, length);
+        }
+    }
+
+    @Override
+    public void getDoubles(int index, double[] dst, int dstIndex, int length) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            checkBulkIndex(index, length, 8, dstIndex, dst.length);
+            UnsafeByteArrayAccess.getDoubles(array, index, dst, dstIndex, length, isBigEndian());
+        } else {
+            super.getDoubles(index, dst, dstIndex, length);
+        }
+    }
+
     public void getBytes(int index, OutputStream out, int length)
             throws IOException {
         out.write(array, index, length);
@@ -138,6 +185,46 @@ public abstract class HeapChannelBuffer extends AbstractChannelBuffer {
         src.get(array, index, src.remaining());
     }
 
+    @Override
+    public void setInts(int index, int[] src, int srcIndex, int length) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            checkBulkIndex(index, length, 4, srcIndex, src.length);
+            UnsafeByteArrayAccess.setInts(src, srcIndex, array, index, length, isBigEndian());
+        } else {
+            super.setInts(index, src, srcIndex, length);
+        }
+    }
+
+    @Override
+    public void setLongs(int index, long[] src, int srcIndex, int length) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            checkBulkIndex(index, length, 8, srcIndex, src.length);
+            UnsafeByteArrayAccess.setLongs(src, srcIndex, array, index, length, isBigEndian());
+        } else {
+            super.setLongs(index, src, srcIndex, length);
+        }
+    }
+
+    @Override
+    public void setFloats(int index, float[] src, int srcIndex, int length) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            checkBulkIndex(index, length, 4, srcIndex, src.length);
+            UnsafeByteArrayAccess.setFloats(src, srcIndex, array, index, length, isBigEndian());
+        } else {
+            super.setFloats(index, src, srcIndex, length);
+        }
+    }
+
+    @Override
+    public void setDoubles(int index, double[] src, int srcIndex, int length) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            checkBulkIndex(index, length, 8, srcIndex, src.length);
+            UnsafeByteArrayAccess.setDoubles(src, srcIndex, array, index, length, isBigEndian());
+        } else {
+            super.setDoubles(index, src, srcIndex, length);
+        }
+    }
+
     public int setBytes(int index, InputStream in, int length) throws IOException {
         int readBytes = 0;
         do {
@@ -184,6 +271,88 @@ public abstract class HeapChannelBuffer extends AbstractChannelBuffer {
         return readBytes;
     }
 
+    @Override
+    public int readVarInt32() {
+        final byte[] array = this.array;
+        int index = readerIndex();
+        if (writerIndex() - index < 5) {
+            return super.readVarInt32();
+        }
+        int b = array[index ++];
+        int result = b & 0x7F;
+        if (b < 0) {
+            b = array[index ++];
+            result |= (b & 0x7F) << 7;
+            if (b < 0) {
+                b = array[index ++];
+                result |= (b & 0x7F) << 14;
+                if (b < 0) {
+                    b = array[index ++];
+                    result |= (b & 0x7F) << 21;
+                    if (b < 0) {
+                        b = array[index ++];
+                        result |= b << 28;
+                        if (b < 0) {
+                            throw new IllegalStateException(
+                                    "varint32 longer than 5 bytes at index " + readerIndex());
+                        }
+                    }
+                }
+            }
+        }
+        readerIndex(index);
+        return result;
+    }
+
+    @Override
+    public long readVarInt64() {
+        final byte[] array = this.array;
+        int index = readerIndex();
+        if (writerIndex() - index < 10) {
+            return super.readVarInt64();
+        }
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = array[index ++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                readerIndex(index);
+                return result;
+            }
+        }
+        throw new IllegalStateException("varint64 longer than 10 bytes at index " + readerIndex());
+    }
+
+    @Override
+    public void writeVarInt32(int value) {
+        ensureWritableBytes(ChannelBuffers.varInt32Length(value));
+        final byte[] array = this.array;
+        int index = writerIndex();
+        while ((value & ~0x7F) != 0) {
+            array[index ++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        array[index ++] = (byte) value;
+        writerIndex(index);
+    }
+
+    @Override
+    public void writeVarInt64(long value) {
+        ensureWritableBytes(ChannelBuffers.varInt64Length(value));
+        final byte[] array = this.array;
+        int index = writerIndex();
+        while ((value & ~0x7FL) != 0) {
+            array[index ++] = (byte) ((int) value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        array[index ++] = (byte) value;
+        writerIndex(index);
+    }
+
+    private boolean isBigEndian() {
+        return order() == ByteOrder.BIG_ENDIAN;
+    }
+
     public ChannelBuffer slice(int index, int length) {
         if (index == 0) {
             if (length == 0) {
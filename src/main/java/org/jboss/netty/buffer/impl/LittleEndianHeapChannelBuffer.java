@@ -17,6 +17,7 @@ package org.jboss.netty.buffer.impl;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.util.internal.UnsafeByteArrayAccess;
 
 import java.nio.ByteOrder;
 
@@ -25,6 +26,9 @@ import java.nio.ByteOrder;
  * A little-endian Java heap buffer.  It is recommended to use {@link ChannelBuffers#buffer(ByteOrder, int)}
  * and {@link ChannelBuffers#wrappedBuffer(ByteOrder, byte[])} instead of
  * calling the constructor explicitly.
+ * <p>
+ * The multi-byte accessors use {@link UnsafeByteArrayAccess} if available,
+ * and assemble the value byte by byte otherwise.
  */
 public class LittleEndianHeapChannelBuffer extends HeapChannelBuffer {
 
@@ -59,6 +63,9 @@ public class LittleEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public short getShort(int index) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            return UnsafeByteArrayAccess.getShortLE(array, index);
+        }
         return (short) (array[index] & 0xFF | array[index + 1] << 8);
     }
 
@@ -69,6 +76,9 @@ public class LittleEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public int getInt(int index) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            return UnsafeByteArrayAccess.getIntLE(array, index);
+        }
         return array[index] & 0xff |
                (array[index + 1] & 0xff) <<  8 |
                (array[index + 2] & 0xff) << 16 |
@@ -76,6 +86,9 @@ public class LittleEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public long getLong(int index) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            return UnsafeByteArrayAccess.getLongLE(array, index);
+        }
         return (long) array[index] & 0xff |
                ((long) array[index + 1] & 0xff) <<  8 |
                ((long) array[index + 2] & 0xff) << 16 |
@@ -87,6 +100,10 @@ public class LittleEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public void setShort(int index, int value) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            UnsafeByteArrayAccess.setShortLE(array, index, value);
+            return;
+        }
         array[index]     = (byte) value;
         array[index + 1] = (byte) (value >>> 8);
     }
@@ -98,6 +115,10 @@ public class LittleEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public void setInt(int index, int   value) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            UnsafeByteArrayAccess.setIntLE(array, index, value);
+            return;
+        }
         array[index]     = (byte) value;
         array[index + 1] = (byte) (value >>> 8);
         array[index + 2] = (byte) (value >>> 16);
@@ -105,6 +126,10 @@ public class LittleEndianHeapChannelBuffer extends HeapChannelBuffer {
     }
 
     public void setLong(int index, long  value) {
+        if (UnsafeByteArrayAccess.isAvailable()) {
+            UnsafeByteArrayAccess.setLongLE(array, index, value);
+            return;
+        }
         array[index]     = (byte) value;
         array[index + 1] = (byte) (value >>> 8);
         array[index + 2] = (byte) (value >>> 16);
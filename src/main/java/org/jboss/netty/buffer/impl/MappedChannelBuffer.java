@@ -0,0 +1,386 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.util.IllegalReferenceCountException;
+import org.jboss.netty.util.internal.ByteBufferUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+/**
+ * A read-only buffer which is backed by a region of a file mapped into memory
+ * via {@link FileChannel#map(MapMode, long, long)}.  It is recommended to use
+ * {@link ChannelBuffers#mappedBuffer(File)} and
+ * {@link ChannelBuffers#mappedBuffer(FileChannel, long, int)} instead of
+ * calling the constructor explicitly.
+ * <p>
+ * Unlike a {@link org.jboss.netty.channel.FileRegion}, a mapped buffer can be
+ * sliced, inspected and combined with other buffers, e.g. a protocol header
+ * and a file body can be sent with a single gathering write by wrapping them
+ * into a {@link CompositeChannelBuffer}.  The content is never copied into
+ * the Java heap when it is written to a socket because the buffer is
+ * {@linkplain #isDirect() direct}.
+ * <p>
+ * A mapped buffer is reference-counted.  The file region is unmapped via
+ * {@link ByteBufferUtil#destroy(ByteBuffer)} when its reference count drops to
+ * {@code 0}, and accessing the buffer after that raises an
+ * {@link IllegalReferenceCountException}.  A buffer which is
+ * garbage-collected without being released is unmapped by the JDK later.
+ * The derived buffers ({@link #slice()}, {@link #duplicate()}) share the
+ * mapping and the reference count of this buffer.  The buffer created by
+ * {@link #copy()} is an ordinary heap buffer.
+ * <p>
+ * All {@code set} methods and the {@code write} methods which modify the
+ * content raise a {@link ReadOnlyBufferException}.
+ */
+public class MappedChannelBuffer extends AbstractReferenceCountedChannelBuffer {
+
+    private final ByteOrder order;
+    private final int capacity;
+    private MappedByteBuffer mapped;
+    private ByteBuffer buffer;
+
+    /**
+     * Maps the whole content of the specified file.
+     *
+     * @throws IllegalArgumentException
+     *         if the file is larger than {@link Integer#MAX_VALUE} bytes
+     */
+    public MappedChannelBuffer(File file) throws IOException {
+        this(ByteOrder.BIG_ENDIAN, file);
+    }
+
+    /**
+     * Maps the whole content of the specified file.
+     *
+     * @throws IllegalArgumentException
+     *         if the file is larger than {@link Integer#MAX_VALUE} bytes
+     */
+    public MappedChannelBuffer(ByteOrder endianness, File file) throws IOException {
+        this(endianness, map(file));
+    }
+
+    /**
+     * Maps the specified region of the specified file.  The file channel can
+     * be closed once this constructor returns; the mapping stays valid until
+     * this buffer is released.
+     */
+    public MappedChannelBuffer(FileChannel file, long position, int length) throws IOException {
+        this(ByteOrder.BIG_ENDIAN, file, position, length);
+    }
+
+    /**
+     * Maps the specified region of the specified file.  The file channel can
+     * be closed once this constructor returns; the mapping stays valid until
+     * this buffer is released.
+     */
+    public MappedChannelBuffer(
+            ByteOrder endianness, FileChannel file, long position, int length) throws IOException {
+        this(endianness, map(file, position, length));
+    }
+
+    private MappedChannelBuffer(ByteOrder endianness, MappedByteBuffer mapped) {
+        if (endianness == null) {
+            throw new NullPointerException("endianness");
+        }
+        order = endianness;
+        this.mapped = mapped;
+        buffer = mapped.asReadOnlyBuffer().order(endianness);
+        capacity = buffer.capacity();
+        writerIndex(capacity);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "file too large to be mapped: " + file + " (" + length + " bytes)");
+            }
+            return map(raf.getChannel(), 0, (int) length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel file, long position, int length) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("position: " + position + " (expected: 0+)");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("length: " + length + " (expected: 0+)");
+        }
+        return file.map(MapMode.READ_ONLY, position, length);
+    }
+
+    @Override
+    protected void deallocate() {
+        MappedByteBuffer mapped = this.mapped;
+        this.mapped = null;
+        buffer = null;
+        ByteBufferUtil.destroy(mapped);
+    }
+
+    public ChannelBufferFactory factory() {
+        return HeapChannelBufferFactory.getInstance(order);
+    }
+
+    public boolean isDirect() {
+        return true;
+    }
+
+    public ByteOrder order() {
+        return order;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean hasArray() {
+        return false;
+    }
+
+    public byte[] array() {
+        throw new UnsupportedOperationException();
+    }
+
+    public int arrayOffset() {
+        throw new UnsupportedOperationException();
+    }
+
+    public byte getByte(int index) {
+        ensureAccessible();
+        return buffer.get(index);
+    }
+
+    public short getShort(int index) {
+        ensureAccessible();
+        return buffer.getShort(index);
+    }
+
+    public int getUnsignedMedium(int index) {
+        ensureAccessible();
+        final ByteBuffer buffer = this.buffer;
+        if (order == ByteOrder.BIG_ENDIAN) {
+            return (buffer.get(index) & 0xff) << 16 |
+                   (buffer.get(index + 1) & 0xff) << 8 |
+                   buffer.get(index + 2) & 0xff;
+        } else {
+            return buffer.get(index) & 0xff |
+                   (buffer.get(index + 1) & 0xff) << 8 |
+                   (buffer.get(index + 2) & 0xff) << 16;
+        }
+    }
+
+    public int getInt(int index) {
+        ensureAccessible();
+        return buffer.getInt(index);
+    }
+
+    public long getLong(int index) {
+        ensureAccessible();
+        return buffer.getLong(index);
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (dst.hasArray()) {
+            getBytes(index, dst.array(), dst.arrayOffset() + dstIndex, length);
+        } else {
+            dst.setBytes(dstIndex, internalNioBuffer(index, length));
+        }
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        internalNioBuffer(index, length).get(dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        ensureAccessible();
+        if (index < 0 || index > capacity) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index
+                    + ", maximum is " + capacity);
+        }
+        int bytesToCopy = Math.min(capacity - index, dst.remaining());
+        dst.put(internalNioBuffer(index, bytesToCopy));
+    }
+
+    @Override
+    public void getInts(int index, int[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        toByteBuffer(index, length << 2).asIntBuffer().get(dst, dstIndex, length);
+    }
+
+    @Override
+    public void getLongs(int index, long[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        toByteBuffer(index, length << 3).asLongBuffer().get(dst, dstIndex, length);
+    }
+
+    @Override
+    public void getFloats(int index, float[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        toByteBuffer(index, length << 2).asFloatBuffer().get(dst, dstIndex, length);
+    }
+
+    @Override
+    public void getDoubles(int index, double[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        toByteBuffer(index, length << 3).asDoubleBuffer().get(dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, OutputStream out, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return;
+        }
+        byte[] tmp = new byte[length];
+        internalNioBuffer(index, length).get(tmp);
+        out.write(tmp);
+    }
+
+    public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return 0;
+        }
+        return out.write(internalNioBuffer(index, length));
+    }
+
+    public void setByte(int index, int value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setShort(int index, int value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setMedium(int index, int value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setInt(int index, int value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setLong(int index, long value) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        throw new ReadOnlyBufferException();
+    }
+
+    public int setBytes(int index, InputStream in, int length) throws IOException {
+        throw new ReadOnlyBufferException();
+    }
+
+    public int setBytes(int index, ScatteringByteChannel in, int length) throws IOException {
+        throw new ReadOnlyBufferException();
+    }
+
+    @Override
+    public void discardReadBytes() {
+        throw new ReadOnlyBufferException();
+    }
+
+    public ChannelBuffer duplicate() {
+        return new DuplicatedChannelBuffer(this);
+    }
+
+    public ChannelBuffer copy(int index, int length) {
+        checkIndex(index, length);
+        ChannelBuffer copy = ChannelBuffers.buffer(order, length);
+        if (length != 0) {
+            copy.writeBytes(internalNioBuffer(index, length));
+        }
+        return copy;
+    }
+
+    public ChannelBuffer slice(int index, int length) {
+        if (index == 0 && length == capacity) {
+            ChannelBuffer slice = duplicate();
+            slice.setIndex(0, length);
+            return slice;
+        }
+        if (length == 0) {
+            checkIndex(index, length);
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        return new SlicedChannelBuffer(this, index, length);
+    }
+
+    /**
+     * Returns a read-only view of the specified region.  The view must not be
+     * accessed once this buffer has been released.
+     */
+    public ByteBuffer toByteBuffer(int index, int length) {
+        checkIndex(index, length);
+        return internalNioBuffer(index, length).slice().order(order);
+    }
+
+    /**
+     * Returns a new NIO view of the specified region whose position and limit
+     * are set to the region.
+     */
+    private ByteBuffer internalNioBuffer(int index, int length) {
+        ByteBuffer buf = buffer.duplicate();
+        buf.clear().position(index).limit(index + length);
+        return buf;
+    }
+
+    private void checkIndex(int index, int fieldLength) {
+        ensureAccessible();
+        if (fieldLength < 0) {
+            throw new IllegalArgumentException("length is negative: " + fieldLength);
+        }
+        if (index < 0 || index > capacity - fieldLength) {
+            throw new IndexOutOfBoundsException("Index too big - Bytes needed: "
+                    + (index + fieldLength) + ", maximum is " + capacity);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.util.internal.ByteBufferUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A set of {@link PoolChunk}s and the subpage pools of the tiny and small
+ * size classes.  Every thread is bound to one arena via its
+ * {@link PoolThreadCache}, so the lock of an arena is only contended by the
+ * threads which share it.
+ * <p>
+ * The requested capacity is normalized into one of the following size
+ * classes:
+ * <ul>
+ * <li>tiny   - less than 512 bytes, rounded up to a multiple of 16,</li>
+ * <li>small  - 512 bytes up to half a page, rounded up to a power of two,</li>
+ * <li>normal - a page up to the chunk size, rounded up to a power of two,</li>
+ * <li>huge   - larger than the chunk size, allocated without pooling.</li>
+ * </ul>
+ */
+final class PoolArena {
+
+    static final int NUM_TINY_SUBPAGE_POOLS = 512 >>> 4;
+
+    final PooledChannelBufferFactory parent;
+    final boolean direct;
+
+    private final int pageSize;
+    private final int maxOrder;
+    private final int pageShifts;
+    private final int chunkSize;
+    private final int subpageOverflowMask;
+    private final int numSmallSubpagePools;
+    private final PoolSubpage[] tinySubpagePools;
+    private final PoolSubpage[] smallSubpagePools;
+
+    // Doubly linked list of the pooled chunks, sorted by creation time.
+    private PoolChunk head;
+    private PoolChunk tail;
+    private int numChunks;
+
+    // Metrics - guarded by 'this'.
+    private long allocationsTiny;
+    private long allocationsSmall;
+    private long allocationsNormal;
+    private long allocationsHuge;
+    private long deallocationsTiny;
+    private long deallocationsSmall;
+    private long deallocationsNormal;
+    private long deallocationsHuge;
+    private long activeBytes;
+    private long activeHugeBytes;
+
+    final AtomicInteger numThreadCaches = new AtomicInteger();
+
+    PoolArena(PooledChannelBufferFactory parent, boolean direct,
+              int pageSize, int maxOrder, int pageShifts, int chunkSize) {
+        this.parent = parent;
+        this.direct = direct;
+        this.pageSize = pageSize;
+        this.maxOrder = maxOrder;
+        this.pageShifts = pageShifts;
+        this.chunkSize = chunkSize;
+        subpageOverflowMask = ~(pageSize - 1);
+
+        tinySubpagePools = new PoolSubpage[NUM_TINY_SUBPAGE_POOLS];
+        for (int i = 0; i < tinySubpagePools.length; i ++) {
+            tinySubpagePools[i] = new PoolSubpage(pageSize);
+        }
+
+        numSmallSubpagePools = pageShifts - 9;
+        smallSubpagePools = new PoolSubpage[numSmallSubpagePools];
+        for (int i = 0; i < smallSubpagePools.length; i ++) {
+            smallSubpagePools[i] = new PoolSubpage(pageSize);
+        }
+    }
+
+    int numSmallSubpagePools() {
+        return numSmallSubpagePools;
+    }
+
+    int pageSize() {
+        return pageSize;
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    PooledChannelBuffer allocate(PoolThreadCache cache, ByteOrder order, int reqCapacity) {
+        final int normCapacity = normalizeCapacity(reqCapacity);
+        if (isTinyOrSmall(normCapacity)) { // capacity < pageSize
+            PooledChannelBuffer buf;
+            if (isTiny(normCapacity)) {
+                buf = cache.allocateTiny(this, order, reqCapacity, normCapacity);
+            } else {
+                buf = cache.allocateSmall(this, order, reqCapacity, normCapacity);
+            }
+            if (buf != null) {
+                // Served from the thread-local cache.
+                return buf;
+            }
+
+            synchronized (this) {
+                final PoolSubpage head = findSubpagePoolHead(normCapacity);
+                final PoolSubpage s = head.next;
+                if (s != head) {
+                    assert s.doNotDestroy && s.elemSize == normCapacity;
+                    long handle = s.allocate();
+                    assert handle >= 0;
+                    incrementAllocations(normCapacity);
+                    return newBuffer(s.chunk, handle, order, reqCapacity, cache);
+                }
+                return allocateNormal(cache, order, reqCapacity, normCapacity);
+            }
+        }
+
+        if (normCapacity <= chunkSize) {
+            PooledChannelBuffer buf = cache.allocateNormal(this, order, reqCapacity, normCapacity);
+            if (buf != null) {
+                return buf;
+            }
+            synchronized (this) {
+                return allocateNormal(cache, order, reqCapacity, normCapacity);
+            }
+        }
+
+        return allocateHuge(order, reqCapacity);
+    }
+
+    // Must be called while holding the lock.
+    private PooledChannelBuffer allocateNormal(
+            PoolThreadCache cache, ByteOrder order, int reqCapacity, int normCapacity) {
+        for (PoolChunk c = head; c != null; c = c.next) {
+            if (c.freeBytes < normCapacity) {
+                continue;
+            }
+            long handle = c.allocate(normCapacity);
+            if (handle >= 0) {
+                incrementAllocations(normCapacity);
+                return newBuffer(c, handle, order, reqCapacity, cache);
+            }
+        }
+
+        // Add a new chunk.
+        PoolChunk c = new PoolChunk(this, newMemory(chunkSize), pageSize, maxOrder, pageShifts, chunkSize);
+        long handle = c.allocate(normCapacity);
+        assert handle >= 0;
+        addChunk(c);
+        incrementAllocations(normCapacity);
+        return newBuffer(c, handle, order, reqCapacity, cache);
+    }
+
+    private PooledChannelBuffer allocateHuge(ByteOrder order, int reqCapacity) {
+        PoolChunk c = new PoolChunk(this, newMemory(reqCapacity), reqCapacity);
+        synchronized (this) {
+            allocationsHuge ++;
+            activeHugeBytes += reqCapacity;
+        }
+        return new PooledChannelBuffer(c, 0, order, 0, reqCapacity, reqCapacity, null);
+    }
+
+    private static PooledChannelBuffer newBuffer(
+            PoolChunk c, long handle, ByteOrder order, int reqCapacity, PoolThreadCache cache) {
+        return new PooledChannelBuffer(
+                c, handle, order, c.offset(handle), reqCapacity, c.maxLength(handle), cache);
+    }
+
+    /**
+     * Returns the specified memory region to this arena.  The region is
+     * kept in the specified thread-local cache if possible, directly if the
+     * calling thread owns the cache or via its handoff stack otherwise.
+     */
+    void free(PoolChunk chunk, long handle, int normCapacity, PoolThreadCache cache) {
+        if (chunk.unpooled) {
+            synchronized (this) {
+                deallocationsHuge ++;
+                activeHugeBytes -= chunk.chunkSize();
+            }
+            destroyChunk(chunk);
+            return;
+        }
+
+        if (cache != null) {
+            if (cache.thread == Thread.currentThread()) {
+                if (cache.add(this, chunk, handle, normCapacity)) {
+                    // Cached so not free it.
+                    return;
+                }
+            } else if (cache.handOff(this, chunk, handle, normCapacity)) {
+                // Handed over to the owning thread of the cache.
+                return;
+            }
+        }
+
+        freeChunk(chunk, handle, normCapacity);
+    }
+
+    void freeChunk(PoolChunk chunk, long handle, int normCapacity) {
+        boolean destroy = false;
+        synchronized (this) {
+            incrementDeallocations(normCapacity);
+            chunk.free(handle);
+            if (chunk.freeBytes == chunkSize && hasOtherFreeChunk(chunk)) {
+                // Keep at most one completely unused chunk around so that the
+                // allocation pattern at the boundary does not thrash.
+                removeChunk(chunk);
+                destroy = true;
+            }
+        }
+        if (destroy) {
+            // Destroy outside of the lock.
+            destroyChunk(chunk);
+        }
+    }
+
+    PoolSubpage findSubpagePoolHead(int elemSize) {
+        int tableIdx;
+        PoolSubpage[] table;
+        if (isTiny(elemSize)) { // < 512
+            tableIdx = elemSize >>> 4;
+            table = tinySubpagePools;
+        } else {
+            tableIdx = 0;
+            elemSize >>>= 10;
+            while (elemSize != 0) {
+                elemSize >>>= 1;
+                tableIdx ++;
+            }
+            table = smallSubpagePools;
+        }
+
+        return table[tableIdx];
+    }
+
+    int normalizeCapacity(int reqCapacity) {
+        if (reqCapacity < 0) {
+            throw new IllegalArgumentException("capacity: " + reqCapacity + " (expected: 0+)");
+        }
+        if (reqCapacity >= chunkSize) {
+            return reqCapacity;
+        }
+
+        if (!isTiny(reqCapacity)) { // >= 512
+            // Round up to the next power of two.
+            int normalizedCapacity = reqCapacity;
+            normalizedCapacity --;
+            normalizedCapacity |= normalizedCapacity >>>  1;
+            normalizedCapacity |= normalizedCapacity >>>  2;
+            normalizedCapacity |= normalizedCapacity >>>  4;
+            normalizedCapacity |= normalizedCapacity >>>  8;
+            normalizedCapacity |= normalizedCapacity >>> 16;
+            normalizedCapacity ++;
+            return normalizedCapacity;
+        }
+
+        // Quantum-spaced
+        if ((reqCapacity & 15) == 0) {
+            return reqCapacity;
+        }
+
+        return (reqCapacity & ~15) + 16;
+    }
+
+    boolean isTinyOrSmall(int normCapacity) {
+        return (normCapacity & subpageOverflowMask) == 0;
+    }
+
+    static boolean isTiny(int normCapacity) {
+        return (normCapacity & 0xFFFFFE00) == 0;
+    }
+
+    private ByteBuffer newMemory(int capacity) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        return ByteBuffer.wrap(new byte[capacity]);
+    }
+
+    private static void destroyChunk(PoolChunk chunk) {
+        ByteBufferUtil.destroy(chunk.memory);
+    }
+
+    private void addChunk(PoolChunk c) {
+        if (tail == null) {
+            head = tail = c;
+        } else {
+            tail.next = c;
+            c.prev = tail;
+            tail = c;
+        }
+        numChunks ++;
+    }
+
+    private void removeChunk(PoolChunk c) {
+        if (c.prev == null) {
+            head = c.next;
+        } else {
+            c.prev.next = c.next;
+        }
+        if (c.next == null) {
+            tail = c.prev;
+        } else {
+            c.next.prev = c.prev;
+        }
+        c.prev = c.next = null;
+        numChunks --;
+    }
+
+    private boolean hasOtherFreeChunk(PoolChunk chunk) {
+        for (PoolChunk c = head; c != null; c = c.next) {
+            if (c != chunk && c.freeBytes == chunkSize) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void incrementAllocations(int normCapacity) {
+        if (isTinyOrSmall(normCapacity)) {
+            if (isTiny(normCapacity)) {
+                allocationsTiny ++;
+            } else {
+                allocationsSmall ++;
+            }
+        } else {
+            allocationsNormal ++;
+        }
+        activeBytes += normCapacity;
+    }
+
+    private void incrementDeallocations(int normCapacity) {
+        if (isTinyOrSmall(normCapacity)) {
+            if (isTiny(normCapacity)) {
+                deallocationsTiny ++;
+            } else {
+                deallocationsSmall ++;
+            }
+        } else {
+            deallocationsNormal ++;
+        }
+        activeBytes -= normCapacity;
+    }
+
+    synchronized PoolArenaStats stats() {
+        long usedBytes = 0;
+        for (PoolChunk c = head; c != null; c = c.next) {
+            usedBytes += chunkSize - c.freeBytes;
+        }
+        return new PoolArenaStats(
+                direct, numThreadCaches.get(), numChunks, chunkSize, usedBytes,
+                allocationsTiny, allocationsSmall, allocationsNormal, allocationsHuge,
+                deallocationsTiny, deallocationsSmall, deallocationsNormal, deallocationsHuge,
+                activeBytes + activeHugeBytes);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder buf = new StringBuilder(256);
+        buf.append(direct? "DirectArena(" : "HeapArena(");
+        buf.append("chunks=").append(numChunks);
+        for (PoolChunk c = head; c != null; c = c.next) {
+            buf.append(", ").append(c);
+        }
+        return buf.append(')').toString();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+/**
+ * A snapshot of the usage statistics of an arena of a
+ * {@link PooledChannelBufferFactory}.  The allocations and deallocations
+ * which were served by a thread-local cache without reaching the arena are
+ * not counted.
+ */
+public final class PoolArenaStats {
+
+    private final boolean direct;
+    private final int numThreadCaches;
+    private final int numChunks;
+    private final int chunkSize;
+    private final long usedBytes;
+    private final long allocationsTiny;
+    private final long allocationsSmall;
+    private final long allocationsNormal;
+    private final long allocationsHuge;
+    private final long deallocationsTiny;
+    private final long deallocationsSmall;
+    private final long deallocationsNormal;
+    private final long deallocationsHuge;
+    private final long activeBytes;
+
+    PoolArenaStats(boolean direct, int numThreadCaches, int numChunks, int chunkSize, long usedBytes,
+                   long allocationsTiny, long allocationsSmall, long allocationsNormal, long allocationsHuge,
+                   long deallocationsTiny, long deallocationsSmall, long deallocationsNormal,
+                   long deallocationsHuge, long activeBytes) {
+        this.direct = direct;
+        this.numThreadCaches = numThreadCaches;
+        this.numChunks = numChunks;
+        this.chunkSize = chunkSize;
+        this.usedBytes = usedBytes;
+        this.allocationsTiny = allocationsTiny;
+        this.allocationsSmall = allocationsSmall;
+        this.allocationsNormal = allocationsNormal;
+        this.allocationsHuge = allocationsHuge;
+        this.deallocationsTiny = deallocationsTiny;
+        this.deallocationsSmall = deallocationsSmall;
+        this.deallocationsNormal = deallocationsNormal;
+        this.deallocationsHuge = deallocationsHuge;
+        this.activeBytes = activeBytes;
+    }
+
+    /**
+     * Returns {@code true} if the arena allocates direct memory.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Returns the number of threads which are bound to the arena.
+     */
+    public int numThreadCaches() {
+        return numThreadCaches;
+    }
+
+    /**
+     * Returns the number of pooled chunks which belong to the arena.
+     */
+    public int numChunks() {
+        return numChunks;
+    }
+
+    /**
+     * Returns the size of a chunk in bytes.
+     */
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the number of bytes of the pooled chunks which are in use,
+     * including the memory held by the thread-local caches.
+     */
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the total number of bytes the pooled chunks occupy.
+     */
+    public long pooledBytes() {
+        return (long) numChunks * chunkSize;
+    }
+
+    public long allocationsTiny() {
+        return allocationsTiny;
+    }
+
+    public long allocationsSmall() {
+        return allocationsSmall;
+    }
+
+    public long allocationsNormal() {
+        return allocationsNormal;
+    }
+
+    public long allocationsHuge() {
+        return allocationsHuge;
+    }
+
+    public long allocations() {
+        return allocationsTiny + allocationsSmall + allocationsNormal + allocationsHuge;
+    }
+
+    public long deallocationsTiny() {
+        return deallocationsTiny;
+    }
+
+    public long deallocationsSmall() {
+        return deallocationsSmall;
+    }
+
+    public long deallocationsNormal() {
+        return deallocationsNormal;
+    }
+
+    public long deallocationsHuge() {
+        return deallocationsHuge;
+    }
+
+    public long deallocations() {
+        return deallocationsTiny + deallocationsSmall + deallocationsNormal + deallocationsHuge;
+    }
+
+    /**
+     * Returns the number of allocations which were not given back to the arena yet.
+     */
+    public long activeAllocations() {
+        return allocations() - deallocations();
+    }
+
+    /**
+     * Returns the number of bytes (after the size class normalization) of the
+     * allocations which were not given back to the arena yet.
+     */
+    public long activeBytes() {
+        return activeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' +
+               (direct? "direct" : "heap") + ", " +
+               "threadCaches=" + numThreadCaches + ", " +
+               "chunks=" + numChunks + ", " +
+               "used=" + usedBytes + '/' + pooledBytes() + ", " +
+               "allocations=" + allocations() +
+               " [tiny=" + allocationsTiny + ", small=" + allocationsSmall +
+               ", normal=" + allocationsNormal + ", huge=" + allocationsHuge + "], " +
+               "deallocations=" + deallocations() + ", " +
+               "activeBytes=" + activeBytes +
+               ')';
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A contiguous region of memory which is carved into runs of pages with a
+ * buddy allocator.  A run of exactly one page can be further split into a
+ * {@link PoolSubpage} to serve the tiny and small size classes.
+ * <p>
+ * The allocation state is kept in a complete binary tree ({@code memoryMap})
+ * whose leaves are the pages of the chunk.  Each node holds the depth of the
+ * shallowest free descendant, so a free run of a certain size is found by
+ * walking down from the root in {@code O(maxOrder)}.  A handle returned by
+ * {@link #allocate(int)} encodes the node index in its lower 32 bits and the
+ * element index of a subpage (if any) in its upper 32 bits.
+ * <p>
+ * All methods except the accessors must be called while holding the lock of
+ * the owning {@link PoolArena}.
+ */
+final class PoolChunk {
+
+    final PoolArena arena;
+    final ByteBuffer memory;
+    final boolean unpooled;
+
+    private final ByteBuffer memoryLE;
+    private final byte[] memoryMap;
+    private final byte[] depthMap;
+    private final PoolSubpage[] subpages;
+    private final int subpageOverflowMask;
+    private final int pageSize;
+    private final int pageShifts;
+    private final int maxOrder;
+    private final int chunkSize;
+    private final int log2ChunkSize;
+    private final int maxSubpageAllocs;
+    private final byte unusable;
+
+    int freeBytes;
+
+    PoolChunk prev;
+    PoolChunk next;
+
+    PoolChunk(PoolArena arena, ByteBuffer memory, int pageSize, int maxOrder, int pageShifts, int chunkSize) {
+        unpooled = false;
+        this.arena = arena;
+        this.memory = memory;
+        memoryLE = memory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.pageSize = pageSize;
+        this.pageShifts = pageShifts;
+        this.maxOrder = maxOrder;
+        this.chunkSize = chunkSize;
+        unusable = (byte) (maxOrder + 1);
+        log2ChunkSize = log2(chunkSize);
+        subpageOverflowMask = ~(pageSize - 1);
+        freeBytes = chunkSize;
+
+        maxSubpageAllocs = 1 << maxOrder;
+
+        // Generate the memory map.
+        memoryMap = new byte[maxSubpageAllocs << 1];
+        depthMap = new byte[memoryMap.length];
+        int memoryMapIndex = 1;
+        for (int d = 0; d <= maxOrder; d ++) {
+            int depth = 1 << d;
+            for (int p = 0; p < depth; p ++) {
+                memoryMap[memoryMapIndex] = (byte) d;
+                depthMap[memoryMapIndex] = (byte) d;
+                memoryMapIndex ++;
+            }
+        }
+
+        subpages = new PoolSubpage[maxSubpageAllocs];
+    }
+
+    /**
+     * Creates a special chunk that is not pooled.
+     */
+    PoolChunk(PoolArena arena, ByteBuffer memory, int size) {
+        unpooled = true;
+        this.arena = arena;
+        this.memory = memory;
+        memoryLE = memory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        memoryMap = null;
+        depthMap = null;
+        subpages = null;
+        subpageOverflowMask = 0;
+        pageSize = 0;
+        pageShifts = 0;
+        maxOrder = 0;
+        unusable = (byte) (maxOrder + 1);
+        chunkSize = size;
+        log2ChunkSize = log2(chunkSize);
+        maxSubpageAllocs = 0;
+    }
+
+    /**
+     * Returns the view of the memory of this chunk with the specified
+     * {@link ByteOrder}.  Only absolute get and put operations may be
+     * performed on the returned buffer because it is shared.
+     */
+    ByteBuffer memory(ByteOrder order) {
+        return order == ByteOrder.BIG_ENDIAN? memory : memoryLE;
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    int usage() {
+        final int freeBytes = this.freeBytes;
+        if (freeBytes == 0) {
+            return 100;
+        }
+
+        int freePercentage = (int) (freeBytes * 100L / chunkSize);
+        if (freePercentage == 0) {
+            return 99;
+        }
+        return 100 - freePercentage;
+    }
+
+    long allocate(int normCapacity) {
+        if ((normCapacity & subpageOverflowMask) != 0) { // >= pageSize
+            return allocateRun(normCapacity);
+        } else {
+            return allocateSubpage(normCapacity);
+        }
+    }
+
+    private long allocateRun(int normCapacity) {
+        int d = maxOrder - (log2(normCapacity) - pageShifts);
+        int id = allocateNode(d);
+        if (id < 0) {
+            return id;
+        }
+        freeBytes -= runLength(id);
+        return id;
+    }
+
+    private long allocateSubpage(int normCapacity) {
+        int d = maxOrder; // Subpages are only allocated from pages, i.e. leaves.
+        int id = allocateNode(d);
+        if (id < 0) {
+            return id;
+        }
+
+        final PoolSubpage[] subpages = this.subpages;
+        final int pageSize = this.pageSize;
+
+        freeBytes -= pageSize;
+
+        int subpageIdx = subpageIdx(id);
+        PoolSubpage head = arena.findSubpagePoolHead(normCapacity);
+        PoolSubpage subpage = subpages[subpageIdx];
+        if (subpage == null) {
+            subpage = new PoolSubpage(head, this, id, runOffset(id), pageSize, normCapacity);
+            subpages[subpageIdx] = subpage;
+        } else {
+            subpage.init(head, normCapacity);
+        }
+        return subpage.allocate();
+    }
+
+    /**
+     * Finds and marks a free node at the specified depth.
+     *
+     * @return the index of the node, or {@code -1} if there is no free node
+     */
+    private int allocateNode(int d) {
+        int id = 1;
+        int initial = - (1 << d); // has last d bits = 0 and rest all = 1
+        byte val = value(id);
+        if (val > d) { // unusable
+            return -1;
+        }
+        while (val < d || (id & initial) == 0) { // id & initial == 1 << d for all ids at depth d
+            id <<= 1;
+            val = value(id);
+            if (val > d) {
+                id ^= 1;
+                val = value(id);
+            }
+        }
+        assert val == d && (id & initial) == 1 << d;
+        setValue(id, unusable); // mark as unusable
+        updateParentsAlloc(id);
+        return id;
+    }
+
+    void free(long handle) {
+        int memoryMapIdx = (int) handle;
+        int bitmapIdx = (int) (handle >>> 32);
+
+        if (bitmapIdx != 0) { // free a subpage
+            PoolSubpage subpage = subpages[subpageIdx(memoryMapIdx)];
+            assert subpage != null && subpage.doNotDestroy;
+
+            PoolSubpage head = arena.findSubpagePoolHead(subpage.elemSize);
+            if (subpage.free(head, bitmapIdx & 0x3FFFFFFF)) {
+                return;
+            }
+        }
+        freeBytes += runLength(memoryMapIdx);
+        setValue(memoryMapIdx, depth(memoryMapIdx));
+        updateParentsFree(memoryMapIdx);
+    }
+
+    /**
+     * Returns the offset of the memory region identified by the specified
+     * handle.
+     */
+    int offset(long handle) {
+        int memoryMapIdx = (int) handle;
+        int bitmapIdx = (int) (handle >>> 32);
+        if (bitmapIdx == 0) {
+            return runOffset(memoryMapIdx);
+        }
+
+        PoolSubpage subpage = subpages[subpageIdx(memoryMapIdx)];
+        return runOffset(memoryMapIdx) + (bitmapIdx & 0x3FFFFFFF) * subpage.elemSize;
+    }
+
+    /**
+     * Returns the maximum length of the memory region identified by the
+     * specified handle.
+     */
+    int maxLength(long handle) {
+        int memoryMapIdx = (int) handle;
+        int bitmapIdx = (int) (handle >>> 32);
+        if (bitmapIdx == 0) {
+            return runLength(memoryMapIdx);
+        }
+        return subpages[subpageIdx(memoryMapIdx)].elemSize;
+    }
+
+    private void updateParentsAlloc(int id) {
+        while (id > 1) {
+            int parentId = id >>> 1;
+            byte val1 = value(id);
+            byte val2 = value(id ^ 1);
+            byte val = val1 < val2 ? val1 : val2;
+            setValue(parentId, val);
+            id = parentId;
+        }
+    }
+
+    private void updateParentsFree(int id) {
+        int logChild = depth(id) + 1;
+        while (id > 1) {
+            int parentId = id >>> 1;
+            byte val1 = value(id);
+            byte val2 = value(id ^ 1);
+            logChild -= 1; // in the first iteration equals log, subsequently reduce 1 from logChild as we traverse up
+
+            if (val1 == logChild && val2 == logChild) {
+                // Both children are completely free; the parent becomes free as a whole.
+                setValue(parentId, (byte) (logChild - 1));
+            } else {
+                byte val = val1 < val2 ? val1 : val2;
+                setValue(parentId, val);
+            }
+
+            id = parentId;
+        }
+    }
+
+    private byte value(int id) {
+        return memoryMap[id];
+    }
+
+    private void setValue(int id, byte val) {
+        memoryMap[id] = val;
+    }
+
+    private byte depth(int id) {
+        return depthMap[id];
+    }
+
+    private int runLength(int id) {
+        // represents the size in #bytes supported by node 'id' in the tree
+        return 1 << log2ChunkSize - depth(id);
+    }
+
+    private int runOffset(int id) {
+        // represents the 0-based offset in #bytes from start of the byte-array chunk
+        int shift = id ^ 1 << depth(id);
+        return shift * runLength(id);
+    }
+
+    private int subpageIdx(int memoryMapIdx) {
+        return memoryMapIdx ^ maxSubpageAllocs; // remove highest set bit, to get offset
+    }
+
+    static int log2(int val) {
+        return 31 - Integer.numberOfLeadingZeros(val);
+    }
+
+    @Override
+    public String toString() {
+        return "Chunk(" + Integer.toHexString(System.identityHashCode(this)) +
+               ": " + usage() + "%, " + (chunkSize - freeBytes) + '/' + chunkSize + ')';
+    }
+}
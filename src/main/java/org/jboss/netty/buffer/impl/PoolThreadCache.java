@@ -0,0 +1,381 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Caches the memory regions released by the owning thread so that they can
+ * be handed out again without acquiring the lock of the {@link PoolArena}.
+ * <p>
+ * Only the thread which created the cache may allocate from it or add to it.
+ * A region of a buffer which was allocated by the owning thread but released
+ * by another thread is pushed to a lock-free handoff stack instead, which the
+ * owning thread drains into the cache when it runs out of cached regions.
+ * <p>
+ * The cache of each size class (a magazine) holds at most as many regions as
+ * its current limit.  The limit starts at a quarter of the configured cache
+ * size and is adjusted every {@code freeSweepAllocationThreshold}
+ * allocations: it is doubled if the magazine overflowed while the thread
+ * allocated at least as many regions of that size class as the limit, and it
+ * is halved if the thread allocated less than a quarter of the limit.  The
+ * regions which were not re-used for a while are given back to the arena at
+ * the same time, and all of them are given back by {@link #free()}, which the
+ * factory calls once the owning thread has died.
+ */
+final class PoolThreadCache {
+
+    final PoolArena arena;
+    final Thread thread;
+
+    private final MemoryRegionCache[] tinyCaches;
+    private final MemoryRegionCache[] smallCaches;
+    private final MemoryRegionCache[] normalCaches;
+    private final int numShiftsNormal;
+    private final int freeSweepAllocationThreshold;
+    private final int maxHandoffs;
+    private final AtomicReference<Handoff> handoffs = new AtomicReference<Handoff>();
+    private int allocations;
+    private boolean freed;
+
+    PoolThreadCache(PoolArena arena,
+                    int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                    int maxCachedBufferCapacity, int freeSweepAllocationThreshold, int maxHandoffs) {
+        if (maxCachedBufferCapacity < 0) {
+            throw new IllegalArgumentException("maxCachedBufferCapacity: "
+                    + maxCachedBufferCapacity + " (expected: >= 0)");
+        }
+        if (freeSweepAllocationThreshold < 1) {
+            throw new IllegalArgumentException("freeSweepAllocationThreshold: "
+                    + freeSweepAllocationThreshold + " (expected: > 0)");
+        }
+        if (maxHandoffs < 0) {
+            throw new IllegalArgumentException("maxHandoffs: " + maxHandoffs + " (expected: >= 0)");
+        }
+        this.arena = arena;
+        this.freeSweepAllocationThreshold = freeSweepAllocationThreshold;
+        this.maxHandoffs = maxHandoffs;
+        thread = Thread.currentThread();
+
+        tinyCaches = createCaches(tinyCacheSize, PoolArena.NUM_TINY_SUBPAGE_POOLS);
+        smallCaches = createCaches(smallCacheSize, arena.numSmallSubpagePools());
+
+        numShiftsNormal = PoolChunk.log2(arena.pageSize());
+        if (normalCacheSize > 0) {
+            int max = Math.min(arena.chunkSize(), maxCachedBufferCapacity);
+            int arraySize = Math.max(1, max / arena.pageSize());
+            normalCaches = new MemoryRegionCache[PoolChunk.log2(arraySize) + 1];
+            for (int i = 0; i < normalCaches.length; i ++) {
+                normalCaches[i] = new MemoryRegionCache(normalCacheSize);
+            }
+        } else {
+            normalCaches = null;
+        }
+
+        arena.numThreadCaches.incrementAndGet();
+    }
+
+    private static MemoryRegionCache[] createCaches(int cacheSize, int numCaches) {
+        if (cacheSize <= 0) {
+            return null;
+        }
+        MemoryRegionCache[] cache = new MemoryRegionCache[numCaches];
+        for (int i = 0; i < cache.length; i ++) {
+            cache[i] = new MemoryRegionCache(cacheSize);
+        }
+        return cache;
+    }
+
+    PooledChannelBuffer allocateTiny(PoolArena area, ByteOrder order, int reqCapacity, int normCapacity) {
+        return allocate(cacheForTiny(area, normCapacity), order, reqCapacity);
+    }
+
+    PooledChannelBuffer allocateSmall(PoolArena area, ByteOrder order, int reqCapacity, int normCapacity) {
+        return allocate(cacheForSmall(area, normCapacity), order, reqCapacity);
+    }
+
+    PooledChannelBuffer allocateNormal(PoolArena area, ByteOrder order, int reqCapacity, int normCapacity) {
+        return allocate(cacheForNormal(area, normCapacity), order, reqCapacity);
+    }
+
+    private PooledChannelBuffer allocate(MemoryRegionCache cache, ByteOrder order, int reqCapacity) {
+        if (cache == null) {
+            return null;
+        }
+        PooledChannelBuffer buf = cache.allocate(order, reqCapacity, this);
+        if (buf == null && drainHandoffs()) {
+            buf = cache.allocate(order, reqCapacity, this);
+        }
+        if (++ allocations >= freeSweepAllocationThreshold) {
+            allocations = 0;
+            trim();
+        }
+        return buf;
+    }
+
+    /**
+     * Adds the specified memory region to this cache.
+     *
+     * @return {@code true} if the region was cached,
+     *         {@code false} if it has to be returned to the arena
+     */
+    boolean add(PoolArena area, PoolChunk chunk, long handle, int normCapacity) {
+        if (freed) {
+            return false;
+        }
+        MemoryRegionCache cache = cacheFor(area, normCapacity);
+        if (cache == null) {
+            return false;
+        }
+        return cache.add(chunk, handle);
+    }
+
+    /**
+     * Hands the specified memory region over to the owning thread of this
+     * cache.  This method may be called by any thread.
+     *
+     * @return {@code true} if the region was handed over,
+     *         {@code false} if it has to be returned to the arena
+     */
+    boolean handOff(PoolArena area, PoolChunk chunk, long handle, int normCapacity) {
+        if (maxHandoffs == 0 || cacheFor(area, normCapacity) == null) {
+            return false;
+        }
+        Handoff handoff = new Handoff(chunk, handle, normCapacity);
+        for (;;) {
+            Handoff head = handoffs.get();
+            if (head == Handoff.CLOSED) {
+                return false;
+            }
+            int depth = head == null? 1 : head.depth + 1;
+            if (depth > maxHandoffs) {
+                return false;
+            }
+            handoff.next = head;
+            handoff.depth = depth;
+            if (handoffs.compareAndSet(head, handoff)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves the regions handed over by other threads into this cache, or
+     * back to the arena if the cache is full.
+     *
+     * @return {@code true} if at least one region was moved
+     */
+    private boolean drainHandoffs() {
+        if (freed || handoffs.get() == null) {
+            return false;
+        }
+        Handoff handoff = handoffs.getAndSet(null);
+        release(handoff, true);
+        return true;
+    }
+
+    private void release(Handoff handoff, boolean cache) {
+        while (handoff != null) {
+            if (!cache || !add(arena, handoff.chunk, handoff.handle, handoff.normCapacity)) {
+                arena.freeChunk(handoff.chunk, handoff.handle, handoff.normCapacity);
+            }
+            handoff = handoff.next;
+        }
+    }
+
+    /**
+     * Gives back all cached memory regions to the arena.
+     */
+    void free() {
+        if (freed) {
+            return;
+        }
+        freed = true;
+        // Stop accepting handoffs before giving back the pending ones.
+        release(handoffs.getAndSet(Handoff.CLOSED), false);
+        free(tinyCaches);
+        free(smallCaches);
+        free(normalCaches);
+        arena.numThreadCaches.decrementAndGet();
+    }
+
+    private void free(MemoryRegionCache[] caches) {
+        if (caches == null) {
+            return;
+        }
+        for (MemoryRegionCache c: caches) {
+            c.free(arena, Integer.MAX_VALUE);
+        }
+    }
+
+    void trim() {
+        drainHandoffs();
+        trim(tinyCaches);
+        trim(smallCaches);
+        trim(normalCaches);
+    }
+
+    private void trim(MemoryRegionCache[] caches) {
+        if (caches == null) {
+            return;
+        }
+        for (MemoryRegionCache c: caches) {
+            c.trim(arena);
+        }
+    }
+
+    private MemoryRegionCache cacheFor(PoolArena area, int normCapacity) {
+        if (area.isTinyOrSmall(normCapacity)) {
+            if (PoolArena.isTiny(normCapacity)) {
+                return cacheForTiny(area, normCapacity);
+            } else {
+                return cacheForSmall(area, normCapacity);
+            }
+        } else {
+            return cacheForNormal(area, normCapacity);
+        }
+    }
+
+    private MemoryRegionCache cacheForTiny(PoolArena area, int normCapacity) {
+        if (area != arena || tinyCaches == null) {
+            return null;
+        }
+        return tinyCaches[normCapacity >>> 4];
+    }
+
+    private MemoryRegionCache cacheForSmall(PoolArena area, int normCapacity) {
+        if (area != arena || smallCaches == null) {
+            return null;
+        }
+        int idx = PoolChunk.log2(normCapacity) - 9;
+        if (idx >= smallCaches.length) {
+            return null;
+        }
+        return smallCaches[idx];
+    }
+
+    private MemoryRegionCache cacheForNormal(PoolArena area, int normCapacity) {
+        if (area != arena || normalCaches == null) {
+            return null;
+        }
+        int idx = PoolChunk.log2(normCapacity >> numShiftsNormal);
+        if (idx >= normalCaches.length) {
+            return null;
+        }
+        return normalCaches[idx];
+    }
+
+    /**
+     * A memory region released by a thread other than the owner of the cache.
+     */
+    private static final class Handoff {
+        static final Handoff CLOSED = new Handoff(null, -1, 0);
+
+        final PoolChunk chunk;
+        final long handle;
+        final int normCapacity;
+        Handoff next;
+        int depth;
+
+        Handoff(PoolChunk chunk, long handle, int normCapacity) {
+            this.chunk = chunk;
+            this.handle = handle;
+            this.normCapacity = normCapacity;
+        }
+    }
+
+    /**
+     * A bounded FIFO of the memory regions of a single size class.
+     */
+    private static final class MemoryRegionCache {
+        private final PoolChunk[] chunks;
+        private final long[] handles;
+        private int limit;
+        private int head;
+        private int size;
+        private int allocations;
+        private int overflows;
+
+        MemoryRegionCache(int capacity) {
+            chunks = new PoolChunk[capacity];
+            handles = new long[capacity];
+            limit = Math.max(1, capacity >>> 2);
+        }
+
+        boolean add(PoolChunk chunk, long handle) {
+            if (size >= limit) {
+                overflows ++;
+                return false;
+            }
+            int tail = head + size;
+            if (tail >= chunks.length) {
+                tail -= chunks.length;
+            }
+            chunks[tail] = chunk;
+            handles[tail] = handle;
+            size ++;
+            return true;
+        }
+
+        PooledChannelBuffer allocate(ByteOrder order, int reqCapacity, PoolThreadCache cache) {
+            if (size == 0) {
+                return null;
+            }
+            PoolChunk chunk = chunks[head];
+            long handle = handles[head];
+            chunks[head] = null;
+            if (++ head == chunks.length) {
+                head = 0;
+            }
+            size --;
+            allocations ++;
+            return new PooledChannelBuffer(
+                    chunk, handle, order, chunk.offset(handle), reqCapacity, chunk.maxLength(handle), cache);
+        }
+
+        /**
+         * Adjusts the limit to the number of allocations since the last trim
+         * and gives back the regions which were not needed.
+         */
+        void trim(PoolArena arena) {
+            if (overflows > 0 && allocations >= limit) {
+                limit = Math.min(chunks.length, limit << 1);
+            } else if (allocations < limit >>> 2) {
+                limit = Math.max(1, limit >>> 1);
+            }
+            int keep = Math.min(allocations, limit);
+            allocations = 0;
+            overflows = 0;
+            if (size > keep) {
+                free(arena, size - keep);
+            }
+        }
+
+        void free(PoolArena arena, int max) {
+            for (int i = 0; i < max && size > 0; i ++) {
+                PoolChunk chunk = chunks[head];
+                long handle = handles[head];
+                chunks[head] = null;
+                if (++ head == chunks.length) {
+                    head = 0;
+                }
+                size --;
+                arena.freeChunk(chunk, handle, chunk.maxLength(handle));
+            }
+        }
+    }
+}
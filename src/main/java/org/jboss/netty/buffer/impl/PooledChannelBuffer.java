@@ -0,0 +1,449 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.util.IllegalReferenceCountException;
+import org.jboss.netty.util.ResourceLeak;
+import org.jboss.netty.util.ResourceLeakDetector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+/**
+ * A fixed-capacity buffer whose memory is a region of a chunk managed by
+ * {@link PooledChannelBufferFactory}.  The memory is either a heap byte array
+ * or a direct {@link ByteBuffer}, depending on the factory.
+ * <p>
+ * A pooled buffer is reference-counted.  Its memory is returned to the pool
+ * when its reference count drops to {@code 0}, and accessing the buffer after
+ * that raises an {@link IllegalReferenceCountException}.  A buffer which is
+ * garbage-collected without being released is never returned to the pool;
+ * such a leak is reported by a sampling {@link ResourceLeakDetector}.  The
+ * derived buffers ({@link #slice()}, {@link #duplicate()}) share the memory
+ * and the reference count of this buffer.  The buffers created by
+ * {@link #copy()} or {@link #factory()} are not pooled.
+ */
+public class PooledChannelBuffer extends AbstractReferenceCountedChannelBuffer {
+
+    private static final ResourceLeakDetector<PooledChannelBuffer> leakDetector =
+        new ResourceLeakDetector<PooledChannelBuffer>(PooledChannelBuffer.class);
+
+    private final ByteOrder order;
+    private final boolean direct;
+    private final int length;
+    private final int maxLength;
+    private final int offset;
+    private PoolChunk chunk;
+    private long handle;
+    private final ResourceLeak leak;
+    private ByteBuffer memory;
+    private PoolThreadCache cache;
+
+    PooledChannelBuffer(PoolChunk chunk, long handle, ByteOrder order,
+                        int offset, int length, int maxLength, PoolThreadCache cache) {
+        assert handle >= 0;
+        assert chunk != null;
+        this.chunk = chunk;
+        this.handle = handle;
+        this.order = order;
+        direct = chunk.arena.direct;
+        memory = chunk.memory(order);
+        this.offset = offset;
+        this.length = length;
+        this.maxLength = maxLength;
+        this.cache = cache;
+        leak = leakDetector.open(this);
+    }
+
+    @Override
+    protected void deallocate() {
+        final PoolChunk chunk = this.chunk;
+        final long handle = this.handle;
+        final PoolThreadCache cache = this.cache;
+        this.chunk = null;
+        this.handle = -1;
+        this.cache = null;
+        memory = null;
+        chunk.arena.free(chunk, handle, maxLength, cache);
+        if (leak != null) {
+            leak.close();
+        }
+    }
+
+    /**
+     * Returns the pool this buffer was allocated from, or {@link #factory()}
+     * if this buffer has been deallocated already.
+     */
+    ChannelBufferFactory allocator() {
+        final PoolChunk chunk = this.chunk;
+        return chunk != null? chunk.arena.parent : factory();
+    }
+
+    public ChannelBufferFactory factory() {
+        if (direct) {
+            return DirectChannelBufferFactory.getInstance(order);
+        } else {
+            return HeapChannelBufferFactory.getInstance(order);
+        }
+    }
+
+    public ByteOrder order() {
+        return order;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public int capacity() {
+        return length;
+    }
+
+    public boolean hasArray() {
+        return !direct;
+    }
+
+    public byte[] array() {
+        ensureAccessible();
+        return memory.array();
+    }
+
+    public int arrayOffset() {
+        ensureAccessible();
+        return memory.arrayOffset() + offset;
+    }
+
+    public byte getByte(int index) {
+        checkIndex(index);
+        return memory.get(idx(index));
+    }
+
+    public short getShort(int index) {
+        checkIndex(index, 2);
+        return memory.getShort(idx(index));
+    }
+
+    public int getUnsignedMedium(int index) {
+        checkIndex(index, 3);
+        final ByteBuffer memory = this.memory;
+        final int idx = idx(index);
+        if (order == ByteOrder.BIG_ENDIAN) {
+            return (memory.get(idx) & 0xff) << 16 |
+                   (memory.get(idx + 1) & 0xff) << 8 |
+                   memory.get(idx + 2) & 0xff;
+        } else {
+            return memory.get(idx) & 0xff |
+                   (memory.get(idx + 1) & 0xff) << 8 |
+                   (memory.get(idx + 2) & 0xff) << 16;
+        }
+    }
+
+    public int getInt(int index) {
+        checkIndex(index, 4);
+        return memory.getInt(idx(index));
+    }
+
+    public long getLong(int index) {
+        checkIndex(index, 8);
+        return memory.getLong(idx(index));
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (dst.hasArray()) {
+            getBytes(index, dst.array(), dst.arrayOffset() + dstIndex, length);
+        } else {
+            dst.setBytes(dstIndex, internalNioBuffer(index, length));
+        }
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        if (memory.hasArray()) {
+            System.arraycopy(memory.array(), memory.arrayOffset() + idx(index), dst, dstIndex, length);
+        } else {
+            internalNioBuffer(index, length).get(dst, dstIndex, length);
+        }
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        ensureAccessible();
+        if (index < 0 || index > length) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index
+                    + ", maximum is " + length);
+        }
+        int bytesToCopy = Math.min(length - index, dst.remaining());
+        dst.put(internalNioBuffer(index, bytesToCopy));
+    }
+
+    @Override
+    public void getInts(int index, int[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        toByteBuffer(index, length << 2).asIntBuffer().get(dst, dstIndex, length);
+    }
+
+    @Override
+    public void getLongs(int index, long[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        toByteBuffer(index, length << 3).asLongBuffer().get(dst, dstIndex, length);
+    }
+
+    @Override
+    public void getFloats(int index, float[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        toByteBuffer(index, length << 2).asFloatBuffer().get(dst, dstIndex, length);
+    }
+
+    @Override
+    public void getDoubles(int index, double[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        toByteBuffer(index, length << 3).asDoubleBuffer().get(dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, OutputStream out, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return;
+        }
+        if (memory.hasArray()) {
+            out.write(memory.array(), memory.arrayOffset() + idx(index), length);
+        } else {
+            byte[] tmp = new byte[length];
+            internalNioBuffer(index, length).get(tmp);
+            out.write(tmp);
+        }
+    }
+
+    public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+        checkIndex(index, length);
+        return out.write(internalNioBuffer(index, length));
+    }
+
+    public void setByte(int index, int value) {
+        checkIndex(index);
+        memory.put(idx(index), (byte) value);
+    }
+
+    public void setShort(int index, int value) {
+        checkIndex(index, 2);
+        memory.putShort(idx(index), (short) value);
+    }
+
+    public void setMedium(int index, int value) {
+        checkIndex(index, 3);
+        final ByteBuffer memory = this.memory;
+        final int idx = idx(index);
+        if (order == ByteOrder.BIG_ENDIAN) {
+            memory.put(idx, (byte) (value >>> 16));
+            memory.put(idx + 1, (byte) (value >>> 8));
+            memory.put(idx + 2, (byte) value);
+        } else {
+            memory.put(idx, (byte) value);
+            memory.put(idx + 1, (byte) (value >>> 8));
+            memory.put(idx + 2, (byte) (value >>> 16));
+        }
+    }
+
+    public void setInt(int index, int value) {
+        checkIndex(index, 4);
+        memory.putInt(idx(index), value);
+    }
+
+    public void setLong(int index, long value) {
+        checkIndex(index, 8);
+        memory.putLong(idx(index), value);
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        checkIndex(index, length);
+        if (src.hasArray()) {
+            setBytes(index, src.array(), src.arrayOffset() + srcIndex, length);
+        } else {
+            src.getBytes(srcIndex, internalNioBuffer(index, length));
+        }
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkIndex(index, length);
+        if (memory.hasArray()) {
+            System.arraycopy(src, srcIndex, memory.array(), memory.arrayOffset() + idx(index), length);
+        } else {
+            internalNioBuffer(index, length).put(src, srcIndex, length);
+        }
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        int length = src.remaining();
+        checkIndex(index, length);
+        internalNioBuffer(index, length).put(src);
+    }
+
+    @Override
+    public void setInts(int index, int[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 4, srcIndex, src.length);
+        toByteBuffer(index, length << 2).asIntBuffer().put(src, srcIndex, length);
+    }
+
+    @Override
+    public void setLongs(int index, long[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 8, srcIndex, src.length);
+        toByteBuffer(index, length << 3).asLongBuffer().put(src, srcIndex, length);
+    }
+
+    @Override
+    public void setFloats(int index, float[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 4, srcIndex, src.length);
+        toByteBuffer(index, length << 2).asFloatBuffer().put(src, srcIndex, length);
+    }
+
+    @Override
+    public void setDoubles(int index, double[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 8, srcIndex, src.length);
+        toByteBuffer(index, length << 3).asDoubleBuffer().put(src, srcIndex, length);
+    }
+
+    public int setBytes(int index, InputStream in, int length) throws IOException {
+        checkIndex(index, length);
+        if (memory.hasArray()) {
+            byte[] array = memory.array();
+            int arrayIndex = memory.arrayOffset() + idx(index);
+            int readBytes = 0;
+            do {
+                int localReadBytes = in.read(array, arrayIndex, length);
+                if (localReadBytes < 0) {
+                    if (readBytes == 0) {
+                        return -1;
+                    } else {
+                        break;
+                    }
+                }
+                readBytes += localReadBytes;
+                arrayIndex += localReadBytes;
+                length -= localReadBytes;
+            } while (length > 0);
+            return readBytes;
+        }
+
+        byte[] tmp = new byte[length];
+        int readBytes = in.read(tmp);
+        if (readBytes <= 0) {
+            return readBytes;
+        }
+        internalNioBuffer(index, readBytes).put(tmp, 0, readBytes);
+        return readBytes;
+    }
+
+    public int setBytes(int index, ScatteringByteChannel in, int length) throws IOException {
+        checkIndex(index, length);
+        ByteBuffer buf = internalNioBuffer(index, length);
+        int readBytes = 0;
+
+        do {
+            int localReadBytes;
+            try {
+                localReadBytes = in.read(buf);
+            } catch (ClosedChannelException e) {
+                localReadBytes = -1;
+            }
+            if (localReadBytes < 0) {
+                if (readBytes == 0) {
+                    return -1;
+                } else {
+                    break;
+                }
+            }
+            if (localReadBytes == 0) {
+                break;
+            }
+            readBytes += localReadBytes;
+        } while (readBytes < length);
+
+        return readBytes;
+    }
+
+    public ChannelBuffer duplicate() {
+        return new DuplicatedChannelBuffer(this);
+    }
+
+    public ChannelBuffer copy(int index, int length) {
+        checkIndex(index, length);
+        ChannelBuffer copy = factory().getBuffer(order(), length);
+        if (length != 0) {
+            copy.writeBytes(this, index, length);
+        }
+        return copy;
+    }
+
+    public ChannelBuffer slice(int index, int length) {
+        if (index == 0 && length == capacity()) {
+            ChannelBuffer slice = duplicate();
+            slice.setIndex(0, length);
+            return slice;
+        }
+        if (length == 0) {
+            checkIndex(index, length);
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        return new SlicedChannelBuffer(this, index, length);
+    }
+
+    public ByteBuffer toByteBuffer(int index, int length) {
+        checkIndex(index, length);
+        return internalNioBuffer(index, length).slice().order(order);
+    }
+
+    /**
+     * Returns a new NIO view of the specified region whose position and limit
+     * are set to the region.
+     */
+    private ByteBuffer internalNioBuffer(int index, int length) {
+        ByteBuffer buf = memory.duplicate();
+        int idx = idx(index);
+        buf.clear().position(idx).limit(idx + length);
+        return buf;
+    }
+
+    private int idx(int index) {
+        return offset + index;
+    }
+
+    private void checkIndex(int index) {
+        ensureAccessible();
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index
+                    + ", maximum is " + length);
+        }
+    }
+
+    private void checkIndex(int index, int fieldLength) {
+        ensureAccessible();
+        if (fieldLength < 0) {
+            throw new IllegalArgumentException("length is negative: " + fieldLength);
+        }
+        if (index < 0 || index > length - fieldLength) {
+            throw new IndexOutOfBoundsException("Index too big - Bytes needed: "
+                    + (index + fieldLength) + ", maximum is " + length);
+        }
+    }
+}
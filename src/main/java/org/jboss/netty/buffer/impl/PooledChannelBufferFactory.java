@@ -0,0 +1,441 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link ChannelBufferFactory} which allocates the buffers from a pool of
+ * memory chunks instead of creating a new array or {@link ByteBuffer} for
+ * every request, which reduces the garbage produced by the I/O threads
+ * drastically.
+ * <p>
+ * The memory is managed in a jemalloc fashion.  It is split into a number of
+ * arenas, each of which consists of chunks of {@code pageSize << maxOrder}
+ * bytes.  A requested capacity is rounded up to a size class (tiny, small,
+ * normal or huge), and the memory regions which are released by a thread are
+ * cached by that thread to serve its next allocation of the same size class
+ * without any locking.  A buffer which is released by another thread than the
+ * one which allocated it is handed back to the allocating thread through a
+ * lock-free queue, so that a buffer produced by an I/O thread and consumed by
+ * an application thread is still recycled without touching the arena.  The
+ * number of regions cached per size class grows and shrinks with the
+ * allocation rate of the thread, up to the configured cache size.  Each
+ * thread is bound to the arena which is shared by the least number of
+ * threads.
+ *
+ * <h3>Releasing a buffer</h3>
+ * Every {@link PooledChannelBuffer} which was obtained from this factory is
+ * reference-counted and must be released via {@link ChannelBuffer#release()}
+ * once it is not needed anymore, typically by the handler which consumes it.
+ * The I/O threads release the written buffers by themselves.  A buffer which
+ * is not released is reclaimed by the garbage collector, but its memory is
+ * never given back to the pool.  Please note that the buffers returned by
+ * {@link ChannelBuffer#copy()} and {@link ChannelBuffer#factory()} of a
+ * pooled buffer are not pooled.
+ *
+ * <h3>Configuration</h3>
+ * The default settings can be overridden with the following system properties:
+ * <table border="1" cellspacing="0" cellpadding="6">
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.numArenas}</td><td>2 * cores</td></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.pageSize}</td><td>8192</td></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.maxOrder}</td><td>11 (16 MiB chunks)</td></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.tinyCacheSize}</td><td>512</td></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.smallCacheSize}</td><td>256</td></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.normalCacheSize}</td><td>64</td></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.maxCachedBufferCapacity}</td><td>32768</td></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.cacheTrimInterval}</td><td>8192</td></tr>
+ * <tr><td>{@code org.jboss.netty.buffer.pool.maxHandoffs}</td><td>1024</td></tr>
+ * </table>
+ */
+public class PooledChannelBufferFactory extends AbstractChannelBufferFactory {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(PooledChannelBufferFactory.class);
+
+    private static final int DEFAULT_NUM_ARENAS;
+    private static final int DEFAULT_PAGE_SIZE;
+    private static final int DEFAULT_MAX_ORDER;
+    private static final int DEFAULT_TINY_CACHE_SIZE;
+    private static final int DEFAULT_SMALL_CACHE_SIZE;
+    private static final int DEFAULT_NORMAL_CACHE_SIZE;
+    private static final int DEFAULT_MAX_CACHED_BUFFER_CAPACITY;
+    private static final int DEFAULT_CACHE_TRIM_INTERVAL;
+    private static final int DEFAULT_MAX_HANDOFFS;
+
+    private static final int MIN_PAGE_SIZE = 4096;
+    private static final int MAX_CHUNK_SIZE = (int) ((Integer.MAX_VALUE + 1L) / 2);
+
+    static {
+        int defaultPageSize = SystemPropertyUtil.getInt("org.jboss.netty.buffer.pool.pageSize", 8192);
+        Throwable pageSizeFallbackCause = null;
+        try {
+            validateAndCalculatePageShifts(defaultPageSize);
+        } catch (Throwable t) {
+            pageSizeFallbackCause = t;
+            defaultPageSize = 8192;
+        }
+        DEFAULT_PAGE_SIZE = defaultPageSize;
+
+        int defaultMaxOrder = SystemPropertyUtil.getInt("org.jboss.netty.buffer.pool.maxOrder", 11);
+        Throwable maxOrderFallbackCause = null;
+        try {
+            validateAndCalculateChunkSize(DEFAULT_PAGE_SIZE, defaultMaxOrder);
+        } catch (Throwable t) {
+            maxOrderFallbackCause = t;
+            defaultMaxOrder = 11;
+        }
+        DEFAULT_MAX_ORDER = defaultMaxOrder;
+
+        // Use no more than a half of the maximum heap for the chunks, assuming
+        // every arena has 3 chunks in use.
+        final Runtime runtime = Runtime.getRuntime();
+        final int defaultChunkSize = DEFAULT_PAGE_SIZE << DEFAULT_MAX_ORDER;
+        DEFAULT_NUM_ARENAS = Math.max(1, SystemPropertyUtil.getInt(
+                "org.jboss.netty.buffer.pool.numArenas",
+                (int) Math.min(
+                        runtime.availableProcessors() * 2,
+                        runtime.maxMemory() / defaultChunkSize / 2 / 3)));
+
+        DEFAULT_TINY_CACHE_SIZE = SystemPropertyUtil.getInt("org.jboss.netty.buffer.pool.tinyCacheSize", 512);
+        DEFAULT_SMALL_CACHE_SIZE = SystemPropertyUtil.getInt("org.jboss.netty.buffer.pool.smallCacheSize", 256);
+        DEFAULT_NORMAL_CACHE_SIZE = SystemPropertyUtil.getInt("org.jboss.netty.buffer.pool.normalCacheSize", 64);
+        DEFAULT_MAX_CACHED_BUFFER_CAPACITY = SystemPropertyUtil.getInt(
+                "org.jboss.netty.buffer.pool.maxCachedBufferCapacity", 32 * 1024);
+        DEFAULT_CACHE_TRIM_INTERVAL = SystemPropertyUtil.getInt(
+                "org.jboss.netty.buffer.pool.cacheTrimInterval", 8192);
+        DEFAULT_MAX_HANDOFFS = SystemPropertyUtil.getInt("org.jboss.netty.buffer.pool.maxHandoffs", 1024);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dorg.jboss.netty.buffer.pool.numArenas: " + DEFAULT_NUM_ARENAS);
+            if (pageSizeFallbackCause == null) {
+                logger.debug("-Dorg.jboss.netty.buffer.pool.pageSize: " + DEFAULT_PAGE_SIZE);
+            } else {
+                logger.debug("-Dorg.jboss.netty.buffer.pool.pageSize: " + DEFAULT_PAGE_SIZE,
+                        pageSizeFallbackCause);
+            }
+            if (maxOrderFallbackCause == null) {
+                logger.debug("-Dorg.jboss.netty.buffer.pool.maxOrder: " + DEFAULT_MAX_ORDER);
+            } else {
+                logger.debug("-Dorg.jboss.netty.buffer.pool.maxOrder: " + DEFAULT_MAX_ORDER,
+                        maxOrderFallbackCause);
+            }
+            logger.debug("-Dorg.jboss.netty.buffer.pool.chunkSize: " + (DEFAULT_PAGE_SIZE << DEFAULT_MAX_ORDER));
+            logger.debug("-Dorg.jboss.netty.buffer.pool.tinyCacheSize: " + DEFAULT_TINY_CACHE_SIZE);
+            logger.debug("-Dorg.jboss.netty.buffer.pool.smallCacheSize: " + DEFAULT_SMALL_CACHE_SIZE);
+            logger.debug("-Dorg.jboss.netty.buffer.pool.normalCacheSize: " + DEFAULT_NORMAL_CACHE_SIZE);
+            logger.debug("-Dorg.jboss.netty.buffer.pool.maxCachedBufferCapacity: " +
+                    DEFAULT_MAX_CACHED_BUFFER_CAPACITY);
+            logger.debug("-Dorg.jboss.netty.buffer.pool.cacheTrimInterval: " + DEFAULT_CACHE_TRIM_INTERVAL);
+            logger.debug("-Dorg.jboss.netty.buffer.pool.maxHandoffs: " + DEFAULT_MAX_HANDOFFS);
+        }
+    }
+
+    private final boolean direct;
+    private final PoolArena[] arenas;
+    private final int tinyCacheSize;
+    private final int smallCacheSize;
+    private final int normalCacheSize;
+    private final int maxCachedBufferCapacity;
+    private final int cacheTrimInterval;
+    private final int maxHandoffs;
+    private final int chunkSize;
+    private final Queue<PoolThreadCache> threadCaches = new ConcurrentLinkedQueue<PoolThreadCache>();
+
+    private final ThreadLocal<PoolThreadCache> threadCache = new ThreadLocal<PoolThreadCache>() {
+        @Override
+        protected PoolThreadCache initialValue() {
+            // Give back the caches of the dead threads first so that the
+            // least used arena is chosen from the live threads only.
+            freeDeadThreadCaches();
+            PoolThreadCache cache = new PoolThreadCache(
+                    leastUsedArena(), tinyCacheSize, smallCacheSize, normalCacheSize,
+                    maxCachedBufferCapacity, cacheTrimInterval, maxHandoffs);
+            threadCaches.add(cache);
+            return cache;
+        }
+    };
+
+    /**
+     * Creates a new factory which pools heap buffers whose default
+     * {@link ByteOrder} is {@link ByteOrder#BIG_ENDIAN}.
+     */
+    public PooledChannelBufferFactory() {
+        this(false);
+    }
+
+    /**
+     * Creates a new factory whose default {@link ByteOrder} is
+     * {@link ByteOrder#BIG_ENDIAN}.
+     *
+     * @param direct {@code true} to pool direct buffers,
+     *               {@code false} to pool heap buffers
+     */
+    public PooledChannelBufferFactory(boolean direct) {
+        this(ByteOrder.BIG_ENDIAN, direct);
+    }
+
+    /**
+     * Creates a new factory with the specified default {@link ByteOrder}.
+     *
+     * @param defaultOrder the default {@link ByteOrder} of this factory
+     * @param direct       {@code true} to pool direct buffers,
+     *                     {@code false} to pool heap buffers
+     */
+    public PooledChannelBufferFactory(ByteOrder defaultOrder, boolean direct) {
+        this(defaultOrder, direct, DEFAULT_NUM_ARENAS, DEFAULT_PAGE_SIZE, DEFAULT_MAX_ORDER);
+    }
+
+    /**
+     * Creates a new factory with the specified arena settings.
+     *
+     * @param defaultOrder the default {@link ByteOrder} of this factory
+     * @param direct       {@code true} to pool direct buffers,
+     *                     {@code false} to pool heap buffers
+     * @param nArenas      the number of arenas
+     * @param pageSize     the size of a page, which must be a power of two
+     *                     greater than or equal to {@code 4096}
+     * @param maxOrder     the depth of the buddy tree of a chunk, i.e. a chunk
+     *                     consists of {@code 1 << maxOrder} pages
+     */
+    public PooledChannelBufferFactory(
+            ByteOrder defaultOrder, boolean direct, int nArenas, int pageSize, int maxOrder) {
+        this(defaultOrder, direct, nArenas, pageSize, maxOrder,
+             DEFAULT_TINY_CACHE_SIZE, DEFAULT_SMALL_CACHE_SIZE, DEFAULT_NORMAL_CACHE_SIZE,
+             DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL);
+    }
+
+    /**
+     * Creates a new factory with the specified arena and thread cache settings.
+     *
+     * @param tinyCacheSize           the number of cached regions per tiny size class,
+     *                                or {@code 0} to disable the cache
+     * @param smallCacheSize          the number of cached regions per small size class,
+     *                                or {@code 0} to disable the cache
+     * @param normalCacheSize         the number of cached regions per normal size class,
+     *                                or {@code 0} to disable the cache
+     * @param maxCachedBufferCapacity the maximum capacity of a normal buffer to cache
+     * @param cacheTrimInterval       the number of cached allocations after which
+     *                                the unused cached regions are given back
+     */
+    public PooledChannelBufferFactory(
+            ByteOrder defaultOrder, boolean direct, int nArenas, int pageSize, int maxOrder,
+            int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+            int maxCachedBufferCapacity, int cacheTrimInterval) {
+        this(defaultOrder, direct, nArenas, pageSize, maxOrder,
+             tinyCacheSize, smallCacheSize, normalCacheSize,
+             maxCachedBufferCapacity, cacheTrimInterval, DEFAULT_MAX_HANDOFFS);
+    }
+
+    /**
+     * Creates a new factory with the specified arena and thread cache settings.
+     *
+     * @param maxHandoffs the maximum number of regions released by other
+     *                    threads which wait to be taken back into the cache
+     *                    of the allocating thread, or {@code 0} to give them
+     *                    back to the arena directly
+     */
+    public PooledChannelBufferFactory(
+            ByteOrder defaultOrder, boolean direct, int nArenas, int pageSize, int maxOrder,
+            int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+            int maxCachedBufferCapacity, int cacheTrimInterval, int maxHandoffs) {
+        super(defaultOrder);
+        if (nArenas <= 0) {
+            throw new IllegalArgumentException("nArenas: " + nArenas + " (expected: > 0)");
+        }
+        if (maxHandoffs < 0) {
+            throw new IllegalArgumentException("maxHandoffs: " + maxHandoffs + " (expected: >= 0)");
+        }
+
+        int pageShifts = validateAndCalculatePageShifts(pageSize);
+        chunkSize = validateAndCalculateChunkSize(pageSize, maxOrder);
+
+        this.direct = direct;
+        this.tinyCacheSize = tinyCacheSize;
+        this.smallCacheSize = smallCacheSize;
+        this.normalCacheSize = normalCacheSize;
+        this.maxCachedBufferCapacity = maxCachedBufferCapacity;
+        this.cacheTrimInterval = cacheTrimInterval;
+        this.maxHandoffs = maxHandoffs;
+
+        arenas = new PoolArena[nArenas];
+        for (int i = 0; i < arenas.length; i ++) {
+            arenas[i] = new PoolArena(this, direct, pageSize, maxOrder, pageShifts, chunkSize);
+        }
+    }
+
+    private static int validateAndCalculatePageShifts(int pageSize) {
+        if (pageSize < MIN_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    "pageSize: " + pageSize + " (expected: " + MIN_PAGE_SIZE + "+)");
+        }
+        if ((pageSize & pageSize - 1) != 0) {
+            throw new IllegalArgumentException(
+                    "pageSize: " + pageSize + " (expected: power of 2)");
+        }
+        return PoolChunk.log2(pageSize);
+    }
+
+    private static int validateAndCalculateChunkSize(int pageSize, int maxOrder) {
+        if (maxOrder > 14) {
+            throw new IllegalArgumentException("maxOrder: " + maxOrder + " (expected: 0-14)");
+        }
+
+        // Ensure the resulting chunkSize does not overflow.
+        int chunkSize = pageSize;
+        for (int i = maxOrder; i > 0; i --) {
+            if (chunkSize > MAX_CHUNK_SIZE / 2) {
+                throw new IllegalArgumentException(String.format(
+                        "pageSize (%d) << maxOrder (%d) must not exceed %d", pageSize, maxOrder, MAX_CHUNK_SIZE));
+            }
+            chunkSize <<= 1;
+        }
+        return chunkSize;
+    }
+
+    /**
+     * Returns {@code true} if and only if this factory pools direct buffers.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Returns the size of a chunk of this factory in bytes.
+     */
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    public ChannelBuffer getBuffer(ByteOrder order, int capacity) {
+        if (order == null) {
+            throw new NullPointerException("order");
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        if (capacity == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        PoolThreadCache cache = threadCache.get();
+        return cache.arena.allocate(cache, order, capacity);
+    }
+
+    public ChannelBuffer getBuffer(ByteOrder order, byte[] array, int offset, int length) {
+        if (array == null) {
+            throw new NullPointerException("array");
+        }
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException("offset: " + offset);
+        }
+        if (length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (offset + length > array.length) {
+            throw new IndexOutOfBoundsException("length: " + length);
+        }
+
+        ChannelBuffer buf = getBuffer(order, length);
+        buf.writeBytes(array, offset, length);
+        return buf;
+    }
+
+    public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+        ChannelBuffer buf = getBuffer(nioBuffer.order(), nioBuffer.remaining());
+        int pos = nioBuffer.position();
+        buf.writeBytes(nioBuffer);
+        nioBuffer.position(pos);
+        return buf;
+    }
+
+    /**
+     * Returns the usage statistics of all arenas of this factory.
+     */
+    public List<PoolArenaStats> arenaStats() {
+        List<PoolArenaStats> stats = new ArrayList<PoolArenaStats>(arenas.length);
+        for (PoolArena a: arenas) {
+            stats.add(a.stats());
+        }
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * Gives back the memory regions cached by the calling thread to the arenas.
+     * Call this method before a thread which allocated from this factory
+     * becomes idle for a long time, so that the cached memory can be re-used
+     * by other threads.
+     */
+    public void freeThreadLocalCache() {
+        PoolThreadCache cache = threadCache.get();
+        threadCache.remove();
+        if (threadCaches.remove(cache)) {
+            cache.free();
+        }
+    }
+
+    /**
+     * Gives back the memory regions cached by the threads which have
+     * terminated to the arenas.  This is done automatically whenever a new
+     * thread allocates from this factory for the first time, but can be called
+     * explicitly after shutting down the threads which used this factory.
+     */
+    public void freeDeadThreadCaches() {
+        for (PoolThreadCache cache: threadCaches) {
+            // Thread.isAlive() returning false guarantees the visibility of
+            // everything the owning thread did to its cache, and the removal
+            // guarantees that the cache is freed only once.
+            if (!cache.thread.isAlive() && threadCaches.remove(cache)) {
+                cache.free();
+            }
+        }
+    }
+
+    private PoolArena leastUsedArena() {
+        PoolArena minArena = arenas[0];
+        for (int i = 1; i < arenas.length; i ++) {
+            PoolArena arena = arenas[i];
+            if (arena.numThreadCaches.get() < minArena.numThreadCaches.get()) {
+                minArena = arena;
+            }
+        }
+        return minArena;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(256);
+        buf.append(getClass().getSimpleName());
+        buf.append('(');
+        buf.append(direct? "direct" : "heap");
+        buf.append(", arenas=").append(arenas.length);
+        buf.append(", chunkSize=").append(chunkSize);
+        buf.append(')');
+        return buf.toString();
+    }
+}
@@ -73,6 +73,33 @@ public class SlicedChannelBuffer extends AbstractChannelBuffer implements Wrappe
         return buffer.isDirect();
     }
 
+    @Override
+    public int refCnt() {
+        return buffer.refCnt();
+    }
+
+    @Override
+    public ChannelBuffer retain() {
+        buffer.retain();
+        return this;
+    }
+
+    @Override
+    public ChannelBuffer retain(int increment) {
+        buffer.retain(increment);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return buffer.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return buffer.release(decrement);
+    }
+
     public int capacity() {
         return length;
     }
@@ -148,6 +175,30 @@ public class SlicedChannelBuffer extends AbstractChannelBuffer implements Wrappe
         buffer.getBytes(index + adjustment, dst);
     }
 
+    @Override
+    public void getInts(int index, int[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        buffer.getInts(index + adjustment, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getLongs(int index, long[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        buffer.getLongs(index + adjustment, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getFloats(int index, float[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 4, dstIndex, dst.length);
+        buffer.getFloats(index + adjustment, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getDoubles(int index, double[] dst, int dstIndex, int length) {
+        checkBulkIndex(index, length, 8, dstIndex, dst.length);
+        buffer.getDoubles(index + adjustment, dst, dstIndex, length);
+    }
+
     public void setByte(int index, int value) {
         checkIndex(index);
         buffer.setByte(index + adjustment, value);
@@ -188,6 +239,30 @@ public class SlicedChannelBuffer extends AbstractChannelBuffer implements Wrappe
         buffer.setBytes(index + adjustment, src);
     }
 
+    @Override
+    public void setInts(int index, int[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 4, srcIndex, src.length);
+        buffer.setInts(index + adjustment, src, srcIndex, length);
+    }
+
+    @Override
+    public void setLongs(int index, long[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 8, srcIndex, src.length);
+        buffer.setLongs(index + adjustment, src, srcIndex, length);
+    }
+
+    @Override
+    public void setFloats(int index, float[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 4, srcIndex, src.length);
+        buffer.setFloats(index + adjustment, src, srcIndex, length);
+    }
+
+    @Override
+    public void setDoubles(int index, double[] src, int srcIndex, int length) {
+        checkBulkIndex(index, length, 8, srcIndex, src.length);
+        buffer.setDoubles(index + adjustment, src, srcIndex, length);
+    }
+
     public void getBytes(int index, OutputStream out, int length)
             throws IOException {
         checkIndex(index, length);
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.CharsetUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes and decodes US-ASCII, ISO-8859-1 and UTF-8 text directly between
+ * a {@link CharSequence} and the content of a {@link ChannelBuffer}, without
+ * the {@link java.nio.charset.CharsetEncoder} and the intermediate NIO
+ * buffers.
+ * <p>
+ * The output is identical to the one of the encoders and decoders returned
+ * by {@link CharsetUtil}, which replace malformed input and unmappable
+ * characters: an unpaired surrogate or an unmappable character is encoded
+ * as {@code '?'}, and a byte which is not valid US-ASCII is decoded as
+ * U+FFFD.  A malformed UTF-8 sequence is left to the JDK decoder,
+ * together with the rest of the input, because its replacement rules are
+ * intricate.
+ */
+final class StringCodecUtil {
+
+    private static final byte REPLACEMENT_BYTE = '?';
+    private static final int HIGH_SURROGATE_OFFSET =
+        Character.MIN_HIGH_SURROGATE - (Character.MIN_SUPPLEMENTARY_CODE_POINT >>> 10);
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    /**
+     * Returns the maximum number of bytes per {@code char} of the specified
+     * charset if this class can encode and decode it, or {@code 0} otherwise.
+     */
+    static int maxBytesPerChar(Charset charset) {
+        if (CharsetUtil.UTF_8.equals(charset)) {
+            return 3;
+        }
+        if (CharsetUtil.US_ASCII.equals(charset) || CharsetUtil.ISO_8859_1.equals(charset)) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of bytes of the specified region of {@code seq}
+     * encoded in UTF-8.
+     */
+    static int utf8Length(CharSequence seq, int start, int end) {
+        int length = end - start;
+        for (int i = start; i < end; i ++) {
+            char c = seq.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length ++;
+            } else if (!isSurrogate(c)) {
+                length += 2;
+            } else if (isSurrogatePair(c, seq, i, end)) {
+                // 4 bytes for 2 chars
+                length += 2;
+                i ++;
+            }
+            // An unpaired surrogate is replaced with a single byte.
+        }
+        return length;
+    }
+
+    /**
+     * Encodes the specified region of {@code seq} in the specified charset
+     * into {@code dst} at {@code index}, which must have enough room, and
+     * returns the index after the last written byte.
+     */
+    static int encode(CharSequence seq, int start, int end, Charset charset, byte[] dst, int index) {
+        if (CharsetUtil.UTF_8.equals(charset)) {
+            return encodeUtf8(seq, start, end, dst, index);
+        }
+        return encodeSingleByte(seq, start, end, CharsetUtil.US_ASCII.equals(charset)? 0x7F : 0xFF, dst, index);
+    }
+
+    static int encodeUtf8(CharSequence seq, int start, int end, byte[] dst, int index) {
+        int i = start;
+        // ASCII fast loop
+        for (; i < end; i ++) {
+            char c = seq.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            dst[index ++] = (byte) c;
+        }
+
+        for (; i < end; i ++) {
+            char c = seq.charAt(i);
+            if (c < 0x80) {
+                dst[index ++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[index ++] = (byte) (0xC0 | c >> 6);
+                dst[index ++] = (byte) (0x80 | c & 0x3F);
+            } else if (!isSurrogate(c)) {
+                dst[index ++] = (byte) (0xE0 | c >> 12);
+                dst[index ++] = (byte) (0x80 | c >> 6 & 0x3F);
+                dst[index ++] = (byte) (0x80 | c & 0x3F);
+            } else if (isSurrogatePair(c, seq, i, end)) {
+                int codePoint = Character.toCodePoint(c, seq.charAt(++ i));
+                dst[index ++] = (byte) (0xF0 | codePoint >> 18);
+                dst[index ++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                dst[index ++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                dst[index ++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                dst[index ++] = REPLACEMENT_BYTE;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The variant of {@link #encodeUtf8(CharSequence, int, int, byte[], int)}
+     * for a buffer without a backing array.
+     */
+    static int encodeUtf8(CharSequence seq, int start, int end, ChannelBuffer dst, int index) {
+        for (int i = start; i < end; i ++) {
+            char c = seq.charAt(i);
+            if (c < 0x80) {
+                dst.setByte(index ++, c);
+            } else if (c < 0x800) {
+                dst.setByte(index ++, 0xC0 | c >> 6);
+                dst.setByte(index ++, 0x80 | c & 0x3F);
+            } else if (!isSurrogate(c)) {
+                dst.setByte(index ++, 0xE0 | c >> 12);
+                dst.setByte(index ++, 0x80 | c >> 6 & 0x3F);
+                dst.setByte(index ++, 0x80 | c & 0x3F);
+            } else if (isSurrogatePair(c, seq, i, end)) {
+                int codePoint = Character.toCodePoint(c, seq.charAt(++ i));
+                dst.setByte(index ++, 0xF0 | codePoint >> 18);
+                dst.setByte(index ++, 0x80 | codePoint >> 12 & 0x3F);
+                dst.setByte(index ++, 0x80 | codePoint >> 6 & 0x3F);
+                dst.setByte(index ++, 0x80 | codePoint & 0x3F);
+            } else {
+                dst.setByte(index ++, REPLACEMENT_BYTE);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Encodes the specified region of {@code seq} into one byte per character
+     * or surrogate pair.  The characters above {@code maxChar} are unmappable.
+     */
+    static int encodeSingleByte(CharSequence seq, int start, int end, int maxChar, byte[] dst, int index) {
+        for (int i = start; i < end; i ++) {
+            char c = seq.charAt(i);
+            if (c <= maxChar) {
+                dst[index ++] = (byte) c;
+            } else {
+                if (isSurrogatePair(c, seq, i, end)) {
+                    i ++;
+                }
+                dst[index ++] = REPLACEMENT_BYTE;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of bytes {@link #encodeSingleByte(CharSequence, int, int, int, byte[], int)}
+     * writes for the specified region of {@code seq}.
+     */
+    static int singleByteLength(CharSequence seq, int start, int end) {
+        int length = end - start;
+        for (int i = start; i < end; i ++) {
+            char c = seq.charAt(i);
+            if (isSurrogatePair(c, seq, i, end)) {
+                length --;
+                i ++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The variant of {@link #encodeSingleByte(CharSequence, int, int, int, byte[], int)}
+     * for a buffer without a backing array.
+     */
+    static int encodeSingleByte(CharSequence seq, int start, int end, int maxChar, ChannelBuffer dst, int index) {
+        for (int i = start; i < end; i ++) {
+            char c = seq.charAt(i);
+            if (c <= maxChar) {
+                dst.setByte(index ++, c);
+            } else {
+                if (isSurrogatePair(c, seq, i, end)) {
+                    i ++;
+                }
+                dst.setByte(index ++, REPLACEMENT_BYTE);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Decodes the specified region of {@code buffer}, which must be within its
+     * capacity, in the specified charset.  The charset must be one of those
+     * {@link #maxBytesPerChar(Charset)} accepts.
+     */
+    static String decode(ChannelBuffer buffer, int index, int length, Charset charset) {
+        final byte[] array;
+        final int offset;
+        if (buffer.hasArray()) {
+            array = buffer.array();
+            offset = buffer.arrayOffset() + index;
+        } else {
+            array = new byte[length];
+            offset = 0;
+            buffer.getBytes(index, array);
+        }
+
+        if (CharsetUtil.UTF_8.equals(charset)) {
+            return decodeUtf8(array, offset, length);
+        }
+        if (CharsetUtil.ISO_8859_1.equals(charset)) {
+            return decodeLatin1(array, offset, length);
+        }
+        return decodeAscii(array, offset, length);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String decodeLatin1(byte[] array, int offset, int length) {
+        // Every byte is the lower half of a char whose upper half is 0.
+        return new String(array, 0, offset, length);
+    }
+
+    private static String decodeAscii(byte[] array, int offset, int length) {
+        final int end = offset + length;
+        for (int i = offset; i < end; i ++) {
+            if (array[i] < 0) {
+                char[] chars = new char[length];
+                int j = 0;
+                for (int k = offset; k < i; k ++) {
+                    chars[j ++] = (char) array[k];
+                }
+                for (int k = i; k < end; k ++) {
+                    byte b = array[k];
+                    chars[j ++] = b < 0? REPLACEMENT_CHAR : (char) b;
+                }
+                return new String(chars);
+            }
+        }
+        return decodeLatin1(array, offset, length);
+    }
+
+    private static String decodeUtf8(byte[] array, int offset, int length) {
+        final int end = offset + length;
+        int i = offset;
+        // ASCII fast loop
+        while (i < end && array[i] >= 0) {
+            i ++;
+        }
+        if (i == end) {
+            return decodeLatin1(array, offset, length);
+        }
+
+        // A UTF-8 sequence never yields more chars than bytes.
+        final char[] chars = new char[length];
+        int j = 0;
+        for (int k = offset; k < i; k ++) {
+            chars[j ++] = (char) array[k];
+        }
+
+        while (i < end) {
+            int b1 = array[i];
+            if (b1 >= 0) {
+                chars[j ++] = (char) b1;
+                i ++;
+                continue;
+            }
+
+            b1 &= 0xFF;
+            if (b1 >= 0xC2 && b1 <= 0xDF) {
+                if (i + 1 < end && isContinuation(array[i + 1])) {
+                    chars[j ++] = (char) ((b1 & 0x1F) << 6 | array[i + 1] & 0x3F);
+                    i += 2;
+                    continue;
+                }
+            } else if (b1 >= 0xE0 && b1 <= 0xEF) {
+                if (i + 2 < end) {
+                    int b2 = array[i + 1] & 0xFF;
+                    int b3 = array[i + 2];
+                    int min = b1 == 0xE0? 0xA0 : 0x80;
+                    int max = b1 == 0xED? 0x9F : 0xBF;
+                    if (b2 >= min && b2 <= max && isContinuation(b3)) {
+                        chars[j ++] = (char) ((b1 & 0x0F) << 12 | (b2 & 0x3F) << 6 | b3 & 0x3F);
+                        i += 3;
+                        continue;
+                    }
+                }
+            } else if (b1 >= 0xF0 && b1 <= 0xF4) {
+                if (i + 3 < end) {
+                    int b2 = array[i + 1] & 0xFF;
+                    int b3 = array[i + 2];
+                    int b4 = array[i + 3];
+                    int min = b1 == 0xF0? 0x90 : 0x80;
+                    int max = b1 == 0xF4? 0x8F : 0xBF;
+                    if (b2 >= min && b2 <= max && isContinuation(b3) && isContinuation(b4)) {
+                        int codePoint = (b1 & 0x07) << 18 | (b2 & 0x3F) << 12 | (b3 & 0x3F) << 6 | b4 & 0x3F;
+                        chars[j ++] = (char) ((codePoint >>> 10) + HIGH_SURROGATE_OFFSET);
+                        chars[j ++] = (char) ((codePoint & 0x3FF) + Character.MIN_LOW_SURROGATE);
+                        i += 4;
+                        continue;
+                    }
+                }
+            }
+
+            // Malformed or truncated - let the JDK decoder replace it.
+            return new StringBuilder(j + end - i)
+                    .append(chars, 0, j)
+                    .append(ChannelBuffers.decodeString(ByteBuffer.wrap(array, i, end - i), CharsetUtil.UTF_8))
+                    .toString();
+        }
+        return new String(chars, 0, j);
+    }
+
+    private static boolean isContinuation(int b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private static boolean isSurrogatePair(char c, CharSequence seq, int index, int end) {
+        return Character.isHighSurrogate(c) && index + 1 < end && Character.isLowSurrogate(seq.charAt(index + 1));
+    }
+
+    private StringCodecUtil() {
+        // Unused
+    }
+}
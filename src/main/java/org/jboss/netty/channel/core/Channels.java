@@ -23,6 +23,7 @@ import org.jboss.netty.channel.event.impl.DefaultChildChannelStateEvent;
 import org.jboss.netty.channel.event.impl.DefaultExceptionEvent;
 import org.jboss.netty.channel.event.impl.DefaultWriteCompletionEvent;
 import org.jboss.netty.channel.event.impl.DownstreamChannelStateEvent;
+import org.jboss.netty.channel.event.impl.DownstreamFlushEvent;
 import org.jboss.netty.channel.event.impl.DownstreamMessageEvent;
 import org.jboss.netty.channel.event.impl.UpstreamChannelStateEvent;
 import org.jboss.netty.channel.event.impl.UpstreamMessageEvent;
@@ -740,6 +741,76 @@ public final class Channels {
                 new DownstreamMessageEvent(ctx.getChannel(), future, message, remoteAddress));
     }
 
+    /**
+     * Sends a {@code "write"} request to the last
+     * {@link ChannelDownstreamHandler} in the {@link ChannelPipeline} of
+     * the specified {@link Channel}, allowing the transport to hold the
+     * message back until {@link #flush(Channel)} is called.  Use this to
+     * batch many small messages into fewer system calls.
+     *
+     * @param channel  the channel to write a message
+     * @param message  the message to write to the channel
+     *
+     * @return the {@link ChannelFuture} which will be notified when the
+     *         write operation is done
+     */
+    public static ChannelFuture writeWithoutFlush(Channel channel, Object message) {
+        ChannelFuture future = future(channel);
+        channel.getPipeline().sendDownstream(
+                new DownstreamMessageEvent(channel, future, message, null, false));
+        return future;
+    }
+
+    /**
+     * Sends a {@code "write"} request which does not flush to the
+     * {@link ChannelDownstreamHandler} which is placed in the closest
+     * downstream from the handler associated with the specified
+     * {@link ChannelHandlerContext}.
+     *
+     * @param ctx     the context
+     * @param future  the future which will be notified when the write
+     *                operation is done
+     * @param message the message to write to the channel
+     */
+    public static void writeWithoutFlush(
+            ChannelHandlerContext ctx, ChannelFuture future, Object message) {
+        ctx.sendDownstream(
+                new DownstreamMessageEvent(ctx.getChannel(), future, message, null, false));
+    }
+
+    /**
+     * Sends a {@code "flush"} request to the last
+     * {@link ChannelDownstreamHandler} in the {@link ChannelPipeline} of
+     * the specified {@link Channel}.
+     *
+     * @param channel  the channel to flush
+     *
+     * @return the {@link ChannelFuture} which will be notified when the
+     *         messages which were pending at the time of the flush have been
+     *         written, or when writing them failed
+     */
+    public static ChannelFuture flush(Channel channel) {
+        ChannelFuture future = future(channel);
+        channel.getPipeline().sendDownstream(
+                new DownstreamFlushEvent(channel, future));
+        return future;
+    }
+
+    /**
+     * Sends a {@code "flush"} request to the
+     * {@link ChannelDownstreamHandler} which is placed in the closest
+     * downstream from the handler associated with the specified
+     * {@link ChannelHandlerContext}.
+     *
+     * @param ctx     the context
+     * @param future  the future which will be notified when the messages
+     *                which were pending at the time of the flush have been
+     *                written, or when writing them failed
+     */
+    public static void flush(ChannelHandlerContext ctx, ChannelFuture future) {
+        ctx.sendDownstream(new DownstreamFlushEvent(ctx.getChannel(), future));
+    }
+
     /**
      * Sends a {@code "setInterestOps"} request to the last
      * {@link ChannelDownstreamHandler} in the {@link ChannelPipeline} of
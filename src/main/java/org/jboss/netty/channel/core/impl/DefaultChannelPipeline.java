@@ -17,6 +17,7 @@ package org.jboss.netty.channel.core.impl;
 
 import org.jboss.netty.channel.event.ChannelEvent;
 import org.jboss.netty.channel.event.ExceptionEvent;
+import org.jboss.netty.channel.event.MessageEvent;
 import org.jboss.netty.channel.event.impl.UpstreamMessageEvent;
 import org.jboss.netty.channel.exception.ChannelHandlerLifeCycleException;
 import org.jboss.netty.channel.exception.ChannelPipelineException;
@@ -32,6 +33,7 @@ import org.jboss.netty.channel.core.Channels;
 import org.jboss.netty.channel.core.LifeCycleAwareChannelHandler;
 import org.jboss.netty.logging.InternalLogger;
 import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.ReferenceCountUtil;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -568,6 +570,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
                         "The pipeline contains no upstream handlers; discarding: " + e);
             }
 
+            releaseUnhandledMessage(e);
             return;
         }
 
@@ -615,6 +618,16 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         }
     }
 
+    /**
+     * Releases the message of the specified event which reached the end of
+     * the pipeline, so that a reference-counted message is not leaked.
+     */
+    static void releaseUnhandledMessage(ChannelEvent e) {
+        if (e instanceof MessageEvent) {
+            ReferenceCountUtil.safeRelease(((MessageEvent) e).getMessage());
+        }
+    }
+
     private DefaultChannelHandlerContext getActualUpstreamContext(DefaultChannelHandlerContext ctx) {
         if (ctx == null) {
             return null;
@@ -804,6 +817,8 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             DefaultChannelHandlerContext next = getActualUpstreamContext(this.next);
             if (next != null) {
                 DefaultChannelPipeline.this.sendUpstream(next, e);
+            } else {
+                releaseUnhandledMessage(e);
             }
         }
     }
@@ -816,6 +831,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             if (logger.isWarnEnabled()) {
                 logger.warn("Not attached yet; discarding: " + e);
             }
+            releaseUnhandledMessage(e);
         }
 
         public void exceptionCaught(ChannelPipeline pipeline,
@@ -17,6 +17,7 @@ package org.jboss.netty.channel.core.impl;
 
 import org.jboss.netty.channel.event.ChannelEvent;
 import org.jboss.netty.channel.event.ChannelStateEvent;
+import org.jboss.netty.channel.event.FlushEvent;
 import org.jboss.netty.channel.event.MessageEvent;
 import org.jboss.netty.channel.core.Channel;
 import org.jboss.netty.channel.core.ChannelDownstreamHandler;
@@ -77,6 +78,8 @@ public class SimpleChannelDownstreamHandler implements ChannelDownstreamHandler
 
         if (e instanceof MessageEvent) {
             writeRequested(ctx, (MessageEvent) e);
+        } else if (e instanceof FlushEvent) {
+            flushRequested(ctx, (FlushEvent) e);
         } else if (e instanceof ChannelStateEvent) {
             ChannelStateEvent evt = (ChannelStateEvent) e;
             switch (evt.getState()) {
@@ -117,6 +120,13 @@ public class SimpleChannelDownstreamHandler implements ChannelDownstreamHandler
         ctx.sendDownstream(e);
     }
 
+    /**
+     * Invoked when {@link Channels#flush(Channel)} was called.
+     */
+    public void flushRequested(ChannelHandlerContext ctx, FlushEvent e) throws Exception {
+        ctx.sendDownstream(e);
+    }
+
     /**
      * Invoked when {@link Channel#bind(SocketAddress)} was called.
      */
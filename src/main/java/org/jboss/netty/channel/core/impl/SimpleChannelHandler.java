@@ -25,6 +25,7 @@ import org.jboss.netty.channel.event.ChannelEvent;
 import org.jboss.netty.channel.core.ChannelHandler;
 import org.jboss.netty.channel.core.ChannelHandlerContext;
 import org.jboss.netty.channel.core.ChannelUpstreamHandler;
+import org.jboss.netty.channel.core.Channels;
 import org.jboss.netty.logging.InternalLogger;
 import org.jboss.netty.logging.InternalLoggerFactory;
 
@@ -259,6 +260,8 @@ public class SimpleChannelHandler implements ChannelUpstreamHandler, ChannelDown
 
         if (e instanceof MessageEvent) {
             writeRequested(ctx, (MessageEvent) e);
+        } else if (e instanceof FlushEvent) {
+            flushRequested(ctx, (FlushEvent) e);
         } else if (e instanceof ChannelStateEvent) {
             ChannelStateEvent evt = (ChannelStateEvent) e;
             switch (evt.getState()) {
@@ -299,6 +302,13 @@ public class SimpleChannelHandler implements ChannelUpstreamHandler, ChannelDown
         ctx.sendDownstream(e);
     }
 
+    /**
+     * Invoked when {@link Channels#flush(Channel)} was called.
+     */
+    public void flushRequested(ChannelHandlerContext ctx, FlushEvent e) throws Exception {
+        ctx.sendDownstream(e);
+    }
+
     /**
      * Invoked when {@link Channel#bind(SocketAddress)} was called.
      */
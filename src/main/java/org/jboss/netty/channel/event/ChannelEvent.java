@@ -153,6 +153,12 @@ import java.net.SocketAddress;
  * <td>{@link MessageEvent}</td><td>Send a message to the {@link Channel}.</td>
  * </tr>
  * <tr>
+ * <td>{@code "flush"}</td>
+ * <td>{@link FlushEvent}</td>
+ * <td>Write out the messages which were sent to the {@link Channel} without
+ *     being flushed.</td>
+ * </tr>
+ * <tr>
  * <td>{@code "bind"}</td>
  * <td>{@link ChannelStateEvent}<br/>(state = {@link ChannelState#BOUND BOUND}, value = {@link SocketAddress})</td>
  * <td>Bind the {@link Channel} to the specified local address.</td>
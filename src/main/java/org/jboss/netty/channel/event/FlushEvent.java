@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.event;
+
+import org.jboss.netty.channel.core.Channel;
+
+/**
+ * A {@link ChannelEvent} which represents the request to write out the
+ * messages which were sent to a {@link Channel} without being flushed (see
+ * {@link org.jboss.netty.channel.core.Channels#writeWithoutFlush(Channel, Object)}).
+ * This event is for going downstream only.  Its future is notified once the
+ * messages which were pending at the time of the flush have been written,
+ * or fails if writing the last of them failed, so it is safe to close the
+ * channel when it completes.  Each message's own future is still notified
+ * when that message is written.
+ */
+public interface FlushEvent extends ChannelEvent {
+    // No additional methods
+}
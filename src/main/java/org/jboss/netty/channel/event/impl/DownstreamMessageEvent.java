@@ -20,24 +20,42 @@ import java.net.SocketAddress;
 import org.jboss.netty.channel.core.Channel;
 import org.jboss.netty.channel.event.MessageEvent;
 import org.jboss.netty.channel.future.ChannelFuture;
+import org.jboss.netty.util.internal.MpscLinkedQueueNode;
 import org.jboss.netty.util.internal.StringUtil;
 
 /**
- * The default downstream {@link MessageEvent} implementation.
+ * The default downstream {@link MessageEvent} implementation.  It is also the
+ * node of the lock-free write request queue of a transport, so that queueing
+ * a write request allocates nothing.
  */
-public class DownstreamMessageEvent implements MessageEvent {
+public class DownstreamMessageEvent extends MpscLinkedQueueNode<MessageEvent> implements MessageEvent {
 
     private final Channel channel;
     private final ChannelFuture future;
     private final Object message;
     private final SocketAddress remoteAddress;
+    private final boolean flush;
 
     /**
-     * Creates a new instance.
+     * Creates a new instance which is flushed as soon as the transport
+     * receives it.
      */
     public DownstreamMessageEvent(
             Channel channel, ChannelFuture future,
             Object message, SocketAddress remoteAddress) {
+        this(channel, future, message, remoteAddress, true);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param flush {@code false} if the transport may hold the message back
+     *              until a {@link org.jboss.netty.channel.event.FlushEvent}
+     *              arrives or enough data has been queued
+     */
+    public DownstreamMessageEvent(
+            Channel channel, ChannelFuture future,
+            Object message, SocketAddress remoteAddress, boolean flush) {
 
         if (channel == null) {
             throw new NullPointerException("channel");
@@ -56,6 +74,7 @@ public class DownstreamMessageEvent implements MessageEvent {
         } else {
             this.remoteAddress = channel.getRemoteAddress();
         }
+        this.flush = flush;
     }
 
     public Channel getChannel() {
@@ -74,13 +93,26 @@ public class DownstreamMessageEvent implements MessageEvent {
         return remoteAddress;
     }
 
+    /**
+     * Returns {@code true} if this message has to be written out as soon as
+     * possible, or {@code false} if it may wait for an explicit flush.
+     */
+    public boolean isFlush() {
+        return flush;
+    }
+
+    @Override
+    public MessageEvent value() {
+        return this;
+    }
+
     @Override
     public String toString() {
         if (getRemoteAddress() == getChannel().getRemoteAddress()) {
-            return getChannel().toString() + " WRITE: " +
+            return getChannel().toString() + (isFlush()? " WRITE: " : " WRITE (NO FLUSH): ") +
                    StringUtil.stripControlCharacters(getMessage());
         } else {
-            return getChannel().toString() + " WRITE: " +
+            return getChannel().toString() + (isFlush()? " WRITE: " : " WRITE (NO FLUSH): ") +
                    StringUtil.stripControlCharacters(getMessage()) + " to " +
                    getRemoteAddress();
         }
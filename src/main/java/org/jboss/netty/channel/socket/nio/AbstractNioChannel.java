@@ -15,7 +15,6 @@
  */
 package org.jboss.netty.channel.socket.nio;
 
-import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.core.impl.AbstractChannel;
 import org.jboss.netty.channel.core.Channel;
 import org.jboss.netty.channel.core.ChannelFactory;
@@ -23,20 +22,13 @@ import org.jboss.netty.channel.core.ChannelPipeline;
 import org.jboss.netty.channel.core.ChannelSink;
 import org.jboss.netty.channel.event.MessageEvent;
 import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.SendBuffer;
-import org.jboss.netty.util.internal.ThreadLocalBoolean;
 
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.jboss.netty.channel.core.Channels.*;
-
 public abstract class AbstractNioChannel<C extends SelectableChannel & WritableByteChannel> extends AbstractChannel {
 
     /**
@@ -44,11 +36,6 @@ public abstract class AbstractNioChannel<C extends SelectableChannel & WritableB
      */
     public final AbstractNioWorker worker;
 
-    /**
-     * Monitor object for synchronizing access to the {@link WriteRequestQueue}.
-     */
-    final Object writeLock = new Object();
-
     /**
      * WriteTask that performs write operations.
      */
@@ -62,7 +49,7 @@ public abstract class AbstractNioChannel<C extends SelectableChannel & WritableB
     /**
      * Queue of write {@link MessageEvent}s.
      */
-    public final Queue<MessageEvent> writeBufferQueue = new WriteRequestQueue();
+    final WriteRequestQueue writeBufferQueue = new WriteRequestQueue(this);
 
     /**
      * Keeps track of the number of bytes that the {@link WriteRequestQueue} currently
@@ -75,11 +62,23 @@ public abstract class AbstractNioChannel<C extends SelectableChannel & WritableB
      */
     final AtomicInteger highWaterMarkCounter = new AtomicInteger();
 
+    static final int ST_UNREGISTERED = 0;
+    static final int ST_REGISTERED = 1;
+    static final int ST_CLOSED = 2;
+
+    /**
+     * Whether the channel is counted by {@link AbstractNioWorker#getRegisteredChannelCount()}.
+     * A channel which has been closed is never counted again.
+     */
+    final AtomicInteger registrationState = new AtomicInteger();
+
     /**
-     * The current write {@link MessageEvent}
+     * The current write {@link MessageEvent}.  This and the following fields
+     * are accessed by the I/O thread only.
      */
     MessageEvent currentWriteEvent;
     SendBuffer currentWriteBuffer;
+    final AdaptiveWriteSpinCount writeSpinCount = new AdaptiveWriteSpinCount();
 
     /**
      * Boolean that indicates that write operation is in progress.
@@ -201,130 +200,6 @@ public abstract class AbstractNioChannel<C extends SelectableChannel & WritableB
 
     abstract InetSocketAddress getRemoteSocketAddress() throws Exception;
 
-    private final class WriteRequestQueue implements Queue<MessageEvent> {
-        private final ThreadLocalBoolean notifying = new ThreadLocalBoolean();
-
-        private final Queue<MessageEvent> queue;
-
-        public WriteRequestQueue() {
-            queue = new ConcurrentLinkedQueue<MessageEvent>();
-        }
-
-        public MessageEvent remove() {
-            return queue.remove();
-        }
-
-        public MessageEvent element() {
-            return queue.element();
-        }
-
-        public MessageEvent peek() {
-            return queue.peek();
-        }
-
-        public int size() {
-            return queue.size();
-        }
-
-        public boolean isEmpty() {
-            return queue.isEmpty();
-        }
-
-        public Iterator<MessageEvent> iterator() {
-            return queue.iterator();
-        }
-
-        public Object[] toArray() {
-            return queue.toArray();
-        }
-
-        public <T> T[] toArray(T[] a) {
-            return queue.toArray(a);
-        }
-
-        public boolean containsAll(Collection<?> c) {
-            return queue.containsAll(c);
-        }
-
-        public boolean addAll(Collection<? extends MessageEvent> c) {
-            return queue.addAll(c);
-        }
-
-        public boolean removeAll(Collection<?> c) {
-            return queue.removeAll(c);
-        }
-
-        public boolean retainAll(Collection<?> c) {
-            return queue.retainAll(c);
-        }
-
-        public void clear() {
-            queue.clear();
-        }
-
-        public boolean add(MessageEvent e) {
-            return queue.add(e);
-        }
-
-        public boolean remove(Object o) {
-            return queue.remove(o);
-        }
-
-        public boolean contains(Object o) {
-            return queue.contains(o);
-        }
-
-        public boolean offer(MessageEvent e) {
-            boolean success = queue.offer(e);
-            assert success;
-
-            int messageSize = getMessageSize(e);
-            int newWriteBufferSize = writeBufferSize.addAndGet(messageSize);
-            int highWaterMark =  getConfig().getWriteBufferHighWaterMark();
-
-            if (newWriteBufferSize >= highWaterMark) {
-                if (newWriteBufferSize - messageSize < highWaterMark) {
-                    highWaterMarkCounter.incrementAndGet();
-                    if (!notifying.get()) {
-                        notifying.set(Boolean.TRUE);
-                        fireChannelInterestChanged(AbstractNioChannel.this);
-                        notifying.set(Boolean.FALSE);
-                    }
-                }
-            }
-            return true;
-        }
-
-        public MessageEvent poll() {
-            MessageEvent e = queue.poll();
-            if (e != null) {
-                int messageSize = getMessageSize(e);
-                int newWriteBufferSize = writeBufferSize.addAndGet(-messageSize);
-                int lowWaterMark = getConfig().getWriteBufferLowWaterMark();
-
-                if (newWriteBufferSize == 0 || newWriteBufferSize < lowWaterMark) {
-                    if (newWriteBufferSize + messageSize >= lowWaterMark) {
-                        highWaterMarkCounter.decrementAndGet();
-                        if (isConnected() && !notifying.get()) {
-                            notifying.set(Boolean.TRUE);
-                            fireChannelInterestChanged(AbstractNioChannel.this);
-                            notifying.set(Boolean.FALSE);
-                        }
-                    }
-                }
-            }
-            return e;
-        }
-
-        private int getMessageSize(MessageEvent e) {
-            Object m = e.getMessage();
-            if (m instanceof ChannelBuffer) {
-                return ((ChannelBuffer) m).readableBytes();
-            }
-            return 0;
-        }
-    }
-
     private final class WriteTask implements Runnable {
 
         WriteTask() {
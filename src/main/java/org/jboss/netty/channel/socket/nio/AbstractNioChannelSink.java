@@ -19,10 +19,18 @@ package org.jboss.netty.channel.socket.nio;
 import org.jboss.netty.channel.core.impl.AbstractChannelSink;
 import org.jboss.netty.channel.core.Channel;
 import org.jboss.netty.channel.event.ChannelEvent;
+import org.jboss.netty.channel.event.FlushEvent;
+import org.jboss.netty.channel.event.MessageEvent;
+import org.jboss.netty.channel.event.impl.DownstreamMessageEvent;
 import org.jboss.netty.channel.future.ChannelFuture;
+import org.jboss.netty.channel.future.ChannelFutureListener;
 import org.jboss.netty.channel.core.ChannelPipeline;
 import org.jboss.netty.channel.socket.ChannelRunnableWrapper;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+
 public abstract class AbstractNioChannelSink extends AbstractChannelSink {
 
     @Override
@@ -37,6 +45,101 @@ public abstract class AbstractNioChannelSink extends AbstractChannelSink {
         return super.execute(pipeline, task);
     }
 
+    /**
+     * Queues the message of the specified write request and writes out the
+     * queue unless the request was made without flush and the queue is still
+     * smaller than the auto-flush threshold.  A message which is held back is
+     * written by the next flush, by the next write which does flush, or when
+     * the I/O thread drains the queue on its own (e.g. on {@code OP_WRITE}).
+     */
+    protected static void write(MessageEvent e) {
+        AbstractNioChannel<?> channel = (AbstractNioChannel<?>) e.getChannel();
+        channel.writeBufferQueue.offer(e);
+        if (isFlushNeeded(channel, e)) {
+            channel.worker.writeFromUserCode(channel);
+        }
+    }
+
+    /**
+     * Writes out the messages which were queued without flush.  The future
+     * of the flush is notified when the last message queued before the flush
+     * has been written, so that closing the channel on its completion does
+     * not cut off the pending messages.
+     */
+    protected static void flush(FlushEvent e) {
+        final AbstractNioChannel<?> channel = (AbstractNioChannel<?>) e.getChannel();
+        final ChannelFuture flushFuture = e.getFuture();
+        MessageEvent last = channel.writeBufferQueue.peekLast();
+        channel.worker.writeFromUserCode(channel);
+
+        if (last != null) {
+            // The messages are written in order, so the last one is written after all others.
+            notifyOnCompletion(last.getFuture(), flushFuture);
+            return;
+        }
+
+        // The queue may have been drained while its last message is still
+        // being written, which only the I/O thread can tell.
+        Runnable task = new Runnable() {
+            public void run() {
+                notifyAfterPendingWrite(channel, flushFuture);
+            }
+        };
+        try {
+            channel.worker.executeInIoThread(task);
+        } catch (RejectedExecutionException ex) {
+            // The worker has been shut down - nobody writes the channel anymore.
+            task.run();
+        }
+    }
+
+    /**
+     * Notifies the specified flush future once the message which the I/O
+     * thread is writing has been written, or right away if there is none.
+     * The message may have been queued after the flush, which only delays the
+     * notification.
+     */
+    private static void notifyAfterPendingWrite(AbstractNioChannel<?> channel, ChannelFuture flushFuture) {
+        ChannelFuture pending = AbstractNioWorker.getPendingWriteFuture(channel);
+        if (pending != null) {
+            notifyOnCompletion(pending, flushFuture);
+        } else if (channel.isConnected()) {
+            flushFuture.setSuccess();
+        } else {
+            flushFuture.setFailure(new ClosedChannelException());
+        }
+    }
+
+    private static void notifyOnCompletion(ChannelFuture writeFuture, final ChannelFuture flushFuture) {
+        writeFuture.addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) {
+                if (future.isSuccess()) {
+                    flushFuture.setSuccess();
+                } else {
+                    Throwable cause = future.getCause();
+                    flushFuture.setFailure(cause != null? cause : new CancellationException());
+                }
+            }
+        });
+    }
+
+    private static boolean isFlushNeeded(AbstractNioChannel<?> channel, MessageEvent e) {
+        if (!(e instanceof DownstreamMessageEvent) || ((DownstreamMessageEvent) e).isFlush()) {
+            return true;
+        }
+        if (!channel.isConnected()) {
+            // Let the worker fail the queued writes right away.
+            return true;
+        }
+
+        NioChannelConfig config = channel.getConfig();
+        int threshold = config.getWriteBufferHighWaterMark();
+        if (config instanceof NioSocketChannelConfig) {
+            threshold = Math.min(threshold, ((NioSocketChannelConfig) config).getAutoFlushThreshold());
+        }
+        return channel.writeBufferSize.get() >= threshold;
+    }
+
     @Override
     protected boolean isFireExceptionCaughtLater(ChannelEvent event, Throwable actualCause) {
         Channel channel = event.getChannel();
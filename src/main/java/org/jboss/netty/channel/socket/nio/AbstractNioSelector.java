@@ -23,6 +23,8 @@ import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.ThreadRenamingRunnable;
 import org.jboss.netty.util.internal.DeadLockProofWorker;
+import org.jboss.netty.util.internal.MpscLinkedQueue;
+import org.jboss.netty.util.internal.MpscLinkedQueueNode;
 
 import java.io.IOException;
 import java.nio.channels.CancelledKeyException;
@@ -32,13 +34,16 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.ConcurrentModificationException;
+import java.util.PriorityQueue;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public abstract class AbstractNioSelector implements NioSelector {
 
@@ -54,6 +59,18 @@ public abstract class AbstractNioSelector implements NioSelector {
 
     private static final int CLEANUP_INTERVAL = 256; // XXX Hard-coded value, but won't need customization.
 
+    private static final SelectStrategy DEFAULT_SELECT_STRATEGY = new BlockingSelectStrategy();
+
+    /**
+     * The number of tasks which are run between two checks of the task time budget.
+     */
+    private static final int TASK_BATCH_SIZE = 64;
+
+    /**
+     * The length of the window over which the load of the I/O thread is measured.
+     */
+    private static final long LOAD_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     /**
      * Executor used to execute {@link Runnable}s such as channel registration
      * task.
@@ -76,6 +93,15 @@ public abstract class AbstractNioSelector implements NioSelector {
      */
     protected volatile Selector selector;
 
+    /**
+     * The selected-key set of {@link #selector} if it has been replaced by
+     * {@link SelectorUtil#optimizeSelectedKeys(Selector)}, or {@code null}.
+     * It is reset whenever the {@link Selector} selects outside of
+     * {@link #select(Selector)}, so that {@link #process(Selector)} never
+     * sees a key twice.
+     */
+    protected SelectedSelectionKeySet selectedKeySet;
+
     /**
      * Boolean that controls determines if a blocked Selector.select should
      * break out of its selection process. In our case we use a timeone for
@@ -84,10 +110,49 @@ public abstract class AbstractNioSelector implements NioSelector {
      */
     protected final AtomicBoolean wakenUp = new AtomicBoolean();
 
-    private final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<Runnable>();
+    private final MpscLinkedQueue<Task> taskQueue = new MpscLinkedQueue<Task>();
+
+    /**
+     * The tasks scheduled with {@link #schedule(Runnable, long, TimeUnit)} and
+     * its variants, ordered by their deadline.  Accessed by the I/O thread only.
+     */
+    private final Queue<ScheduledSelectorTask> scheduledTaskQueue = new PriorityQueue<ScheduledSelectorTask>();
+
+    private volatile int ioRatio = 50;
+
+    private volatile SelectStrategy selectStrategy = DEFAULT_SELECT_STRATEGY;
+
+    /**
+     * {@code true} while the {@link SelectStrategy} polls the {@link Selector}
+     * without blocking, so that a {@link Selector#wakeup()} is not needed.
+     */
+    volatile boolean spinning;
+
+    private final SelectStrategy.Context selectContext = new SelectStrategy.Context() {
+        public boolean hasTasks() {
+            return !taskQueue.isEmpty() || scheduledTaskDelayNanos() == 0;
+        }
+
+        public long scheduledTaskDelayNanos() {
+            return AbstractNioSelector.this.scheduledTaskDelayNanos();
+        }
+
+        public void setSpinning(boolean spinning) {
+            AbstractNioSelector.this.spinning = spinning;
+        }
+    };
 
     private volatile int cancelledKeys; // should use AtomicInteger but we just need approximation
 
+    /**
+     * The number of bytes read and written since the last load window.
+     * Accessed by the I/O thread only.
+     */
+    long processedBytes;
+
+    private volatile int busyRatio;
+    private volatile long processedBytesPerSecond;
+
     private final CountDownLatch shutdownLatch = new CountDownLatch(1);
     private volatile boolean shutdown;
 
@@ -106,16 +171,17 @@ public abstract class AbstractNioSelector implements NioSelector {
     }
 
     protected final void registerTask(Runnable task) {
-        taskQueue.add(task);
+        Task node = new Task(task);
+        taskQueue.offer(node);
 
         Selector selector = this.selector;
 
         if (selector != null) {
-            if (wakenUp.compareAndSet(false, true)) {
+            if (!spinning && wakenUp.compareAndSet(false, true)) {
                 selector.wakeup();
             }
         } else {
-            if (taskQueue.remove(task)) {
+            if (node.claim()) {
                 // the selector was null this means the Worker has already been shutdown.
                 throw new RejectedExecutionException("Worker has already been shutdown");
             }
@@ -128,11 +194,11 @@ public abstract class AbstractNioSelector implements NioSelector {
 
     public void rebuildSelector() {
         if (!isIoThread()) {
-            taskQueue.add(new Runnable() {
+            taskQueue.offer(new Task(new Runnable() {
                 public void run() {
                     rebuildSelector();
                 }
-            });
+            }));
             return;
         }
 
@@ -143,12 +209,14 @@ public abstract class AbstractNioSelector implements NioSelector {
             return;
         }
 
+        final SelectedSelectionKeySet newSelectedKeySet;
         try {
             newSelector = SelectorUtil.open();
         } catch (Exception e) {
             logger.warn("Failed to create a new Selector.", e);
             return;
         }
+        newSelectedKeySet = SelectorUtil.optimizeSelectedKeys(newSelector);
 
         // Register all channels to the new Selector.
         int nChannels = 0;
@@ -178,6 +246,7 @@ public abstract class AbstractNioSelector implements NioSelector {
         }
 
         selector = newSelector;
+        selectedKeySet = newSelectedKeySet;
 
         try {
             // time to close the old selector as everything else is registered to the new one
@@ -201,17 +270,28 @@ public abstract class AbstractNioSelector implements NioSelector {
         if (selector == null) {
             return;
         }
-        // use 80% of the timeout for measure
-        final long minSelectTimeout = SelectorUtil.SELECT_TIMEOUT_NANOS * 80 / 100;
         boolean wakenupFromLoop = false;
+        long ioTimeNanos = 0;
+        long loadWindowStartTime = System.nanoTime();
+        long busyNanos = 0;
         for (;;) {
             wakenUp.set(false);
 
             try {
+                // use 80% of the timeout for measure, which is shorter when a
+                // scheduled task is due earlier
+                long selectTimeout = scheduledTaskDelayNanos();
+                if (selectTimeout < 0 || selectTimeout > SelectorUtil.SELECT_TIMEOUT_NANOS) {
+                    selectTimeout = SelectorUtil.SELECT_TIMEOUT_NANOS;
+                }
+                final long minSelectTimeout = selectTimeout * 80 / 100;
+
                 long beforeSelect = System.nanoTime();
                 int selected = select(selector);
-                if (SelectorUtil.EPOLL_BUG_WORKAROUND && selected == 0 && !wakenupFromLoop && !wakenUp.get()) {
-                    long timeBlocked = System.nanoTime() - beforeSelect;
+                long afterSelect = System.nanoTime();
+                if (SelectorUtil.EPOLL_BUG_WORKAROUND && selected == 0 && !spinning &&
+                        !wakenupFromLoop && !wakenUp.get()) {
+                    long timeBlocked = afterSelect - beforeSelect;
 
                     if (timeBlocked < minSelectTimeout) {
                         boolean notConnected = false;
@@ -293,14 +373,21 @@ public abstract class AbstractNioSelector implements NioSelector {
                 }
 
                 cancelledKeys = 0;
-                processTaskQueue();
-                selector = this.selector; // processTaskQueue() can call rebuildSelector()
+                int ioRatio = this.ioRatio;
+                if (ioRatio == 100) {
+                    processTaskQueue(Long.MAX_VALUE);
+                } else {
+                    processTaskQueue(ioTimeNanos * (100 - ioRatio) / ioRatio);
+                }
+                processScheduledTasks();
+                selector = this.selector; // the tasks can call rebuildSelector()
 
                 if (shutdown) {
                     this.selector = null;
 
                     // process one time again
-                    processTaskQueue();
+                    processTaskQueue(Long.MAX_VALUE);
+                    cancelScheduledTasks();
 
                     for (SelectionKey k: selector.keys()) {
                         close(k);
@@ -315,7 +402,18 @@ public abstract class AbstractNioSelector implements NioSelector {
                     shutdownLatch.countDown();
                     break;
                 } else {
+                    long ioStartTime = System.nanoTime();
                     process(selector);
+                    long ioEndTime = System.nanoTime();
+                    ioTimeNanos = ioEndTime - ioStartTime;
+
+                    busyNanos += ioEndTime - afterSelect;
+                    long loadWindowNanos = ioEndTime - loadWindowStartTime;
+                    if (loadWindowNanos >= LOAD_WINDOW_NANOS) {
+                        updateLoad(selector, loadWindowNanos, busyNanos);
+                        loadWindowStartTime = ioEndTime;
+                        busyNanos = 0;
+                    }
                 }
             } catch (Throwable t) {
                 logger.warn(
@@ -342,6 +440,7 @@ public abstract class AbstractNioSelector implements NioSelector {
         } catch (Throwable t) {
             throw new ChannelException("Failed to create a selector.", t);
         }
+        selectedKeySet = SelectorUtil.optimizeSelectedKeys(selector);
 
         // Start the worker thread with the new Selector.
         boolean success = false;
@@ -363,18 +462,42 @@ public abstract class AbstractNioSelector implements NioSelector {
         assert selector != null && selector.isOpen();
     }
 
-    private void processTaskQueue() {
+    /**
+     * Runs the queued tasks until the queue is empty or the tasks have taken
+     * longer than the specified time, which is checked every
+     * {@link #TASK_BATCH_SIZE} tasks.  The tasks which are left are run after
+     * the next {@link #process(Selector)}.
+     */
+    private void processTaskQueue(long timeoutNanos) {
+        final long deadline = timeoutNanos == Long.MAX_VALUE? 0 : System.nanoTime() + timeoutNanos;
+        int runTasks = 0;
         for (;;) {
-            final Runnable task = taskQueue.poll();
-            if (task == null) {
+            final Task node = taskQueue.poll();
+            if (node == null) {
                 break;
             }
-            task.run();
+            if (!node.claim()) {
+                // Rejected by registerTask(..) already.
+                continue;
+            }
+            node.task.run();
             try {
                 cleanUpCancelledKeys();
             } catch (IOException e) {
                 // Ignore
             }
+
+            if (timeoutNanos != Long.MAX_VALUE && ++ runTasks % TASK_BATCH_SIZE == 0 &&
+                    System.nanoTime() - deadline >= 0) {
+                if (!taskQueue.isEmpty()) {
+                    // Make sure the next select does not block while tasks are pending.
+                    Selector selector = this.selector;
+                    if (selector != null) {
+                        selector.wakeup();
+                    }
+                }
+                break;
+            }
         }
     }
 
@@ -385,6 +508,11 @@ public abstract class AbstractNioSelector implements NioSelector {
     protected final boolean cleanUpCancelledKeys() throws IOException {
         if (cancelledKeys >= CLEANUP_INTERVAL) {
             cancelledKeys = 0;
+            SelectedSelectionKeySet selectedKeySet = this.selectedKeySet;
+            if (selectedKeySet != null) {
+                // The keys which are still ready are selected again by selectNow().
+                selectedKeySet.reset();
+            }
             selector.selectNow();
             return true;
         }
@@ -412,7 +540,201 @@ public abstract class AbstractNioSelector implements NioSelector {
     protected abstract void process(Selector selector) throws IOException;
 
     protected int select(Selector selector) throws IOException {
-        return SelectorUtil.select(selector);
+        return selectStrategy.select(selector, selectContext);
+    }
+
+    /**
+     * Runs the scheduled tasks whose deadline has passed.  A fixed-rate task
+     * which is late runs as many times as it missed its deadline.
+     */
+    private void processScheduledTasks() {
+        if (scheduledTaskQueue.isEmpty()) {
+            return;
+        }
+
+        final long now = ScheduledSelectorTask.nanoTime();
+        for (;;) {
+            final ScheduledSelectorTask task = scheduledTaskQueue.peek();
+            if (task == null || task.deadlineNanos() > now) {
+                break;
+            }
+            scheduledTaskQueue.remove();
+            task.run();
+            try {
+                cleanUpCancelledKeys();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private void cancelScheduledTasks() {
+        if (scheduledTaskQueue.isEmpty()) {
+            return;
+        }
+
+        ScheduledSelectorTask[] tasks =
+                scheduledTaskQueue.toArray(new ScheduledSelectorTask[scheduledTaskQueue.size()]);
+        scheduledTaskQueue.clear();
+        for (ScheduledSelectorTask task: tasks) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the number of nanoseconds until the next scheduled task is due,
+     * {@code 0} if it is due already, or {@code -1} if no task is scheduled.
+     */
+    private long scheduledTaskDelayNanos() {
+        ScheduledSelectorTask task = scheduledTaskQueue.peek();
+        if (task == null) {
+            return -1;
+        }
+        return Math.max(0, task.deadlineNanos() - ScheduledSelectorTask.nanoTime());
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(task, delay, 0, unit);
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period: " + period + " (expected: > 0)");
+        }
+        return schedule(task, initialDelay, unit.toNanos(period), unit);
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay: " + delay + " (expected: > 0)");
+        }
+        return schedule(task, initialDelay, -unit.toNanos(delay), unit);
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task, long delay, long periodNanos, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+
+        final ScheduledSelectorTask scheduledTask = new ScheduledSelectorTask(
+                this, task, ScheduledSelectorTask.deadlineNanos(unit.toNanos(Math.max(0, delay))), periodNanos);
+        if (isIoThread()) {
+            // The next select will take the new deadline into account.
+            addScheduledTask(scheduledTask);
+        } else {
+            // Wakes up the selector so that it selects again with the new deadline.
+            registerTask(new Runnable() {
+                public void run() {
+                    addScheduledTask(scheduledTask);
+                }
+            });
+        }
+        return scheduledTask;
+    }
+
+    /**
+     * Adds the specified task to the deadline queue.  Called by the I/O thread only.
+     */
+    void addScheduledTask(ScheduledSelectorTask task) {
+        if (!task.isCancelled()) {
+            scheduledTaskQueue.add(task);
+        }
+    }
+
+    /**
+     * Removes the specified cancelled task from the deadline queue.
+     */
+    void removeScheduledTask(final ScheduledSelectorTask task) {
+        if (isIoThread()) {
+            scheduledTaskQueue.remove(task);
+        } else {
+            // No need to wake up the selector as a cancelled task is skipped
+            // anyway when it is due; this only releases it earlier.
+            taskQueue.offer(new Task(new Runnable() {
+                public void run() {
+                    scheduledTaskQueue.remove(task);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Updates the load figures at the end of a load window.  Called by the
+     * I/O thread only.
+     *
+     * @param windowNanos the length of the window
+     * @param busyNanos   the time spent out of the select in the window
+     */
+    void updateLoad(Selector selector, long windowNanos, long busyNanos) {
+        int ratio = (int) Math.min(100, busyNanos * 100 / windowNanos);
+        long bytesPerSecond = processedBytes * 1000 / TimeUnit.NANOSECONDS.toMillis(windowNanos);
+        processedBytes = 0;
+
+        // Average with the previous windows so that a single burst does not dominate.
+        busyRatio = (busyRatio + ratio) / 2;
+        processedBytesPerSecond = (processedBytesPerSecond + bytesPerSecond) / 2;
+    }
+
+    /**
+     * Returns the recent percentage of the time which the I/O thread spends
+     * for the I/O and the tasks rather than waiting in the select.
+     */
+    public int getBusyRatio() {
+        return busyRatio;
+    }
+
+    /**
+     * Returns the recent number of bytes per second which the I/O thread
+     * reads and writes.
+     */
+    public long getProcessedBytesPerSecond() {
+        return processedBytesPerSecond;
+    }
+
+    /**
+     * Returns the percentage of the time which the I/O thread spends for
+     * the I/O rather than for the queued tasks.  The default is {@code 50}.
+     */
+    public int getIoRatio() {
+        return ioRatio;
+    }
+
+    /**
+     * Sets the percentage of the time which the I/O thread spends for the
+     * I/O rather than for the queued tasks.  In each round, the I/O thread
+     * runs the queued tasks for up to {@code (100 - ioRatio) / ioRatio} of
+     * the time it took to process the selected channels in the last round,
+     * and leaves the rest of the tasks for the next round, so that a burst
+     * of tasks does not delay the I/O of the other channels.  If
+     * {@code 100}, the I/O thread runs all queued tasks in every round.
+     */
+    public void setIoRatio(int ioRatio) {
+        if (ioRatio <= 0 || ioRatio > 100) {
+            throw new IllegalArgumentException("ioRatio: " + ioRatio + " (expected: 0 < ioRatio <= 100)");
+        }
+        this.ioRatio = ioRatio;
+    }
+
+    /**
+     * Returns the {@link SelectStrategy} of this I/O thread.
+     */
+    public SelectStrategy getSelectStrategy() {
+        return selectStrategy;
+    }
+
+    /**
+     * Sets the {@link SelectStrategy} of this I/O thread.  It takes effect
+     * when the I/O thread selects the next time.  The default is a
+     * {@link BlockingSelectStrategy}.
+     */
+    public void setSelectStrategy(SelectStrategy selectStrategy) {
+        if (selectStrategy == null) {
+            throw new NullPointerException("selectStrategy");
+        }
+        this.selectStrategy = selectStrategy;
     }
 
     protected abstract void close(SelectionKey k);
@@ -420,4 +742,33 @@ public abstract class AbstractNioSelector implements NioSelector {
     protected abstract ThreadRenamingRunnable newThreadRenamingRunnable(int id, ThreadNameDeterminer determiner);
 
     protected abstract Runnable createRegisterTask(Channel channel, ChannelFuture future);
+
+    private static final class Task extends MpscLinkedQueueNode<Task> {
+        private static final AtomicIntegerFieldUpdater<Task> CLAIMED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Task.class, "claimed");
+
+        final Runnable task;
+
+        @SuppressWarnings("unused")
+        private volatile int claimed;
+
+        Task(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Returns {@code true} if and only if this task has been claimed by
+         * the caller; the I/O thread runs only the tasks it claims, and
+         * {@link AbstractNioSelector#registerTask(Runnable)} rejects only the
+         * tasks it claims after the shutdown.
+         */
+        boolean claim() {
+            return CLAIMED_UPDATER.compareAndSet(this, 0, 1);
+        }
+
+        @Override
+        public Task value() {
+            return this;
+        }
+    }
 }
@@ -18,8 +18,11 @@ package org.jboss.netty.channel.socket.nio;
 import org.jboss.netty.channel.core.Channel;
 import org.jboss.netty.channel.future.ChannelFuture;
 import org.jboss.netty.channel.event.MessageEvent;
+import org.jboss.netty.channel.event.impl.DownstreamMessageEvent;
 import org.jboss.netty.channel.socket.Worker;
+import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.CoalescedSendBuffer;
 import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.SendBuffer;
+import org.jboss.netty.util.ReferenceCountUtil;
 import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.ThreadRenamingRunnable;
 
@@ -34,16 +37,27 @@ import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.jboss.netty.channel.core.Channels.*;
 
 public abstract class AbstractNioWorker extends AbstractNioSelector implements Worker {
 
+    /**
+     * The maximum number of messages written without flush which are
+     * gathered into one write when coalescing is not configured.
+     */
+    private static final int MAX_FLUSHED_WRITES = 1024;
+
     protected final SocketSendBufferPool sendBufferPool = new SocketSendBufferPool();
 
+    private final AtomicInteger registeredChannelCount = new AtomicInteger();
+
+    private volatile long pendingWriteBytes;
+
     AbstractNioWorker(Executor executor) {
         super(executor);
     }
@@ -73,6 +87,46 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
         }
     }
 
+    @Override
+    public void register(Channel channel, ChannelFuture future) {
+        AbstractNioChannel<?> ch = (AbstractNioChannel<?>) channel;
+        if (ch.registrationState.compareAndSet(
+                AbstractNioChannel.ST_UNREGISTERED, AbstractNioChannel.ST_REGISTERED)) {
+            registeredChannelCount.incrementAndGet();
+        }
+        super.register(channel, future);
+    }
+
+    /**
+     * Returns the number of the channels which have been registered to this
+     * worker and are not closed yet.
+     */
+    public int getRegisteredChannelCount() {
+        return registeredChannelCount.get();
+    }
+
+    /**
+     * Returns the number of bytes which were queued for writing by the
+     * channels of this worker at the end of the last load window.
+     */
+    public long getPendingWriteBytes() {
+        return pendingWriteBytes;
+    }
+
+    @Override
+    void updateLoad(Selector selector, long windowNanos, long busyNanos) {
+        super.updateLoad(selector, windowNanos, busyNanos);
+
+        long pendingWriteBytes = 0;
+        for (SelectionKey k: selector.keys()) {
+            Object attachment = k.attachment();
+            if (attachment instanceof AbstractNioChannel) {
+                pendingWriteBytes += ((AbstractNioChannel<?>) attachment).writeBufferSize.get();
+            }
+        }
+        this.pendingWriteBytes = pendingWriteBytes;
+    }
+
     @Override
     protected void close(SelectionKey k) {
         AbstractNioChannel<?> ch = (AbstractNioChannel<?>) k.attachment();
@@ -92,6 +146,19 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
 
     @Override
     protected void process(Selector selector) throws IOException {
+        SelectedSelectionKeySet selectedKeySet = this.selectedKeySet;
+        if (selectedKeySet != null) {
+            for (int i = 0; i < selectedKeySet.size(); i ++) {
+                processSelectedKey(selectedKeySet.get(i));
+                if (cleanUpCancelledKeys()) {
+                    // The set has been reset and filled again - start over.
+                    i = -1;
+                }
+            }
+            selectedKeySet.reset();
+            return;
+        }
+
         Set<SelectionKey> selectedKeys = selector.selectedKeys();
         // check if the set is empty and if so just return to not create garbage by
         // creating a new Iterator every time even if there is nothing to process.
@@ -102,20 +169,7 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
         for (Iterator<SelectionKey> i = selectedKeys.iterator(); i.hasNext();) {
             SelectionKey k = i.next();
             i.remove();
-            try {
-                int readyOps = k.readyOps();
-                if ((readyOps & SelectionKey.OP_READ) != 0 || readyOps == 0) {
-                    if (!read(k)) {
-                        // Connection already closed - no need to handle write.
-                        continue;
-                    }
-                }
-                if ((readyOps & SelectionKey.OP_WRITE) != 0) {
-                    writeFromSelectorLoop(k);
-                }
-            } catch (CancelledKeyException e) {
-                close(k);
-            }
+            processSelectedKey(k);
 
             if (cleanUpCancelledKeys()) {
                 break; // break the loop to avoid ConcurrentModificationException
@@ -123,6 +177,23 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
         }
     }
 
+    private void processSelectedKey(SelectionKey k) {
+        try {
+            int readyOps = k.readyOps();
+            if ((readyOps & SelectionKey.OP_READ) != 0 || readyOps == 0) {
+                if (!read(k)) {
+                    // Connection already closed - no need to handle write.
+                    return;
+                }
+            }
+            if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+                writeFromSelectorLoop(k);
+            }
+        } catch (CancelledKeyException e) {
+            close(k);
+        }
+    }
+
     public void writeFromUserCode(final AbstractNioChannel<?> channel) {
         if (!channel.isConnected()) {
             cleanUpWriteBuffer(channel);
@@ -160,6 +231,10 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
 
     protected abstract boolean scheduleWriteIfNecessary(AbstractNioChannel<?> channel);
 
+    private static boolean isWrittenWithoutFlush(MessageEvent evt) {
+        return evt instanceof DownstreamMessageEvent && !((DownstreamMessageEvent) evt).isFlush();
+    }
+
     protected void write0(AbstractNioChannel<?> channel) {
         boolean open = true;
         boolean addOpWrite = false;
@@ -170,119 +245,169 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
 
         final SocketSendBufferPool sendBufferPool = this.sendBufferPool;
         final WritableByteChannel ch = channel.channel;
-        final Queue<MessageEvent> writeBuffer = channel.writeBufferQueue;
-        final int writeSpinCount = channel.getConfig().getWriteSpinCount();
+        final WriteRequestQueue writeBuffer = channel.writeBufferQueue;
+        final NioChannelConfig config = channel.getConfig();
+        final AdaptiveWriteSpinCount adaptiveWriteSpinCount;
+        final int maxCoalescedWrites;
+        final int maxCoalescedWriteBytes;
+        final long maxWriteBytesPerLoop;
+        int writeSpinCount;
+        if (config instanceof NioSocketChannelConfig) {
+            NioSocketChannelConfig socketConfig = (NioSocketChannelConfig) config;
+            adaptiveWriteSpinCount = channel.writeSpinCount;
+            writeSpinCount = adaptiveWriteSpinCount.get(
+                    socketConfig.getWriteSpinCount(),
+                    socketConfig.getMinWriteSpinCount(), socketConfig.getMaxWriteSpinCount());
+            maxCoalescedWrites = socketConfig.getMaxCoalescedWrites();
+            maxCoalescedWriteBytes = socketConfig.getMaxCoalescedWriteBytes();
+            maxWriteBytesPerLoop = socketConfig.getMaxWriteBytesPerLoop();
+        } else {
+            adaptiveWriteSpinCount = null;
+            writeSpinCount = config.getWriteSpinCount();
+            maxCoalescedWrites = 1;
+            maxCoalescedWriteBytes = 0;
+            maxWriteBytesPerLoop = Long.MAX_VALUE;
+        }
         List<Throwable> causes = null;
 
-        synchronized (channel.writeLock) {
-            channel.inWriteNowLoop = true;
-            for (;;) {
-
-                MessageEvent evt = channel.currentWriteEvent;
-                SendBuffer buf = null;
-                ChannelFuture future = null;
-                try {
-                    if (evt == null) {
-                        if ((channel.currentWriteEvent = evt = writeBuffer.poll()) == null) {
-                            removeOpWrite = true;
-                            channel.writeSuspended = false;
-                            break;
-                        }
-                        future = evt.getFuture();
+        channel.inWriteNowLoop = true;
+        for (;;) {
 
-                        channel.currentWriteBuffer = buf = sendBufferPool.acquire(evt.getMessage());
+            MessageEvent evt = channel.currentWriteEvent;
+            SendBuffer buf = null;
+            ChannelFuture future = null;
+            try {
+                if (evt == null) {
+                    if ((channel.currentWriteEvent = evt = writeBuffer.poll()) == null) {
+                        removeOpWrite = true;
+                        channel.writeSuspended = false;
+                        break;
+                    }
+                    future = evt.getFuture();
+
+                    if (maxCoalescedWrites > 1) {
+                        channel.currentWriteBuffer = buf = sendBufferPool.acquire(
+                                evt, writeBuffer, maxCoalescedWrites, maxCoalescedWriteBytes);
+                    } else if (maxCoalescedWriteBytes > 0 && isWrittenWithoutFlush(evt)) {
+                        // The user batched the messages explicitly; write them out together.
+                        channel.currentWriteBuffer = buf = sendBufferPool.acquire(
+                                evt, writeBuffer, MAX_FLUSHED_WRITES, maxCoalescedWriteBytes);
                     } else {
-                        future = evt.getFuture();
-                        buf = channel.currentWriteBuffer;
+                        channel.currentWriteBuffer = buf = sendBufferPool.acquire(evt.getMessage());
                     }
+                } else {
+                    future = evt.getFuture();
+                    buf = channel.currentWriteBuffer;
+                }
 
-                    long localWrittenBytes = 0;
-                    for (int i = writeSpinCount; i > 0; i --) {
-                        localWrittenBytes = buf.transferTo(ch);
-                        if (localWrittenBytes != 0) {
-                            writtenBytes += localWrittenBytes;
-                            break;
-                        }
-                        if (buf.finished()) {
-                            break;
-                        }
+                long localWrittenBytes = 0;
+                int zeroWrites = 0;
+                for (int i = writeSpinCount; i > 0; i --) {
+                    localWrittenBytes = buf.transferTo(ch);
+                    if (localWrittenBytes != 0) {
+                        writtenBytes += localWrittenBytes;
+                        break;
                     }
-
                     if (buf.finished()) {
-                        // Successful write - proceed to the next message.
-                        buf.release();
-                        channel.currentWriteEvent = null;
-                        channel.currentWriteBuffer = null;
-                        // Mark the event object for garbage collection.
-                        //noinspection UnusedAssignment
-                        evt = null;
-                        buf = null;
-                        future.setSuccess();
-                    } else {
-                        // Not written fully - perhaps the kernel buffer is full.
-                        addOpWrite = true;
-                        channel.writeSuspended = true;
-
-                        if (writtenBytes > 0) {
-                            // Notify progress listeners if necessary.
-                            future.setProgress(
-                                    localWrittenBytes,
-                                    buf.writtenBytes(), buf.totalBytes());
-                        }
                         break;
                     }
-                } catch (AsynchronousCloseException e) {
-                    // Doesn't need a user attention - ignore.
-                } catch (Throwable t) {
-                    if (buf != null) {
-                        buf.release();
-                    }
+                    zeroWrites ++;
+                }
+                if (adaptiveWriteSpinCount != null && zeroWrites + localWrittenBytes != 0) {
+                    writeSpinCount = adaptiveWriteSpinCount.record(zeroWrites, localWrittenBytes);
+                }
+
+                if (buf instanceof CoalescedSendBuffer) {
+                    // Notify the coalesced messages which have been written fully.
+                    ((CoalescedSendBuffer) buf).notifyWritten();
+                }
+
+                if (buf.finished()) {
+                    // Successful write - proceed to the next message.
+                    buf.release();
                     channel.currentWriteEvent = null;
                     channel.currentWriteBuffer = null;
                     // Mark the event object for garbage collection.
                     //noinspection UnusedAssignment
-                    buf = null;
-                    //noinspection UnusedAssignment
                     evt = null;
-                    if (future != null) {
-                        future.setFailure(t);
+                    buf = null;
+                    future.setSuccess();
+
+                    if (writtenBytes >= maxWriteBytesPerLoop && !writeBuffer.isEmpty()) {
+                        // Give the other channels of this worker a chance - the selector
+                        // wakes us up again with OP_WRITE as soon as we are selected.
+                        addOpWrite = true;
+                        channel.writeSuspended = true;
+                        break;
                     }
-                    if (iothread) {
-                        // An exception was thrown from within a write in the iothread. We store a reference to it
-                        // in a list for now and notify the handlers in the chain after the writeLock was released
-                        // to prevent possible deadlock.
-                        // See #1310
-                        if (causes == null) {
-                            causes = new ArrayList<Throwable>(1);
-                        }
-                        causes.add(t);
-                    } else {
-                        fireExceptionCaughtLater(channel, t);
+                } else {
+                    // Not written fully - perhaps the kernel buffer is full.
+                    addOpWrite = true;
+                    channel.writeSuspended = true;
+
+                    if (writtenBytes > 0 && !(buf instanceof CoalescedSendBuffer)) {
+                        // Notify progress listeners if necessary.
+                        future.setProgress(
+                                localWrittenBytes,
+                                buf.writtenBytes(), buf.totalBytes());
                     }
-                    if (t instanceof IOException) {
-                        // close must be handled from outside the write lock to fix a possible deadlock
-                        // which can happen when MemoryAwareThreadPoolExecutor is used and the limit is exceed
-                        // and a close is triggered while the lock is hold. This is because the close(..)
-                        // may try to submit a task to handle it via the ExecutorHandler which then deadlocks.
-                        // See #1310
-                        open = false;
+                    break;
+                }
+            } catch (AsynchronousCloseException e) {
+                // Doesn't need a user attention - ignore.
+            } catch (Throwable t) {
+                if (buf != null) {
+                    buf.release();
+                    if (buf instanceof CoalescedSendBuffer) {
+                        ((CoalescedSendBuffer) buf).setFailure(t);
                     }
+                } else if (evt != null) {
+                    // Failed to acquire a send buffer - release the message by ourselves.
+                    ReferenceCountUtil.safeRelease(evt.getMessage());
                 }
-            }
-            channel.inWriteNowLoop = false;
-
-            // Initially, the following block was executed after releasing
-            // the writeLock, but there was a race condition, and it has to be
-            // executed before releasing the writeLock:
-            //
-            //     https://issues.jboss.org/browse/NETTY-410
-            //
-            if (open) {
-                if (addOpWrite) {
-                    setOpWrite(channel);
-                } else if (removeOpWrite) {
-                    clearOpWrite(channel);
+                channel.currentWriteEvent = null;
+                channel.currentWriteBuffer = null;
+                // Mark the event object for garbage collection.
+                //noinspection UnusedAssignment
+                buf = null;
+                //noinspection UnusedAssignment
+                evt = null;
+                if (future != null) {
+                    future.setFailure(t);
                 }
+                if (iothread) {
+                    // An exception was thrown from within a write in the iothread. We store a reference to it
+                    // in a list for now and notify the handlers in the chain after the write loop has finished,
+                    // so that a handler which writes from exceptionCaught(..) does not re-enter the loop.
+                    // See #1310
+                    if (causes == null) {
+                        causes = new ArrayList<Throwable>(1);
+                    }
+                    causes.add(t);
+                } else {
+                    fireExceptionCaughtLater(channel, t);
+                }
+                if (t instanceof IOException) {
+                    // close must be handled from outside the write loop, because close(..) fails the
+                    // write requests which are still in the queue.
+                    // See #1310
+                    open = false;
+                }
+            }
+        }
+        channel.inWriteNowLoop = false;
+        writeBuffer.settle();
+
+        // Only the I/O thread polls the write request queue and changes OP_WRITE,
+        // so no lock is needed to avoid the race condition of:
+        //
+        //     https://issues.jboss.org/browse/NETTY-410
+        //
+        if (open) {
+            if (addOpWrite) {
+                setOpWrite(channel);
+            } else if (removeOpWrite) {
+                clearOpWrite(channel);
             }
         }
         if (causes != null) {
@@ -296,12 +421,33 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
             close(channel, succeededFuture(channel));
         }
         if (iothread) {
+            processedBytes += writtenBytes;
             fireWriteComplete(channel, writtenBytes);
         } else {
             fireWriteCompleteLater(channel, writtenBytes);
         }
     }
 
+    /**
+     * Returns the future of the last message which has been polled from the
+     * write request queue of the specified channel but not written fully yet,
+     * or {@code null} if there is no such message.  Must only be called by
+     * the I/O thread of the channel.
+     */
+    static ChannelFuture getPendingWriteFuture(AbstractNioChannel<?> channel) {
+        MessageEvent evt = channel.currentWriteEvent;
+        if (evt == null) {
+            return null;
+        }
+        SendBuffer buf = channel.currentWriteBuffer;
+        if (buf instanceof CoalescedSendBuffer) {
+            // The current event is only the first of the coalesced messages.
+            evt = ((CoalescedSendBuffer) buf).lastPendingEvent();
+            return evt != null? evt.getFuture() : null;
+        }
+        return evt.getFuture();
+    }
+
     static boolean isIoThread(AbstractNioChannel<?> channel) {
         return Thread.currentThread() == channel.worker.thread;
     }
@@ -344,7 +490,22 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
         }
     }
 
-    public void close(AbstractNioChannel<?> channel, ChannelFuture future) {
+    public void close(final AbstractNioChannel<?> channel, final ChannelFuture future) {
+        if (!isIoThread(channel)) {
+            // Only the I/O thread may fail the queued writes, which has to
+            // happen before the channel is marked as closed.
+            try {
+                channel.worker.executeInIoThread(new Runnable() {
+                    public void run() {
+                        close(channel, future);
+                    }
+                }, true);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The worker has been shut down - nobody else polls the queue anymore.
+            }
+        }
+
         boolean connected = channel.isConnected();
         boolean bound = channel.isBound();
         boolean iothread = isIoThread(channel);
@@ -353,7 +514,18 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
             channel.channel.close();
             increaseCancelledKeys();
 
+            // Fail the pending writes before the close future is notified, so
+            // that a listener of the close future sees them failed already.
+            Exception writeFailure = null;
+            if (channel.isOpen()) {
+                writeFailure = failPendingWrites(channel, true);
+            }
+
             if (channel.setClosed()) {
+                if (channel.registrationState.getAndSet(AbstractNioChannel.ST_CLOSED) ==
+                        AbstractNioChannel.ST_REGISTERED) {
+                    channel.worker.registeredChannelCount.decrementAndGet();
+                }
                 future.setSuccess();
                 if (connected) {
                     if (iothread) {
@@ -370,7 +542,13 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
                     }
                 }
 
-                cleanUpWriteBuffer(channel);
+                if (writeFailure != null) {
+                    if (iothread) {
+                        fireExceptionCaught(channel, writeFailure);
+                    } else {
+                        fireExceptionCaughtLater(channel, writeFailure);
+                    }
+                }
                 if (iothread) {
                     fireChannelClosed(channel);
                 } else {
@@ -389,56 +567,23 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
         }
     }
 
-    protected static void cleanUpWriteBuffer(AbstractNioChannel<?> channel) {
-        Exception cause = null;
-        boolean fireExceptionCaught = false;
-
-        // Clean up the stale messages in the write buffer.
-        synchronized (channel.writeLock) {
-            MessageEvent evt = channel.currentWriteEvent;
-            if (evt != null) {
-                // Create the exception only once to avoid the excessive overhead
-                // caused by fillStackTrace.
-                if (channel.isOpen()) {
-                    cause = new NotYetConnectedException();
-                } else {
-                    cause = new ClosedChannelException();
-                }
-
-                ChannelFuture future = evt.getFuture();
-                if (channel.currentWriteBuffer != null) {
-                    channel.currentWriteBuffer.release();
-                    channel.currentWriteBuffer = null;
-                }
-                channel.currentWriteEvent = null;
-                // Mark the event object for garbage collection.
-                //noinspection UnusedAssignment
-                evt = null;
-                future.setFailure(cause);
-                fireExceptionCaught = true;
-            }
-
-            Queue<MessageEvent> writeBuffer = channel.writeBufferQueue;
-            for (;;) {
-                evt = writeBuffer.poll();
-                if (evt == null) {
-                    break;
-                }
-                // Create the exception only once to avoid the excessive overhead
-                // caused by fillStackTrace.
-                if (cause == null) {
-                    if (channel.isOpen()) {
-                        cause = new NotYetConnectedException();
-                    } else {
-                        cause = new ClosedChannelException();
+    protected static void cleanUpWriteBuffer(final AbstractNioChannel<?> channel) {
+        if (!isIoThread(channel)) {
+            // Only the I/O thread may poll the write request queue.
+            try {
+                channel.worker.executeInIoThread(new Runnable() {
+                    public void run() {
+                        cleanUpWriteBuffer(channel);
                     }
-                    fireExceptionCaught = true;
-                }
-                evt.getFuture().setFailure(cause);
+                }, true);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The worker has been shut down - nobody else polls the queue anymore.
             }
         }
 
-        if (fireExceptionCaught) {
+        Exception cause = failPendingWrites(channel, !channel.isOpen());
+        if (cause != null) {
             if (isIoThread(channel)) {
                 fireExceptionCaught(channel, cause);
             } else {
@@ -447,6 +592,67 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
         }
     }
 
+    /**
+     * Fails the message which is being written and the queued messages of
+     * the specified channel, and returns the cause they were failed with, or
+     * {@code null} if there were no such messages.  Must only be called by
+     * the I/O thread of the channel, unless its worker has been shut down.
+     *
+     * @param closed  {@code true} to fail the messages with a
+     *                {@link ClosedChannelException}, or {@code false} to
+     *                fail them with a {@link NotYetConnectedException}
+     */
+    private static Exception failPendingWrites(AbstractNioChannel<?> channel, boolean closed) {
+        Exception cause = null;
+
+        // Clean up the stale messages in the write buffer.
+        MessageEvent evt = channel.currentWriteEvent;
+        if (evt != null) {
+            // Create the exception only once to avoid the excessive overhead
+            // caused by fillStackTrace.
+            cause = newWriteFailure(closed);
+
+            ChannelFuture future = evt.getFuture();
+            SendBuffer buf = channel.currentWriteBuffer;
+            if (buf != null) {
+                buf.release();
+                if (buf instanceof CoalescedSendBuffer) {
+                    ((CoalescedSendBuffer) buf).setFailure(cause);
+                }
+                channel.currentWriteBuffer = null;
+            }
+            channel.currentWriteEvent = null;
+            // Mark the event object for garbage collection.
+            //noinspection UnusedAssignment
+            evt = null;
+            future.setFailure(cause);
+        }
+
+        WriteRequestQueue writeBuffer = channel.writeBufferQueue;
+        for (;;) {
+            evt = writeBuffer.poll();
+            if (evt == null) {
+                break;
+            }
+            // Create the exception only once to avoid the excessive overhead
+            // caused by fillStackTrace.
+            if (cause == null) {
+                cause = newWriteFailure(closed);
+            }
+            ReferenceCountUtil.safeRelease(evt.getMessage());
+            evt.getFuture().setFailure(cause);
+        }
+        writeBuffer.settle();
+        return cause;
+    }
+
+    private static Exception newWriteFailure(boolean closed) {
+        if (closed) {
+            return new ClosedChannelException();
+        }
+        return new NotYetConnectedException();
+    }
+
     public void setInterestOps(final AbstractNioChannel<?> channel, final ChannelFuture future, final int interestOps) {
         boolean iothread = isIoThread(channel);
         if (!iothread) {
@@ -490,7 +696,7 @@ public abstract class AbstractNioWorker extends AbstractNioSelector implements W
             if (channel.getRawInterestOps() != newInterestOps) {
                 changed = true;
                 key.interestOps(newInterestOps);
-                if (Thread.currentThread() != thread &&
+                if (Thread.currentThread() != thread && !spinning &&
                     wakenUp.compareAndSet(false, true)) {
                     selector.wakeup();
                 }
@@ -24,11 +24,12 @@ import org.jboss.netty.util.internal.ExecutorUtil;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Abstract base class for {@link WorkerPool} implementations that create the {@link Worker}'s
- * up-front and return them in a "fair" fashion when calling {@link #nextWorker()}
+ * up-front and return them in a "fair" fashion when calling {@link #nextWorker()}.  What is
+ * fair is decided by the {@link WorkerChooser}, which is a {@link RoundRobinWorkerChooser}
+ * by default.
  */
 public abstract class AbstractNioWorkerPool<E extends AbstractNioWorker>
         implements WorkerPool<E>, ExternalResourceReleasable {
@@ -41,7 +42,7 @@ public abstract class AbstractNioWorkerPool<E extends AbstractNioWorker>
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(AbstractNioWorkerPool.class);
 
     private final AbstractNioWorker[] workers;
-    private final AtomicInteger workerIndex = new AtomicInteger();
+    private volatile WorkerChooser workerChooser = new RoundRobinWorkerChooser();
     private final Executor workerExecutor;
     private volatile boolean initialized;
 
@@ -145,7 +146,25 @@ public abstract class AbstractNioWorkerPool<E extends AbstractNioWorker>
 
     @SuppressWarnings("unchecked")
     public E nextWorker() {
-        return (E) workers[Math.abs(workerIndex.getAndIncrement() % workers.length)];
+        return (E) workerChooser.choose(workers);
+    }
+
+    /**
+     * Returns the {@link WorkerChooser} which {@link #nextWorker()} uses.
+     */
+    public WorkerChooser getWorkerChooser() {
+        return workerChooser;
+    }
+
+    /**
+     * Sets the {@link WorkerChooser} which {@link #nextWorker()} uses.  It
+     * applies to the channels created after the call.
+     */
+    public void setWorkerChooser(WorkerChooser workerChooser) {
+        if (workerChooser == null) {
+            throw new NullPointerException("workerChooser");
+        }
+        this.workerChooser = workerChooser;
     }
 
     public void rebuildSelectors() {
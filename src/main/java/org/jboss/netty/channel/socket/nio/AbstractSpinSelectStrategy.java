@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * A skeletal {@link SelectStrategy} which polls the {@link Selector} with
+ * {@link Selector#selectNow()} up to the specified number of times, and then
+ * lets the sub-class decide how to {@link #idle(Selector, Context) idle}
+ * before it gives the control back to the I/O thread.
+ */
+public abstract class AbstractSpinSelectStrategy implements SelectStrategy {
+
+    static final int DEFAULT_SPIN_COUNT = 1000;
+
+    private final int spinCount;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param spinCount the maximum number of {@link Selector#selectNow()}
+     *                  calls before {@link #idle(Selector, Context)}
+     */
+    protected AbstractSpinSelectStrategy(int spinCount) {
+        if (spinCount <= 0) {
+            throw new IllegalArgumentException(
+                    "spinCount must be a positive integer: " + spinCount);
+        }
+        this.spinCount = spinCount;
+    }
+
+    /**
+     * Returns the maximum number of {@link Selector#selectNow()} calls before
+     * {@link #idle(Selector, Context)}.
+     */
+    public int getSpinCount() {
+        return spinCount;
+    }
+
+    public int select(Selector selector, Context context) throws IOException {
+        context.setSpinning(true);
+        for (int i = spinCount; i > 0; i --) {
+            int selected = selector.selectNow();
+            if (selected != 0 || context.hasTasks()) {
+                return selected;
+            }
+        }
+        return idle(selector, context);
+    }
+
+    /**
+     * Called when the spin count has been used up without any ready channel
+     * or task.
+     *
+     * @return the number of the selected keys, which may be {@code 0}
+     */
+    protected abstract int idle(Selector selector, Context context) throws IOException;
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Tunes the number of times the I/O thread retries a
+ * {@link WritableByteChannel#write(ByteBuffer)} which wrote nothing before it
+ * gives up and waits for {@code OP_WRITE}, based on how the socket of a
+ * channel behaved recently.
+ * <p>
+ * It halves the spin count whenever the spinning did not help, which is
+ * usually the case when the remote peer reads slowly.  It doubles the spin
+ * count when a write succeeded only after most of the spins were used, as
+ * long as the writes move a reasonable number of bytes on average; a link
+ * which drains that fast is written more cheaply by spinning than by a
+ * round trip through the selector.  Otherwise, it moves the spin count back
+ * towards the configured one by one step per successful write.
+ * <p>
+ * All methods must be called by the I/O thread of the channel.
+ */
+final class AdaptiveWriteSpinCount {
+
+    /**
+     * The average number of bytes per write which makes spinning worth
+     * more attempts.
+     */
+    private static final int MIN_BYTES_PER_WRITE_TO_GROW = 4096;
+
+    private int initial;
+    private int min;
+    private int max;
+    private int spinCount;
+    private int bytesPerWrite = MIN_BYTES_PER_WRITE_TO_GROW;
+
+    /**
+     * Returns the spin count for the next write, which starts from
+     * {@code initial} and is kept between {@code min} and {@code max}.
+     */
+    int get(int initial, int min, int max) {
+        this.initial = initial;
+        this.min = min;
+        this.max = max;
+
+        int spinCount = this.spinCount;
+        if (spinCount == 0) {
+            spinCount = initial;
+        }
+        if (spinCount < min) {
+            spinCount = min;
+        } else if (spinCount > max) {
+            spinCount = max;
+        }
+        this.spinCount = spinCount;
+        return spinCount;
+    }
+
+    /**
+     * Records the outcome of a write which was given the spin count returned
+     * by the last {@link #get(int, int, int)}.
+     *
+     * @param zeroWrites   the number of writes which wrote nothing
+     * @param writtenBytes the number of bytes written by the last write
+     *
+     * @return the spin count for the next write
+     */
+    int record(int zeroWrites, long writtenBytes) {
+        int spinCount = this.spinCount;
+        if (writtenBytes == 0) {
+            // Every spin was wasted.
+            return this.spinCount = Math.max(min, spinCount >>> 1);
+        }
+
+        int bytesPerWrite = this.bytesPerWrite;
+        bytesPerWrite += (int) ((Math.min(writtenBytes, Integer.MAX_VALUE) - bytesPerWrite) >> 3);
+        this.bytesPerWrite = bytesPerWrite;
+
+        if (zeroWrites << 1 >= spinCount && bytesPerWrite >= MIN_BYTES_PER_WRITE_TO_GROW) {
+            spinCount = Math.min(max, spinCount << 1);
+        } else if (spinCount < initial) {
+            spinCount ++;
+        } else if (spinCount > initial && zeroWrites == 0) {
+            spinCount --;
+        }
+        return this.spinCount = spinCount;
+    }
+}
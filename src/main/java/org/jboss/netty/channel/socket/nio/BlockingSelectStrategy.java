@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * The default {@link SelectStrategy} which blocks in
+ * {@link Selector#select(long)} for up to {@link SelectorUtil#SELECT_TIMEOUT}
+ * milliseconds until a channel is ready or the {@link Selector} is woken up.
+ */
+public class BlockingSelectStrategy implements SelectStrategy {
+
+    public int select(Selector selector, Context context) throws IOException {
+        context.setSpinning(false);
+        if (context.hasTasks()) {
+            // A task may have been queued without a wake-up while spinning.
+            return selector.selectNow();
+        }
+
+        long delayNanos = context.scheduledTaskDelayNanos();
+        if (delayNanos >= 0 && delayNanos < SelectorUtil.SELECT_TIMEOUT_NANOS) {
+            // Wake up in time for the next scheduled task.  Round up so that
+            // it is due then, and never pass 0 which would block forever.
+            return SelectorUtil.select(selector, (delayNanos + 999999) / 1000000);
+        }
+        return SelectorUtil.select(selector);
+    }
+}
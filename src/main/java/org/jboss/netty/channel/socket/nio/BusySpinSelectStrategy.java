@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.nio.channels.Selector;
+
+/**
+ * A {@link SelectStrategy} which never blocks; the I/O thread keeps calling
+ * {@link Selector#selectNow()} and occupies a CPU core entirely.  It gives
+ * the lowest latency when there is a dedicated core for each worker.
+ */
+public class BusySpinSelectStrategy extends AbstractSpinSelectStrategy {
+
+    /**
+     * Creates a new instance with the default spin count.
+     */
+    public BusySpinSelectStrategy() {
+        this(DEFAULT_SPIN_COUNT);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param spinCount the number of {@link Selector#selectNow()} calls after
+     *                  which the I/O thread goes through its loop once, even
+     *                  if nothing was selected
+     */
+    public BusySpinSelectStrategy(int spinCount) {
+        super(spinCount);
+    }
+
+    @Override
+    protected int idle(Selector selector, Context context) {
+        return 0;
+    }
+}
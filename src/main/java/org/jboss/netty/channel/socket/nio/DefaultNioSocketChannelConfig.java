@@ -44,6 +44,13 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
     private volatile ReceiveBufferSizePredictor predictor;
     private volatile ReceiveBufferSizePredictorFactory predictorFactory = DEFAULT_PREDICTOR_FACTORY;
     private volatile int writeSpinCount = 16;
+    private volatile boolean zeroCopyRead;
+    private volatile int maxCoalescedWrites = 1;
+    private volatile int maxCoalescedWriteBytes = 65536;
+    private volatile int autoFlushThreshold = 32 * 1024;
+    private volatile int minWriteSpinCount = 1;
+    private volatile int maxWriteSpinCount = 256;
+    private volatile int maxWriteBytesPerLoop = 512 * 1024;
 
     DefaultNioSocketChannelConfig(Socket socket) {
         super(socket);
@@ -63,6 +70,16 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
                         "writeBufferHighWaterMark.");
             }
         }
+        if (getMaxWriteSpinCount() < getMinWriteSpinCount()) {
+            // Recover the integrity of the configuration with a sensible value.
+            setMaxWriteSpinCount0(getMinWriteSpinCount());
+            if (logger.isWarnEnabled()) {
+                // Notify the user about misconfiguration.
+                logger.warn(
+                        "maxWriteSpinCount cannot be less than " +
+                        "minWriteSpinCount; setting to the minWriteSpinCount.");
+            }
+        }
     }
 
     @Override
@@ -81,6 +98,20 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
             setReceiveBufferSizePredictorFactory((ReceiveBufferSizePredictorFactory) value);
         } else if ("receiveBufferSizePredictor".equals(key)) {
             setReceiveBufferSizePredictor((ReceiveBufferSizePredictor) value);
+        } else if ("zeroCopyRead".equals(key)) {
+            setZeroCopyRead(ConversionUtil.toBoolean(value));
+        } else if ("maxCoalescedWrites".equals(key)) {
+            setMaxCoalescedWrites(ConversionUtil.toInt(value));
+        } else if ("maxCoalescedWriteBytes".equals(key)) {
+            setMaxCoalescedWriteBytes(ConversionUtil.toInt(value));
+        } else if ("autoFlushThreshold".equals(key)) {
+            setAutoFlushThreshold(ConversionUtil.toInt(value));
+        } else if ("minWriteSpinCount".equals(key)) {
+            setMinWriteSpinCount0(ConversionUtil.toInt(value));
+        } else if ("maxWriteSpinCount".equals(key)) {
+            setMaxWriteSpinCount0(ConversionUtil.toInt(value));
+        } else if ("maxWriteBytesPerLoop".equals(key)) {
+            setMaxWriteBytesPerLoop(ConversionUtil.toInt(value));
         } else {
             return false;
         }
@@ -176,4 +207,104 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
         }
         this.predictorFactory = predictorFactory;
     }
+
+    public boolean isZeroCopyRead() {
+        return zeroCopyRead;
+    }
+
+    public void setZeroCopyRead(boolean zeroCopyRead) {
+        this.zeroCopyRead = zeroCopyRead;
+    }
+
+    public int getMaxCoalescedWrites() {
+        return maxCoalescedWrites;
+    }
+
+    public void setMaxCoalescedWrites(int maxCoalescedWrites) {
+        if (maxCoalescedWrites <= 0) {
+            throw new IllegalArgumentException(
+                    "maxCoalescedWrites must be a positive integer.");
+        }
+        this.maxCoalescedWrites = maxCoalescedWrites;
+    }
+
+    public int getMaxCoalescedWriteBytes() {
+        return maxCoalescedWriteBytes;
+    }
+
+    public void setMaxCoalescedWriteBytes(int maxCoalescedWriteBytes) {
+        if (maxCoalescedWriteBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "maxCoalescedWriteBytes must be a positive integer.");
+        }
+        this.maxCoalescedWriteBytes = maxCoalescedWriteBytes;
+    }
+
+    public int getAutoFlushThreshold() {
+        return autoFlushThreshold;
+    }
+
+    public void setAutoFlushThreshold(int autoFlushThreshold) {
+        if (autoFlushThreshold <= 0) {
+            throw new IllegalArgumentException(
+                    "autoFlushThreshold must be a positive integer.");
+        }
+        this.autoFlushThreshold = autoFlushThreshold;
+    }
+
+    public int getMinWriteSpinCount() {
+        return minWriteSpinCount;
+    }
+
+    public void setMinWriteSpinCount(int minWriteSpinCount) {
+        if (minWriteSpinCount > getMaxWriteSpinCount()) {
+            throw new IllegalArgumentException(
+                    "minWriteSpinCount cannot be greater than " +
+                    "maxWriteSpinCount (" + getMaxWriteSpinCount() + "): " +
+                    minWriteSpinCount);
+        }
+        setMinWriteSpinCount0(minWriteSpinCount);
+    }
+
+    private void setMinWriteSpinCount0(int minWriteSpinCount) {
+        if (minWriteSpinCount <= 0) {
+            throw new IllegalArgumentException(
+                    "minWriteSpinCount must be a positive integer.");
+        }
+        this.minWriteSpinCount = minWriteSpinCount;
+    }
+
+    public int getMaxWriteSpinCount() {
+        return maxWriteSpinCount;
+    }
+
+    public void setMaxWriteSpinCount(int maxWriteSpinCount) {
+        if (maxWriteSpinCount < getMinWriteSpinCount()) {
+            throw new IllegalArgumentException(
+                    "maxWriteSpinCount cannot be less than " +
+                    "minWriteSpinCount (" + getMinWriteSpinCount() + "): " +
+                    maxWriteSpinCount);
+        }
+        setMaxWriteSpinCount0(maxWriteSpinCount);
+    }
+
+    private void setMaxWriteSpinCount0(int maxWriteSpinCount) {
+        if (maxWriteSpinCount <= 0) {
+            throw new IllegalArgumentException(
+                    "maxWriteSpinCount must be a positive integer.");
+        }
+        this.maxWriteSpinCount = maxWriteSpinCount;
+    }
+
+    public int getMaxWriteBytesPerLoop() {
+        return maxWriteBytesPerLoop;
+    }
+
+    public void setMaxWriteBytesPerLoop(int maxWriteBytesPerLoop) {
+        if (maxWriteBytesPerLoop <= 0) {
+            throw new IllegalArgumentException(
+                    "maxWriteBytesPerLoop must be a positive integer.");
+        }
+        this.maxWriteBytesPerLoop = maxWriteBytesPerLoop;
+    }
 }
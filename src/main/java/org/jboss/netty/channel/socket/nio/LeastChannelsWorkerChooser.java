@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link WorkerChooser} which chooses the worker with the least
+ * {@linkplain AbstractNioWorker#getRegisteredChannelCount() registered channels}.
+ * The scan starts at the next worker in turn, so that the workers which
+ * have as many channels are chosen evenly.
+ * <p>
+ * It visits all workers for every new channel, and it does not take into
+ * account how busy a channel is.  See {@link PowerOfTwoChoicesWorkerChooser}
+ * for the connections of uneven weight.
+ */
+public class LeastChannelsWorkerChooser implements WorkerChooser {
+
+    private final AtomicInteger index = new AtomicInteger();
+
+    public AbstractNioWorker choose(AbstractNioWorker[] workers) {
+        int length = workers.length;
+        int start = (index.getAndIncrement() & Integer.MAX_VALUE) % length;
+
+        AbstractNioWorker chosen = workers[start];
+        int min = chosen.getRegisteredChannelCount();
+        for (int i = 1; i < length && min > 0; i ++) {
+            int j = start + i;
+            if (j >= length) {
+                j -= length;
+            }
+            AbstractNioWorker worker = workers[j];
+            int count = worker.getRegisteredChannelCount();
+            if (count < min) {
+                chosen = worker;
+                min = count;
+            }
+        }
+        return chosen;
+    }
+}
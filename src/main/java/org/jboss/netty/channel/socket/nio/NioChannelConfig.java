@@ -74,6 +74,10 @@ public interface NioChannelConfig extends ChannelConfig {
      * It is similar to what a spin lock is used for in concurrency programming.
      * It improves memory utilization and write throughput depending on
      * the platform that JVM runs on.  The default value is {@code 16}.
+     * A {@link NioSocketChannelConfig} uses this value as the initial spin
+     * count, which is adapted between
+     * {@link NioSocketChannelConfig#getMinWriteSpinCount()} and
+     * {@link NioSocketChannelConfig#getMaxWriteSpinCount()}.
      *
      * @throws IllegalArgumentException
      *         if the specified value is {@code 0} or less than {@code 0}
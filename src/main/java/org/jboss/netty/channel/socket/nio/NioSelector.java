@@ -19,6 +19,9 @@ import org.jboss.netty.channel.core.Channel;
 import org.jboss.netty.channel.future.ChannelFuture;
 
 import java.nio.channels.Selector;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 
 public interface NioSelector extends Runnable {
@@ -31,5 +34,38 @@ public interface NioSelector extends Runnable {
      */
     void rebuildSelector();
 
+    /**
+     * Schedules the specified task for one-time execution in the I/O thread
+     * after the specified delay.  The select timeout of the I/O thread is
+     * shortened so that the task runs on time without any other thread.
+     *
+     * @return a future which is notified when the task is run, and which
+     *         cancels the task when cancelled
+     *
+     * @throws RejectedExecutionException if this selector has been shut down
+     */
+    ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Schedules the specified task for repeated execution in the I/O thread
+     * at a fixed rate, the first time after {@code initialDelay} and then
+     * every {@code period}.  If a run takes longer than the period, the next
+     * runs are late and are not run concurrently.  The task is not run
+     * anymore once it raised an exception or has been cancelled.
+     *
+     * @throws RejectedExecutionException if this selector has been shut down
+     */
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * Schedules the specified task for repeated execution in the I/O thread
+     * with a fixed delay, the first time after {@code initialDelay} and then
+     * {@code delay} after the end of each run.  The task is not run anymore
+     * once it raised an exception or has been cancelled.
+     *
+     * @throws RejectedExecutionException if this selector has been shut down
+     */
+    ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit);
+
     void shutdown();
 }
@@ -47,6 +47,20 @@ import org.jboss.netty.channel.socket.SocketChannelConfig;
  * </tr><tr>
  * <td>{@code "receiveBufferSizePredictorFactory"}</td>
  * <td>{@link #setReceiveBufferSizePredictorFactory(ReceiveBufferSizePredictorFactory)}</td>
+ * </tr><tr>
+ * <td>{@code "zeroCopyRead"}</td><td>{@link #setZeroCopyRead(boolean)}</td>
+ * </tr><tr>
+ * <td>{@code "maxCoalescedWrites"}</td><td>{@link #setMaxCoalescedWrites(int)}</td>
+ * </tr><tr>
+ * <td>{@code "maxCoalescedWriteBytes"}</td><td>{@link #setMaxCoalescedWriteBytes(int)}</td>
+ * </tr><tr>
+ * <td>{@code "autoFlushThreshold"}</td><td>{@link #setAutoFlushThreshold(int)}</td>
+ * </tr><tr>
+ * <td>{@code "minWriteSpinCount"}</td><td>{@link #setMinWriteSpinCount(int)}</td>
+ * </tr><tr>
+ * <td>{@code "maxWriteSpinCount"}</td><td>{@link #setMaxWriteSpinCount(int)}</td>
+ * </tr><tr>
+ * <td>{@code "maxWriteBytesPerLoop"}</td><td>{@link #setMaxWriteBytesPerLoop(int)}</td>
  * </tr>
  * </table>
  */
@@ -85,4 +99,136 @@ public interface NioSocketChannelConfig extends SocketChannelConfig, NioChannelC
      * <tt>{@link AdaptiveReceiveBufferSizePredictorFactory}(64, 1024, 65536)</tt>.
      */
     void setReceiveBufferSizePredictorFactory(ReceiveBufferSizePredictorFactory predictorFactory);
+
+    /**
+     * Returns {@code true} if and only if the I/O thread reads the inbound
+     * data directly into a buffer obtained from the
+     * {@link ChannelConfig#getBufferFactory() ChannelBufferFactory}.
+     * The default is {@code false}.
+     */
+    boolean isZeroCopyRead();
+
+    /**
+     * Sets whether the I/O thread reads the inbound data directly into a
+     * buffer obtained from the
+     * {@link ChannelConfig#getBufferFactory() ChannelBufferFactory}.
+     * <p>
+     * By default, the data is read into a temporary direct buffer of the
+     * I/O thread first and then copied into a new buffer of the exact size.
+     * If enabled, a buffer of the size predicted by the
+     * {@link ReceiveBufferSizePredictor} is acquired from the factory before
+     * reading and it is sliced to the bytes actually read.  Combined with a
+     * direct {@link org.jboss.netty.buffer.impl.PooledChannelBufferFactory},
+     * this removes the intermediate copy and the allocation of a new buffer
+     * per read.  The received buffer may then hold more memory than its
+     * content, up to the predicted size.
+     */
+    void setZeroCopyRead(boolean zeroCopyRead);
+
+    /**
+     * Returns the maximum number of queued messages which are written with a
+     * single gathering write.  The default is {@code 1}, which disables the
+     * coalescing.
+     */
+    int getMaxCoalescedWrites();
+
+    /**
+     * Sets the maximum number of queued messages which are written with a
+     * single gathering write.
+     * <p>
+     * If greater than {@code 1}, the I/O thread polls the small
+     * {@link org.jboss.netty.buffer.ChannelBuffer} messages queued after the
+     * message it is about to write, up to this number of messages or
+     * {@link #getMaxCoalescedWriteBytes()} bytes in total, and writes them
+     * with one system call.  The future of each message is still notified
+     * individually as soon as its bytes have been written.  This reduces the
+     * number of system calls for the traffic which consists of many small
+     * messages, such as pipelined requests and responses.
+     */
+    void setMaxCoalescedWrites(int maxCoalescedWrites);
+
+    /**
+     * Returns the maximum number of bytes which are written with a single
+     * gathering write when {@link #getMaxCoalescedWrites()} is greater than
+     * {@code 1}.  The default is {@code 65536}.
+     */
+    int getMaxCoalescedWriteBytes();
+
+    /**
+     * Sets the maximum number of bytes which are written with a single
+     * gathering write when {@link #getMaxCoalescedWrites()} is greater than
+     * {@code 1}.  A message which is larger than this is never coalesced.
+     */
+    void setMaxCoalescedWriteBytes(int maxCoalescedWriteBytes);
+
+    /**
+     * Returns the number of pending bytes which makes the transport write
+     * out the messages written with
+     * {@link org.jboss.netty.channel.core.Channels#writeWithoutFlush(org.jboss.netty.channel.core.Channel, Object)}
+     * without waiting for an explicit flush.  The default is {@code 32768}.
+     */
+    int getAutoFlushThreshold();
+
+    /**
+     * Sets the number of pending bytes which makes the transport write out
+     * the messages written without flush.  The
+     * {@linkplain #getWriteBufferHighWaterMark() high water mark} also
+     * triggers a flush when it is lower, so that a channel never becomes
+     * unwritable only because nobody flushed it.
+     */
+    void setAutoFlushThreshold(int autoFlushThreshold);
+
+    /**
+     * Returns the lower bound of the write spin count.  The default is
+     * {@code 1}.
+     */
+    int getMinWriteSpinCount();
+
+    /**
+     * Sets the lower bound of the write spin count.
+     * <p>
+     * The I/O thread adapts the spin count of each channel, starting from
+     * {@link #getWriteSpinCount()}.  It spins less for a peer which keeps
+     * the socket send buffer full, and more for a link on which a write
+     * which wrote nothing is soon followed by a large one.  Set the lower and
+     * the upper bound to the same value to use a fixed spin count.
+     *
+     * @throws IllegalArgumentException
+     *         if the specified value is {@code 0} or less than {@code 0}, or
+     *         greater than {@link #getMaxWriteSpinCount()}
+     */
+    void setMinWriteSpinCount(int minWriteSpinCount);
+
+    /**
+     * Returns the upper bound of the write spin count.  The default is
+     * {@code 256}.
+     */
+    int getMaxWriteSpinCount();
+
+    /**
+     * Sets the upper bound of the write spin count.
+     *
+     * @throws IllegalArgumentException
+     *         if the specified value is less than {@link #getMinWriteSpinCount()}
+     *
+     * @see #setMinWriteSpinCount(int)
+     */
+    void setMaxWriteSpinCount(int maxWriteSpinCount);
+
+    /**
+     * Returns the number of bytes after which the I/O thread stops writing
+     * the queued messages of the channel and lets the other channels of the
+     * same worker proceed.  The default is {@code 524288}.
+     */
+    int getMaxWriteBytesPerLoop();
+
+    /**
+     * Sets the number of bytes after which the I/O thread stops writing the
+     * queued messages of the channel and lets the other channels of the same
+     * worker proceed.  The rest of the queue is written once the selector
+     * reports the channel as writable again, so a single connection with a
+     * lot of pending data does not delay the reads and writes of the other
+     * connections.
+     */
+    void setMaxWriteBytesPerLoop(int maxWriteBytesPerLoop);
 }
@@ -60,6 +60,10 @@ public class NioWorker extends AbstractNioWorker {
         final int predictedRecvBufSize = predictor.nextReceiveBufferSize();
         final ChannelBufferFactory bufferFactory = channel.getConfig().getBufferFactory();
 
+        if (channel.getConfig().isZeroCopyRead()) {
+            return readWithoutCopy(k, ch, channel, predictor, predictedRecvBufSize, bufferFactory);
+        }
+
         int ret = 0;
         int readBytes = 0;
         boolean failure = true;
@@ -80,17 +84,75 @@ public class NioWorker extends AbstractNioWorker {
         }
 
         if (readBytes > 0) {
+            processedBytes += readBytes;
             bb.flip();
 
             final ChannelBuffer buffer = bufferFactory.getBuffer(readBytes);
-            buffer.setBytes(0, bb);
-            buffer.writerIndex(readBytes);
+            try {
+                buffer.setBytes(0, bb);
+                buffer.writerIndex(readBytes);
+            } catch (RuntimeException e) {
+                buffer.release();
+                throw e;
+            }
+
+            // Update the predictor.
+            predictor.previousReceiveBufferSize(readBytes);
+
+            // Fire the event.
+            fireMessageReceived(channel, buffer);
+        }
+
+        if (ret < 0 || failure) {
+            k.cancel(); // Some JDK implementations run into an infinite loop without this.
+            close(channel, succeededFuture(channel));
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the inbound data directly into a buffer of the channel's
+     * {@link ChannelBufferFactory} instead of the temporary receive buffer.
+     */
+    private boolean readWithoutCopy(
+            SelectionKey k, SocketChannel ch, NioSocketChannel channel,
+            ReceiveBufferSizePredictor predictor, int predictedRecvBufSize,
+            ChannelBufferFactory bufferFactory) {
+
+        int ret = 0;
+        int readBytes = 0;
+        boolean failure = true;
+
+        ChannelBuffer buffer = bufferFactory.getBuffer(predictedRecvBufSize);
+        try {
+            // setBytes() keeps reading until the buffer is full or the socket is drained.
+            ret = buffer.writeBytes(ch, buffer.writableBytes());
+            if (ret > 0) {
+                readBytes = ret;
+            }
+            failure = false;
+        } catch (ClosedChannelException e) {
+            // Can happen, and does not need a user attention.
+        } catch (Throwable t) {
+            fireExceptionCaught(channel, t);
+        }
+
+        if (readBytes > 0) {
+            processedBytes += readBytes;
+            if (readBytes < buffer.capacity()) {
+                // Hide the unused space - the slice shares the reference count.
+                buffer = buffer.slice(0, readBytes);
+            }
 
             // Update the predictor.
             predictor.previousReceiveBufferSize(readBytes);
 
             // Fire the event.
             fireMessageReceived(channel, buffer);
+        } else {
+            buffer.release();
         }
 
         if (ret < 0 || failure) {
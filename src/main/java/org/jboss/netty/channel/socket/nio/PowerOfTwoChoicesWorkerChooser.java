@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.util.internal.ThreadLocalRandom;
+
+import java.util.Random;
+
+/**
+ * A {@link WorkerChooser} which picks two workers at random and chooses the
+ * less loaded one of them.  Comparing two random workers avoids the herd
+ * behaviour of always choosing the least loaded worker with stale figures,
+ * while it spreads the load almost as well, at a constant cost per channel.
+ * <p>
+ * The load is compared by {@link #compare(AbstractNioWorker, AbstractNioWorker)}.
+ * The figures are measured by the I/O threads every 100 milliseconds, except
+ * for the number of the registered channels which is always up to date.
+ */
+public class PowerOfTwoChoicesWorkerChooser implements WorkerChooser {
+
+    static final int DEFAULT_BUSY_RATIO_STEP = 10;
+
+    private final int busyRatioStep;
+
+    /**
+     * Creates a new instance which treats the workers whose
+     * {@linkplain AbstractNioWorker#getBusyRatio() busy ratio} differs by
+     * less than 10 percent as equally busy.
+     */
+    public PowerOfTwoChoicesWorkerChooser() {
+        this(DEFAULT_BUSY_RATIO_STEP);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param busyRatioStep the width of the steps, in percent, in which the
+     *                      busy ratios of two workers are compared
+     */
+    public PowerOfTwoChoicesWorkerChooser(int busyRatioStep) {
+        if (busyRatioStep <= 0 || busyRatioStep > 100) {
+            throw new IllegalArgumentException(
+                    "busyRatioStep: " + busyRatioStep + " (expected: 0 < busyRatioStep <= 100)");
+        }
+        this.busyRatioStep = busyRatioStep;
+    }
+
+    public AbstractNioWorker choose(AbstractNioWorker[] workers) {
+        int length = workers.length;
+        if (length == 1) {
+            return workers[0];
+        }
+
+        Random random = ThreadLocalRandom.current();
+        int a = random.nextInt(length);
+        int b = random.nextInt(length - 1);
+        if (b >= a) {
+            b ++;
+        }
+        return compare(workers[a], workers[b]) <= 0? workers[a] : workers[b];
+    }
+
+    /**
+     * Compares the load of the specified workers.  They are compared by
+     * <ol>
+     * <li>their {@linkplain AbstractNioWorker#getBusyRatio() busy ratio}, in
+     *     steps of the width given to the constructor,</li>
+     * <li>then the bytes they have to move, which is the sum of the
+     *     {@linkplain AbstractNioWorker#getPendingWriteBytes() bytes queued for
+     *     writing} and the {@linkplain AbstractNioWorker#getProcessedBytesPerSecond()
+     *     bytes read and written per second},</li>
+     * <li>then the number of their
+     *     {@linkplain AbstractNioWorker#getRegisteredChannelCount() registered channels}.</li>
+     * </ol>
+     *
+     * @return a negative value if {@code a} is less loaded than {@code b},
+     *         a positive value if it is more loaded, or {@code 0}
+     */
+    protected int compare(AbstractNioWorker a, AbstractNioWorker b) {
+        int busyA = a.getBusyRatio() / busyRatioStep;
+        int busyB = b.getBusyRatio() / busyRatioStep;
+        if (busyA != busyB) {
+            return busyA < busyB? -1 : 1;
+        }
+
+        long bytesA = a.getPendingWriteBytes() + a.getProcessedBytesPerSecond();
+        long bytesB = b.getPendingWriteBytes() + b.getProcessedBytesPerSecond();
+        if (bytesA != bytesB) {
+            return bytesA < bytesB? -1 : 1;
+        }
+
+        int channelsA = a.getRegisteredChannelCount();
+        int channelsB = b.getRegisteredChannelCount();
+        return channelsA < channelsB? -1 : channelsA == channelsB? 0 : 1;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link WorkerChooser} which hands out the workers in turn.  If the
+ * number of the workers is a power of two, the next worker is found with a
+ * mask instead of a division.
+ */
+public class RoundRobinWorkerChooser implements WorkerChooser {
+
+    private final AtomicInteger index = new AtomicInteger();
+
+    public AbstractNioWorker choose(AbstractNioWorker[] workers) {
+        int length = workers.length;
+        int i = index.getAndIncrement();
+        if ((length & length - 1) == 0) {
+            return workers[i & length - 1];
+        }
+        return workers[(i & Integer.MAX_VALUE) % length];
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A task which is scheduled with {@link AbstractNioSelector#schedule(Runnable, long, TimeUnit)}
+ * and its fixed-rate variants.  It is run by the I/O thread of the selector
+ * once its deadline has passed.
+ */
+final class ScheduledSelectorTask extends FutureTask<Void> implements ScheduledFuture<Void> {
+
+    private static final InternalLogger logger =
+            InternalLoggerFactory.getInstance(ScheduledSelectorTask.class);
+
+    private static final long START_TIME = System.nanoTime();
+
+    private static final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * Returns the current time relative to the class initialization, so that
+     * the deadlines are positive and can be compared directly.
+     */
+    static long nanoTime() {
+        return System.nanoTime() - START_TIME;
+    }
+
+    static long deadlineNanos(long delayNanos) {
+        long deadlineNanos = nanoTime() + delayNanos;
+        // Guard against an overflow.
+        return deadlineNanos < 0? Long.MAX_VALUE : deadlineNanos;
+    }
+
+    private final AbstractNioSelector selector;
+
+    /**
+     * Orders the tasks which have the same deadline by their creation.
+     */
+    private final long sequence = nextSequence.getAndIncrement();
+
+    /**
+     * {@code 0} for a one-time task, a positive value for a fixed-rate task
+     * and a negative value for a fixed-delay task.
+     */
+    private final long periodNanos;
+
+    private volatile long deadlineNanos;
+
+    ScheduledSelectorTask(AbstractNioSelector selector, Runnable task, long deadlineNanos, long periodNanos) {
+        super(task, null);
+        this.selector = selector;
+        this.deadlineNanos = deadlineNanos;
+        this.periodNanos = periodNanos;
+    }
+
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(deadlineNanos - nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public int compareTo(Delayed o) {
+        if (this == o) {
+            return 0;
+        }
+        if (!(o instanceof ScheduledSelectorTask)) {
+            long d = getDelay(TimeUnit.NANOSECONDS) - o.getDelay(TimeUnit.NANOSECONDS);
+            return d < 0? -1 : d > 0? 1 : 0;
+        }
+
+        ScheduledSelectorTask that = (ScheduledSelectorTask) o;
+        long d = deadlineNanos - that.deadlineNanos;
+        if (d < 0) {
+            return -1;
+        }
+        if (d > 0) {
+            return 1;
+        }
+        return sequence < that.sequence? -1 : 1;
+    }
+
+    /**
+     * Runs the task in the I/O thread and schedules it again if it is
+     * periodic and neither failed nor has been cancelled.
+     */
+    @Override
+    public void run() {
+        if (periodNanos == 0) {
+            super.run();
+            return;
+        }
+
+        if (runAndReset()) {
+            if (periodNanos > 0) {
+                deadlineNanos += periodNanos;
+            } else {
+                deadlineNanos = deadlineNanos(-periodNanos);
+            }
+            selector.addScheduledTask(this);
+        }
+    }
+
+    /**
+     * Cancels the task.  The I/O thread is never interrupted, whatever
+     * {@code mayInterruptIfRunning} is.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(false);
+        if (cancelled) {
+            selector.removeScheduledTask(this);
+        }
+        return cancelled;
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+        super.setException(t);
+        logger.warn("A task scheduled on an I/O thread raised an exception.", t);
+    }
+}
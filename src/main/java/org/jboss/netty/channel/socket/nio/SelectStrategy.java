@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * Decides how the I/O thread of an {@link AbstractNioSelector} waits for
+ * the ready channels.
+ * <p>
+ * The default {@link BlockingSelectStrategy} blocks in
+ * {@link Selector#select(long)} and relies on {@link Selector#wakeup()} when
+ * another thread queues a task for the I/O thread.  The spinning strategies
+ * poll the {@link Selector} with {@link Selector#selectNow()} instead, which
+ * trades CPU time for the latency of a wake-up.  A strategy can be chosen for
+ * each worker with {@link AbstractNioSelector#setSelectStrategy(SelectStrategy)}.
+ * <p>
+ * A strategy does not keep any state between the calls, so the same
+ * instance can be shared by many workers.
+ */
+public interface SelectStrategy {
+
+    /**
+     * Selects the ready channels of the specified {@link Selector}.  It
+     * must return soon after {@link Context#hasTasks()} becomes {@code true}.
+     *
+     * @return the number of the selected keys, which may be {@code 0}
+     */
+    int select(Selector selector, Context context) throws IOException;
+
+    /**
+     * The state of the I/O thread which is visible to a {@link SelectStrategy}.
+     */
+    interface Context {
+
+        /**
+         * Returns {@code true} if there are tasks queued for the I/O thread,
+         * or if a scheduled task is due.
+         */
+        boolean hasTasks();
+
+        /**
+         * Returns the number of nanoseconds until the next scheduled task is
+         * due, {@code 0} if it is due already, or {@code -1} if no task is
+         * scheduled.  A blocking strategy must not block longer than this.
+         */
+        long scheduledTaskDelayNanos();
+
+        /**
+         * Tells whether the I/O thread polls the {@link Selector} without
+         * blocking.  While it is {@code true}, the threads which queue a task
+         * or change the interest ops of a channel do not call
+         * {@link Selector#wakeup()}.  Therefore a strategy must set it to
+         * {@code false} and then check {@link #hasTasks()} before it blocks.
+         */
+        void setSpinning(boolean spinning);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The selected-key set of a {@link Selector} which is backed by a plain array
+ * rather than a {@link java.util.HashSet}.
+ * <p>
+ * {@link SelectorUtil} installs it into the JDK {@link Selector}
+ * implementation, which then only ever adds keys to it.  The I/O thread walks
+ * the keys by index with {@link #get(int)} and {@link #reset()}s the set once
+ * it has processed them, so no iterator is created and no key is hashed.
+ * Unlike a real {@link java.util.Set}, it does not check whether a key has
+ * been added already; it must be reset before the {@link Selector} selects
+ * again.
+ */
+public final class SelectedSelectionKeySet extends AbstractSet<SelectionKey> {
+
+    private SelectionKey[] keys = new SelectionKey[1024];
+    private int size;
+
+    SelectedSelectionKeySet() {
+    }
+
+    @Override
+    public boolean add(SelectionKey key) {
+        if (key == null) {
+            return false;
+        }
+
+        int size = this.size;
+        if (size == keys.length) {
+            SelectionKey[] newKeys = new SelectionKey[size << 1];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            keys = newKeys;
+        }
+        keys[size] = key;
+        this.size = size + 1;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the selected key at the specified index.
+     */
+    public SelectionKey get(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Removes all selected keys.
+     */
+    public void reset() {
+        SelectionKey[] keys = this.keys;
+        for (int i = size - 1; i >= 0; i --) {
+            keys[i] = null;
+        }
+        size = 0;
+    }
+
+    @Override
+    public Iterator<SelectionKey> iterator() {
+        return new Iterator<SelectionKey>() {
+            private int index;
+
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            public SelectionKey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys[index ++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -20,6 +20,7 @@ import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.internal.SystemPropertyUtil;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.Selector;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +36,8 @@ public final class SelectorUtil {
     public static final long SELECT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT);
     public static final boolean EPOLL_BUG_WORKAROUND =
             SystemPropertyUtil.getBoolean("org.jboss.netty.epollBugWorkaround", false);
+    public static final boolean OPTIMIZE_SELECTED_KEYS =
+            !SystemPropertyUtil.getBoolean("org.jboss.netty.noSelectedKeySetOptimization", false);
 
     // Workaround for JDK NIO bug.
     //
@@ -56,6 +59,7 @@ public final class SelectorUtil {
         if (logger.isDebugEnabled()) {
             logger.debug("Using select timeout of " + SELECT_TIMEOUT);
             logger.debug("Epoll-bug workaround enabled = " + EPOLL_BUG_WORKAROUND);
+            logger.debug("Selected-key set optimization enabled = " + OPTIMIZE_SELECTED_KEYS);
         }
     }
 
@@ -63,9 +67,52 @@ public final class SelectorUtil {
         return Selector.open();
     }
 
+    /**
+     * Replaces the selected-key set of the specified new {@link Selector}
+     * with a {@link SelectedSelectionKeySet} if {@link #OPTIMIZE_SELECTED_KEYS}
+     * is {@code true}.
+     *
+     * @return the {@link SelectedSelectionKeySet} which the {@link Selector}
+     *         stores its selected keys into, or {@code null} if the
+     *         optimization is disabled or the JDK does not allow it
+     */
+    static SelectedSelectionKeySet optimizeSelectedKeys(Selector selector) {
+        if (!OPTIMIZE_SELECTED_KEYS) {
+            return null;
+        }
+
+        try {
+            Class<?> selectorImplClass = Class.forName(
+                    "sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+            if (!selectorImplClass.isAssignableFrom(selector.getClass())) {
+                return null;
+            }
+
+            Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+            Field publicSelectedKeysField = selectorImplClass.getDeclaredField("publicSelectedKeys");
+            selectedKeysField.setAccessible(true);
+            publicSelectedKeysField.setAccessible(true);
+
+            SelectedSelectionKeySet selectedKeySet = new SelectedSelectionKeySet();
+            selectedKeysField.set(selector, selectedKeySet);
+            publicSelectedKeysField.set(selector, selectedKeySet);
+            return selectedKeySet;
+        } catch (Throwable t) {
+            // Not a Sun/Oracle/OpenJDK selector, or the reflective access was denied.
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to optimize the selected-key set of " + selector, t);
+            }
+            return null;
+        }
+    }
+
     public static int select(Selector selector) throws IOException {
+        return select(selector, SELECT_TIMEOUT);
+    }
+
+    public static int select(Selector selector, long timeoutMillis) throws IOException {
         try {
-            return selector.select(SELECT_TIMEOUT);
+            return selector.select(timeoutMillis);
         } catch (CancelledKeyException e) {
             if (logger.isDebugEnabled()) {
                 logger.debug(
@@ -19,8 +19,13 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.impl.CompositeChannelBuffer;
 import org.jboss.netty.channel.core.impl.DefaultFileRegion;
 import org.jboss.netty.channel.core.FileRegion;
+import org.jboss.netty.channel.event.MessageEvent;
+import org.jboss.netty.channel.future.ChannelFuture;
 import org.jboss.netty.util.ExternalResourceReleasable;
+import org.jboss.netty.util.ReferenceCountUtil;
 import org.jboss.netty.util.internal.ByteBufferUtil;
+import org.jboss.netty.util.internal.DetectionUtil;
+import org.jboss.netty.util.internal.SystemPropertyUtil;
 
 import java.io.IOException;
 import java.lang.ref.SoftReference;
@@ -33,14 +38,57 @@ import java.nio.channels.WritableByteChannel;
 public final class SocketSendBufferPool implements ExternalResourceReleasable {
 
     private static final SendBuffer EMPTY_BUFFER = new EmptySendBuffer();
+    private static final ByteBuffer EMPTY_BYTE_BUFFER = ByteBuffer.allocate(0);
 
     private static final int DEFAULT_PREALLOCATION_SIZE = 65536;
     private static final int ALIGN_SHIFT = 4;
     private static final int ALIGN_MASK = 15;
 
+    /**
+     * The default size of the direct window which large heap messages are
+     * streamed through.
+     */
+    private static final int DEFAULT_WINDOW_SIZE = Math.max(4096, SystemPropertyUtil.getInt(
+            "org.jboss.netty.channel.socket.nio.sendWindowSize", DEFAULT_PREALLOCATION_SIZE));
+
+    /**
+     * The maximum number of idle windows which are kept for reuse.  A window
+     * is in use only while a large message is being written, so this is
+     * usually the number of channels of a worker whose large writes are
+     * waiting for the kernel at the same time.
+     */
+    private static final int MAX_IDLE_WINDOWS = 4;
+
+    private final int windowSize;
+    private final ByteBuffer[] idleWindows = new ByteBuffer[MAX_IDLE_WINDOWS];
+    private int idleWindowCount;
+
     private PreallocationRef poolHead;
     private Preallocation current = new Preallocation(DEFAULT_PREALLOCATION_SIZE);
 
+    /**
+     * Creates a new pool whose direct window size is specified by the system
+     * property {@code org.jboss.netty.channel.socket.nio.sendWindowSize}
+     * ({@code 65536} by default).
+     */
+    public SocketSendBufferPool() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a new pool.
+     *
+     * @param windowSize the size of the direct window which a heap message
+     *                   larger than the preallocated buffer is copied through
+     *                   before it is written
+     */
+    public SocketSendBufferPool(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
     public SendBuffer acquire(Object message) {
         if (message instanceof ChannelBuffer) {
             return acquire((ChannelBuffer) message);
@@ -53,6 +101,70 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
                 "unsupported message type: " + message.getClass());
     }
 
+    /**
+     * Acquires a {@link SendBuffer} for the message of the specified event.
+     * If the message and the messages queued after it are small
+     * {@link ChannelBuffer}s, up to {@code maxMessages} of them or
+     * {@code maxBytes} bytes in total are polled from the queue and coalesced
+     * into a {@link CoalescedSendBuffer} which is written with a single
+     * gathering write.
+     */
+    SendBuffer acquire(MessageEvent evt, WriteRequestQueue queue, int maxMessages, int maxBytes) {
+        Object message = evt.getMessage();
+        int bytes = coalescableBytes(message);
+        if (maxMessages <= 1 || bytes < 0 || bytes >= maxBytes) {
+            return acquire(message);
+        }
+        MessageEvent next = queue.peek();
+        int nextBytes = next == null? -1 : coalescableBytes(next.getMessage());
+        if (nextBytes < 0 || nextBytes > maxBytes - bytes) {
+            return acquire(message);
+        }
+
+        CoalescedSendBuffer dst = new CoalescedSendBuffer(maxMessages);
+        dst.add(evt, acquire(message));
+        do {
+            // Only the I/O thread polls the queue, so the polled event is the
+            // peeked one.
+            queue.poll();
+            SendBuffer part;
+            try {
+                part = acquire(next.getMessage());
+            } catch (Throwable t) {
+                // Fail only this message - the coalesced ones are written as usual.
+                ReferenceCountUtil.safeRelease(next.getMessage());
+                next.getFuture().setFailure(t);
+                break;
+            }
+            dst.add(next, part);
+            bytes += nextBytes;
+            next = queue.peek();
+            nextBytes = next == null? -1 : coalescableBytes(next.getMessage());
+        } while (dst.count < maxMessages && nextBytes >= 0 && nextBytes <= maxBytes - bytes);
+        return dst;
+    }
+
+    /**
+     * Returns the number of bytes of the specified message if it is acquired
+     * as a single {@link ByteBuffer}, or {@code -1} otherwise.
+     */
+    private static int coalescableBytes(Object message) {
+        if (!(message instanceof ChannelBuffer)) {
+            return -1;
+        }
+        ChannelBuffer src = (ChannelBuffer) message;
+        int size = src.readableBytes();
+        if (src instanceof CompositeChannelBuffer &&
+            (((CompositeChannelBuffer) src).useGathering() || size > DEFAULT_PREALLOCATION_SIZE)) {
+            return -1;
+        }
+        if (!src.isDirect() && size > DEFAULT_PREALLOCATION_SIZE) {
+            // Written through a direct window rather than copied into one buffer.
+            return -1;
+        }
+        return size;
+    }
+
     private SendBuffer acquire(FileRegion src) {
         if (src.getCount() == 0) {
             return EMPTY_BUFFER;
@@ -63,18 +175,26 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
     private SendBuffer acquire(ChannelBuffer src) {
         final int size = src.readableBytes();
         if (size == 0) {
+            src.release();
             return EMPTY_BUFFER;
         }
 
-        if (src instanceof CompositeChannelBuffer && ((CompositeChannelBuffer) src).useGathering()) {
-            return new GatheringSendBuffer(src.toByteBuffers());
+        if (src instanceof CompositeChannelBuffer) {
+            // A large composite buffer (e.g. a header followed by a mapped file) is sent with a
+            // gathering write rather than being merged into a temporary heap buffer.
+            if (((CompositeChannelBuffer) src).useGathering() ||
+                size > DEFAULT_PREALLOCATION_SIZE && DetectionUtil.javaVersion() >= 7) {
+                return new GatheringSendBuffer(src.toByteBuffers(), src);
+            }
         }
 
         if (src.isDirect()) {
-            return new UnpooledSendBuffer(src.toByteBuffer());
+            return new UnpooledSendBuffer(src.toByteBuffer(), src);
         }
         if (src.readableBytes() > DEFAULT_PREALLOCATION_SIZE) {
-            return new UnpooledSendBuffer(src.toByteBuffer());
+            // Writing a large heap buffer directly would make the JDK copy its whole remainder
+            // into a temporary direct buffer on every attempt.
+            return new WindowedSendBuffer(src);
         }
 
         Preallocation current = this.current;
@@ -107,6 +227,9 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
         dstbuf.mark();
         src.getBytes(src.readerIndex(), dstbuf);
         dstbuf.reset();
+
+        // The content has been copied - the source is not needed anymore.
+        src.release();
         return dst;
     }
 
@@ -139,6 +262,25 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
         return new Preallocation(DEFAULT_PREALLOCATION_SIZE);
     }
 
+    private ByteBuffer acquireWindow() {
+        if (idleWindowCount > 0) {
+            int i = -- idleWindowCount;
+            ByteBuffer window = idleWindows[i];
+            idleWindows[i] = null;
+            return window;
+        }
+        return ByteBuffer.allocateDirect(windowSize);
+    }
+
+    private void releaseWindow(ByteBuffer window) {
+        if (idleWindowCount < MAX_IDLE_WINDOWS) {
+            window.clear();
+            idleWindows[idleWindowCount ++] = window;
+        } else {
+            ByteBufferUtil.destroy(window);
+        }
+    }
+
     private static int align(int pos) {
         int q = pos >>> ALIGN_SHIFT;
         int r = pos & ALIGN_MASK;
@@ -174,6 +316,10 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
         long transferTo(WritableByteChannel ch) throws IOException;
         long transferTo(DatagramChannel ch, SocketAddress raddr) throws IOException;
 
+        /**
+         * Releases the resources of this buffer, including the message it
+         * was acquired for.
+         */
         void release();
     }
 
@@ -181,9 +327,11 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
 
         final ByteBuffer buffer;
         final int initialPos;
+        private final ChannelBuffer src;
 
-        UnpooledSendBuffer(ByteBuffer buffer) {
+        UnpooledSendBuffer(ByteBuffer buffer, ChannelBuffer src) {
             this.buffer = buffer;
+            this.src = src;
             initialPos = buffer.position();
         }
 
@@ -208,7 +356,9 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
         }
 
         public void release() {
-            // Unpooled.
+            if (src != null) {
+                src.release();
+            }
         }
     }
 
@@ -217,7 +367,7 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
         private final Preallocation parent;
 
         PooledSendBuffer(Preallocation parent, ByteBuffer buffer) {
-            super(buffer);
+            super(buffer, null);
             this.parent = parent;
         }
 
@@ -233,15 +383,116 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
         }
     }
 
+    /**
+     * A {@link SendBuffer} which copies a large heap message into a reused
+     * direct window one window at a time, so that a partial write copies no
+     * more than the window and the off-heap memory stays bounded regardless
+     * of the message size.
+     */
+    final class WindowedSendBuffer implements SendBuffer {
+
+        private final ChannelBuffer src;
+        private final int startIndex;
+        private final int total;
+        private ByteBuffer window;
+        private int copied;
+
+        WindowedSendBuffer(ChannelBuffer src) {
+            this.src = src;
+            startIndex = src.readerIndex();
+            total = src.readableBytes();
+        }
+
+        public boolean finished() {
+            return copied == total && (window == null || !window.hasRemaining());
+        }
+
+        public long writtenBytes() {
+            return window == null? copied : copied - window.remaining();
+        }
+
+        public long totalBytes() {
+            return total;
+        }
+
+        public long transferTo(WritableByteChannel ch) throws IOException {
+            long written = 0;
+            for (;;) {
+                ByteBuffer window = fill();
+                if (window == null) {
+                    break;
+                }
+                int w = ch.write(window);
+                written += w;
+                if (window.hasRemaining()) {
+                    // The kernel buffer is full - keep the rest of the window for the next attempt.
+                    break;
+                }
+            }
+            return written;
+        }
+
+        public long transferTo(DatagramChannel ch, SocketAddress raddr) throws IOException {
+            // A datagram cannot be sent in pieces.
+            if (writtenBytes() != 0) {
+                throw new IllegalStateException("partially written");
+            }
+            ByteBuffer buf = src.toByteBuffer(startIndex, total);
+            int w = ch.send(buf, raddr);
+            if (w != 0) {
+                copied = total;
+                if (window != null) {
+                    window.position(window.limit());
+                }
+            }
+            return w;
+        }
+
+        /**
+         * Returns the window with the unwritten bytes, copying the next part
+         * of the message into it if it has been written out, or {@code null}
+         * if the whole message has been written.
+         */
+        private ByteBuffer fill() {
+            ByteBuffer window = this.window;
+            if (window != null && window.hasRemaining()) {
+                return window;
+            }
+            if (copied == total) {
+                return null;
+            }
+            if (window == null) {
+                this.window = window = acquireWindow();
+            }
+            int length = Math.min(window.capacity(), total - copied);
+            window.clear();
+            window.limit(length);
+            src.getBytes(startIndex + copied, window);
+            window.flip();
+            copied += length;
+            return window;
+        }
+
+        public void release() {
+            if (window != null) {
+                releaseWindow(window);
+                window = null;
+            }
+            src.release();
+        }
+    }
+
     static class GatheringSendBuffer implements SendBuffer {
 
         private final ByteBuffer[] buffers;
+        private final ChannelBuffer src;
         private final int last;
         private long written;
         private final int total;
 
-        GatheringSendBuffer(ByteBuffer[] buffers) {
+        GatheringSendBuffer(ByteBuffer[] buffers, ChannelBuffer src) {
             this.buffers = buffers;
+            this.src = src;
             last = buffers.length - 1;
             int total = 0;
             for (ByteBuffer buf: buffers) {
@@ -302,7 +553,152 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
         }
 
         public void release() {
-            // nothing todo
+            src.release();
+        }
+    }
+
+    /**
+     * A {@link SendBuffer} which writes the buffers of several messages with a
+     * single gathering write, and notifies the future of each message as soon
+     * as its bytes have been written.
+     */
+    static final class CoalescedSendBuffer implements SendBuffer {
+
+        private MessageEvent[] events;
+        private SendBuffer[] parts;
+        private ByteBuffer[] buffers;
+        int count;
+        private int head;
+        private long headWrittenBytes;
+        private long written;
+        private long total;
+
+        CoalescedSendBuffer(int maxMessages) {
+            int initialCapacity = Math.min(maxMessages, 16);
+            events = new MessageEvent[initialCapacity];
+            parts = new SendBuffer[initialCapacity];
+            buffers = new ByteBuffer[initialCapacity];
+        }
+
+        void add(MessageEvent evt, SendBuffer part) {
+            if (count == events.length) {
+                int newCapacity = count << 1;
+                MessageEvent[] newEvents = new MessageEvent[newCapacity];
+                SendBuffer[] newParts = new SendBuffer[newCapacity];
+                ByteBuffer[] newBuffers = new ByteBuffer[newCapacity];
+                System.arraycopy(events, 0, newEvents, 0, count);
+                System.arraycopy(parts, 0, newParts, 0, count);
+                System.arraycopy(buffers, 0, newBuffers, 0, count);
+                events = newEvents;
+                parts = newParts;
+                buffers = newBuffers;
+            }
+            ByteBuffer buffer;
+            if (part instanceof UnpooledSendBuffer) {
+                buffer = ((UnpooledSendBuffer) part).buffer;
+            } else if (part.totalBytes() == 0) {
+                buffer = EMPTY_BYTE_BUFFER;
+            } else {
+                throw new IllegalArgumentException(
+                        "not a single-buffer part: " + part.getClass().getSimpleName());
+            }
+            events[count] = evt;
+            parts[count] = part;
+            buffers[count] = buffer;
+            total += part.totalBytes();
+            count ++;
+        }
+
+        public boolean finished() {
+            return written >= total;
+        }
+
+        public long writtenBytes() {
+            return written;
+        }
+
+        public long totalBytes() {
+            return total;
+        }
+
+        public long transferTo(WritableByteChannel ch) throws IOException {
+            long w;
+            if (ch instanceof GatheringByteChannel) {
+                w = ((GatheringByteChannel) ch).write(buffers, head, count - head);
+            } else {
+                w = 0;
+                for (int i = head; i < count; i ++) {
+                    ByteBuffer buf = buffers[i];
+                    if (buf.hasRemaining()) {
+                        int localWrittenBytes = ch.write(buf);
+                        if (localWrittenBytes == 0) {
+                            break;
+                        }
+                        w += localWrittenBytes;
+                    }
+                }
+            }
+            written += w;
+            return w;
+        }
+
+        public long transferTo(DatagramChannel ch, SocketAddress raddr) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Releases the messages which have been written fully and notifies
+         * their futures, and notifies the progress of the message which has
+         * been written partially.
+         */
+        void notifyWritten() {
+            while (head < count && !buffers[head].hasRemaining()) {
+                ChannelFuture future = events[head].getFuture();
+                parts[head].release();
+                events[head] = null;
+                parts[head] = null;
+                buffers[head] = null;
+                head ++;
+                headWrittenBytes = 0;
+                future.setSuccess();
+            }
+            if (head < count) {
+                SendBuffer part = parts[head];
+                long partWrittenBytes = part.writtenBytes();
+                if (partWrittenBytes > headWrittenBytes) {
+                    events[head].getFuture().setProgress(
+                            partWrittenBytes - headWrittenBytes, partWrittenBytes, part.totalBytes());
+                    headWrittenBytes = partWrittenBytes;
+                }
+            }
+        }
+
+        /**
+         * Returns the last message of this buffer, or {@code null} if all
+         * messages have been written fully.
+         */
+        MessageEvent lastPendingEvent() {
+            return head < count? events[count - 1] : null;
+        }
+
+        /**
+         * Notifies the futures of the messages which have not been written
+         * fully with the specified cause.
+         */
+        void setFailure(Throwable cause) {
+            for (int i = head; i < count; i ++) {
+                events[i].getFuture().setFailure(cause);
+            }
+        }
+
+        public void release() {
+            for (int i = head; i < count; i ++) {
+                SendBuffer part = parts[i];
+                if (part != null) {
+                    parts[i] = null;
+                    part.release();
+                }
+            }
         }
     }
 
@@ -379,5 +775,10 @@ public final class SocketSendBufferPool implements ExternalResourceReleasable {
         if (current.buffer != null) {
             ByteBufferUtil.destroy(current.buffer);
         }
+        for (int i = 0; i < idleWindowCount; i ++) {
+            ByteBufferUtil.destroy(idleWindows[i]);
+            idleWindows[i] = null;
+        }
+        idleWindowCount = 0;
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link SelectStrategy} which parks the I/O thread for the specified time
+ * once the spin count has been used up.  The I/O thread is not woken up
+ * while it is parked, so the park time bounds the additional latency of an
+ * idle worker, while it uses much less CPU time than
+ * {@link BusySpinSelectStrategy}.
+ */
+public class SpinParkSelectStrategy extends AbstractSpinSelectStrategy {
+
+    static final long DEFAULT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final long parkNanos;
+
+    /**
+     * Creates a new instance with the default spin count and the default
+     * park time of 50 microseconds.
+     */
+    public SpinParkSelectStrategy() {
+        this(DEFAULT_SPIN_COUNT, DEFAULT_PARK_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    public SpinParkSelectStrategy(int spinCount, long parkTime, TimeUnit unit) {
+        super(spinCount);
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+        if (parkTime <= 0) {
+            throw new IllegalArgumentException(
+                    "parkTime must be a positive integer: " + parkTime);
+        }
+        parkNanos = unit.toNanos(parkTime);
+    }
+
+    /**
+     * Returns the time the I/O thread parks for in nanoseconds.
+     */
+    public long getParkNanos() {
+        return parkNanos;
+    }
+
+    @Override
+    protected int idle(Selector selector, Context context) throws IOException {
+        long parkNanos = this.parkNanos;
+        long delayNanos = context.scheduledTaskDelayNanos();
+        if (delayNanos >= 0 && delayNanos < parkNanos) {
+            parkNanos = delayNanos;
+        }
+        LockSupport.parkNanos(parkNanos);
+        return selector.selectNow();
+    }
+}
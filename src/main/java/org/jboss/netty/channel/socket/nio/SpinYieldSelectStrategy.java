@@ -0,0 +1,44 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * A {@link SelectStrategy} which calls {@link Thread#yield()} once the spin
+ * count has been used up, so that other runnable threads get a chance to run
+ * on the core of an idle worker.
+ */
+public class SpinYieldSelectStrategy extends AbstractSpinSelectStrategy {
+
+    /**
+     * Creates a new instance with the default spin count.
+     */
+    public SpinYieldSelectStrategy() {
+        this(DEFAULT_SPIN_COUNT);
+    }
+
+    public SpinYieldSelectStrategy(int spinCount) {
+        super(spinCount);
+    }
+
+    @Override
+    protected int idle(Selector selector, Context context) throws IOException {
+        Thread.yield();
+        return selector.selectNow();
+    }
+}
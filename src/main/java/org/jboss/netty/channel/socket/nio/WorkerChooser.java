@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+/**
+ * Chooses the {@link AbstractNioWorker} which serves a new channel.  It is
+ * set with {@link AbstractNioWorkerPool#setWorkerChooser(WorkerChooser)} or
+ * with {@code setWorkerChooser(..)} of the NIO channel factories.
+ * <p>
+ * The default {@link RoundRobinWorkerChooser} hands out the workers in turn,
+ * which is fair as long as the channels are of similar weight.  For the
+ * long-lived connections of uneven weight, {@link LeastChannelsWorkerChooser}
+ * and {@link PowerOfTwoChoicesWorkerChooser} look at the current load of the
+ * workers instead.
+ */
+public interface WorkerChooser {
+
+    /**
+     * Returns one of the specified workers.  It is called by the boss
+     * threads and the user threads concurrently.
+     *
+     * @param workers the workers of the pool, which is never empty and
+     *                must not be modified
+     */
+    AbstractNioWorker choose(AbstractNioWorker[] workers);
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.jboss.netty.channel.core.Channels.*;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.event.MessageEvent;
+import org.jboss.netty.channel.event.impl.DownstreamMessageEvent;
+import org.jboss.netty.util.internal.MpscLinkedQueue;
+import org.jboss.netty.util.internal.MpscLinkedQueueNode;
+import org.jboss.netty.util.internal.ThreadLocalBoolean;
+
+/**
+ * The queue of the write requests of an {@link AbstractNioChannel}.  Any
+ * thread can {@link #offer(MessageEvent)} a request without locking, while
+ * only the I/O thread of the channel polls it.
+ * <p>
+ * A {@link DownstreamMessageEvent} is linked into the queue as it is; other
+ * {@link MessageEvent}s are wrapped into a node.  The size of the polled
+ * requests is subtracted from {@link AbstractNioChannel#writeBufferSize} in
+ * batches by {@link #settle()} rather than on every poll.
+ */
+final class WriteRequestQueue {
+
+    /**
+     * The number of polled bytes which makes {@link #poll()} settle the write
+     * buffer size before the I/O thread finishes writing.
+     */
+    private static final int SETTLE_THRESHOLD = 8192;
+
+    private final AbstractNioChannel<?> channel;
+    private final MpscLinkedQueue<MessageEvent> queue = new MpscLinkedQueue<MessageEvent>();
+    private final ThreadLocalBoolean notifying = new ThreadLocalBoolean();
+
+    /**
+     * The number of bytes which have been polled but not subtracted from the
+     * write buffer size yet.  Accessed by the I/O thread only.
+     */
+    private int polledBytes;
+
+    WriteRequestQueue(AbstractNioChannel<?> channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Appends the specified write request.  Can be called by any thread.
+     */
+    void offer(MessageEvent e) {
+        if (e instanceof DownstreamMessageEvent) {
+            queue.offer((DownstreamMessageEvent) e);
+        } else {
+            queue.offer(new Node(e));
+        }
+
+        int messageSize = getMessageSize(e);
+        if (messageSize == 0) {
+            return;
+        }
+
+        int newWriteBufferSize = channel.writeBufferSize.addAndGet(messageSize);
+        int highWaterMark = channel.getConfig().getWriteBufferHighWaterMark();
+        if (newWriteBufferSize >= highWaterMark && newWriteBufferSize - messageSize < highWaterMark) {
+            channel.highWaterMarkCounter.incrementAndGet();
+            if (!notifying.get()) {
+                notifying.set(Boolean.TRUE);
+                fireChannelInterestChanged(channel);
+                notifying.set(Boolean.FALSE);
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the first write request.  Must only be called by
+     * the I/O thread, which calls {@link #settle()} once it stops polling.
+     */
+    MessageEvent poll() {
+        MessageEvent e = queue.poll();
+        if (e != null) {
+            polledBytes += getMessageSize(e);
+            if (polledBytes >= SETTLE_THRESHOLD) {
+                settle();
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Returns the first write request without removing it.  Must only be
+     * called by the I/O thread.
+     */
+    MessageEvent peek() {
+        return queue.peek();
+    }
+
+    /**
+     * Returns the write request which was offered last, or {@code null} if
+     * the queue is empty.  Can be called by any thread.  The returned request
+     * may have been polled and written already.
+     */
+    MessageEvent peekLast() {
+        return queue.peekLast();
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Subtracts the size of the polled write requests from the write buffer
+     * size, and notifies the channel if it has become writable.  Must only be
+     * called by the I/O thread.
+     */
+    void settle() {
+        int messageSize = polledBytes;
+        if (messageSize == 0) {
+            return;
+        }
+        polledBytes = 0;
+
+        int newWriteBufferSize = channel.writeBufferSize.addAndGet(-messageSize);
+        int lowWaterMark = channel.getConfig().getWriteBufferLowWaterMark();
+        if (newWriteBufferSize == 0 || newWriteBufferSize < lowWaterMark) {
+            // A batch of messages written without a flush can fill the buffer
+            // above the low water mark without ever reaching the high one, so
+            // only a crossing of the high water mark is undone here.
+            if (newWriteBufferSize + messageSize >= lowWaterMark && decrementHighWaterMarkCounter()) {
+                if (channel.isConnected() && !notifying.get()) {
+                    notifying.set(Boolean.TRUE);
+                    fireChannelInterestChanged(channel);
+                    notifying.set(Boolean.FALSE);
+                }
+            }
+        }
+    }
+
+    private boolean decrementHighWaterMarkCounter() {
+        for (;;) {
+            int counter = channel.highWaterMarkCounter.get();
+            if (counter <= 0) {
+                return false;
+            }
+            if (channel.highWaterMarkCounter.compareAndSet(counter, counter - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static int getMessageSize(MessageEvent e) {
+        Object m = e.getMessage();
+        if (m instanceof ChannelBuffer) {
+            return ((ChannelBuffer) m).readableBytes();
+        }
+        return 0;
+    }
+
+    private static final class Node extends MpscLinkedQueueNode<MessageEvent> {
+        private final MessageEvent event;
+
+        Node(MessageEvent event) {
+            this.event = event;
+        }
+
+        @Override
+        public MessageEvent value() {
+            return event;
+        }
+    }
+}
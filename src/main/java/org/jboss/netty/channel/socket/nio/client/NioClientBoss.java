@@ -20,11 +20,9 @@ import org.jboss.netty.channel.future.ChannelFuture;
 import org.jboss.netty.channel.exception.ConnectTimeoutException;
 import org.jboss.netty.channel.socket.nio.AbstractNioSelector;
 import org.jboss.netty.channel.socket.nio.Boss;
+import org.jboss.netty.channel.socket.nio.SelectedSelectionKeySet;
 import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.ThreadRenamingRunnable;
-import org.jboss.netty.util.Timeout;
-import org.jboss.netty.util.Timer;
-import org.jboss.netty.util.TimerTask;
 
 import java.io.IOException;
 import java.net.ConnectException;
@@ -43,27 +41,8 @@ import static org.jboss.netty.channel.core.Channels.*;
  */
 public final class NioClientBoss extends AbstractNioSelector implements Boss {
 
-    private final TimerTask wakeupTask = new TimerTask() {
-        public void run(Timeout timeout) throws Exception {
-            // This is needed to prevent a possible race that can lead to a NPE
-            // when the selector is closed before this is run
-            //
-            // See https://github.com/netty/netty/issues/685
-            Selector selector = NioClientBoss.this.selector;
-
-            if (selector != null) {
-                if (wakenUp.compareAndSet(false, true)) {
-                    selector.wakeup();
-                }
-            }
-        }
-    };
-
-    private final Timer timer;
-
-    NioClientBoss(Executor bossExecutor, Timer timer, ThreadNameDeterminer determiner) {
+    NioClientBoss(Executor bossExecutor, ThreadNameDeterminer determiner) {
         super(bossExecutor, determiner);
-        this.timer = timer;
     }
 
     @Override
@@ -78,11 +57,15 @@ public final class NioClientBoss extends AbstractNioSelector implements Boss {
 
     @Override
     protected void process(Selector selector) {
-        processSelectedKeys(selector.selectedKeys());
-
-        // Handle connection timeout every 10 milliseconds approximately.
-        long currentTimeNanos = System.nanoTime();
-        processConnectTimeout(selector.keys(), currentTimeNanos);
+        SelectedSelectionKeySet selectedKeySet = this.selectedKeySet;
+        if (selectedKeySet != null) {
+            for (int i = 0; i < selectedKeySet.size(); i ++) {
+                processSelectedKey(selectedKeySet.get(i));
+            }
+            selectedKeySet.reset();
+        } else {
+            processSelectedKeys(selector.selectedKeys());
+        }
     }
 
     private void processSelectedKeys(Set<SelectionKey> selectedKeys) {
@@ -96,55 +79,26 @@ public final class NioClientBoss extends AbstractNioSelector implements Boss {
         for (Iterator<SelectionKey> i = selectedKeys.iterator(); i.hasNext();) {
             SelectionKey k = i.next();
             i.remove();
-
-            if (!k.isValid()) {
-                close(k);
-                continue;
-            }
-
-            try {
-                if (k.isConnectable()) {
-                    connect(k);
-                }
-            } catch (Throwable t) {
-                NioClientSocketChannel ch = (NioClientSocketChannel) k.attachment();
-                ch.connectFuture.setFailure(t);
-                fireExceptionCaught(ch, t);
-                k.cancel(); // Some JDK implementations run into an infinite loop without this.
-                ch.worker.close(ch, succeededFuture(ch));
-            }
+            processSelectedKey(k);
         }
     }
 
-    private static void processConnectTimeout(Set<SelectionKey> keys, long currentTimeNanos) {
-        for (SelectionKey k: keys) {
-            if (!k.isValid()) {
-                // Comment the close call again as it gave us major problems
-                // with ClosedChannelExceptions.
-                //
-                // See:
-                // * https://github.com/netty/netty/issues/142
-                // * https://github.com/netty/netty/issues/138
-                //
-                // close(k);
-                continue;
-            }
+    private void processSelectedKey(SelectionKey k) {
+        if (!k.isValid()) {
+            close(k);
+            return;
+        }
 
-            NioClientSocketChannel ch = (NioClientSocketChannel) k.attachment();
-            if (ch.connectDeadlineNanos > 0 &&
-                    currentTimeNanos >= ch.connectDeadlineNanos) {
-
-                // Create a new ConnectException everytime and not cache it as otherwise we end up with
-                // using the wrong remoteaddress in the ConnectException message.
-                //
-                // See https://github.com/netty/netty/issues/2713
-                ConnectException cause =
-                        new ConnectTimeoutException("connection timed out: " + ch.requestedRemoteAddress);
-
-                ch.connectFuture.setFailure(cause);
-                fireExceptionCaught(ch, cause);
-                ch.worker.close(ch, succeededFuture(ch));
+        try {
+            if (k.isConnectable()) {
+                connect(k);
             }
+        } catch (Throwable t) {
+            NioClientSocketChannel ch = (NioClientSocketChannel) k.attachment();
+            ch.connectFuture.setFailure(t);
+            fireExceptionCaught(ch, t);
+            k.cancel(); // Some JDK implementations run into an infinite loop without this.
+            ch.worker.close(ch, succeededFuture(ch));
         }
     }
 
@@ -153,8 +107,8 @@ public final class NioClientBoss extends AbstractNioSelector implements Boss {
         try {
             if (ch.channel.finishConnect()) {
                 k.cancel();
-                if (ch.timoutTimer != null) {
-                    ch.timoutTimer.cancel();
+                if (ch.connectTimeoutFuture != null) {
+                    ch.connectTimeoutFuture.cancel(false);
                 }
                 ch.worker.register(ch, ch.connectFuture);
             }
@@ -180,14 +134,8 @@ public final class NioClientBoss extends AbstractNioSelector implements Boss {
             this.channel = channel;
         }
 
+        @SuppressWarnings("deprecation")
         public void run() {
-            int timeout = channel.getConfig().getConnectTimeoutMillis();
-            if (timeout > 0) {
-                if (!channel.isConnected()) {
-                    channel.timoutTimer = timer.newTimeout(wakeupTask,
-                            timeout, TimeUnit.MILLISECONDS);
-                }
-            }
             try {
                 channel.channel.register(
                         boss.selector, SelectionKey.OP_CONNECT, channel);
@@ -196,9 +144,41 @@ public final class NioClientBoss extends AbstractNioSelector implements Boss {
             }
 
             int connectTimeout = channel.getConfig().getConnectTimeoutMillis();
-            if (connectTimeout > 0) {
+            if (connectTimeout > 0 && !channel.isConnected()) {
                 channel.connectDeadlineNanos = System.nanoTime() + connectTimeout * 1000000L;
+                channel.connectTimeoutFuture = boss.schedule(
+                        new ConnectTimeoutTask(channel), connectTimeout, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Fails the connection attempt of a channel which has not been connected
+     * within the connect timeout.  Runs in the boss thread.
+     */
+    private static final class ConnectTimeoutTask implements Runnable {
+        private final NioClientSocketChannel channel;
+
+        ConnectTimeoutTask(NioClientSocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public void run() {
+            NioClientSocketChannel ch = channel;
+            if (!ch.isOpen() || ch.connectFuture.isDone()) {
+                return;
             }
+
+            // Create a new ConnectException everytime and not cache it as otherwise we end up with
+            // using the wrong remoteaddress in the ConnectException message.
+            //
+            // See https://github.com/netty/netty/issues/2713
+            ConnectException cause =
+                    new ConnectTimeoutException("connection timed out: " + ch.requestedRemoteAddress);
+
+            ch.connectFuture.setFailure(cause);
+            fireExceptionCaught(ch, cause);
+            ch.worker.close(ch, succeededFuture(ch));
         }
     }
 }
@@ -16,7 +16,6 @@
 package org.jboss.netty.channel.socket.nio.client;
 
 import org.jboss.netty.channel.socket.nio.AbstractNioBossPool;
-import org.jboss.netty.util.HashedWheelTimer;
 import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.Timer;
 
@@ -28,14 +27,15 @@ import java.util.concurrent.Executor;
 public class NioClientBossPool extends AbstractNioBossPool<NioClientBoss> {
     private final ThreadNameDeterminer determiner;
     private final Timer timer;
-    private boolean stopTimer;
 
     /**
      * Create a new instance
      *
      * @param bossExecutor  the Executor to use for server the {@link NioClientBoss}
      * @param bossCount     the number of {@link NioClientBoss} instances this {@link NioClientBossPool} will hold
-     * @param timer         the Timer to use for handle connect timeouts
+     * @param timer         the Timer which is stopped by {@link #releaseExternalResources()}, or
+     *                      {@code null}.  The connect timeouts are scheduled in the
+     *                      {@link NioClientBoss} thread instead.
      * @param determiner    the {@link ThreadNameDeterminer} to use for name the threads. Use {@code null}
      *                      if you not want to set one explicit.
      */
@@ -47,33 +47,26 @@ public class NioClientBossPool extends AbstractNioBossPool<NioClientBoss> {
     }
 
     /**
-     * Create a new instance using a new {@link HashedWheelTimer} and no {@link ThreadNameDeterminer}
+     * Create a new instance using no {@link Timer} and no {@link ThreadNameDeterminer}
      *
      * @param bossExecutor  the Executor to use for server the {@link NioClientBoss}
      * @param bossCount     the number of {@link NioClientBoss} instances this {@link NioClientBoss} will hold
      */
     public NioClientBossPool(Executor bossExecutor, int bossCount) {
-        this(bossExecutor, bossCount, new HashedWheelTimer(), null);
-        stopTimer = true;
+        this(bossExecutor, bossCount, null, null);
     }
 
     @Override
     protected NioClientBoss newBoss(Executor executor) {
-        return new NioClientBoss(executor, timer, determiner);
-    }
-
-    @Override
-    public void shutdown() {
-        super.shutdown();
-        if (stopTimer) {
-            timer.stop();
-        }
+        return new NioClientBoss(executor, determiner);
     }
 
     @Override
     public void releaseExternalResources() {
         super.releaseExternalResources();
-        timer.stop();
+        if (timer != null) {
+            timer.stop();
+        }
     }
 }
 
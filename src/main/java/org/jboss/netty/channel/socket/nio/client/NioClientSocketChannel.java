@@ -25,10 +25,12 @@ import org.jboss.netty.channel.socket.nio.NioWorker;
 import org.jboss.netty.logging.InternalLogger;
 import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
 
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.ScheduledFuture;
 
 import static org.jboss.netty.channel.core.Channels.*;
 
@@ -71,12 +73,29 @@ public final class NioClientSocketChannel extends NioSocketChannel {
     public volatile ChannelFuture connectFuture;
     public volatile boolean boundManually;
 
+    /**
+     * @deprecated The connect timeout is scheduled in the boss thread, which
+     *             does not read this field.  It is still set when the
+     *             connection attempt is registered.
+     */
     // Does not need to be volatile as it's accessed by only one thread.
+    @Deprecated
     public long connectDeadlineNanos;
     public volatile SocketAddress requestedRemoteAddress;
 
+    /**
+     * @deprecated The connect timeout is not scheduled in a {@link Timer}
+     *             anymore, so this field is always {@code null}.
+     */
+    @Deprecated
     public volatile Timeout timoutTimer;
 
+    /**
+     * The connect timeout scheduled in the boss thread, or {@code null} if
+     * there is none.
+     */
+    volatile ScheduledFuture<?> connectTimeoutFuture;
+
     NioClientSocketChannel(
             ChannelFactory factory, ChannelPipeline pipeline,
             ChannelSink sink, NioWorker worker) {
@@ -24,10 +24,13 @@ import org.jboss.netty.channel.core.Channel;
 import org.jboss.netty.channel.core.ChannelPipeline;
 import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.SocketChannel;
+import org.jboss.netty.channel.socket.nio.AbstractNioWorkerPool;
 import org.jboss.netty.channel.socket.nio.BossPool;
 import org.jboss.netty.channel.socket.nio.NioWorker;
 import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.channel.socket.nio.RoundRobinWorkerChooser;
 import org.jboss.netty.channel.socket.nio.SelectorUtil;
+import org.jboss.netty.channel.socket.nio.WorkerChooser;
 import org.jboss.netty.channel.socket.nio.WorkerPool;
 import org.jboss.netty.util.ExternalResourceReleasable;
 import org.jboss.netty.util.Timer;
@@ -181,7 +184,8 @@ public class NioClientSocketChannelFactory implements ClientSocketChannelFactory
      * @param workerPool
      *        the {@link WorkerPool} to use to do the IO
      * @param timer
-     *        the {@link Timer} to use to handle the connection timeouts
+     *        the {@link Timer} which is released with this factory.  The
+     *        connection timeouts are scheduled in the boss thread instead.
      */
     public NioClientSocketChannelFactory(
             Executor bossExecutor, int bossCount,
@@ -212,6 +216,22 @@ public class NioClientSocketChannelFactory implements ClientSocketChannelFactory
         sink = new NioClientSocketPipelineSink(bossPool);
     }
 
+    /**
+     * Sets the {@link WorkerChooser} which chooses the {@link NioWorker} of
+     * each new channel.  The default is a {@link RoundRobinWorkerChooser}.
+     *
+     * @throws IllegalStateException
+     *         if the {@link WorkerPool} of this factory is not an
+     *         {@link AbstractNioWorkerPool}
+     */
+    public void setWorkerChooser(WorkerChooser workerChooser) {
+        if (!(workerPool instanceof AbstractNioWorkerPool)) {
+            throw new IllegalStateException(
+                    "the worker pool does not support a WorkerChooser: " + workerPool.getClass().getName());
+        }
+        ((AbstractNioWorkerPool<?>) workerPool).setWorkerChooser(workerChooser);
+    }
+
     public SocketChannel newChannel(ChannelPipeline pipeline) {
         return new NioClientSocketChannel(this, pipeline, sink, workerPool.nextWorker());
     }
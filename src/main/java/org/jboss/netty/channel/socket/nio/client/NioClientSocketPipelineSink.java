@@ -21,10 +21,10 @@ import org.jboss.netty.channel.future.ChannelFutureListener;
 import org.jboss.netty.channel.core.ChannelPipeline;
 import org.jboss.netty.channel.core.ChannelState;
 import org.jboss.netty.channel.event.ChannelStateEvent;
+import org.jboss.netty.channel.event.FlushEvent;
 import org.jboss.netty.channel.event.MessageEvent;
 import org.jboss.netty.channel.socket.nio.AbstractNioChannelSink;
 import org.jboss.netty.channel.socket.nio.BossPool;
-import org.jboss.netty.channel.socket.nio.NioSocketChannel;
 import org.jboss.netty.logging.InternalLogger;
 import org.jboss.netty.logging.InternalLoggerFactory;
 
@@ -80,11 +80,9 @@ class NioClientSocketPipelineSink extends AbstractNioChannelSink {
                 break;
             }
         } else if (e instanceof MessageEvent) {
-            MessageEvent event = (MessageEvent) e;
-            NioSocketChannel channel = (NioSocketChannel) event.getChannel();
-            boolean offered = channel.writeBufferQueue.offer(event);
-            assert offered;
-            channel.worker.writeFromUserCode(channel);
+            write((MessageEvent) e);
+        } else if (e instanceof FlushEvent) {
+            flush((FlushEvent) e);
         }
     }
 
@@ -22,6 +22,7 @@ import org.jboss.netty.channel.core.ChannelSink;
 import org.jboss.netty.channel.socket.nio.AbstractNioSelector;
 import org.jboss.netty.channel.socket.nio.Boss;
 import org.jboss.netty.channel.socket.nio.NioWorker;
+import org.jboss.netty.channel.socket.nio.SelectedSelectionKeySet;
 import org.jboss.netty.util.ThreadNameDeterminer;
 import org.jboss.netty.util.ThreadRenamingRunnable;
 
@@ -88,6 +89,15 @@ public final class NioServerBoss extends AbstractNioSelector implements Boss {
 
     @Override
     protected void process(Selector selector) {
+        SelectedSelectionKeySet selectedKeySet = this.selectedKeySet;
+        if (selectedKeySet != null) {
+            for (int i = 0; i < selectedKeySet.size(); i ++) {
+                processSelectedKey(selectedKeySet.get(i));
+            }
+            selectedKeySet.reset();
+            return;
+        }
+
         Set<SelectionKey> selectedKeys = selector.selectedKeys();
         if (selectedKeys.isEmpty()) {
             return;
@@ -95,37 +105,41 @@ public final class NioServerBoss extends AbstractNioSelector implements Boss {
         for (Iterator<SelectionKey> i = selectedKeys.iterator(); i.hasNext();) {
             SelectionKey k = i.next();
             i.remove();
-            NioServerSocketChannel channel = (NioServerSocketChannel) k.attachment();
+            processSelectedKey(k);
+        }
+    }
 
-            try {
-                // accept connections in a for loop until no new connection is ready
-                for (;;) {
-                    SocketChannel acceptedSocket = channel.socket.accept();
-                    if (acceptedSocket == null) {
-                        break;
-                    }
-                    registerAcceptedChannel(channel, acceptedSocket, thread);
-                }
-            } catch (CancelledKeyException e) {
-                // Raised by accept() when the server socket was closed.
-                k.cancel();
-                channel.close();
-            } catch (SocketTimeoutException e) {
-                // Thrown every second to get ClosedChannelException
-                // raised.
-            } catch (ClosedChannelException e) {
-                // Closed as requested.
-            } catch (Throwable t) {
-                if (logger.isWarnEnabled()) {
-                    logger.warn(
-                            "Failed to accept a connection.", t);
-                }
+    private void processSelectedKey(SelectionKey k) {
+        NioServerSocketChannel channel = (NioServerSocketChannel) k.attachment();
 
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e1) {
-                    // Ignore
+        try {
+            // accept connections in a for loop until no new connection is ready
+            for (;;) {
+                SocketChannel acceptedSocket = channel.socket.accept();
+                if (acceptedSocket == null) {
+                    break;
                 }
+                registerAcceptedChannel(channel, acceptedSocket, thread);
+            }
+        } catch (CancelledKeyException e) {
+            // Raised by accept() when the server socket was closed.
+            k.cancel();
+            channel.close();
+        } catch (SocketTimeoutException e) {
+            // Thrown every second to get ClosedChannelException
+            // raised.
+        } catch (ClosedChannelException e) {
+            // Closed as requested.
+        } catch (Throwable t) {
+            if (logger.isWarnEnabled()) {
+                logger.warn(
+                        "Failed to accept a connection.", t);
+            }
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e1) {
+                // Ignore
             }
         }
     }
@@ -25,10 +25,13 @@ import org.jboss.netty.channel.core.Channel;
 import org.jboss.netty.channel.core.ChannelPipeline;
 import org.jboss.netty.channel.socket.ServerSocketChannel;
 import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.AbstractNioWorkerPool;
 import org.jboss.netty.channel.socket.nio.BossPool;
 import org.jboss.netty.channel.socket.nio.NioWorker;
 import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.channel.socket.nio.RoundRobinWorkerChooser;
 import org.jboss.netty.channel.socket.nio.SelectorUtil;
+import org.jboss.netty.channel.socket.nio.WorkerChooser;
 import org.jboss.netty.channel.socket.nio.WorkerPool;
 import org.jboss.netty.util.ExternalResourceReleasable;
 
@@ -205,6 +208,22 @@ public class NioServerSocketChannelFactory implements ServerSocketChannelFactory
         sink = new NioServerSocketPipelineSink();
     }
 
+    /**
+     * Sets the {@link WorkerChooser} which chooses the {@link NioWorker} of
+     * each new channel.  The default is a {@link RoundRobinWorkerChooser}.
+     *
+     * @throws IllegalStateException
+     *         if the {@link WorkerPool} of this factory is not an
+     *         {@link AbstractNioWorkerPool}
+     */
+    public void setWorkerChooser(WorkerChooser workerChooser) {
+        if (!(workerPool instanceof AbstractNioWorkerPool)) {
+            throw new IllegalStateException(
+                    "the worker pool does not support a WorkerChooser: " + workerPool.getClass().getName());
+        }
+        ((AbstractNioWorkerPool<?>) workerPool).setWorkerChooser(workerChooser);
+    }
+
     public ServerSocketChannel newChannel(ChannelPipeline pipeline) {
         return new NioServerSocketChannel(this, pipeline, sink, bossPool.nextBoss(), workerPool);
     }
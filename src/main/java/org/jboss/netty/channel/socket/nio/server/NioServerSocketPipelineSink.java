@@ -21,6 +21,7 @@ import org.jboss.netty.channel.future.ChannelFuture;
 import org.jboss.netty.channel.core.ChannelPipeline;
 import org.jboss.netty.channel.core.ChannelState;
 import org.jboss.netty.channel.event.ChannelStateEvent;
+import org.jboss.netty.channel.event.FlushEvent;
 import org.jboss.netty.channel.event.MessageEvent;
 import org.jboss.netty.channel.socket.nio.AbstractNioChannelSink;
 import org.jboss.netty.channel.socket.nio.NioSocketChannel;
@@ -94,11 +95,9 @@ class NioServerSocketPipelineSink extends AbstractNioChannelSink {
                 break;
             }
         } else if (e instanceof MessageEvent) {
-            MessageEvent event = (MessageEvent) e;
-            NioSocketChannel channel = (NioSocketChannel) event.getChannel();
-            boolean offered = channel.writeBufferQueue.offer(event);
-            assert offered;
-            channel.worker.writeFromUserCode(channel);
+            write((MessageEvent) e);
+        } else if (e instanceof FlushEvent) {
+            flush((FlushEvent) e);
         }
     }
 }
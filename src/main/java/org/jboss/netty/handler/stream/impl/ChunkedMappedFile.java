@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.stream.impl;
+
+import static org.jboss.netty.buffer.impl.ChannelBuffers.*;
+import static org.jboss.netty.handler.stream.impl.ChunkedStream.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.stream.ChunkedInput;
+
+/**
+ * A {@link ChunkedInput} that maps a file into memory region by region and
+ * returns the slices of the mapped regions as chunks.  The file content is
+ * never copied into the Java heap; each chunk is a
+ * {@linkplain org.jboss.netty.buffer.impl.MappedChannelBuffer mapped buffer}
+ * which is written to the socket directly.
+ * <p>
+ * A region is unmapped once all its chunks have been written and this input
+ * has moved on to the next region, so the address space in use stays bounded
+ * by a few regions no matter how large the file is.
+ */
+public class ChunkedMappedFile implements ChunkedInput {
+
+    static final int DEFAULT_MAP_SIZE = 4 * 1024 * 1024;
+
+    private final FileChannel in;
+    private final long startOffset;
+    private final long endOffset;
+    private final int chunkSize;
+    private final int mapSize;
+    private long offset;
+    private ChannelBuffer region;
+    private long regionOffset;
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     */
+    public ChunkedMappedFile(File in) throws IOException {
+        this(new FileInputStream(in).getChannel());
+    }
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     */
+    public ChunkedMappedFile(FileChannel in) throws IOException {
+        this(in, 0, in.size(), DEFAULT_CHUNK_SIZE, DEFAULT_MAP_SIZE);
+    }
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     *
+     * @param offset the offset of the file where the transfer begins
+     * @param length the number of bytes to transfer
+     * @param chunkSize the number of bytes to fetch on each
+     *                  {@link #nextChunk()} call
+     * @param mapSize the number of bytes to map at a time
+     */
+    public ChunkedMappedFile(FileChannel in, long offset, long length, int chunkSize, int mapSize)
+            throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException(
+                    "offset: " + offset + " (expected: 0 or greater)");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException(
+                    "length: " + length + " (expected: 0 or greater)");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(
+                    "chunkSize: " + chunkSize +
+                    " (expected: a positive integer)");
+        }
+        if (mapSize < chunkSize) {
+            throw new IllegalArgumentException(
+                    "mapSize: " + mapSize +
+                    " (expected: chunkSize (" + chunkSize + ") or greater)");
+        }
+
+        this.in = in;
+        this.offset = startOffset = offset;
+        endOffset = offset + length;
+        this.chunkSize = chunkSize;
+        this.mapSize = mapSize;
+    }
+
+    /**
+     * Returns the offset in the file where the transfer began.
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Returns the offset in the file where the transfer will end.
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Returns the offset in the file where the transfer is happening currently.
+     */
+    public long getCurrentOffset() {
+        return offset;
+    }
+
+    public boolean hasNextChunk() throws Exception {
+        return offset < endOffset && in.isOpen();
+    }
+
+    public boolean isEndOfInput() throws Exception {
+        return !hasNextChunk();
+    }
+
+    public void close() throws Exception {
+        releaseRegion();
+        in.close();
+    }
+
+    public Object nextChunk() throws Exception {
+        long offset = this.offset;
+        if (offset >= endOffset) {
+            return null;
+        }
+
+        ChannelBuffer region = this.region;
+        if (region == null || offset >= regionOffset + region.capacity()) {
+            releaseRegion();
+            this.region = region = mappedBuffer(in, offset, (int) Math.min(mapSize, endOffset - offset));
+            regionOffset = offset;
+        }
+
+        int index = (int) (offset - regionOffset);
+        int length = Math.min(chunkSize, region.capacity() - index);
+        // The chunk shares the reference count of the region; the transport
+        // releases it once the chunk has been written.
+        ChannelBuffer chunk = region.slice(index, length);
+        chunk.retain();
+
+        this.offset = offset + length;
+        if (this.offset == endOffset) {
+            releaseRegion();
+        }
+        return chunk;
+    }
+
+    private void releaseRegion() {
+        if (region != null) {
+            region.release();
+            region = null;
+        }
+    }
+}
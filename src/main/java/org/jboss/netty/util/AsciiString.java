@@ -0,0 +1,451 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.internal.CaseIgnoringComparator;
+import org.jboss.netty.util.internal.EmptyArrays;
+
+/**
+ * An immutable {@link CharSequence} whose characters are stored as one byte
+ * each, suited for the protocol tokens such as header names and command
+ * verbs.  Creating it from a {@link ChannelBuffer} does not widen the bytes
+ * into {@code char}s, and writing it back is a plain byte copy.
+ * <p>
+ * A character above U+00FF cannot be represented and is replaced
+ * with {@code '?'}; a byte is read back as the ISO-8859-1 character of the
+ * same value.  The hash code is cached, and is the same for two strings
+ * which differ only in the case of their ISO-8859-1 letters, so that an
+ * {@link AsciiString} can serve as a key of a case-insensitive lookup.
+ * {@link #equals(Object)} is case-sensitive; use
+ * {@link #contentEqualsIgnoreCase(CharSequence)} for a case-insensitive
+ * comparison.
+ *
+ * <h3>Interning</h3>
+ *
+ * The well-known tokens of a protocol can be registered with
+ * {@link #intern(CharSequence)}.  {@link #of(ChannelBuffer, int, int)} then
+ * returns the registered instance instead of creating a new one when the
+ * bytes match one of them exactly, so that decoding a well-known token
+ * allocates nothing.
+ */
+public final class AsciiString implements CharSequence, Comparable<AsciiString> {
+
+    public static final AsciiString EMPTY_STRING = new AsciiString(EmptyArrays.EMPTY_BYTES, 0, 0, false);
+
+    /**
+     * The maximum number of the interned strings.
+     */
+    private static final int MAX_INTERNED = 1024;
+
+    private static final Object internLock = new Object();
+    private static volatile AsciiString[] internTable = new AsciiString[64];
+    private static int internCount;
+
+    private final byte[] value;
+    private final int offset;
+    private final int length;
+    private int hash;
+    private String string;
+
+    /**
+     * Creates a new string which contains a copy of the specified bytes.
+     */
+    public AsciiString(byte[] value) {
+        this(value, 0, value.length, true);
+    }
+
+    /**
+     * Creates a new string which contains the specified region of the
+     * specified bytes.
+     *
+     * @param copy {@code false} to share the array instead of copying it, in
+     *             which case the region must never be modified afterwards
+     */
+    public AsciiString(byte[] value, int offset, int length, boolean copy) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        if (offset < 0 || length < 0 || offset > value.length - length) {
+            throw new IndexOutOfBoundsException(
+                    "offset: " + offset + ", length: " + length + " (expected: range(0, " + value.length + "))");
+        }
+        if (copy) {
+            byte[] copied = new byte[length];
+            System.arraycopy(value, offset, copied, 0, length);
+            this.value = copied;
+            this.offset = 0;
+        } else {
+            this.value = value;
+            this.offset = offset;
+        }
+        this.length = length;
+    }
+
+    /**
+     * Creates a new string from the specified characters.
+     */
+    public AsciiString(CharSequence value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        length = value.length();
+        offset = 0;
+        this.value = new byte[length];
+        for (int i = 0; i < length; i ++) {
+            this.value[i] = c2b(value.charAt(i));
+        }
+        if (value instanceof String) {
+            string = (String) value;
+        }
+    }
+
+    /**
+     * Returns the registered instance whose bytes are the specified region
+     * of the specified buffer, or a new string which contains a copy of the
+     * region if there is none.  The region is not consumed.
+     */
+    public static AsciiString of(ChannelBuffer buffer, int index, int length) {
+        AsciiString interned = lookup(buffer, index, length);
+        if (interned != null) {
+            return interned;
+        }
+        if (length == 0) {
+            return EMPTY_STRING;
+        }
+        byte[] value = new byte[length];
+        buffer.getBytes(index, value);
+        return new AsciiString(value, 0, length, false);
+    }
+
+    /**
+     * Returns a string whose bytes are the specified region of the specified
+     * buffer.  If the buffer has a backing array, the string shares it
+     * instead of copying the region.  The caller must then make sure that
+     * the region is not modified while the string is in use, which rules out
+     * a pooled buffer which is released and re-used.
+     */
+    public static AsciiString wrap(ChannelBuffer buffer, int index, int length) {
+        if (buffer.hasArray()) {
+            if (index < 0 || length < 0 || index > buffer.capacity() - length) {
+                throw new IndexOutOfBoundsException(
+                        "index: " + index + ", length: " + length +
+                        " (expected: range(0, " + buffer.capacity() + "))");
+            }
+            return new AsciiString(buffer.array(), buffer.arrayOffset() + index, length, false);
+        }
+        byte[] value = new byte[length];
+        buffer.getBytes(index, value);
+        return new AsciiString(value, 0, length, false);
+    }
+
+    /**
+     * Returns the canonical instance of the specified token, registering it
+     * so that {@link #of(ChannelBuffer, int, int)} returns it for the same
+     * bytes.  Once 1024 tokens have been registered, a
+     * token which is not registered yet is returned as a new instance
+     * without being registered.
+     */
+    public static AsciiString intern(CharSequence token) {
+        AsciiString s = token instanceof AsciiString? (AsciiString) token : new AsciiString(token);
+        synchronized (internLock) {
+            AsciiString[] table = internTable;
+            int mask = table.length - 1;
+            for (int i = s.hashCode() & mask;; i = i + 1 & mask) {
+                AsciiString e = table[i];
+                if (e == null) {
+                    break;
+                }
+                if (e.equals(s)) {
+                    return e;
+                }
+            }
+            if (internCount >= MAX_INTERNED) {
+                return s;
+            }
+
+            // Keep the table at most half full, and publish a new copy so
+            // that the lookups need no lock.
+            int newLength = internCount + 1 > table.length >>> 1? table.length << 1 : table.length;
+            AsciiString[] newTable = new AsciiString[newLength];
+            for (AsciiString e: table) {
+                if (e != null) {
+                    insert(newTable, e);
+                }
+            }
+            insert(newTable, s);
+            internCount ++;
+            internTable = newTable;
+            return s;
+        }
+    }
+
+    private static void insert(AsciiString[] table, AsciiString s) {
+        int mask = table.length - 1;
+        int i = s.hashCode() & mask;
+        while (table[i] != null) {
+            i = i + 1 & mask;
+        }
+        table[i] = s;
+    }
+
+    private static AsciiString lookup(ChannelBuffer buffer, int index, int length) {
+        final AsciiString[] table = internTable;
+        final int mask = table.length - 1;
+        final byte[] array;
+        final int arrayIndex;
+        if (buffer.hasArray()) {
+            if (index < 0 || length < 0 || index > buffer.capacity() - length) {
+                throw new IndexOutOfBoundsException(
+                        "index: " + index + ", length: " + length +
+                        " (expected: range(0, " + buffer.capacity() + "))");
+            }
+            array = buffer.array();
+            arrayIndex = buffer.arrayOffset() + index;
+        } else {
+            array = null;
+            arrayIndex = 0;
+        }
+
+        int h = 0;
+        if (array != null) {
+            for (int i = 0; i < length; i ++) {
+                h = 31 * h + toLowerCase(array[arrayIndex + i]);
+            }
+        } else {
+            for (int i = 0; i < length; i ++) {
+                h = 31 * h + toLowerCase(buffer.getByte(index + i));
+            }
+        }
+
+        for (int i = h & mask;; i = i + 1 & mask) {
+            AsciiString e = table[i];
+            if (e == null) {
+                return null;
+            }
+            if (e.length != length || e.hashCode() != h) {
+                continue;
+            }
+            if (array != null) {
+                if (regionMatches(e.value, e.offset, array, arrayIndex, length)) {
+                    return e;
+                }
+            } else {
+                int j = 0;
+                while (j < length && e.value[e.offset + j] == buffer.getByte(index + j)) {
+                    j ++;
+                }
+                if (j == length) {
+                    return e;
+                }
+            }
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns {@code true} if and only if this string has no characters.
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public char charAt(int index) {
+        return (char) (byteAt(index) & 0xFF);
+    }
+
+    /**
+     * Returns the byte at the specified index.
+     */
+    public byte byteAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + " (expected: range(0, " + length + "))");
+        }
+        return value[offset + index];
+    }
+
+    /**
+     * Returns a new string which shares the bytes of this string.
+     */
+    public AsciiString subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "start: " + start + ", end: " + end + " (expected: range(0, " + length + "))");
+        }
+        if (start == 0 && end == length) {
+            return this;
+        }
+        if (start == end) {
+            return EMPTY_STRING;
+        }
+        return new AsciiString(value, offset + start, end - start, false);
+    }
+
+    /**
+     * Returns a copy of the bytes of this string.
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length];
+        System.arraycopy(value, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Writes the bytes of this string at the current {@code writerIndex} of
+     * the specified buffer and increases the {@code writerIndex} by
+     * {@link #length()}.
+     */
+    public void writeTo(ChannelBuffer buffer) {
+        buffer.writeBytes(value, offset, length);
+    }
+
+    /**
+     * Writes the bytes of this string at the specified absolute index of the
+     * specified buffer, without modifying its indexes.
+     */
+    public void setTo(ChannelBuffer buffer, int index) {
+        buffer.setBytes(index, value, offset, length);
+    }
+
+    /**
+     * Returns {@code true} if and only if the specified sequence has the same
+     * characters as this string.
+     */
+    public boolean contentEquals(CharSequence seq) {
+        if (seq == this) {
+            return true;
+        }
+        if (seq instanceof AsciiString) {
+            return equals(seq);
+        }
+        if (seq == null || seq.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i ++) {
+            if (seq.charAt(i) != (char) (value[offset + i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if and only if the specified sequence has the same
+     * characters as this string, ignoring case as
+     * {@link String#equalsIgnoreCase(String)} does.
+     */
+    public boolean contentEqualsIgnoreCase(CharSequence seq) {
+        if (seq == this) {
+            return true;
+        }
+        if (seq == null || seq.length() != length) {
+            return false;
+        }
+        if (seq instanceof AsciiString) {
+            AsciiString that = (AsciiString) seq;
+            if (that.hashCode() != hashCode()) {
+                return false;
+            }
+        }
+        return CaseIgnoringComparator.INSTANCE.compare(this, seq) == 0;
+    }
+
+    public int compareTo(AsciiString that) {
+        if (that == this) {
+            return 0;
+        }
+        final int minLength = Math.min(length, that.length);
+        for (int i = 0; i < minLength; i ++) {
+            int a = value[offset + i] & 0xFF;
+            int b = that.value[that.offset + i] & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - that.length;
+    }
+
+    /**
+     * Returns the hash code of this string, which ignores the case of the
+     * ISO-8859-1 letters.  It is not the same as the hash code of the
+     * {@link String} with the same characters.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0 && length != 0) {
+            for (int i = 0; i < length; i ++) {
+                h = 31 * h + toLowerCase(value[offset + i]);
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof AsciiString)) {
+            return false;
+        }
+        AsciiString that = (AsciiString) o;
+        return length == that.length && hashCode() == that.hashCode() &&
+               regionMatches(value, offset, that.value, that.offset, length);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public String toString() {
+        String s = string;
+        if (s == null) {
+            // Every byte is the lower half of a char whose upper half is 0.
+            s = new String(value, 0, offset, length);
+            string = s;
+        }
+        return s;
+    }
+
+    private static boolean regionMatches(byte[] a, int aIndex, byte[] b, int bIndex, int length) {
+        for (int i = 0; i < length; i ++) {
+            if (a[aIndex + i] != b[bIndex + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the lower case of the ISO-8859-1 character of the specified
+     * byte, so that the hash code agrees with
+     * {@link #contentEqualsIgnoreCase(CharSequence)}.
+     */
+    private static int toLowerCase(byte b) {
+        int c = b & 0xFF;
+        if (c >= 'A' && c <= 'Z' || c >= 0xC0 && c <= 0xDE && c != 0xD7) {
+            return c + 32;
+        }
+        return c;
+    }
+
+    private static byte c2b(char c) {
+        return c > 0xFF? (byte) '?' : (byte) c;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+/**
+ * Collection of methods to handle objects that may implement
+ * {@link ReferenceCounted}.  An object which does not implement
+ * {@link ReferenceCounted} is left untouched.
+ */
+public final class ReferenceCountUtil {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(ReferenceCountUtil.class);
+
+    /**
+     * Tries to call {@link ReferenceCounted#retain()} if the specified message
+     * implements {@link ReferenceCounted}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T retain(T msg) {
+        if (msg instanceof ReferenceCounted) {
+            return (T) ((ReferenceCounted) msg).retain();
+        }
+        return msg;
+    }
+
+    /**
+     * Tries to call {@link ReferenceCounted#release()} if the specified message
+     * implements {@link ReferenceCounted}.
+     */
+    public static boolean release(Object msg) {
+        if (msg instanceof ReferenceCounted) {
+            return ((ReferenceCounted) msg).release();
+        }
+        return false;
+    }
+
+    /**
+     * Tries to call {@link ReferenceCounted#release()} if the specified message
+     * implements {@link ReferenceCounted}.  Unlike {@link #release(Object)}
+     * this method catches an exception raised by
+     * {@link ReferenceCounted#release()} and logs it, rather than rethrowing
+     * it to the caller.  It is usually recommended to use
+     * {@link #release(Object)} instead, unless you absolutely need to swallow
+     * an exception.
+     */
+    public static void safeRelease(Object msg) {
+        try {
+            release(msg);
+        } catch (Throwable t) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to release a message: " + msg, t);
+            }
+        }
+    }
+
+    private ReferenceCountUtil() {
+        // Unused
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.jboss.netty.util.internal.StringUtil.*;
+
+/**
+ * Detects the resources which were garbage-collected without being released,
+ * such as a pooled buffer whose {@link ReferenceCounted#release()} was never
+ * called.
+ * <p>
+ * Tracking every resource is expensive, so only one out of
+ * {@code samplingInterval} resources is tracked, and the stack trace of its
+ * creation is recorded.  When a tracked resource is found to be leaked, the
+ * recorded stack trace is logged at the {@code ERROR} level.  The detection
+ * can be turned off with {@code -Dorg.jboss.netty.noResourceLeakDetection}
+ * or via {@link #setEnabled(boolean)}, and the default sampling interval can
+ * be changed with {@code -Dorg.jboss.netty.leakDetection.samplingInterval}.
+ *
+ * @param <T> the type of the tracked resource
+ */
+public final class ResourceLeakDetector<T> {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(ResourceLeakDetector.class);
+
+    private static final int DEFAULT_SAMPLING_INTERVAL;
+    private static final int MAX_STACK_TRACE_DEPTH = 32;
+
+    private static volatile boolean disabled;
+
+    static {
+        final boolean DISABLED = SystemPropertyUtil.getBoolean("org.jboss.netty.noResourceLeakDetection", false);
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dorg.jboss.netty.noResourceLeakDetection: " + DISABLED);
+        }
+        disabled = DISABLED;
+
+        DEFAULT_SAMPLING_INTERVAL = Math.max(1, SystemPropertyUtil.getInt(
+                "org.jboss.netty.leakDetection.samplingInterval", 113));
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dorg.jboss.netty.leakDetection.samplingInterval: " + DEFAULT_SAMPLING_INTERVAL);
+        }
+    }
+
+    /**
+     * Enables or disabled the resource leak detection.
+     */
+    public static void setEnabled(boolean enabled) {
+        disabled = !enabled;
+    }
+
+    /**
+     * Returns {@code true} if resource leak detection is enabled.
+     */
+    public static boolean isEnabled() {
+        return !disabled;
+    }
+
+    /** the linked list of active resources */
+    private final DefaultResourceLeak head = new DefaultResourceLeak(this, null);
+    private final DefaultResourceLeak tail = new DefaultResourceLeak(this, null);
+
+    private final ReferenceQueue<Object> refQueue = new ReferenceQueue<Object>();
+    private final ConcurrentMap<String, Boolean> reportedLeaks = new ConcurrentHashMap<String, Boolean>();
+
+    private final String resourceType;
+    private final int samplingInterval;
+    private final long maxActive;
+    private long active;
+    private final AtomicBoolean loggedTooManyActive = new AtomicBoolean();
+
+    private long leakCheckCnt;
+
+    public ResourceLeakDetector(Class<?> resourceType) {
+        this(resourceType.getSimpleName());
+    }
+
+    public ResourceLeakDetector(String resourceType) {
+        this(resourceType, DEFAULT_SAMPLING_INTERVAL, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param resourceType     the name of the resource type to show in the log messages
+     * @param samplingInterval the interval on which sampling takes place
+     * @param maxActive        the number of active instances after which a warning about
+     *                         creating too many instances is logged
+     */
+    public ResourceLeakDetector(String resourceType, int samplingInterval, long maxActive) {
+        if (resourceType == null) {
+            throw new NullPointerException("resourceType");
+        }
+        if (samplingInterval <= 0) {
+            throw new IllegalArgumentException("samplingInterval: " + samplingInterval + " (expected: 1+)");
+        }
+        if (maxActive <= 0) {
+            throw new IllegalArgumentException("maxActive: " + maxActive + " (expected: 1+)");
+        }
+
+        this.resourceType = resourceType;
+        this.samplingInterval = samplingInterval;
+        this.maxActive = maxActive;
+
+        head.next = tail;
+        tail.prev = head;
+    }
+
+    /**
+     * Creates a new {@link ResourceLeak} which is expected to be closed via
+     * {@link ResourceLeak#close()} when the related resource is deallocated.
+     *
+     * @return the {@link ResourceLeak} or {@code null} if the resource is not
+     *         sampled or the detection is disabled
+     */
+    public ResourceLeak open(T obj) {
+        if (disabled || leakCheckCnt ++ % samplingInterval != 0) {
+            return null;
+        }
+
+        reportLeak();
+
+        return new DefaultResourceLeak(this, obj);
+    }
+
+    private void reportLeak() {
+        if (!logger.isErrorEnabled()) {
+            for (;;) {
+                DefaultResourceLeak ref = (DefaultResourceLeak) refQueue.poll();
+                if (ref == null) {
+                    break;
+                }
+                ref.close();
+            }
+            return;
+        }
+
+        // Report too many instances.
+        if (active * samplingInterval > maxActive && loggedTooManyActive.compareAndSet(false, true)) {
+            logger.error("LEAK: You are creating too many " + resourceType + " instances.  " +
+                    resourceType + " is a shared resource that must be reused across the JVM," +
+                    " so that only a few instances are created.");
+        }
+
+        // Detect and report previous leaks.
+        for (;;) {
+            DefaultResourceLeak ref = (DefaultResourceLeak) refQueue.poll();
+            if (ref == null) {
+                break;
+            }
+
+            ref.clear();
+
+            if (!ref.close()) {
+                continue;
+            }
+
+            String record = ref.toString();
+            if (reportedLeaks.putIfAbsent(record, Boolean.TRUE) == null) {
+                logger.error("LEAK: " + resourceType + ".release() was not called before it's garbage-collected." +
+                        " Please make sure every " + resourceType + " is released once it is not needed anymore." +
+                        record);
+            }
+        }
+    }
+
+    private static final class DefaultResourceLeak extends PhantomReference<Object> implements ResourceLeak {
+
+        private final ResourceLeakDetector<?> detector;
+        private final String creationRecord;
+        private final AtomicBoolean freed;
+        private DefaultResourceLeak prev;
+        private DefaultResourceLeak next;
+
+        DefaultResourceLeak(ResourceLeakDetector<?> detector, Object referent) {
+            super(referent, referent != null? detector.refQueue : null);
+            this.detector = detector;
+
+            if (referent != null) {
+                creationRecord = newRecord();
+
+                DefaultResourceLeak head = detector.head;
+                synchronized (head) {
+                    prev = head;
+                    next = head.next;
+                    head.next.prev = this;
+                    head.next = this;
+                    detector.active ++;
+                }
+                freed = new AtomicBoolean();
+            } else {
+                creationRecord = null;
+                freed = new AtomicBoolean(true);
+            }
+        }
+
+        public boolean close() {
+            if (freed.compareAndSet(false, true)) {
+                synchronized (detector.head) {
+                    detector.active --;
+                    prev.next = next;
+                    next.prev = prev;
+                    prev = null;
+                    next = null;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            if (creationRecord == null) {
+                return "";
+            }
+            return NEWLINE + "Created at:" + NEWLINE + creationRecord;
+        }
+    }
+
+    private static String newRecord() {
+        StringBuilder buf = new StringBuilder(4096);
+        StackTraceElement[] array = new Throwable().getStackTrace();
+        int depth = 0;
+        for (StackTraceElement e: array) {
+            if (depth == 0 && e.getClassName().startsWith(ResourceLeakDetector.class.getName())) {
+                // Skip the frames of the detector itself.
+                continue;
+            }
+            if (depth ++ == MAX_STACK_TRACE_DEPTH) {
+                buf.append("\t...");
+                buf.append(NEWLINE);
+                break;
+            }
+            buf.append('\t');
+            buf.append(e);
+            buf.append(NEWLINE);
+        }
+
+        return buf.toString();
+    }
+}
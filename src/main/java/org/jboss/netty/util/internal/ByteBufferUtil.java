@@ -15,16 +15,23 @@
  */
 package org.jboss.netty.util.internal;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 
 /**
  * This is fork of ElasticSearch's ByteBufferAllocator.Cleaner class
+ * <p>
+ * On Java 9 and later, where {@code sun.misc.Cleaner} is gone and the
+ * internals of {@code java.nio} are not accessible anymore, the buffer is
+ * destroyed via {@code sun.misc.Unsafe.invokeCleaner(ByteBuffer)} instead.
  */
 public final class ByteBufferUtil {
     private static final boolean CLEAN_SUPPORTED;
     private static final Method directBufferCleaner;
     private static final Method directBufferCleanerClean;
+    private static final Object unsafe;
+    private static final Method unsafeInvokeCleaner;
 
     static {
         Method directBufferCleanerX = null;
@@ -42,19 +49,56 @@ public final class ByteBufferUtil {
         CLEAN_SUPPORTED = v;
         directBufferCleaner = directBufferCleanerX;
         directBufferCleanerClean = directBufferCleanerCleanX;
+
+        Object unsafeX = null;
+        Method unsafeInvokeCleanerX = null;
+        if (!v && DetectionUtil.hasUnsafe()) {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafeInvokeCleanerX = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                unsafeX = theUnsafe.get(null);
+            } catch (Exception e) {
+                unsafeInvokeCleanerX = null;
+            }
+        }
+        unsafe = unsafeX;
+        unsafeInvokeCleaner = unsafeInvokeCleanerX;
     }
 
     /**
-     * Destroy the given {@link ByteBuffer} if possible
+     * Returns {@code true} if {@link #destroy(ByteBuffer)} is able to release
+     * the memory of a direct buffer (or unmap a mapped buffer) immediately.
+     */
+    public static boolean isDestroySupported() {
+        return CLEAN_SUPPORTED || unsafeInvokeCleaner != null;
+    }
+
+    /**
+     * Destroy the given {@link ByteBuffer} if possible.  Only the buffer
+     * which was returned by {@link ByteBuffer#allocateDirect(int)} or
+     * {@link java.nio.channels.FileChannel#map} can be destroyed; a slice or
+     * a duplicate is left untouched.  The buffer and all its derived buffers
+     * must not be accessed anymore once destroyed.
      */
     public static void destroy(ByteBuffer buffer) {
-        if (CLEAN_SUPPORTED && buffer.isDirect()) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        if (CLEAN_SUPPORTED) {
             try {
                 Object cleaner = directBufferCleaner.invoke(buffer);
                 directBufferCleanerClean.invoke(cleaner);
             } catch (Exception e) {
                 // silently ignore exception
             }
+        } else if (unsafeInvokeCleaner != null) {
+            try {
+                unsafeInvokeCleaner.invoke(unsafe, buffer);
+            } catch (Exception e) {
+                // silently ignore exception (e.g. a slice or a duplicate)
+            }
         }
     }
 
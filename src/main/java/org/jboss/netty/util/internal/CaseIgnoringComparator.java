@@ -15,10 +15,18 @@
  */
 package org.jboss.netty.util.internal;
 
+import org.jboss.netty.util.AsciiString;
+
 import java.io.Serializable;
 import java.util.Comparator;
 
-public final class CaseIgnoringComparator implements Comparator<String>, Serializable {
+/**
+ * Compares two {@link CharSequence}s ignoring case as
+ * {@link String#compareToIgnoreCase(String)} does.  Since it accepts any
+ * {@link CharSequence}, it can also order {@link String}s and
+ * {@link AsciiString}s together.
+ */
+public final class CaseIgnoringComparator implements Comparator<CharSequence>, Serializable {
 
     private static final long serialVersionUID = 4582133183775373862L;
 
@@ -27,8 +35,42 @@ public final class CaseIgnoringComparator implements Comparator<String>, Seriali
     private CaseIgnoringComparator() {
     }
 
-    public int compare(String o1, String o2) {
-        return o1.compareToIgnoreCase(o2);
+    public int compare(CharSequence o1, CharSequence o2) {
+        if (o1 instanceof String && o2 instanceof String) {
+            return ((String) o1).compareToIgnoreCase((String) o2);
+        }
+
+        final int length1 = o1.length();
+        final int length2 = o2.length();
+        final int minLength = Math.min(length1, length2);
+        for (int i = 0; i < minLength; i ++) {
+            char c1 = o1.charAt(i);
+            char c2 = o2.charAt(i);
+            if (c1 == c2) {
+                continue;
+            }
+            if (c1 < 0x80 && c2 < 0x80) {
+                // Fast path for ASCII
+                c1 = toLowerCaseAscii(c1);
+                c2 = toLowerCaseAscii(c2);
+            } else {
+                c1 = Character.toUpperCase(c1);
+                c2 = Character.toUpperCase(c2);
+                if (c1 == c2) {
+                    continue;
+                }
+                c1 = Character.toLowerCase(c1);
+                c2 = Character.toLowerCase(c2);
+            }
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return length1 - length2;
+    }
+
+    private static char toLowerCaseAscii(char c) {
+        return c >= 'A' && c <= 'Z'? (char) (c + 32) : c;
     }
 
     @SuppressWarnings("MethodMayBeStatic")
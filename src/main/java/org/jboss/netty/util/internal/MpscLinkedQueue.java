@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free multi-producer single-consumer queue whose links are embedded in
+ * the queued {@link MpscLinkedQueueNode}s.
+ * <p>
+ * {@link #offer(MpscLinkedQueueNode)} may be called by any thread and costs a
+ * single atomic swap.  {@link #poll()} and {@link #peek()} must only be called
+ * by one consumer thread at a time.  A consumer may see the queue as empty
+ * while a producer is between swapping the tail and linking its node; the
+ * producer is expected to wake the consumer up afterwards, as a write request
+ * does by scheduling a write.
+ */
+public final class MpscLinkedQueue<T> {
+
+    private final MpscLinkedQueueNode<T> stub = new Stub<T>();
+    private final AtomicReference<MpscLinkedQueueNode<T>> tail;
+    private volatile MpscLinkedQueueNode<T> head;
+
+    public MpscLinkedQueue() {
+        head = stub;
+        tail = new AtomicReference<MpscLinkedQueueNode<T>>(stub);
+    }
+
+    /**
+     * Appends the specified node.  Can be called by any thread.
+     */
+    public void offer(MpscLinkedQueueNode<T> node) {
+        if (node == null) {
+            throw new NullPointerException("node");
+        }
+        node.setNext(null);
+        MpscLinkedQueueNode<T> prev = tail.getAndSet(node);
+        prev.setNext(node);
+    }
+
+    /**
+     * Returns the element which was offered last, or {@code null} if the
+     * queue is empty.  Can be called by any thread.  The returned element may
+     * have been polled already by the consumer.
+     */
+    public T peekLast() {
+        return tail.get().value();
+    }
+
+    /**
+     * Removes and returns the first element, or returns {@code null} if
+     * there is none.  Must only be called by the consumer thread.
+     */
+    public T poll() {
+        MpscLinkedQueueNode<T> head = this.head;
+        MpscLinkedQueueNode<T> next = head.next();
+        if (next == null) {
+            return null;
+        }
+
+        // Unlink the old head so that a node which is still referred to by
+        // someone else does not keep the following nodes reachable.
+        head.setNext(null);
+
+        if (next.next() == null) {
+            // The last node - try to put the stub back so that the queue does
+            // not keep referring to the returned element.
+            MpscLinkedQueueNode<T> stub = this.stub;
+            stub.setNext(null);
+            if (tail.compareAndSet(next, stub)) {
+                this.head = stub;
+                return next.value();
+            }
+        }
+
+        // The returned node stays as the head until the next poll.
+        this.head = next;
+        return next.value();
+    }
+
+    /**
+     * Returns the first element without removing it, or {@code null} if
+     * there is none.  Must only be called by the consumer thread.
+     */
+    public T peek() {
+        MpscLinkedQueueNode<T> next = head.next();
+        return next == null? null : next.value();
+    }
+
+    /**
+     * Returns {@code true} if there is no element in this queue, including
+     * the elements which are being offered at the moment.
+     */
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    private static final class Stub<T> extends MpscLinkedQueueNode<T> {
+        @Override
+        public T value() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+/**
+ * A node of a {@link MpscLinkedQueue}.  An object which is queued often
+ * extends this class itself so that enqueueing it allocates nothing; such an
+ * object must not be in more than one queue, or in the same queue twice, at a
+ * time.
+ */
+public abstract class MpscLinkedQueueNode<T> {
+
+    private volatile MpscLinkedQueueNode<T> next;
+
+    final MpscLinkedQueueNode<T> next() {
+        return next;
+    }
+
+    final void setNext(MpscLinkedQueueNode<T> next) {
+        this.next = next;
+    }
+
+    /**
+     * Returns the element this node carries, which is usually the node
+     * itself.
+     */
+    public abstract T value();
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteOrder;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes multi-byte primitives from and to a byte array with a
+ * single (possibly unaligned) memory access via {@code sun.misc.Unsafe},
+ * followed by a byte swap if the requested byte order differs from the
+ * native one.  The bulk accessors for the arrays of primitives copy the
+ * memory as a whole when the requested byte order is the native one.
+ * <p>
+ * The accessors are usable only if {@link #isAvailable()} returns
+ * {@code true}, which requires {@code sun.misc.Unsafe}
+ * (see {@link DetectionUtil#hasUnsafe()}) and a platform which supports
+ * unaligned memory access.  The callers are expected to fall back to their
+ * pure-Java implementation otherwise.  You can also disable the accelerated
+ * accessors by specifying the System property
+ * <strong>org.jboss.netty.noUnsafeArrayAccess</strong> with value of
+ * {@code true}.
+ * <p>
+ * Unlike the array access of the Java language, {@code sun.misc.Unsafe} does
+ * not check the bounds, so every accessor checks them explicitly and raises
+ * an {@link ArrayIndexOutOfBoundsException} just like the pure-Java
+ * implementation would.
+ */
+public final class UnsafeByteArrayAccess {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(UnsafeByteArrayAccess.class);
+
+    private static final Pattern UNALIGNED_ARCH =
+        Pattern.compile("^(i[3-6]86|x86(_64)?|x64|amd64|aarch64|ppc64le|s390x)$");
+
+    private static final boolean BIG_ENDIAN_NATIVE = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+    /**
+     * The maximum number of bytes {@code Unsafe.copyMemory()} copies at once,
+     * so that a large copy does not delay a safepoint for long.
+     */
+    private static final long COPY_CHUNK_SIZE = 1024 * 1024;
+
+    // sun.misc.Unsafe is looked up reflectively so that the build does not
+    // depend on it.  The method handles are bound to the Unsafe instance and
+    // held in static final fields, so that the JIT compiler inlines them.
+    private static final MethodHandle GET_SHORT;
+    private static final MethodHandle GET_INT;
+    private static final MethodHandle GET_LONG;
+    private static final MethodHandle PUT_SHORT;
+    private static final MethodHandle PUT_INT;
+    private static final MethodHandle PUT_LONG;
+    private static final MethodHandle COPY_MEMORY;
+    private static final long BYTE_ARRAY_BASE_OFFSET;
+    private static final long INT_ARRAY_BASE_OFFSET;
+    private static final long LONG_ARRAY_BASE_OFFSET;
+    private static final long FLOAT_ARRAY_BASE_OFFSET;
+    private static final long DOUBLE_ARRAY_BASE_OFFSET;
+    private static final boolean AVAILABLE;
+    private static final boolean COPY_MEMORY_AVAILABLE;
+
+    static {
+        MethodHandle getShort = null;
+        MethodHandle getInt = null;
+        MethodHandle getLong = null;
+        MethodHandle putShort = null;
+        MethodHandle putInt = null;
+        MethodHandle putLong = null;
+        Object unsafe = null;
+        long[] baseOffsets = new long[5];
+        boolean available = false;
+
+        String arch = SystemPropertyUtil.get("os.arch", "");
+        if (SystemPropertyUtil.getBoolean("org.jboss.netty.noUnsafeArrayAccess", false)) {
+            logger.debug("-Dorg.jboss.netty.noUnsafeArrayAccess: true");
+        } else if (!DetectionUtil.hasUnsafe()) {
+            logger.debug("sun.misc.Unsafe: unavailable");
+        } else if (!UNALIGNED_ARCH.matcher(arch).matches()) {
+            logger.debug("Unaligned memory access: unavailable (os.arch: " + arch + ')');
+        } else {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafe = theUnsafe.get(null);
+
+                Method arrayBaseOffset = unsafeClass.getMethod("arrayBaseOffset", Class.class);
+                Method arrayIndexScale = unsafeClass.getMethod("arrayIndexScale", Class.class);
+                Class<?>[] arrayTypes = { byte[].class, int[].class, long[].class, float[].class, double[].class };
+                for (int i = 0; i < arrayTypes.length; i ++) {
+                    baseOffsets[i] = ((Number) arrayBaseOffset.invoke(unsafe, arrayTypes[i])).longValue();
+                }
+
+                getShort = accessor(unsafe, "getShort", short.class);
+                getInt = accessor(unsafe, "getInt", int.class);
+                getLong = accessor(unsafe, "getLong", long.class);
+                putShort = accessor(unsafe, "putShort", void.class, short.class);
+                putInt = accessor(unsafe, "putInt", void.class, int.class);
+                putLong = accessor(unsafe, "putLong", void.class, long.class);
+                if (((Number) arrayIndexScale.invoke(unsafe, byte[].class)).intValue() == 1) {
+                    available = true;
+                }
+            } catch (Throwable t) {
+                logger.debug("sun.misc.Unsafe: unavailable", t);
+            }
+        }
+
+        GET_SHORT = available? getShort : null;
+        GET_INT = available? getInt : null;
+        GET_LONG = available? getLong : null;
+        PUT_SHORT = available? putShort : null;
+        PUT_INT = available? putInt : null;
+        PUT_LONG = available? putLong : null;
+        BYTE_ARRAY_BASE_OFFSET = baseOffsets[0];
+        INT_ARRAY_BASE_OFFSET = baseOffsets[1];
+        LONG_ARRAY_BASE_OFFSET = baseOffsets[2];
+        FLOAT_ARRAY_BASE_OFFSET = baseOffsets[3];
+        DOUBLE_ARRAY_BASE_OFFSET = baseOffsets[4];
+        AVAILABLE = available;
+        logger.debug("Accelerated byte array access: " + available);
+
+        MethodHandle copyMemory = null;
+        if (available) {
+            try {
+                // Unsafe.copyMemory() between two objects was added in Java 7.
+                copyMemory = MethodHandles.lookup().findVirtual(
+                        unsafe.getClass(), "copyMemory", MethodType.methodType(
+                                void.class, Object.class, long.class, Object.class, long.class, long.class))
+                        .bindTo(unsafe);
+            } catch (Throwable t) {
+                logger.debug("sun.misc.Unsafe.copyMemory: unavailable", t);
+            }
+        }
+        COPY_MEMORY = copyMemory;
+        COPY_MEMORY_AVAILABLE = copyMemory != null;
+    }
+
+    /**
+     * Returns the handle of {@code unsafe.<name>(Object, long)}, or of
+     * {@code unsafe.<name>(Object, long, <valueType>)} if a value type is given.
+     */
+    private static MethodHandle accessor(
+            Object unsafe, String name, Class<?> returnType, Class<?>... valueType) throws Exception {
+        MethodType type = valueType.length == 0?
+                MethodType.methodType(returnType, Object.class, long.class) :
+                MethodType.methodType(returnType, Object.class, long.class, valueType[0]);
+        return MethodHandles.lookup().findVirtual(unsafe.getClass(), name, type).bindTo(unsafe);
+    }
+
+    private static short getShort0(Object o, long offset) {
+        try {
+            return (short) GET_SHORT.invokeExact(o, offset);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static int getInt0(Object o, long offset) {
+        try {
+            return (int) GET_INT.invokeExact(o, offset);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static long getLong0(Object o, long offset) {
+        try {
+            return (long) GET_LONG.invokeExact(o, offset);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static void putShort0(Object o, long offset, short value) {
+        try {
+            PUT_SHORT.invokeExact(o, offset, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static void putInt0(Object o, long offset, int value) {
+        try {
+            PUT_INT.invokeExact(o, offset, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static void putLong0(Object o, long offset, long value) {
+        try {
+            PUT_LONG.invokeExact(o, offset, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        return new IllegalStateException(t);
+    }
+
+    /**
+     * Returns {@code true} if the accessors of this class can be used.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static short getShort(byte[] array, int index) {
+        short v = getShort0(array, address(array, index, 2));
+        return BIG_ENDIAN_NATIVE? v : Short.reverseBytes(v);
+    }
+
+    public static short getShortLE(byte[] array, int index) {
+        short v = getShort0(array, address(array, index, 2));
+        return BIG_ENDIAN_NATIVE? Short.reverseBytes(v) : v;
+    }
+
+    public static int getInt(byte[] array, int index) {
+        int v = getInt0(array, address(array, index, 4));
+        return BIG_ENDIAN_NATIVE? v : Integer.reverseBytes(v);
+    }
+
+    public static int getIntLE(byte[] array, int index) {
+        int v = getInt0(array, address(array, index, 4));
+        return BIG_ENDIAN_NATIVE? Integer.reverseBytes(v) : v;
+    }
+
+    public static long getLong(byte[] array, int index) {
+        long v = getLong0(array, address(array, index, 8));
+        return BIG_ENDIAN_NATIVE? v : Long.reverseBytes(v);
+    }
+
+    public static long getLongLE(byte[] array, int index) {
+        long v = getLong0(array, address(array, index, 8));
+        return BIG_ENDIAN_NATIVE? Long.reverseBytes(v) : v;
+    }
+
+    public static void setShort(byte[] array, int index, int value) {
+        short v = (short) value;
+        putShort0(array, address(array, index, 2), BIG_ENDIAN_NATIVE? v : Short.reverseBytes(v));
+    }
+
+    public static void setShortLE(byte[] array, int index, int value) {
+        short v = (short) value;
+        putShort0(array, address(array, index, 2), BIG_ENDIAN_NATIVE? Short.reverseBytes(v) : v);
+    }
+
+    public static void setInt(byte[] array, int index, int value) {
+        putInt0(array, address(array, index, 4), BIG_ENDIAN_NATIVE? value : Integer.reverseBytes(value));
+    }
+
+    public static void setIntLE(byte[] array, int index, int value) {
+        putInt0(array, address(array, index, 4), BIG_ENDIAN_NATIVE? Integer.reverseBytes(value) : value);
+    }
+
+    public static void setLong(byte[] array, int index, long value) {
+        putLong0(array, address(array, index, 8), BIG_ENDIAN_NATIVE? value : Long.reverseBytes(value));
+    }
+
+    public static void setLongLE(byte[] array, int index, long value) {
+        putLong0(array, address(array, index, 8), BIG_ENDIAN_NATIVE? Long.reverseBytes(value) : value);
+    }
+
+    /**
+     * Decodes {@code length} 32-bit integers in the specified byte order from
+     * {@code src} at {@code srcIndex} into {@code dst} at {@code dstIndex}.
+     * When the byte order is the native one, the memory is copied as a whole.
+     */
+    public static void getInts(byte[] src, int srcIndex, int[] dst, int dstIndex, int length, boolean bigEndian) {
+        checkBulk(src.length, srcIndex, dst.length, dstIndex, length, 4);
+        if (bigEndian == BIG_ENDIAN_NATIVE && COPY_MEMORY_AVAILABLE) {
+            copyMemory(src, BYTE_ARRAY_BASE_OFFSET + srcIndex,
+                       dst, INT_ARRAY_BASE_OFFSET + ((long) dstIndex << 2), (long) length << 2);
+            return;
+        }
+        final boolean swap = bigEndian != BIG_ENDIAN_NATIVE;
+        long address = BYTE_ARRAY_BASE_OFFSET + srcIndex;
+        for (int i = 0; i < length; i ++) {
+            int v = getInt0(src, address);
+            dst[dstIndex + i] = swap? Integer.reverseBytes(v) : v;
+            address += 4;
+        }
+    }
+
+    /**
+     * Encodes {@code length} 32-bit integers from {@code src} at
+     * {@code srcIndex} into {@code dst} at {@code dstIndex} in the specified
+     * byte order.
+     */
+    public static void setInts(int[] src, int srcIndex, byte[] dst, int dstIndex, int length, boolean bigEndian) {
+        checkBulk(dst.length, dstIndex, src.length, srcIndex, length, 4);
+        if (bigEndian == BIG_ENDIAN_NATIVE && COPY_MEMORY_AVAILABLE) {
+            copyMemory(src, INT_ARRAY_BASE_OFFSET + ((long) srcIndex << 2),
+                       dst, BYTE_ARRAY_BASE_OFFSET + dstIndex, (long) length << 2);
+            return;
+        }
+        final boolean swap = bigEndian != BIG_ENDIAN_NATIVE;
+        long address = BYTE_ARRAY_BASE_OFFSET + dstIndex;
+        for (int i = 0; i < length; i ++) {
+            int v = src[srcIndex + i];
+            putInt0(dst, address, swap? Integer.reverseBytes(v) : v);
+            address += 4;
+        }
+    }
+
+    /**
+     * Decodes {@code length} 64-bit integers in the specified byte order from
+     * {@code src} at {@code srcIndex} into {@code dst} at {@code dstIndex}.
+     */
+    public static void getLongs(byte[] src, int srcIndex, long[] dst, int dstIndex, int length, boolean bigEndian) {
+        checkBulk(src.length, srcIndex, dst.length, dstIndex, length, 8);
+        if (bigEndian == BIG_ENDIAN_NATIVE && COPY_MEMORY_AVAILABLE) {
+            copyMemory(src, BYTE_ARRAY_BASE_OFFSET + srcIndex,
+                       dst, LONG_ARRAY_BASE_OFFSET + ((long) dstIndex << 3), (long) length << 3);
+            return;
+        }
+        final boolean swap = bigEndian != BIG_ENDIAN_NATIVE;
+        long address = BYTE_ARRAY_BASE_OFFSET + srcIndex;
+        for (int i = 0; i < length; i ++) {
+            long v = getLong0(src, address);
+            dst[dstIndex + i] = swap? Long.reverseBytes(v) : v;
+            address += 8;
+        }
+    }
+
+    /**
+     * Encodes {@code length} 64-bit integers from {@code src} at
+     * {@code srcIndex} into {@code dst} at {@code dstIndex} in the specified
+     * byte order.
+     */
+    public static void setLongs(long[] src, int srcIndex, byte[] dst, int dstIndex, int length, boolean bigEndian) {
+        checkBulk(dst.length, dstIndex, src.length, srcIndex, length, 8);
+        if (bigEndian == BIG_ENDIAN_NATIVE && COPY_MEMORY_AVAILABLE) {
+            copyMemory(src, LONG_ARRAY_BASE_OFFSET + ((long) srcIndex << 3),
+                       dst, BYTE_ARRAY_BASE_OFFSET + dstIndex, (long) length << 3);
+            return;
+        }
+        final boolean swap = bigEndian != BIG_ENDIAN_NATIVE;
+        long address = BYTE_ARRAY_BASE_OFFSET + dstIndex;
+        for (int i = 0; i < length; i ++) {
+            long v = src[srcIndex + i];
+            putLong0(dst, address, swap? Long.reverseBytes(v) : v);
+            address += 8;
+        }
+    }
+
+    /**
+     * Decodes {@code length} 32-bit floating point numbers in the specified
+     * byte order from {@code src} at {@code srcIndex} into {@code dst} at
+     * {@code dstIndex}.
+     */
+    public static void getFloats(byte[] src, int srcIndex, float[] dst, int dstIndex, int length, boolean bigEndian) {
+        checkBulk(src.length, srcIndex, dst.length, dstIndex, length, 4);
+        if (bigEndian == BIG_ENDIAN_NATIVE && COPY_MEMORY_AVAILABLE) {
+            copyMemory(src, BYTE_ARRAY_BASE_OFFSET + srcIndex,
+                       dst, FLOAT_ARRAY_BASE_OFFSET + ((long) dstIndex << 2), (long) length << 2);
+            return;
+        }
+        final boolean swap = bigEndian != BIG_ENDIAN_NATIVE;
+        long address = BYTE_ARRAY_BASE_OFFSET + srcIndex;
+        for (int i = 0; i < length; i ++) {
+            int v = getInt0(src, address);
+            dst[dstIndex + i] = Float.intBitsToFloat(swap? Integer.reverseBytes(v) : v);
+            address += 4;
+        }
+    }
+
+    /**
+     * Encodes {@code length} 32-bit floating point numbers from {@code src} at
+     * {@code srcIndex} into {@code dst} at {@code dstIndex} in the specified
+     * byte order.
+     */
+    public static void setFloats(float[] src, int srcIndex, byte[] dst, int dstIndex, int length, boolean bigEndian) {
+        checkBulk(dst.length, dstIndex, src.length, srcIndex, length, 4);
+        if (bigEndian == BIG_ENDIAN_NATIVE && COPY_MEMORY_AVAILABLE) {
+            copyMemory(src, FLOAT_ARRAY_BASE_OFFSET + ((long) srcIndex << 2),
+                       dst, BYTE_ARRAY_BASE_OFFSET + dstIndex, (long) length << 2);
+            return;
+        }
+        final boolean swap = bigEndian != BIG_ENDIAN_NATIVE;
+        long address = BYTE_ARRAY_BASE_OFFSET + dstIndex;
+        for (int i = 0; i < length; i ++) {
+            int v = Float.floatToRawIntBits(src[srcIndex + i]);
+            putInt0(dst, address, swap? Integer.reverseBytes(v) : v);
+            address += 4;
+        }
+    }
+
+    /**
+     * Decodes {@code length} 64-bit floating point numbers in the specified
+     * byte order from {@code src} at {@code srcIndex} into {@code dst} at
+     * {@code dstIndex}.
+     */
+    public static void getDoubles(byte[] src, int srcIndex, double[] dst, int dstIndex, int length, boolean bigEndian) {
+        checkBulk(src.length, srcIndex, dst.length, dstIndex, length, 8);
+        if (bigEndian == BIG_ENDIAN_NATIVE && COPY_MEMORY_AVAILABLE) {
+            copyMemory(src, BYTE_ARRAY_BASE_OFFSET + srcIndex,
+                       dst, DOUBLE_ARRAY_BASE_OFFSET + ((long) dstIndex << 3), (long) length << 3);
+            return;
+        }
+        final boolean swap = bigEndian != BIG_ENDIAN_NATIVE;
+        long address = BYTE_ARRAY_BASE_OFFSET + srcIndex;
+        for (int i = 0; i < length; i ++) {
+            long v = getLong0(src, address);
+            dst[dstIndex + i] = Double.longBitsToDouble(swap? Long.reverseBytes(v) : v);
+            address += 8;
+        }
+    }
+
+    /**
+     * Encodes {@code length} 64-bit floating point numbers from {@code src} at
+     * {@code srcIndex} into {@code dst} at {@code dstIndex} in the specified
+     * byte order.
+     */
+    public static void setDoubles(double[] src, int srcIndex, byte[] dst, int dstIndex, int length, boolean bigEndian) {
+        checkBulk(dst.length, dstIndex, src.length, srcIndex, length, 8);
+        if (bigEndian == BIG_ENDIAN_NATIVE && COPY_MEMORY_AVAILABLE) {
+            copyMemory(src, DOUBLE_ARRAY_BASE_OFFSET + ((long) srcIndex << 3),
+                       dst, BYTE_ARRAY_BASE_OFFSET + dstIndex, (long) length << 3);
+            return;
+        }
+        final boolean swap = bigEndian != BIG_ENDIAN_NATIVE;
+        long address = BYTE_ARRAY_BASE_OFFSET + dstIndex;
+        for (int i = 0; i < length; i ++) {
+            long v = Double.doubleToRawLongBits(src[srcIndex + i]);
+            putLong0(dst, address, swap? Long.reverseBytes(v) : v);
+            address += 8;
+        }
+    }
+
+    private static void copyMemory(Object src, long srcOffset, Object dst, long dstOffset, long length) {
+        while (length > 0) {
+            long size = Math.min(length, COPY_CHUNK_SIZE);
+            try {
+                COPY_MEMORY.invokeExact(src, srcOffset, dst, dstOffset, size);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+            length -= size;
+            srcOffset += size;
+            dstOffset += size;
+        }
+    }
+
+    /**
+     * Checks that {@code length} elements of {@code elementSize} bytes fit
+     * in the byte array at {@code byteIndex} and in the element array at
+     * {@code elementIndex}.
+     */
+    private static void checkBulk(int byteArrayLength, int byteIndex,
+                                  int elementArrayLength, int elementIndex, int length, int elementSize) {
+        if (length < 0) {
+            throw new ArrayIndexOutOfBoundsException("length: " + length);
+        }
+        if (elementIndex < 0 || elementIndex > elementArrayLength - length) {
+            throw new ArrayIndexOutOfBoundsException(elementIndex < 0? elementIndex : elementIndex + length - 1);
+        }
+        if (byteIndex < 0 || byteIndex > byteArrayLength - (long) length * elementSize) {
+            throw new ArrayIndexOutOfBoundsException(
+                    byteIndex < 0? byteIndex : (int) Math.min(Integer.MAX_VALUE, byteIndex + (long) length * elementSize - 1));
+        }
+    }
+
+    private static long address(byte[] array, int index, int size) {
+        if (index < 0 || index > array.length - size) {
+            throw new ArrayIndexOutOfBoundsException(index < 0? index : index + size - 1);
+        }
+        return BYTE_ARRAY_BASE_OFFSET + index;
+    }
+
+    private UnsafeByteArrayAccess() {
+        // Unused
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the bulk primitive accessors against loops of the scalar accessors
+ * and the variable-length integer accessors against a plain LEB128 encoder,
+ * on every kind of buffer and in both byte orders.
+ */
+public class BulkAndVarIntTest {
+
+    private static final int ITERATIONS = 200;
+
+    private static final long[] EDGE_VALUES = {
+        0, 1, -1, 2, -2, 63, 64, -64, -65, 127, 128, 255, 16383, 16384, 2097151, 2097152,
+        Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE + 1L, Integer.MIN_VALUE - 1L,
+        0xFFFFFFFFL, 1L << 35, 1L << 56, 1L << 62, Long.MAX_VALUE, Long.MIN_VALUE,
+    };
+
+    private final Random random = new Random(42);
+    private final PooledChannelBufferFactory heapPool =
+            new PooledChannelBufferFactory(ByteOrder.BIG_ENDIAN, false, 1, 8192, 11);
+    private final PooledChannelBufferFactory directPool =
+            new PooledChannelBufferFactory(ByteOrder.BIG_ENDIAN, true, 1, 8192, 11);
+    private final List<ChannelBuffer> pooled = new ArrayList<ChannelBuffer>();
+
+    @After
+    public void releasePooledBuffers() {
+        for (ChannelBuffer buf: pooled) {
+            buf.release();
+        }
+        pooled.clear();
+        heapPool.freeThreadLocalCache();
+        directPool.freeThreadLocalCache();
+    }
+
+    @Test
+    public void testGetInts() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = TestBuffers.randomBytes(random, randomLength(), null);
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: buffers(content, order).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    int length = random.nextInt(buf.capacity() / 4 + 1);
+                    int index = random.nextInt(buf.capacity() - length * 4 + 1);
+                    int dstIndex = random.nextInt(4);
+
+                    int[] ints = new int[dstIndex + length + 2];
+                    float[] floats = new float[dstIndex + length + 2];
+                    buf.getInts(index, ints, dstIndex, length);
+                    buf.getFloats(index, floats, dstIndex, length);
+                    for (int i = 0; i < ints.length; i ++) {
+                        boolean copied = i >= dstIndex && i < dstIndex + length;
+                        int expected = copied? buf.getInt(index + (i - dstIndex) * 4) : 0;
+                        String message = e.getKey() + " at " + index + '+' + (i - dstIndex);
+                        assertEquals(message, expected, ints[i]);
+                        assertEquals(message, expected, Float.floatToRawIntBits(floats[i]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGetLongs() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = TestBuffers.randomBytes(random, randomLength(), null);
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: buffers(content, order).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    int length = random.nextInt(buf.capacity() / 8 + 1);
+                    int index = random.nextInt(buf.capacity() - length * 8 + 1);
+                    int dstIndex = random.nextInt(4);
+
+                    long[] longs = new long[dstIndex + length + 2];
+                    double[] doubles = new double[dstIndex + length + 2];
+                    buf.getLongs(index, longs, dstIndex, length);
+                    buf.getDoubles(index, doubles, dstIndex, length);
+                    for (int i = 0; i < longs.length; i ++) {
+                        boolean copied = i >= dstIndex && i < dstIndex + length;
+                        long expected = copied? buf.getLong(index + (i - dstIndex) * 8) : 0;
+                        String message = e.getKey() + " at " + index + '+' + (i - dstIndex);
+                        assertEquals(message, expected, longs[i]);
+                        assertEquals(message, expected, Double.doubleToRawLongBits(doubles[i]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSetInts() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = TestBuffers.randomBytes(random, randomLength(), null);
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: buffers(content, order).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    int length = random.nextInt(buf.capacity() / 4 + 1);
+                    int index = random.nextInt(buf.capacity() - length * 4 + 1);
+                    int srcIndex = random.nextInt(4);
+                    int[] ints = new int[srcIndex + length];
+                    float[] floats = new float[srcIndex + length];
+                    for (int i = 0; i < ints.length; i ++) {
+                        ints[i] = random.nextInt();
+                        floats[i] = Float.intBitsToFloat(random.nextInt());
+                    }
+
+                    ChannelBuffer before = ChannelBuffers.copiedBuffer(buf);
+                    buf.setInts(index, ints, srcIndex, length);
+                    for (int i = 0; i < length; i ++) {
+                        assertEquals(e.getKey(), ints[srcIndex + i], buf.getInt(index + i * 4));
+                    }
+                    assertUntouched(e.getKey(), before, buf, index, length * 4);
+
+                    buf.setFloats(index, floats, srcIndex, length);
+                    for (int i = 0; i < length; i ++) {
+                        assertEquals(e.getKey(), Float.floatToRawIntBits(floats[srcIndex + i]),
+                                buf.getInt(index + i * 4));
+                    }
+                    assertUntouched(e.getKey(), before, buf, index, length * 4);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSetLongs() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = TestBuffers.randomBytes(random, randomLength(), null);
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: buffers(content, order).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    int length = random.nextInt(buf.capacity() / 8 + 1);
+                    int index = random.nextInt(buf.capacity() - length * 8 + 1);
+                    int srcIndex = random.nextInt(4);
+                    long[] longs = new long[srcIndex + length];
+                    double[] doubles = new double[srcIndex + length];
+                    for (int i = 0; i < longs.length; i ++) {
+                        longs[i] = random.nextLong();
+                        doubles[i] = Double.longBitsToDouble(random.nextLong());
+                    }
+
+                    ChannelBuffer before = ChannelBuffers.copiedBuffer(buf);
+                    buf.setLongs(index, longs, srcIndex, length);
+                    for (int i = 0; i < length; i ++) {
+                        assertEquals(e.getKey(), longs[srcIndex + i], buf.getLong(index + i * 8));
+                    }
+                    assertUntouched(e.getKey(), before, buf, index, length * 8);
+
+                    buf.setDoubles(index, doubles, srcIndex, length);
+                    for (int i = 0; i < length; i ++) {
+                        assertEquals(e.getKey(), Double.doubleToRawLongBits(doubles[srcIndex + i]),
+                                buf.getLong(index + i * 8));
+                    }
+                    assertUntouched(e.getKey(), before, buf, index, length * 8);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBulkOutOfBounds() {
+        byte[] content = TestBuffers.randomBytes(random, 64, null);
+        for (ByteOrder order: TestBuffers.ORDERS) {
+            for (Map.Entry<String, ChannelBuffer> e: buffers(content, order).entrySet()) {
+                ChannelBuffer buf = e.getValue();
+                int[] ints = new int[16];
+                long[] longs = new long[8];
+                assertBulkFails(e.getKey(), buf, ints, longs, -1, 0, 1);
+                assertBulkFails(e.getKey(), buf, ints, longs, 4, 0, 16);
+                assertBulkFails(e.getKey(), buf, ints, longs, 0, -1, 1);
+                assertBulkFails(e.getKey(), buf, ints, longs, 0, 8, 9);
+                try {
+                    buf.getInts(0, ints, 0, -1);
+                    fail(e.getKey() + ": negative length");
+                } catch (IllegalArgumentException expected) {
+                    // Expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testVarIntEncoding() {
+        for (ByteOrder order: TestBuffers.ORDERS) {
+            for (long value: EDGE_VALUES) {
+                assertVarInts(order, value);
+            }
+            for (int n = 0; n < ITERATIONS; n ++) {
+                assertVarInts(order, random.nextLong() >> random.nextInt(64));
+            }
+        }
+    }
+
+    @Test
+    public void testVarIntStream() {
+        for (ByteOrder order: TestBuffers.ORDERS) {
+            long[] values = new long[ITERATIONS];
+            ChannelBuffer expected = ChannelBuffers.dynamicBuffer(order, 16);
+            for (int i = 0; i < values.length; i ++) {
+                values[i] = random.nextLong() >> random.nextInt(64);
+                expected.writeBytes(leb128(values[i]));
+                expected.writeBytes(leb128(values[i] << 1 ^ values[i] >> 63));
+                expected.writeBytes(leb128((int) values[i] & 0xFFFFFFFFL));
+                expected.writeBytes(leb128(((int) values[i] << 1 ^ (int) values[i] >> 31) & 0xFFFFFFFFL));
+            }
+
+            ChannelBuffer dynamic = ChannelBuffers.dynamicBuffer(order, 1);
+            for (long value: values) {
+                dynamic.writeVarInt64(value);
+                dynamic.writeZigZagVarInt64(value);
+                dynamic.writeVarInt32((int) value);
+                dynamic.writeZigZagVarInt32((int) value);
+            }
+            assertEquals(expected, dynamic);
+
+            byte[] content = new byte[expected.readableBytes()];
+            expected.getBytes(expected.readerIndex(), content);
+            for (Map.Entry<String, ChannelBuffer> e: buffers(content, order).entrySet()) {
+                ChannelBuffer buf = e.getValue();
+                for (long value: values) {
+                    assertEquals(e.getKey(), value, buf.readVarInt64());
+                    assertEquals(e.getKey(), value, buf.readZigZagVarInt64());
+                    assertEquals(e.getKey(), (int) value, buf.readVarInt32());
+                    assertEquals(e.getKey(), (int) value, buf.readZigZagVarInt32());
+                }
+                assertFalse(e.getKey(), buf.readable());
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedVarInt() {
+        for (ByteOrder order: TestBuffers.ORDERS) {
+            for (long value: EDGE_VALUES) {
+                byte[] encoded = leb128(value);
+                for (int length = 0; length < encoded.length; length ++) {
+                    byte[] content = new byte[length + 1];
+                    content[0] = 42;
+                    System.arraycopy(encoded, 0, content, 1, length);
+                    for (Map.Entry<String, ChannelBuffer> e: buffers(content, order).entrySet()) {
+                        ChannelBuffer buf = e.getValue();
+                        assertEquals(42, buf.readByte());
+                        try {
+                            buf.readVarInt64();
+                            fail(e.getKey() + ": " + length + " of " + encoded.length + " bytes");
+                        } catch (IndexOutOfBoundsException expected) {
+                            // Expected
+                        }
+                        assertEquals(e.getKey(), 1, buf.readerIndex());
+                        if (length < 5 && (value & 0xFFFFFFFFL) == value) {
+                            try {
+                                buf.readVarInt32();
+                                fail(e.getKey() + ": " + length + " of " + encoded.length + " bytes");
+                            } catch (IndexOutOfBoundsException expected) {
+                                // Expected
+                            }
+                            assertEquals(e.getKey(), 1, buf.readerIndex());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOverlongVarInt() {
+        byte[] content = new byte[11];
+        for (int i = 0; i < content.length; i ++) {
+            content[i] = (byte) 0x80;
+        }
+        for (ByteOrder order: TestBuffers.ORDERS) {
+            for (Map.Entry<String, ChannelBuffer> e: buffers(content, order).entrySet()) {
+                ChannelBuffer buf = e.getValue();
+                try {
+                    buf.readVarInt32();
+                    fail(e.getKey());
+                } catch (IllegalStateException expected) {
+                    // Expected
+                }
+                assertEquals(e.getKey(), 0, buf.readerIndex());
+                try {
+                    buf.readVarInt64();
+                    fail(e.getKey());
+                } catch (IllegalStateException expected) {
+                    // Expected
+                }
+                assertEquals(e.getKey(), 0, buf.readerIndex());
+            }
+        }
+    }
+
+    private int randomLength() {
+        return random.nextInt(8) == 0? random.nextInt(2048) : random.nextInt(96);
+    }
+
+    /**
+     * Returns {@link TestBuffers#allKinds} plus a pooled heap and a pooled
+     * direct buffer with the same content.
+     */
+    private Map<String, ChannelBuffer> buffers(byte[] content, ByteOrder order) {
+        Map<String, ChannelBuffer> buffers = new LinkedHashMap<String, ChannelBuffer>(
+                TestBuffers.allKinds(content, order, random));
+        buffers.put("pooled heap " + order, pooled(heapPool, content, order));
+        buffers.put("pooled direct " + order, pooled(directPool, content, order));
+        return buffers;
+    }
+
+    private ChannelBuffer pooled(PooledChannelBufferFactory factory, byte[] content, ByteOrder order) {
+        ChannelBuffer buf = factory.getBuffer(order, Math.max(1, content.length));
+        pooled.add(buf);
+        buf.writeBytes(content);
+        // Expose exactly the content, even if the pool rounded the capacity up.
+        return buf.slice(0, content.length);
+    }
+
+    private static void assertVarInts(ByteOrder order, long value) {
+        int intValue = (int) value;
+        assertEncoding(order, value, leb128(value), false, false);
+        assertEncoding(order, value, leb128(value << 1 ^ value >> 63), false, true);
+        assertEncoding(order, intValue, leb128(intValue & 0xFFFFFFFFL), true, false);
+        assertEncoding(order, intValue, leb128((intValue << 1 ^ intValue >> 31) & 0xFFFFFFFFL), true, true);
+        assertEquals(leb128(value).length, ChannelBuffers.varInt64Length(value));
+        assertEquals(leb128(intValue & 0xFFFFFFFFL).length, ChannelBuffers.varInt32Length(intValue));
+    }
+
+    private static void assertEncoding(ByteOrder order, long value, byte[] expected, boolean int32, boolean zigZag) {
+        String message = (zigZag? "zigzag " : "") + (int32? "varint32 " : "varint64 ") + value + ' ' + order;
+        ChannelBuffer buf = ChannelBuffers.buffer(order, expected.length);
+        if (int32) {
+            if (zigZag) {
+                buf.writeZigZagVarInt32((int) value);
+            } else {
+                buf.writeVarInt32((int) value);
+            }
+        } else {
+            if (zigZag) {
+                buf.writeZigZagVarInt64(value);
+            } else {
+                buf.writeVarInt64(value);
+            }
+        }
+        assertEquals(message, ChannelBuffers.wrappedBuffer(order, expected), buf);
+
+        long decoded;
+        if (int32) {
+            decoded = zigZag? buf.readZigZagVarInt32() : buf.readVarInt32();
+        } else {
+            decoded = zigZag? buf.readZigZagVarInt64() : buf.readVarInt64();
+        }
+        assertEquals(message, value, decoded);
+        assertFalse(message, buf.readable());
+    }
+
+    private static void assertUntouched(String message, ChannelBuffer before, ChannelBuffer after,
+                                        int index, int length) {
+        assertEquals(message, before.slice(0, index), after.slice(0, index));
+        int end = index + length;
+        assertEquals(message, before.slice(end, before.capacity() - end), after.slice(end, after.capacity() - end));
+    }
+
+    private static void assertBulkFails(String message, ChannelBuffer buf, int[] ints, long[] longs,
+                                        int index, int arrayIndex, int length) {
+        try {
+            buf.getInts(index * 4, ints, arrayIndex * 2, length * 2);
+            fail(message + ": getInts(" + index * 4 + ", " + arrayIndex * 2 + ", " + length * 2 + ')');
+        } catch (IndexOutOfBoundsException expected) {
+            // Expected
+        }
+        try {
+            buf.setInts(index * 4, ints, arrayIndex * 2, length * 2);
+            fail(message + ": setInts(" + index * 4 + ", " + arrayIndex * 2 + ", " + length * 2 + ')');
+        } catch (IndexOutOfBoundsException expected) {
+            // Expected
+        }
+        try {
+            buf.getLongs(index * 8, longs, arrayIndex, length);
+            fail(message + ": getLongs(" + index * 8 + ", " + arrayIndex + ", " + length + ')');
+        } catch (IndexOutOfBoundsException expected) {
+            // Expected
+        }
+        try {
+            buf.setLongs(index * 8, longs, arrayIndex, length);
+            fail(message + ": setLongs(" + index * 8 + ", " + arrayIndex + ", " + length + ')');
+        } catch (IndexOutOfBoundsException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * Encodes the specified value as unsigned LEB128, the reference encoding
+     * of the variable-length integers.
+     */
+    private static byte[] leb128(long value) {
+        byte[] out = new byte[10];
+        int i = 0;
+        do {
+            byte b = (byte) (value & 0x7F);
+            value >>>= 7;
+            out[i ++] = value != 0? (byte) (b | 0x80) : b;
+        } while (value != 0);
+        byte[] result = new byte[i];
+        System.arraycopy(out, 0, result, 0, i);
+        return result;
+    }
+}
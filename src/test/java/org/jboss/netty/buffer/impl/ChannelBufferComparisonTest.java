@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the word-wise {@link ChannelBuffers#hashCode(ChannelBuffer)},
+ * {@link ChannelBuffers#equals(ChannelBuffer, ChannelBuffer)} and
+ * {@link ChannelBuffers#compare(ChannelBuffer, ChannelBuffer)} return the
+ * same results as the previous int-wise and byte-wise implementations, which
+ * are reproduced here on plain byte arrays.
+ */
+public class ChannelBufferComparisonTest {
+
+    private static final int ITERATIONS = 300;
+
+    private final Random random = new Random(42);
+
+    private int randomLength() {
+        return random.nextInt(8) == 0? random.nextInt(2048) : random.nextInt(64);
+    }
+
+    @Test
+    public void testHashCode() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = TestBuffers.randomBytes(random, randomLength(), null);
+            int expected = referenceHashCode(content);
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: TestBuffers.allKinds(content, order, random).entrySet()) {
+                    assertEquals(e.getKey(), expected, ChannelBuffers.hashCode(e.getValue()));
+                    assertEquals(e.getKey(), expected, e.getValue().hashCode());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEqualsAndCompare() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] a = TestBuffers.randomBytes(random, randomLength(), null);
+            byte[] b = similar(a);
+            for (ByteOrder orderA: TestBuffers.ORDERS) {
+                for (ByteOrder orderB: TestBuffers.ORDERS) {
+                    int expectedCompare = referenceCompare(a, orderA, b);
+                    int expectedReverseCompare = referenceCompare(b, orderB, a);
+                    boolean expectedEquals = Arrays.equals(a, b);
+                    Map<String, ChannelBuffer> buffersA = TestBuffers.allKinds(a, orderA, random);
+                    Map<String, ChannelBuffer> buffersB = TestBuffers.allKinds(b, orderB, random);
+                    for (Map.Entry<String, ChannelBuffer> ea: buffersA.entrySet()) {
+                        for (Map.Entry<String, ChannelBuffer> eb: buffersB.entrySet()) {
+                            String message = ea.getKey() + " vs " + eb.getKey();
+                            ChannelBuffer bufA = ea.getValue();
+                            ChannelBuffer bufB = eb.getValue();
+                            assertEquals(message, expectedEquals, ChannelBuffers.equals(bufA, bufB));
+                            assertEquals(message, expectedEquals, bufA.equals(bufB));
+                            assertEquals(message, expectedCompare, ChannelBuffers.compare(bufA, bufB));
+                            assertEquals(message, expectedReverseCompare, ChannelBuffers.compare(bufB, bufA));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReaderIndex() {
+        byte[] a = TestBuffers.randomBytes(random, 100, null);
+        for (ByteOrder order: TestBuffers.ORDERS) {
+            for (Map.Entry<String, ChannelBuffer> e: TestBuffers.allKinds(a, order, random).entrySet()) {
+                ChannelBuffer buf = e.getValue();
+                buf.readerIndex(13);
+                buf.writerIndex(77);
+                byte[] readable = new byte[64];
+                System.arraycopy(a, 13, readable, 0, readable.length);
+                assertEquals(e.getKey(), referenceHashCode(readable), ChannelBuffers.hashCode(buf));
+                assertTrue(e.getKey(), ChannelBuffers.equals(buf, ChannelBuffers.wrappedBuffer(readable)));
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the specified bytes with a few changes, so that most
+     * pairs share a long common prefix.
+     */
+    private byte[] similar(byte[] a) {
+        switch (random.nextInt(4)) {
+        case 0:
+            return a.clone();
+        case 1:
+            byte[] truncated = new byte[random.nextInt(a.length + 1)];
+            System.arraycopy(a, 0, truncated, 0, truncated.length);
+            return truncated;
+        case 2:
+            byte[] extended = new byte[a.length + 1 + random.nextInt(9)];
+            System.arraycopy(a, 0, extended, 0, a.length);
+            return extended;
+        default:
+            byte[] changed = a.clone();
+            if (changed.length > 0) {
+                changed[random.nextInt(changed.length)] = (byte) random.nextInt();
+            }
+            return changed;
+        }
+    }
+
+    private static int referenceHashCode(byte[] a) {
+        final int intCount = a.length >>> 2;
+        int hashCode = 1;
+        int index = 0;
+        for (int i = intCount; i > 0; i --) {
+            hashCode = 31 * hashCode + getInt(a, index, ByteOrder.BIG_ENDIAN);
+            index += 4;
+        }
+        for (; index < a.length; index ++) {
+            hashCode = 31 * hashCode + a[index];
+        }
+        if (hashCode == 0) {
+            hashCode = 1;
+        }
+        return hashCode;
+    }
+
+    /**
+     * The previous implementation compared unsigned 32-bit integers read in
+     * the byte order of the first buffer, then the remaining bytes, and
+     * returned the difference of the lengths if all of them were equal.
+     */
+    private static int referenceCompare(byte[] a, ByteOrder orderA, byte[] b) {
+        final int minLength = Math.min(a.length, b.length);
+        final int uintCount = minLength >>> 2;
+        int index = 0;
+        for (int i = uintCount; i > 0; i --) {
+            long va = getInt(a, index, orderA) & 0xFFFFFFFFL;
+            long vb = getInt(b, index, orderA) & 0xFFFFFFFFL;
+            if (va > vb) {
+                return 1;
+            }
+            if (va < vb) {
+                return -1;
+            }
+            index += 4;
+        }
+        for (; index < minLength; index ++) {
+            int va = a[index] & 0xFF;
+            int vb = b[index] & 0xFF;
+            if (va > vb) {
+                return 1;
+            }
+            if (va < vb) {
+                return -1;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static int getInt(byte[] a, int index, ByteOrder order) {
+        if (order == ByteOrder.BIG_ENDIAN) {
+            return (a[index] & 0xff) << 24 | (a[index + 1] & 0xff) << 16 |
+                   (a[index + 2] & 0xff) << 8 | a[index + 3] & 0xff;
+        } else {
+            return a[index] & 0xff | (a[index + 1] & 0xff) << 8 |
+                   (a[index + 2] & 0xff) << 16 | (a[index + 3] & 0xff) << 24;
+        }
+    }
+}
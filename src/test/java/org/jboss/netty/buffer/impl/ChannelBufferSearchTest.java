@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferIndexFinder;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the word-wise byte search, the {@link ByteSetIndexFinder}s and the
+ * multi-byte delimiter search against a naive byte loop over every kind of
+ * buffer.
+ */
+public class ChannelBufferSearchTest {
+
+    private static final byte[] ALPHABET = { 0, '\r', '\n', ' ', '\t', 'a', (byte) 0x80, (byte) 0xff };
+    private static final int ITERATIONS = 300;
+
+    private static final ChannelBufferIndexFinder[] FINDERS = {
+        ChannelBufferIndexFinder.NUL, ChannelBufferIndexFinder.NOT_NUL,
+        ChannelBufferIndexFinder.CR, ChannelBufferIndexFinder.NOT_CR,
+        ChannelBufferIndexFinder.LF, ChannelBufferIndexFinder.NOT_LF,
+        ChannelBufferIndexFinder.CRLF, ChannelBufferIndexFinder.NOT_CRLF,
+        ChannelBufferIndexFinder.LINEAR_WHITESPACE, ChannelBufferIndexFinder.NOT_LINEAR_WHITESPACE,
+    };
+    private static final byte[][] FINDER_BYTES = {
+        { 0 }, { 0 }, { '\r' }, { '\r' }, { '\n' }, { '\n' },
+        { '\r', '\n' }, { '\r', '\n' }, { ' ', '\t' }, { ' ', '\t' },
+    };
+
+    private final Random random = new Random(42);
+
+    private int randomLength() {
+        // Mostly short buffers, so that every alignment of the word loop and
+        // the byte-by-byte prefix of the buffers without an array are hit.
+        return random.nextInt(8) == 0? random.nextInt(4096) : random.nextInt(300);
+    }
+
+    @Test
+    public void testIndexOfByte() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = TestBuffers.randomBytes(random, randomLength(), ALPHABET);
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: TestBuffers.allKinds(content, order, random).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    for (int q = 0; q < 10; q ++) {
+                        byte value = ALPHABET[random.nextInt(ALPHABET.length)];
+                        int from = random.nextInt(content.length + 1);
+                        int to = random.nextInt(content.length + 1);
+                        assertEquals(e.getKey() + " indexOf(" + from + ", " + to + ", " + value + ')',
+                                naiveIndexOf(content, from, to, value), buf.indexOf(from, to, value));
+                    }
+                    byte value = ALPHABET[random.nextInt(ALPHABET.length)];
+                    assertEquals(e.getKey(), naiveIndexOf(content, 0, content.length, value), buf.bytesBefore(value));
+                    if (content.length > 0) {
+                        int readerIndex = random.nextInt(content.length);
+                        buf.readerIndex(readerIndex);
+                        int expected = naiveIndexOf(content, readerIndex, content.length, value);
+                        assertEquals(e.getKey(), expected < 0? -1 : expected - readerIndex, buf.bytesBefore(value));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfFinder() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = TestBuffers.randomBytes(random, randomLength(), ALPHABET);
+            if (random.nextBoolean()) {
+                // Long runs of the same byte for the negated finders.
+                byte fill = ALPHABET[random.nextInt(ALPHABET.length)];
+                for (int i = 0; i < content.length; i ++) {
+                    if (random.nextInt(64) != 0) {
+                        content[i] = fill;
+                    }
+                }
+            }
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: TestBuffers.allKinds(content, order, random).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    for (int f = 0; f < FINDERS.length; f ++) {
+                        boolean negated = (f & 1) != 0;
+                        int from = random.nextInt(content.length + 1);
+                        int to = random.nextInt(content.length + 1);
+                        assertEquals(e.getKey() + " finder " + f + " (" + from + ", " + to + ')',
+                                naiveIndexOf(content, from, to, FINDER_BYTES[f], negated),
+                                buf.indexOf(from, to, FINDERS[f]));
+                        assertEquals(e.getKey() + " finder " + f,
+                                naiveIndexOf(content, 0, content.length, FINDER_BYTES[f], negated),
+                                buf.bytesBefore(FINDERS[f]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfDelimiter() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = TestBuffers.randomBytes(random, randomLength(), ALPHABET);
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: TestBuffers.allKinds(content, order, random).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    for (int q = 0; q < 10; q ++) {
+                        byte[] delimiter = randomDelimiter(content);
+                        int from = random.nextInt(content.length + 1);
+                        int to = random.nextInt(content.length + 1);
+                        assertEquals(e.getKey() + " indexOf(" + from + ", " + to + ", " + delimiter.length + " bytes)",
+                                naiveIndexOf(content, from, to, delimiter), buf.indexOf(from, to, delimiter));
+                    }
+                    byte[] delimiter = randomDelimiter(content);
+                    assertEquals(e.getKey(),
+                            naiveIndexOf(content, 0, content.length, delimiter), buf.bytesBefore(delimiter));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyDelimiter() {
+        ChannelBuffers.wrappedBuffer(new byte[8]).indexOf(0, 8, new byte[0]);
+    }
+
+    /**
+     * Returns a delimiter which is taken from the content most of the time, so
+     * that it is found, and whose length covers the short delimiters and the
+     * Boyer-Moore-Horspool search.
+     */
+    private byte[] randomDelimiter(byte[] content) {
+        int length = 1 + random.nextInt(random.nextBoolean()? 4 : 24);
+        if (content.length >= length && random.nextInt(4) != 0) {
+            byte[] delimiter = new byte[length];
+            System.arraycopy(content, random.nextInt(content.length - length + 1), delimiter, 0, length);
+            return delimiter;
+        }
+        return TestBuffers.randomBytes(random, length, ALPHABET);
+    }
+
+    private static int naiveIndexOf(byte[] content, int from, int to, byte value) {
+        return naiveIndexOf(content, from, to, new byte[] { value }, false);
+    }
+
+    private static int naiveIndexOf(byte[] content, int from, int to, byte[] set, boolean negated) {
+        if (from <= to) {
+            for (int i = from; i < to; i ++) {
+                if (contains(set, content[i]) != negated) {
+                    return i;
+                }
+            }
+        } else {
+            for (int i = from - 1; i >= to; i --) {
+                if (contains(set, content[i]) != negated) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean contains(byte[] set, byte value) {
+        for (byte b: set) {
+            if (b == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int naiveIndexOf(byte[] content, int from, int to, byte[] delimiter) {
+        if (from <= to) {
+            for (int i = from; i + delimiter.length <= to; i ++) {
+                if (matches(content, i, delimiter)) {
+                    return i;
+                }
+            }
+        } else {
+            for (int i = from - delimiter.length; i >= to; i --) {
+                if (matches(content, i, delimiter)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] content, int index, byte[] delimiter) {
+        for (int j = 0; j < delimiter.length; j ++) {
+            if (content[index + j] != delimiter[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.WrappedChannelBuffer;
+import org.jboss.netty.util.IllegalReferenceCountException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how a composite buffer grows, shrinks and consolidates its
+ * components, and that the buffers derived from it are invalidated once the
+ * components they share have been released.
+ */
+public class CompositeChannelBufferTest {
+
+    private PooledChannelBufferFactory factory;
+
+    @Before
+    public void setUp() {
+        factory = new PooledChannelBufferFactory(ByteOrder.BIG_ENDIAN, false, 1, 8192, 11);
+    }
+
+    @After
+    public void tearDown() {
+        factory.freeThreadLocalCache();
+    }
+
+    private ChannelBuffer pooled(int first, int length) {
+        ChannelBuffer buf = factory.getBuffer(length);
+        for (int i = 0; i < length; i ++) {
+            buf.writeByte(first + i);
+        }
+        return buf;
+    }
+
+    private static void assertContent(ChannelBuffer buf, int first, int length) {
+        assertEquals(length, buf.readableBytes());
+        for (int i = 0; i < length; i ++) {
+            assertEquals((byte) (first + i), buf.getByte(buf.readerIndex() + i));
+        }
+    }
+
+    @Test
+    public void testAddComponent() {
+        CompositeChannelBuffer buf = ChannelBuffers.compositeBuffer();
+        buf.addComponent(pooled(0, 10));
+        buf.addComponent(pooled(10, 20));
+        assertEquals(2, buf.numComponents());
+        assertEquals(30, buf.capacity());
+        assertEquals(0, buf.readerIndex());
+        assertEquals(30, buf.writerIndex());
+        assertContent(buf, 0, 30);
+        assertEquals(0x090a0b0c, buf.getInt(9));
+
+        // Only the readable bytes are appended.
+        ChannelBuffer partial = pooled(30, 10);
+        partial.readerIndex(2);
+        partial.writerIndex(7);
+        buf.addComponent(partial);
+        assertEquals(35, buf.capacity());
+        assertEquals(32, buf.getByte(30));
+        assertEquals(36, buf.getByte(34));
+
+        // An empty buffer is released instead of being appended.
+        ChannelBuffer empty = factory.getBuffer(8);
+        buf.addComponent(empty);
+        assertEquals(3, buf.numComponents());
+        assertEquals(0, empty.refCnt());
+
+        assertTrue(buf.release());
+        assertEquals(0, partial.refCnt());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddComponentWithDifferentOrder() {
+        ChannelBuffers.compositeBuffer().addComponent(ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, 4));
+    }
+
+    @Test
+    public void testAddComponentConsolidatesTooManyComponents() {
+        CompositeChannelBuffer buf = ChannelBuffers.compositeBuffer(4);
+        ChannelBuffer[] components = new ChannelBuffer[5];
+        for (int i = 0; i < components.length; i ++) {
+            components[i] = pooled(i * 10, 10);
+            buf.addComponent(components[i]);
+        }
+        assertEquals(1, buf.numComponents());
+        assertContent(buf, 0, 50);
+        for (ChannelBuffer c: components) {
+            assertEquals(0, c.refCnt());
+        }
+        assertTrue(buf.release());
+    }
+
+    @Test
+    public void testDiscardReadComponents() {
+        CompositeChannelBuffer buf = ChannelBuffers.compositeBuffer();
+        ChannelBuffer a = pooled(0, 10);
+        ChannelBuffer b = pooled(10, 10);
+        ChannelBuffer c = pooled(20, 10);
+        buf.addComponent(a);
+        buf.addComponent(b);
+        buf.addComponent(c);
+
+        // Nothing is discarded while the first component is still readable.
+        buf.readerIndex(9);
+        buf.discardReadComponents();
+        assertEquals(3, buf.numComponents());
+        assertEquals(9, buf.readerIndex());
+
+        buf.readerIndex(15);
+        buf.markReaderIndex();
+        buf.readerIndex(22);
+        buf.discardReadComponents();
+        assertEquals(1, buf.numComponents());
+        assertEquals(10, buf.capacity());
+        assertEquals(2, buf.readerIndex());
+        assertEquals(10, buf.writerIndex());
+        assertContent(buf, 22, 8);
+        buf.resetReaderIndex();
+        assertEquals(0, buf.readerIndex());
+        assertEquals(0, a.refCnt());
+        assertEquals(0, b.refCnt());
+        assertEquals(1, c.refCnt());
+
+        assertTrue(buf.release());
+        assertEquals(0, c.refCnt());
+    }
+
+    @Test
+    public void testDiscardReadComponentsInvalidatesDerivedBuffers() {
+        CompositeChannelBuffer buf = ChannelBuffers.compositeBuffer();
+        buf.addComponent(pooled(0, 10));
+        buf.addComponent(pooled(10, 10));
+
+        ChannelBuffer duplicate = buf.duplicate();
+        ChannelBuffer slice = buf.slice(2, 5);
+        ChannelBuffer sliceOfSlice = slice.slice(1, 2);
+        assertContent(slice, 2, 5);
+        assertContent(sliceOfSlice, 3, 2);
+
+        // Not discarding any component keeps the derived buffers valid.
+        buf.readerIndex(5);
+        buf.discardReadComponents();
+        assertContent(duplicate, 0, 20);
+
+        buf.readerIndex(10);
+        buf.discardReadComponents();
+        assertInvalidated(duplicate);
+        assertInvalidated(slice);
+        assertInvalidated(sliceOfSlice);
+
+        // The buffers derived afterwards are valid.
+        assertContent(buf.duplicate(), 10, 10);
+        assertContent(buf.slice(0, 10), 10, 10);
+        assertTrue(buf.release());
+    }
+
+    @Test
+    public void testDerivedBufferDoesNotInvalidateParent() {
+        CompositeChannelBuffer buf = ChannelBuffers.compositeBuffer();
+        buf.addComponent(pooled(0, 10));
+        buf.addComponent(pooled(10, 10));
+        buf.addComponent(pooled(20, 10));
+
+        CompositeChannelBuffer duplicate = (CompositeChannelBuffer) buf.duplicate();
+        ChannelBuffer sliceOfDuplicate = duplicate.slice(0, 30);
+        duplicate.consolidate();
+        assertInvalidated(sliceOfDuplicate);
+        assertContent(duplicate, 0, 30);
+        assertTrue(duplicate.release());
+    }
+
+    @Test
+    public void testConsolidate() {
+        CompositeChannelBuffer buf = ChannelBuffers.compositeBuffer();
+        ChannelBuffer a = pooled(0, 10);
+        ChannelBuffer b = pooled(10, 10);
+        buf.addComponent(a);
+        buf.addComponent(b);
+        buf.readerIndex(3);
+        buf.writerIndex(17);
+        ChannelBuffer slice = buf.slice(5, 10);
+
+        buf.consolidate();
+        assertEquals(1, buf.numComponents());
+        assertEquals(20, buf.capacity());
+        assertEquals(3, buf.readerIndex());
+        assertEquals(17, buf.writerIndex());
+        assertContent(buf, 3, 14);
+        assertEquals(0, a.refCnt());
+        assertEquals(0, b.refCnt());
+        assertInvalidated(slice);
+
+        // The consolidated component is allocated from the same pool.
+        ChannelBuffer component = buf.getBuffer(0);
+        while (component instanceof WrappedChannelBuffer) {
+            component = ((WrappedChannelBuffer) component).unwrap();
+        }
+        assertTrue(component instanceof PooledChannelBuffer);
+        assertSame(factory, ((PooledChannelBuffer) component).allocator());
+
+        assertTrue(buf.release());
+        assertEquals(0, component.refCnt());
+    }
+
+    @Test
+    public void testConsolidateDirect() {
+        CompositeChannelBuffer buf = ChannelBuffers.compositeBuffer();
+        for (int i = 0; i < 3; i ++) {
+            ChannelBuffer c = ChannelBuffers.directBuffer(4);
+            c.writeInt(i);
+            buf.addComponent(c);
+        }
+        buf.consolidate();
+        assertEquals(1, buf.numComponents());
+        assertTrue(buf.getBuffer(0).isDirect());
+        for (int i = 0; i < 3; i ++) {
+            assertEquals(i, buf.readInt());
+        }
+    }
+
+    private static void assertInvalidated(ChannelBuffer buf) {
+        assertEquals(0, buf.refCnt());
+        try {
+            buf.getByte(buf.readerIndex());
+            fail();
+        } catch (IllegalReferenceCountException e) {
+            // Expected
+        }
+        try {
+            buf.release();
+            fail();
+        } catch (IllegalReferenceCountException e) {
+            // Expected
+        }
+    }
+}
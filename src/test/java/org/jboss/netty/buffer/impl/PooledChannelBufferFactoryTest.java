@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the memory cached by a thread is given back to the arena once
+ * the thread has terminated.
+ */
+public class PooledChannelBufferFactoryTest {
+
+    @Test(timeout = 30000)
+    public void testDeadThreadCacheIsFreed() throws Exception {
+        final PooledChannelBufferFactory factory =
+                new PooledChannelBufferFactory(ByteOrder.BIG_ENDIAN, false, 1, 8192, 11);
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                ChannelBuffer buf = factory.getBuffer(1024);
+                buf.release();
+            }
+        };
+        t.start();
+        t.join();
+
+        PoolArenaStats stats = factory.arenaStats().get(0);
+        assertEquals(1, stats.numThreadCaches());
+        assertEquals(1, stats.activeAllocations());
+
+        factory.freeDeadThreadCaches();
+
+        stats = factory.arenaStats().get(0);
+        assertEquals(0, stats.numThreadCaches());
+        assertEquals(0, stats.activeAllocations());
+    }
+
+    @Test(timeout = 30000)
+    public void testDeadThreadCacheIsFreedOnNewThread() throws Exception {
+        final PooledChannelBufferFactory factory =
+                new PooledChannelBufferFactory(ByteOrder.BIG_ENDIAN, false, 1, 8192, 11);
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                factory.getBuffer(1024).release();
+            }
+        };
+        t.start();
+        t.join();
+
+        // The first allocation of this thread sweeps the cache of the dead one.
+        ChannelBuffer buf = factory.getBuffer(1024);
+        PoolArenaStats stats = factory.arenaStats().get(0);
+        assertEquals(1, stats.numThreadCaches());
+        assertEquals(1, stats.activeAllocations());
+        assertEquals(buf.capacity(), stats.activeBytes());
+        buf.release();
+        factory.freeThreadLocalCache();
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the US-ASCII, ISO-8859-1 and UTF-8 fast paths of
+ * {@link ChannelBuffers} against the JDK encoders and decoders which replace
+ * malformed input and unmappable characters.
+ */
+public class StringCodecTest {
+
+    private static final Charset[] CHARSETS = { CharsetUtil.US_ASCII, CharsetUtil.ISO_8859_1, CharsetUtil.UTF_8 };
+    private static final int ITERATIONS = 500;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testEncode() throws Exception {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            String s = randomString();
+            for (Charset charset: CHARSETS) {
+                byte[] expected = referenceEncode(s, charset);
+                for (ByteOrder order: TestBuffers.ORDERS) {
+                    assertBytes(charset + " " + order, expected, ChannelBuffers.copiedBuffer(order, s, charset));
+                    assertBytes(charset + " " + order, expected,
+                            ChannelBuffers.copiedBuffer(order, new StringBuilder(s), charset));
+                    assertBytes(charset + " " + order, expected,
+                            ChannelBuffers.copiedBuffer(order, s.toCharArray(), charset));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = random.nextBoolean()? randomUtf8() : referenceEncode(randomString(), CharsetUtil.UTF_8);
+            for (Charset charset: CHARSETS) {
+                String expected = referenceDecode(content, 0, content.length, charset);
+                int index = content.length == 0? 0 : random.nextInt(content.length);
+                int length = random.nextInt(content.length - index + 1);
+                String expectedRegion = referenceDecode(content, index, length, charset);
+                for (ByteOrder order: TestBuffers.ORDERS) {
+                    for (Map.Entry<String, ChannelBuffer> e:
+                            TestBuffers.allKinds(content, order, random).entrySet()) {
+                        ChannelBuffer buf = e.getValue();
+                        assertEquals(e.getKey() + ' ' + charset, expected, buf.toString(charset));
+                        assertEquals(e.getKey() + ' ' + charset, expectedRegion,
+                                buf.toString(index, length, charset));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteUtf8AndWriteAscii() throws Exception {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            String s = randomString();
+            byte[] utf8 = referenceEncode(s, CharsetUtil.UTF_8);
+            byte[] ascii = referenceEncode(s, CharsetUtil.US_ASCII);
+            assertEquals(utf8.length, ChannelBuffers.utf8Length(s));
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: writableKinds(order, utf8.length).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    buf.writeByte('x');
+                    assertEquals(e.getKey(), utf8.length, ChannelBuffers.writeUtf8(buf, s));
+                    assertEquals(e.getKey(), 'x', buf.readByte());
+                    assertBytes(e.getKey(), utf8, buf);
+                    assertEquals(e.getKey(), referenceDecode(utf8, 0, utf8.length, CharsetUtil.UTF_8),
+                            ChannelBuffers.readUtf8(buf, utf8.length));
+                    assertFalse(e.getKey(), buf.readable());
+                }
+                for (Map.Entry<String, ChannelBuffer> e: writableKinds(order, ascii.length).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    buf.writeByte('x');
+                    assertEquals(e.getKey(), ascii.length, ChannelBuffers.writeAscii(buf, new StringBuilder(s)));
+                    buf.skipBytes(1);
+                    assertBytes(e.getKey(), ascii, buf);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadUtf8() throws Exception {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            byte[] content = random.nextBoolean()? randomUtf8() : referenceEncode(randomString(), CharsetUtil.UTF_8);
+            int length = random.nextInt(content.length + 1);
+            String expected = referenceDecode(content, 0, length, CharsetUtil.UTF_8);
+            for (ByteOrder order: TestBuffers.ORDERS) {
+                for (Map.Entry<String, ChannelBuffer> e: TestBuffers.allKinds(content, order, random).entrySet()) {
+                    ChannelBuffer buf = e.getValue();
+                    assertEquals(e.getKey(), expected, ChannelBuffers.readUtf8(buf, length));
+                    assertEquals(e.getKey(), length, buf.readerIndex());
+                }
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReadUtf8TooLong() {
+        ChannelBuffers.readUtf8(ChannelBuffers.wrappedBuffer(new byte[4]), 5);
+    }
+
+    /**
+     * Returns the buffers {@code writeUtf8} and {@code writeAscii} can write
+     * {@code length + 1} bytes to: with and without a backing array, growing
+     * and spanning several components.
+     */
+    private Map<String, ChannelBuffer> writableKinds(ByteOrder order, int length) {
+        Map<String, ChannelBuffer> buffers = new LinkedHashMap<String, ChannelBuffer>();
+        buffers.put("heap " + order, ChannelBuffers.buffer(order, length + 1));
+        buffers.put("direct " + order, ChannelBuffers.directBuffer(order, length + 1));
+        buffers.put("dynamic " + order, ChannelBuffers.dynamicBuffer(order, 1));
+        ChannelBuffer sliced = ChannelBuffers.buffer(order, length + 9).slice(3, length + 1);
+        sliced.clear();
+        buffers.put("sliced heap " + order, sliced);
+        // Only the readable bytes of the components are wrapped.
+        ChannelBuffer first = ChannelBuffers.buffer(order, 1 + random.nextInt(length + 1));
+        ChannelBuffer second = ChannelBuffers.directBuffer(order, length + 1);
+        first.writerIndex(first.capacity());
+        second.writerIndex(second.capacity());
+        ChannelBuffer composite = ChannelBuffers.wrappedBuffer(first, second);
+        composite.clear();
+        buffers.put("composite " + order, composite);
+        return buffers;
+    }
+
+    /**
+     * Returns a string of ASCII, Latin-1 and other BMP characters, surrogate
+     * pairs and unpaired surrogates.
+     */
+    private String randomString() {
+        int length = random.nextInt(8) == 0? random.nextInt(1024) : random.nextInt(40);
+        boolean asciiOnly = random.nextInt(3) == 0;
+        StringBuilder buf = new StringBuilder(length);
+        for (int i = 0; i < length; i ++) {
+            int kind = asciiOnly? 0 : random.nextInt(10);
+            switch (kind) {
+            case 0: case 1: case 2: case 3: case 4:
+                buf.append((char) random.nextInt(0x80));
+                break;
+            case 5:
+                buf.append((char) (0x80 + random.nextInt(0x80)));
+                break;
+            case 6:
+                buf.append((char) (0x100 + random.nextInt(0xD800 - 0x100)));
+                break;
+            case 7:
+                buf.append((char) (0xE000 + random.nextInt(0x2000)));
+                break;
+            case 8:
+                buf.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                break;
+            default:
+                // An unpaired high or low surrogate.
+                buf.append((char) (0xD800 + random.nextInt(0x800)));
+                break;
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns bytes which are mostly valid UTF-8, with truncated, overlong and
+     * invalid sequences in between.
+     */
+    private byte[] randomUtf8() {
+        int length = random.nextInt(8) == 0? random.nextInt(1024) : random.nextInt(40);
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer(length * 4 + 4);
+        while (buf.writerIndex() < length) {
+            switch (random.nextInt(12)) {
+            case 0:
+                buf.writeByte(0x80 + random.nextInt(0x80));
+                break;
+            case 1:
+                // Overlong encoding of '/'.
+                buf.writeByte(0xC0);
+                buf.writeByte(0xAF);
+                break;
+            case 2:
+                // Truncated three-byte sequence.
+                buf.writeByte(0xE0 + random.nextInt(0x10));
+                buf.writeByte(0x80 + random.nextInt(0x40));
+                break;
+            case 3:
+                // An encoded surrogate.
+                buf.writeByte(0xED);
+                buf.writeByte(0xA0 + random.nextInt(0x20));
+                buf.writeByte(0x80 + random.nextInt(0x40));
+                break;
+            case 4:
+                // Above U+10FFFF.
+                buf.writeByte(0xF4);
+                buf.writeByte(0x90 + random.nextInt(0x30));
+                buf.writeByte(0x80);
+                buf.writeByte(0x80);
+                break;
+            case 5:
+                buf.writeByte(random.nextInt());
+                break;
+            default:
+                StringBuilder s = new StringBuilder();
+                s.appendCodePoint(random.nextInt(4) == 0? 0x10000 + random.nextInt(0x100000) :
+                        random.nextBoolean()? random.nextInt(0x80) : random.nextInt(0xD800));
+                buf.writeBytes(s.toString().getBytes(CharsetUtil.UTF_8));
+                break;
+            }
+        }
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] referenceEncode(String s, Charset charset) throws CharacterCodingException {
+        ByteBuffer encoded = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .encode(CharBuffer.wrap(s));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    private static String referenceDecode(byte[] bytes, int offset, int length, Charset charset)
+            throws CharacterCodingException {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(ByteBuffer.wrap(bytes, offset, length)).toString();
+    }
+
+    private static void assertBytes(String message, byte[] expected, ChannelBuffer buf) {
+        byte[] actual = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), actual);
+        assertTrue(message, Arrays.equals(expected, actual));
+    }
+}
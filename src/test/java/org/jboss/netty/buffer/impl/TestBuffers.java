@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer.impl;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Creates buffers of every kind with the same content, so that the optimized
+ * paths of each buffer type can be checked against the same reference.
+ */
+final class TestBuffers {
+
+    static final ByteOrder[] ORDERS = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+
+    /**
+     * Returns a heap, a direct, a composite and two sliced buffers whose
+     * readable bytes are the specified content, keyed by their description.
+     * The sliced buffers are surrounded by random bytes which must never
+     * show up in the results.
+     */
+    static Map<String, ChannelBuffer> allKinds(byte[] content, ByteOrder order, Random random) {
+        Map<String, ChannelBuffer> buffers = new LinkedHashMap<String, ChannelBuffer>();
+        final int length = content.length;
+
+        ChannelBuffer heap = ChannelBuffers.buffer(order, length);
+        heap.writeBytes(content);
+        buffers.put("heap " + order, heap);
+
+        ChannelBuffer direct = ChannelBuffers.directBuffer(order, length);
+        direct.writeBytes(content);
+        buffers.put("direct " + order, direct);
+
+        int split1 = length == 0? 0 : random.nextInt(length + 1);
+        int split2 = split1 + (length == split1? 0 : random.nextInt(length - split1 + 1));
+        CompositeChannelBuffer composite = new CompositeChannelBuffer(
+                order, Collections.<ChannelBuffer>emptyList(), false);
+        addComponent(composite, copy(content, 0, split1, order, false));
+        addComponent(composite, copy(content, split1, split2 - split1, order, true));
+        addComponent(composite, copy(content, split2, length - split2, order, false));
+        buffers.put("composite " + order + " (" + split1 + ", " + split2 + ')', composite);
+
+        buffers.put("sliced heap " + order, padded(content, order, false, random));
+        buffers.put("sliced direct " + order, padded(content, order, true, random));
+        return buffers;
+    }
+
+    /**
+     * Returns random bytes, mostly drawn from the specified alphabet so that
+     * the searched values occur often.
+     */
+    static byte[] randomBytes(Random random, int length, byte[] alphabet) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i ++) {
+            if (alphabet != null && alphabet.length != 0 && random.nextInt(4) != 0) {
+                bytes[i] = alphabet[random.nextInt(alphabet.length)];
+            } else {
+                bytes[i] = (byte) random.nextInt();
+            }
+        }
+        return bytes;
+    }
+
+    private static void addComponent(CompositeChannelBuffer composite, ChannelBuffer component) {
+        // An empty buffer is always big-endian.
+        if (component.readable()) {
+            composite.addComponent(component);
+        }
+    }
+
+    private static ChannelBuffer copy(byte[] content, int offset, int length, ByteOrder order, boolean direct) {
+        ChannelBuffer buf = direct? ChannelBuffers.directBuffer(order, length) : ChannelBuffers.buffer(order, length);
+        buf.writeBytes(content, offset, length);
+        return buf;
+    }
+
+    private static ChannelBuffer padded(byte[] content, ByteOrder order, boolean direct, Random random) {
+        final int before = 1 + random.nextInt(15);
+        final int after = 1 + random.nextInt(15);
+        byte[] padding = randomBytes(random, before + after, content);
+        ChannelBuffer buf = direct?
+                ChannelBuffers.directBuffer(order, before + content.length + after) :
+                ChannelBuffers.buffer(order, before + content.length + after);
+        buf.writeBytes(padding, 0, before);
+        buf.writeBytes(content);
+        buf.writeBytes(padding, before, after);
+        return buf.slice(before, content.length);
+    }
+
+    private TestBuffers() {
+        // Unused
+    }
+}
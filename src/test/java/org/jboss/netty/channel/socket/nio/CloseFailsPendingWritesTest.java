@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.impl.ChannelBuffers;
+import org.jboss.netty.channel.core.Channel;
+import org.jboss.netty.channel.core.ChannelHandlerContext;
+import org.jboss.netty.channel.core.ChannelPipeline;
+import org.jboss.netty.channel.core.ChannelPipelineFactory;
+import org.jboss.netty.channel.core.Channels;
+import org.jboss.netty.channel.core.impl.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.event.ChannelStateEvent;
+import org.jboss.netty.channel.event.ExceptionEvent;
+import org.jboss.netty.channel.future.ChannelFuture;
+import org.jboss.netty.channel.future.ChannelFutureListener;
+import org.jboss.netty.channel.socket.nio.client.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.server.NioServerSocketChannelFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that closing a channel fails its pending writes before the close
+ * future and the {@code channelClosed} event are notified.
+ */
+public class CloseFailsPendingWritesTest {
+
+    private static final int MESSAGE_SIZE = 65536;
+    private static final int MESSAGE_COUNT = 64;
+
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+    private Channel serverChannel;
+    private final List<ChannelFuture> writeFutures = new ArrayList<ChannelFuture>();
+    private final Queue<String> problems = new ConcurrentLinkedQueue<String>();
+    private final CountDownLatch closed = new CountDownLatch(2);
+
+    @Before
+    public void setUp() {
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        sb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                        // Never read, so that the writes of the client pile up.
+                        e.getChannel().setReadable(false);
+                    }
+
+                    @Override
+                    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                        // Reset by the client.
+                    }
+                });
+            }
+        });
+        serverChannel = sb.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        cb = new ClientBootstrap(new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        cb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                        checkWriteFutures("channelClosed");
+                        closed.countDown();
+                    }
+
+                    @Override
+                    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                        if (!(e.getCause() instanceof ClosedChannelException)) {
+                            problems.add("unexpected exception: " + e.getCause());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        serverChannel.close().awaitUninterruptibly();
+        cb.releaseExternalResources();
+        sb.releaseExternalResources();
+    }
+
+    @Test(timeout = 30000)
+    public void testCloseFromUserThread() throws Exception {
+        Channel ch = connectAndWrite();
+        ch.close();
+        assertClosed();
+    }
+
+    @Test(timeout = 30000)
+    public void testCloseFromIoThread() throws Exception {
+        final Channel ch = connectAndWrite();
+        ch.getPipeline().execute(new Runnable() {
+            public void run() {
+                ch.close();
+            }
+        });
+        assertClosed();
+    }
+
+    private Channel connectAndWrite() throws InterruptedException {
+        // Keep most of the messages in the queue of the client.
+        cb.setOption("autoFlushThreshold", Integer.MAX_VALUE);
+        cb.setOption("writeBufferHighWaterMark", Integer.MAX_VALUE);
+        Channel ch = cb.connect(serverChannel.getLocalAddress()).awaitUninterruptibly().getChannel();
+        assertTrue(ch.isConnected());
+
+        // A large message in flight, followed by queued ones.
+        writeFutures.add(Channels.write(ch, ChannelBuffers.wrappedBuffer(new byte[16 * 1024 * 1024])));
+        for (int i = 0; i < MESSAGE_COUNT; i ++) {
+            writeFutures.add(Channels.writeWithoutFlush(
+                    ch, ChannelBuffers.wrappedBuffer(new byte[MESSAGE_SIZE])));
+        }
+        Thread.sleep(200);
+
+        ch.getCloseFuture().addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) {
+                checkWriteFutures("close future");
+                closed.countDown();
+            }
+        });
+        return ch;
+    }
+
+    private void checkWriteFutures(String notified) {
+        for (int i = 0; i < writeFutures.size(); i ++) {
+            ChannelFuture f = writeFutures.get(i);
+            if (!f.isDone()) {
+                problems.add("write " + i + " not done when the " + notified + " was notified");
+            } else if (f.isSuccess()) {
+                problems.add("write " + i + " succeeded");
+            }
+        }
+    }
+
+    private void assertClosed() throws InterruptedException {
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+        assertTrue(problems.toString(), problems.isEmpty());
+        for (ChannelFuture f: writeFutures) {
+            assertTrue(f.getCause() instanceof ClosedChannelException);
+        }
+    }
+}
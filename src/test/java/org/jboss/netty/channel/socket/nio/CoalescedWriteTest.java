@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.impl.ChannelBuffers;
+import org.jboss.netty.channel.core.Channel;
+import org.jboss.netty.channel.core.ChannelHandlerContext;
+import org.jboss.netty.channel.core.ChannelPipeline;
+import org.jboss.netty.channel.core.ChannelPipelineFactory;
+import org.jboss.netty.channel.core.Channels;
+import org.jboss.netty.channel.core.impl.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.event.MessageEvent;
+import org.jboss.netty.channel.future.ChannelFuture;
+import org.jboss.netty.channel.socket.nio.client.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.server.NioServerSocketChannelFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes small and large heap messages which are coalesced into gathering
+ * writes, and checks that the peer receives every byte in order.
+ */
+public class CoalescedWriteTest {
+
+    private static final int[] MESSAGE_SIZES = { 100, 100000, 200, 70000, 65536, 65537, 1, 300000, 50 };
+
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+    private Channel serverChannel;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+    @Before
+    public void setUp() {
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        sb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                        ChannelBuffer buf = (ChannelBuffer) e.getMessage();
+                        byte[] bytes = new byte[buf.readableBytes()];
+                        buf.readBytes(bytes);
+                        synchronized (received) {
+                            received.write(bytes, 0, bytes.length);
+                            received.notifyAll();
+                        }
+                    }
+                });
+            }
+        });
+        serverChannel = sb.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        cb = new ClientBootstrap(new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        cb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new SimpleChannelUpstreamHandler());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        serverChannel.close().awaitUninterruptibly();
+        cb.releaseExternalResources();
+        sb.releaseExternalResources();
+    }
+
+    @Test(timeout = 30000)
+    public void testWriteWithoutFlushWithRaisedByteCap() throws Exception {
+        cb.setOption("maxCoalescedWriteBytes", 1048576);
+        testMixedWrites(false);
+    }
+
+    @Test(timeout = 30000)
+    public void testCoalescedWritesWithRaisedByteCap() throws Exception {
+        cb.setOption("maxCoalescedWrites", 16);
+        cb.setOption("maxCoalescedWriteBytes", 1048576);
+        testMixedWrites(true);
+    }
+
+    private void testMixedWrites(boolean flush) throws Exception {
+        Channel ch = cb.connect(serverChannel.getLocalAddress()).awaitUninterruptibly().getChannel();
+        assertTrue(ch.isConnected());
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+        for (int i = 0; i < MESSAGE_SIZES.length; i ++) {
+            byte[] message = new byte[MESSAGE_SIZES[i]];
+            for (int j = 0; j < message.length; j ++) {
+                message[j] = (byte) (i * 31 + j);
+            }
+            expected.write(message, 0, message.length);
+
+            ChannelBuffer buf = ChannelBuffers.wrappedBuffer(message);
+            futures.add(flush? ch.write(buf) : Channels.writeWithoutFlush(ch, buf));
+        }
+        if (!flush) {
+            Channels.flush(ch);
+        }
+
+        for (ChannelFuture f: futures) {
+            assertTrue(f.await(10, TimeUnit.SECONDS));
+            assertTrue(f.isSuccess());
+        }
+
+        byte[] expectedBytes = expected.toByteArray();
+        synchronized (received) {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (received.size() < expectedBytes.length) {
+                long waitTime = deadline - System.currentTimeMillis();
+                if (waitTime <= 0) {
+                    break;
+                }
+                received.wait(waitTime);
+            }
+            assertEquals(expectedBytes.length, received.size());
+            assertTrue(Arrays.equals(expectedBytes, received.toByteArray()));
+        }
+        assertTrue(ch.isOpen());
+        ch.close().awaitUninterruptibly();
+    }
+}
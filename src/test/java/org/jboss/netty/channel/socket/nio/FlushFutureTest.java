@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.impl.ChannelBuffers;
+import org.jboss.netty.channel.core.Channel;
+import org.jboss.netty.channel.core.ChannelHandlerContext;
+import org.jboss.netty.channel.core.ChannelPipeline;
+import org.jboss.netty.channel.core.ChannelPipelineFactory;
+import org.jboss.netty.channel.core.Channels;
+import org.jboss.netty.channel.core.impl.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.event.ChannelStateEvent;
+import org.jboss.netty.channel.event.MessageEvent;
+import org.jboss.netty.channel.future.ChannelFuture;
+import org.jboss.netty.channel.future.ChannelFutureListener;
+import org.jboss.netty.channel.socket.nio.client.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.server.NioServerSocketChannelFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the future of a flush is notified only after the messages
+ * written without flush have been written, so that closing the channel on
+ * its completion does not cut them off.
+ */
+public class FlushFutureTest {
+
+    private static final int MESSAGE_SIZE = 65536;
+    private static final int MESSAGE_COUNT = 64;
+
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+    private Channel serverChannel;
+    private final AtomicLong received = new AtomicLong();
+    private final CountDownLatch peerClosed = new CountDownLatch(1);
+    private final CountDownLatch peerConnected = new CountDownLatch(1);
+    private volatile boolean peerPaused;
+    private volatile Channel peer;
+
+    @Before
+    public void setUp() {
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        sb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                        peer = e.getChannel();
+                        if (peerPaused) {
+                            peer.setReadable(false);
+                        }
+                        peerConnected.countDown();
+                    }
+
+                    @Override
+                    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                        received.addAndGet(((ChannelBuffer) e.getMessage()).readableBytes());
+                    }
+
+                    @Override
+                    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                        peerClosed.countDown();
+                    }
+                });
+            }
+        });
+        serverChannel = sb.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        cb = new ClientBootstrap(new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        cb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new SimpleChannelUpstreamHandler());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        serverChannel.close().awaitUninterruptibly();
+        cb.releaseExternalResources();
+        sb.releaseExternalResources();
+    }
+
+    @Test(timeout = 30000)
+    public void testCloseOnFlush() throws Exception {
+        // Keep the auto-flush from writing out the messages before the flush.
+        cb.setOption("autoFlushThreshold", Integer.MAX_VALUE);
+        cb.setOption("writeBufferHighWaterMark", Integer.MAX_VALUE);
+        Channel ch = cb.connect(serverChannel.getLocalAddress()).awaitUninterruptibly().getChannel();
+        assertTrue(ch.isConnected());
+
+        ChannelFuture lastWriteFuture = null;
+        for (int i = 0; i < MESSAGE_COUNT; i ++) {
+            lastWriteFuture = Channels.writeWithoutFlush(
+                    ch, ChannelBuffers.wrappedBuffer(new byte[MESSAGE_SIZE]));
+        }
+        ChannelFuture flushFuture = Channels.flush(ch);
+        flushFuture.addListener(ChannelFutureListener.CLOSE);
+
+        assertTrue(flushFuture.await(10, TimeUnit.SECONDS));
+        assertTrue(flushFuture.isSuccess());
+        assertTrue(lastWriteFuture.isDone());
+        assertTrue(lastWriteFuture.isSuccess());
+
+        assertTrue(peerClosed.await(10, TimeUnit.SECONDS));
+        assertEquals((long) MESSAGE_SIZE * MESSAGE_COUNT, received.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testCloseOnFlushWhileLastMessageIsInFlight() throws Exception {
+        peerPaused = true;
+        Channel ch = cb.connect(serverChannel.getLocalAddress()).awaitUninterruptibly().getChannel();
+        assertTrue(ch.isConnected());
+        assertTrue(peerConnected.await(10, TimeUnit.SECONDS));
+
+        // The large last message is polled by the auto-flush at once but
+        // cannot be written fully, so the queue is empty when flush is called.
+        final int smallMessages = 16;
+        final int lastMessageSize = 16 * 1024 * 1024;
+        for (int i = 0; i < smallMessages; i ++) {
+            Channels.writeWithoutFlush(ch, ChannelBuffers.wrappedBuffer(new byte[MESSAGE_SIZE]));
+        }
+        ChannelFuture lastWriteFuture = Channels.writeWithoutFlush(
+                ch, ChannelBuffers.wrappedBuffer(new byte[lastMessageSize]));
+        Thread.sleep(500);
+        assertFalse(lastWriteFuture.isDone());
+        assertNull(((AbstractNioChannel<?>) ch).writeBufferQueue.peekLast());
+
+        ChannelFuture flushFuture = Channels.flush(ch);
+        flushFuture.addListener(ChannelFutureListener.CLOSE);
+        Thread.sleep(200);
+        assertFalse(flushFuture.isDone());
+
+        peer.setReadable(true);
+        assertTrue(flushFuture.await(10, TimeUnit.SECONDS));
+        assertTrue(flushFuture.isSuccess());
+        assertTrue(lastWriteFuture.isSuccess());
+
+        assertTrue(peerClosed.await(10, TimeUnit.SECONDS));
+        assertEquals((long) MESSAGE_SIZE * smallMessages + lastMessageSize, received.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testFlushWithoutPendingMessages() throws Exception {
+        Channel ch = cb.connect(serverChannel.getLocalAddress()).awaitUninterruptibly().getChannel();
+        ChannelFuture flushFuture = Channels.flush(ch);
+        assertTrue(flushFuture.await(10, TimeUnit.SECONDS));
+        assertTrue(flushFuture.isSuccess());
+        ch.close().awaitUninterruptibly();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.impl.ChannelBuffers;
+import org.jboss.netty.util.internal.CaseIgnoringComparator;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link AsciiString} and {@link CaseIgnoringComparator} against the
+ * behaviour of the {@link String} with the same ISO-8859-1 characters.
+ */
+public class AsciiStringTest {
+
+    private static final int ITERATIONS = 2000;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testStringBehaviour() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            String chars = randomString();
+            String s = latin1(chars);
+            AsciiString a = new AsciiString(new StringBuilder(chars));
+
+            assertEquals(s, a.toString());
+            assertEquals(s.length(), a.length());
+            assertEquals(s.isEmpty(), a.isEmpty());
+            for (int i = 0; i < s.length(); i ++) {
+                assertEquals(s.charAt(i), a.charAt(i));
+            }
+            assertTrue(Arrays.equals(s.getBytes(CharsetUtil.ISO_8859_1), a.toByteArray()));
+            assertTrue(a.contentEquals(s));
+            assertTrue(a.contentEqualsIgnoreCase(s));
+
+            int start = random.nextInt(s.length() + 1);
+            int end = start + random.nextInt(s.length() - start + 1);
+            AsciiString sub = a.subSequence(start, end);
+            assertEquals(s.substring(start, end), sub.toString());
+            assertEquals(new AsciiString(s.substring(start, end)), sub);
+            assertEquals(new AsciiString(s.substring(start, end)).hashCode(), sub.hashCode());
+        }
+    }
+
+    @Test
+    public void testComparison() {
+        for (int n = 0; n < ITERATIONS; n ++) {
+            String s1 = latin1(randomString());
+            String s2 = similar(s1);
+            AsciiString a1 = new AsciiString(s1);
+            AsciiString a2 = new AsciiString(s2);
+            String message = '"' + s1 + "\" vs \"" + s2 + '"';
+
+            assertEquals(message, s1.equals(s2), a1.equals(a2));
+            assertEquals(message, s1.equals(s2), a1.contentEquals(s2));
+            assertEquals(message, s1.equalsIgnoreCase(s2), a1.contentEqualsIgnoreCase(a2));
+            assertEquals(message, s1.equalsIgnoreCase(s2), a1.contentEqualsIgnoreCase(s2));
+            assertEquals(message, Integer.signum(s1.compareTo(s2)), Integer.signum(a1.compareTo(a2)));
+            if (s1.equalsIgnoreCase(s2)) {
+                assertEquals(message, a1.hashCode(), a2.hashCode());
+            }
+
+            int expected = s1.compareToIgnoreCase(s2);
+            assertEquals(message, expected, CaseIgnoringComparator.INSTANCE.compare(a1, a2));
+            assertEquals(message, expected, CaseIgnoringComparator.INSTANCE.compare(a1, s2));
+            assertEquals(message, expected, CaseIgnoringComparator.INSTANCE.compare(new StringBuilder(s1), a2));
+            assertEquals(message, expected, CaseIgnoringComparator.INSTANCE.compare(s1, s2));
+        }
+    }
+
+    @Test
+    public void testBuffers() {
+        for (int n = 0; n < ITERATIONS / 10; n ++) {
+            String s = latin1(randomString());
+            byte[] bytes = s.getBytes(CharsetUtil.ISO_8859_1);
+            AsciiString expected = new AsciiString(s);
+            for (ByteOrder order: new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+                for (ChannelBuffer buf: buffers(bytes, order)) {
+                    String message = buf.toString();
+                    int index = buf.readerIndex();
+                    AsciiString of = AsciiString.of(buf, index, bytes.length);
+                    AsciiString wrapped = AsciiString.wrap(buf, index, bytes.length);
+                    assertEquals(message, expected, of);
+                    assertEquals(message, expected, wrapped);
+                    assertEquals(message, expected.hashCode(), of.hashCode());
+                    assertEquals(message, index, buf.readerIndex());
+
+                    ChannelBuffer out = ChannelBuffers.buffer(order, bytes.length + 2);
+                    out.writeByte('<');
+                    of.writeTo(out);
+                    out.writeByte('>');
+                    assertEquals('<' + s + '>', out.toString(CharsetUtil.ISO_8859_1));
+                    wrapped.setTo(out, 1);
+                    assertEquals('<' + s + '>', out.toString(CharsetUtil.ISO_8859_1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIntern() {
+        AsciiString contentLength = AsciiString.intern("X-Test-Content-Length");
+        assertSame(contentLength, AsciiString.intern("X-Test-Content-Length"));
+        assertSame(contentLength, AsciiString.intern(new AsciiString("X-Test-Content-Length")));
+        assertNotSame(contentLength, AsciiString.intern("x-test-content-length"));
+
+        byte[] bytes = "X-Test-Content-Length".getBytes(CharsetUtil.US_ASCII);
+        for (ByteOrder order: new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            for (ChannelBuffer buf: buffers(bytes, order)) {
+                assertSame(buf.toString(), contentLength, AsciiString.of(buf, buf.readerIndex(), bytes.length));
+            }
+        }
+
+        // The bytes must match exactly.
+        ChannelBuffer lowerCase = ChannelBuffers.copiedBuffer("x-test-content-length", CharsetUtil.US_ASCII);
+        AsciiString notInterned = AsciiString.of(lowerCase, 0, lowerCase.readableBytes());
+        assertNotSame(contentLength, notInterned);
+        assertTrue(contentLength.contentEqualsIgnoreCase(notInterned));
+        assertEquals(contentLength.hashCode(), notInterned.hashCode());
+    }
+
+    /**
+     * Returns a heap, a direct, a composite and a sliced buffer whose readable
+     * bytes are the specified bytes.
+     */
+    private List<ChannelBuffer> buffers(byte[] bytes, ByteOrder order) {
+        List<ChannelBuffer> buffers = new ArrayList<ChannelBuffer>();
+        buffers.add(ChannelBuffers.wrappedBuffer(order, bytes.clone()));
+        ChannelBuffer direct = ChannelBuffers.directBuffer(order, bytes.length);
+        direct.writeBytes(bytes);
+        buffers.add(direct);
+        if (bytes.length > 1) {
+            int split = 1 + random.nextInt(bytes.length - 1);
+            ChannelBuffer second = ChannelBuffers.directBuffer(order, bytes.length - split);
+            second.writeBytes(bytes, split, bytes.length - split);
+            buffers.add(ChannelBuffers.wrappedBuffer(ChannelBuffers.wrappedBuffer(order, bytes, 0, split), second));
+        }
+        byte[] padded = new byte[bytes.length + 8];
+        random.nextBytes(padded);
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        ChannelBuffer sliced = ChannelBuffers.wrappedBuffer(order, padded);
+        sliced.setIndex(3, 3 + bytes.length);
+        buffers.add(sliced.slice());
+        return buffers;
+    }
+
+    private String randomString() {
+        int length = random.nextInt(24);
+        StringBuilder buf = new StringBuilder(length);
+        for (int i = 0; i < length; i ++) {
+            switch (random.nextInt(8)) {
+            case 0:
+                buf.append((char) random.nextInt(0x80));
+                break;
+            case 1:
+                buf.append((char) (0x80 + random.nextInt(0x80)));
+                break;
+            case 2:
+                buf.append((char) (0x100 + random.nextInt(0x1000)));
+                break;
+            case 3:
+                buf.append((char) ('0' + random.nextInt(10)));
+                break;
+            case 4:
+                buf.append('-');
+                break;
+            default:
+                buf.append((char) ((random.nextBoolean()? 'a' : 'A') + random.nextInt(26)));
+                break;
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns the specified string changed in its case, one character or its
+     * length, so that most pairs share a prefix.
+     */
+    private String similar(String s) {
+        StringBuilder buf = new StringBuilder(s);
+        switch (random.nextInt(5)) {
+        case 0:
+            return s;
+        case 1:
+            for (int i = 0; i < buf.length(); i ++) {
+                char c = buf.charAt(i);
+                if (random.nextBoolean()) {
+                    buf.setCharAt(i, Character.isUpperCase(c)? Character.toLowerCase(c) : Character.toUpperCase(c));
+                }
+            }
+            return latin1(buf.toString());
+        case 2:
+            if (buf.length() > 0) {
+                buf.setCharAt(random.nextInt(buf.length()), (char) random.nextInt(0x100));
+            }
+            return buf.toString();
+        case 3:
+            return s.substring(0, random.nextInt(s.length() + 1));
+        default:
+            return s + latin1(randomString());
+        }
+    }
+
+    /**
+     * Replaces the characters which {@link AsciiString} cannot represent with
+     * {@code '?'}.
+     */
+    private static String latin1(String s) {
+        StringBuilder buf = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i ++) {
+            char c = s.charAt(i);
+            buf.append(c > 0xFF? '?' : c);
+        }
+        return buf.toString();
+    }
+}